@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.storage.BlobId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Least recently used cache of object data blocks, shared by the read channels of a
+ * {@link CloudStorageFileSystem}.
+ *
+ * <p>Blocks are keyed by object generation so cached data never outlives the object it was read
+ * from: a rewritten object gets a new generation and is read again.
+ *
+ * @see CloudStorageConfiguration#blockCacheSize()
+ */
+@ThreadSafe
+final class CloudStorageBlockCache {
+
+  private final int blockSize;
+  private final long maxBytes;
+
+  @GuardedBy("this")
+  private final LinkedHashMap<Key, byte[]> blocks = new LinkedHashMap<>(16, 0.75f, true);
+
+  @GuardedBy("this")
+  private long bytes;
+
+  CloudStorageBlockCache(int blockSize, long maxBytes) {
+    checkArgument(blockSize > 0, "Block size must be > 0");
+    checkArgument(maxBytes > 0, "Block cache size must be > 0");
+    this.blockSize = blockSize;
+    this.maxBytes = maxBytes;
+  }
+
+  /**
+   * Returns the size of cached blocks. Only the last block of an object may be shorter.
+   */
+  int blockSize() {
+    return blockSize;
+  }
+
+  /**
+   * Returns the number of bytes currently held by the cache.
+   */
+  synchronized long size() {
+    return bytes;
+  }
+
+  /**
+   * Returns block {@code index} of {@code blobId}, or {@code null} if it is not cached.
+   * {@code blobId} must have a generation.
+   */
+  @Nullable
+  synchronized byte[] get(BlobId blobId, long index) {
+    return blocks.get(Key.of(blobId, index));
+  }
+
+  /**
+   * Caches block {@code index} of {@code blobId}, evicting least recently used blocks until the
+   * cache fits its byte budget. {@code blobId} must have a generation.
+   */
+  synchronized void put(BlobId blobId, long index, byte[] block) {
+    checkArgument(blobId.generation() != null, "Blob id must have a generation");
+    if (block.length > maxBytes) {
+      return;
+    }
+    byte[] previous = blocks.put(Key.of(blobId, index), block);
+    bytes += block.length - (previous == null ? 0 : previous.length);
+    Iterator<Map.Entry<Key, byte[]>> iterator = blocks.entrySet().iterator();
+    while (bytes > maxBytes) {
+      bytes -= iterator.next().getValue().length;
+      iterator.remove();
+    }
+  }
+
+  @AutoValue
+  abstract static class Key {
+
+    static Key of(BlobId blobId, long index) {
+      return new AutoValue_CloudStorageBlockCache_Key(blobId, index);
+    }
+
+    abstract BlobId blobId();
+
+    abstract long index();
+  }
+}
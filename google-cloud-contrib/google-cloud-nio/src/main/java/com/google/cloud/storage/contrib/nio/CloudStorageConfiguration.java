@@ -59,6 +59,23 @@ public abstract class CloudStorageConfiguration {
    */
   public abstract int blockSize();
 
+  /**
+   * Returns the maximum number of bytes of object data cached in memory by each
+   * {@link CloudStorageFileSystem}, or {@code 0} if the block cache is disabled.
+   */
+  public abstract long blockCacheSize();
+
+  /**
+   * Returns the maximum number of objects whose metadata is cached by each
+   * {@link CloudStorageFileSystem}, or {@code 0} if the metadata cache is disabled.
+   */
+  public abstract long metadataCacheSize();
+
+  /**
+   * Returns for how long, in milliseconds, metadata is cached.
+   */
+  public abstract long metadataCacheTtlMillis();
+
   /**
    * Creates a new builder, initialized with the following settings:
    *
@@ -66,6 +83,8 @@ public abstract class CloudStorageConfiguration {
    * <li>Performing I/O on paths with extra slashes, e.g. {@code a//b} will throw an error.
    * <li>The prefix slash on absolute paths will be removed when converting to an object name.
    * <li>Pseudo-directories are enabled, so any path with a trailing slash is a fake directory.
+   * <li>The block cache is disabled.
+   * <li>The metadata cache is disabled.
    * </ul>
    */
   public static Builder builder() {
@@ -82,6 +101,9 @@ public abstract class CloudStorageConfiguration {
     private boolean stripPrefixSlash = true;
     private boolean usePseudoDirectories = true;
     private int blockSize = CloudStorageFileSystem.BLOCK_SIZE_DEFAULT;
+    private long blockCacheSize;
+    private long metadataCacheSize;
+    private long metadataCacheTtlMillis = CloudStorageFileSystem.METADATA_CACHE_TTL_MILLIS_DEFAULT;
 
     /**
      * Changes current working directory for new filesystem. This defaults to the root directory.
@@ -134,6 +156,59 @@ public abstract class CloudStorageConfiguration {
       return this;
     }
 
+    /**
+     * Sets the maximum number of bytes of object data the file system keeps in its block cache.
+     * Blocks of {@link #blockSize(int)} bytes read by channels of the file system are cached in
+     * memory, keyed by object generation, and evicted in least recently used order. Repeated
+     * reads of the same ranges, e.g. random access to file footers and indexes, are then served
+     * without contacting Google Cloud Storage.
+     *
+     * <p>The default is {@code 0}, which disables the cache.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     */
+    public Builder blockCacheSize(long value) {
+      checkArgument(value >= 0, "Block cache size must be >= 0");
+      blockCacheSize = value;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of objects whose metadata the file system caches. Cached metadata
+     * serves attribute reads, existence checks and channel opens without contacting Google Cloud
+     * Storage. Missing objects are cached too. Writes, deletes and copies made through the file
+     * system invalidate the entries they affect, changes made by other clients are seen once
+     * the entries expire.
+     *
+     * <p>When the cache is enabled directory streams list objects with their full metadata and
+     * cache it, so that walking a tree and reading the attributes of each entry, e.g. with
+     * {@link java.nio.file.Files#walkFileTree}, only requires one list request per page of
+     * entries.
+     *
+     * <p>The default is {@code 0}, which disables the cache.
+     *
+     * @throws IllegalArgumentException if {@code value} is negative
+     * @see #metadataCacheTtlMillis(long)
+     */
+    public Builder metadataCacheSize(long value) {
+      checkArgument(value >= 0, "Metadata cache size must be >= 0");
+      metadataCacheSize = value;
+      return this;
+    }
+
+    /**
+     * Sets for how long, in milliseconds, cached metadata is used before it's fetched again.
+     *
+     * <p>The default is {@value CloudStorageFileSystem#METADATA_CACHE_TTL_MILLIS_DEFAULT}.
+     *
+     * @throws IllegalArgumentException if {@code value} is not positive
+     */
+    public Builder metadataCacheTtlMillis(long value) {
+      checkArgument(value > 0, "Metadata cache TTL must be > 0");
+      metadataCacheTtlMillis = value;
+      return this;
+    }
+
     /**
      * Creates new instance without destroying builder.
      */
@@ -143,7 +218,10 @@ public abstract class CloudStorageConfiguration {
           permitEmptyPathComponents,
           stripPrefixSlash,
           usePseudoDirectories,
-          blockSize);
+          blockSize,
+          blockCacheSize,
+          metadataCacheSize,
+          metadataCacheTtlMillis);
     }
 
     Builder() {}
@@ -168,6 +246,15 @@ public abstract class CloudStorageConfiguration {
         case "blockSize":
           builder.blockSize((Integer) entry.getValue());
           break;
+        case "blockCacheSize":
+          builder.blockCacheSize(((Number) entry.getValue()).longValue());
+          break;
+        case "metadataCacheSize":
+          builder.metadataCacheSize(((Number) entry.getValue()).longValue());
+          break;
+        case "metadataCacheTtlMillis":
+          builder.metadataCacheTtlMillis(((Number) entry.getValue()).longValue());
+          break;
         default:
           throw new IllegalArgumentException(entry.getKey());
       }
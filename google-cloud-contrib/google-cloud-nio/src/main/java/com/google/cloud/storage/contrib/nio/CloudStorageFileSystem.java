@@ -54,12 +54,15 @@ public final class CloudStorageFileSystem extends FileSystem {
   public static final String GCS_VIEW = "gcs";
   public static final String BASIC_VIEW = "basic";
   public static final int BLOCK_SIZE_DEFAULT = 2 * 1024 * 1024;
+  public static final long METADATA_CACHE_TTL_MILLIS_DEFAULT = 10000;
   public static final FileTime FILE_TIME_UNKNOWN = FileTime.fromMillis(0);
   public static final ImmutableSet<String> SUPPORTED_VIEWS = ImmutableSet.of(BASIC_VIEW, GCS_VIEW);
 
   private final CloudStorageFileSystemProvider provider;
   private final String bucket;
   private final CloudStorageConfiguration config;
+  private final CloudStorageBlockCache blockCache;
+  private final CloudStorageMetadataCache metadataCache;
 
   /**
    * Returns Google Cloud Storage {@link FileSystem} object for {@code bucket}.
@@ -124,6 +127,11 @@ public final class CloudStorageFileSystem extends FileSystem {
     this.provider = provider;
     this.bucket = bucket;
     this.config = config;
+    this.blockCache = config.blockCacheSize() > 0
+        ? new CloudStorageBlockCache(config.blockSize(), config.blockCacheSize()) : null;
+    this.metadataCache = config.metadataCacheSize() > 0
+        ? new CloudStorageMetadataCache(config.metadataCacheSize(), config.metadataCacheTtlMillis())
+        : null;
   }
 
   @Override
@@ -145,6 +153,24 @@ public final class CloudStorageFileSystem extends FileSystem {
     return config;
   }
 
+  /**
+   * Returns the block cache shared by the channels of this file system, or {@code null} if the
+   * cache is disabled.
+   */
+  @Nullable
+  CloudStorageBlockCache blockCache() {
+    return blockCache;
+  }
+
+  /**
+   * Returns the metadata cache shared by the operations on the paths of this file system, or
+   * {@code null} if the cache is disabled.
+   */
+  @Nullable
+  CloudStorageMetadataCache metadataCache() {
+    return metadataCache;
+  }
+
   /**
    * Converts Cloud Storage object name to a {@link Path} object.
    */
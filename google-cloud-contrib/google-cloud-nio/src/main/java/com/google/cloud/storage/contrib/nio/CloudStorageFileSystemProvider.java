@@ -21,6 +21,7 @@ import static com.google.common.base.Preconditions.checkNotNull;
 import static com.google.common.base.Strings.isNullOrEmpty;
 
 import com.google.auto.service.AutoService;
+import com.google.cloud.Page;
 import com.google.cloud.storage.Acl;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
@@ -92,21 +93,33 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
   private static StorageOptions futureStorageOptions;
 
   private static class LazyPathIterator extends AbstractIterator<Path> {
-    private final Iterator<Blob> blobIterator;
+    private Page<Blob> page;
+    private Iterator<Blob> blobIterator;
+    // The metadata cache epoch at which the current page was fetched
+    private long pageEpoch;
     private final Filter<? super Path> filter;
     private final CloudStorageFileSystem fileSystem;
 
-    LazyPathIterator(CloudStorageFileSystem fileSystem, Iterator<Blob> blobIterator,
+    LazyPathIterator(CloudStorageFileSystem fileSystem, Page<Blob> page, long pageEpoch,
                      Filter<? super Path> filter) {
-      this.blobIterator = blobIterator;
+      this.page = page;
+      this.blobIterator = page.values().iterator();
+      this.pageEpoch = pageEpoch;
       this.filter = filter;
       this.fileSystem = fileSystem;
     }
 
     @Override
     protected Path computeNext() {
-      while (blobIterator.hasNext()) {
-        Path path = fileSystem.getPath(blobIterator.next().name());
+      CloudStorageMetadataCache metadataCache = fileSystem.metadataCache();
+      while (blobIterator.hasNext() || fetchNextPage(metadataCache)) {
+        Blob blob = blobIterator.next();
+        CloudStoragePath path = fileSystem.getPath(blob.name());
+        if (metadataCache != null && !blob.isDirectory()) {
+          // Lets the filter and the caller read the entry's attributes without another request.
+          // Entries are not cached if the file system changed since the page was listed.
+          metadataCache.put(path.getBlobId(), blob, pageEpoch);
+        }
         try {
           if (filter.accept(path)) {
             return path;
@@ -117,6 +130,22 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       }
       return endOfData();
     }
+
+    /**
+     * Fetches the next page of the listing, if any. Returns {@code false} if there are no more
+     * pages.
+     */
+    private boolean fetchNextPage(@Nullable CloudStorageMetadataCache metadataCache) {
+      while (page.nextPageCursor() != null) {
+        pageEpoch = metadataCache != null ? metadataCache.epoch() : 0;
+        page = page.nextPage();
+        blobIterator = page.values().iterator();
+        if (blobIterator.hasNext()) {
+          return true;
+        }
+      }
+      return false;
+    }
   }
 
   /**
@@ -155,6 +184,14 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     }
   }
 
+  /**
+   * Returns the storage service used by this provider.
+   */
+  Storage storage() {
+    initStorage();
+    return storage;
+  }
+
   @Override
   public String getScheme() {
     return CloudStorageFileSystem.URI_SCHEME;
@@ -255,7 +292,9 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    return CloudStorageReadChannel.create(storage, cloudPath.getBlobId(), 0);
+    return CloudStorageReadChannel.create(storage, cloudPath.getBlobId(),
+        CloudStorageUtil.getBlobInfo(storage, cloudPath), 0,
+        cloudPath.getFileSystem().blockCache());
   }
 
   private SeekableByteChannel newWriteChannel(Path path, Set<? extends OpenOption> options)
@@ -326,7 +365,8 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     try {
       return new CloudStorageWriteChannel(
           storage.writer(infoBuilder.build(),
-              writeOptions.toArray(new Storage.BlobWriteOption[writeOptions.size()])));
+              writeOptions.toArray(new Storage.BlobWriteOption[writeOptions.size()])),
+          cloudPath);
     } catch (StorageException oops) {
       throw asIoException(oops);
     }
@@ -353,7 +393,11 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       throw new CloudStoragePseudoDirectoryException(cloudPath);
     }
-    return storage.delete(cloudPath.getBlobId());
+    try {
+      return storage.delete(cloudPath.getBlobId());
+    } finally {
+      CloudStorageUtil.invalidateBlobInfo(cloudPath);
+    }
   }
 
   @Override
@@ -462,7 +506,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
 
     try {
       if (wantCopyAttributes) {
-        BlobInfo blobInfo = storage.get(fromPath.getBlobId());
+        BlobInfo blobInfo = CloudStorageUtil.getBlobInfo(storage, fromPath);
         if (null == blobInfo) {
           throw new NoSuchFileException(fromPath.toString());
         }
@@ -494,6 +538,8 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       copyWriter.result();
     } catch (StorageException oops) {
       throw asIoException(oops);
+    } finally {
+      CloudStorageUtil.invalidateBlobInfo(toPath);
     }
   }
 
@@ -528,8 +574,13 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     if (cloudPath.seemsLikeADirectoryAndUsePseudoDirectories()) {
       return;
     }
-    if (storage.get(cloudPath.getBlobId(), Storage.BlobGetOption.fields(Storage.BlobField.ID))
-        == null) {
+    if (cloudPath.getFileSystem().metadataCache() != null) {
+      // Caches the full metadata, which is likely to be read next.
+      if (CloudStorageUtil.getBlobInfo(storage, cloudPath) == null) {
+        throw new NoSuchFileException(path.toString());
+      }
+    } else if (storage.get(cloudPath.getBlobId(),
+        Storage.BlobGetOption.fields(Storage.BlobField.ID)) == null) {
       throw new NoSuchFileException(path.toString());
     }
   }
@@ -549,7 +600,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
       A result = (A) new CloudStoragePseudoDirectoryAttributes(cloudPath);
       return result;
     }
-    BlobInfo blobInfo = storage.get(cloudPath.getBlobId());
+    BlobInfo blobInfo = CloudStorageUtil.getBlobInfo(storage, cloudPath);
     // null size indicate a file that we haven't closed yet, so GCS treats it as not there yet.
     if (null == blobInfo || blobInfo.size() == null) {
       throw new NoSuchFileException(
@@ -599,13 +650,20 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     checkNotNull(filter);
     initStorage();
     String prefix = cloudPath.toString();
-    final Iterator<Blob> blobIterator = storage.list(cloudPath.bucket(),
-        Storage.BlobListOption.prefix(prefix), Storage.BlobListOption.currentDirectory(),
-        Storage.BlobListOption.fields()).iterateAll();
+    List<Storage.BlobListOption> listOptions = new ArrayList<>();
+    listOptions.add(Storage.BlobListOption.prefix(prefix));
+    listOptions.add(Storage.BlobListOption.currentDirectory());
+    CloudStorageMetadataCache metadataCache = cloudPath.getFileSystem().metadataCache();
+    if (metadataCache == null) {
+      listOptions.add(Storage.BlobListOption.fields());
+    }
+    final long listEpoch = metadataCache != null ? metadataCache.epoch() : 0;
+    final Page<Blob> blobPage = storage.list(cloudPath.bucket(),
+        listOptions.toArray(new Storage.BlobListOption[listOptions.size()]));
     return new DirectoryStream<Path>() {
       @Override
       public Iterator<Path> iterator() {
-        return new LazyPathIterator(cloudPath.getFileSystem(), blobIterator, filter);
+        return new LazyPathIterator(cloudPath.getFileSystem(), blobPage, listEpoch, filter);
       }
 
       @Override
@@ -649,7 +707,7 @@ public final class CloudStorageFileSystemProvider extends FileSystemProvider {
     return MoreObjects.toStringHelper(this).add("storage", storage).toString();
   }
 
-  private IOException asIoException(StorageException oops) {
+  static IOException asIoException(StorageException oops) {
     // RPC API can only throw StorageException, but CloudStorageFileSystemProvider
     // can only throw IOException. Square peg, round hole.
     // TODO(#810): Research if other codes should be translated similarly.
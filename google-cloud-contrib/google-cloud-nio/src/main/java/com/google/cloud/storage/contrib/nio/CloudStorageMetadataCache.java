@@ -0,0 +1,126 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.common.base.Optional;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.GuardedBy;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Cache of object metadata, shared by the operations on the paths of a
+ * {@link CloudStorageFileSystem}.
+ *
+ * <p>Both existing and missing objects are cached, for at most the configured time to live.
+ * Writes, deletes and copies made through the file system invalidate the entries they affect;
+ * changes made by other clients are seen once the entries expire.
+ *
+ * @see CloudStorageConfiguration#metadataCacheSize()
+ */
+@ThreadSafe
+final class CloudStorageMetadataCache {
+
+  private final Cache<BlobId, Optional<BlobInfo>> cache;
+  private final Object lock = new Object();
+
+  // Incremented by every invalidation, so that fetches overlapping one don't cache their result
+  @GuardedBy("lock")
+  private long epoch;
+
+  CloudStorageMetadataCache(long maxEntries, long ttlMillis) {
+    checkArgument(maxEntries > 0, "Metadata cache size must be > 0");
+    checkArgument(ttlMillis > 0, "Metadata cache TTL must be > 0");
+    cache = CacheBuilder.newBuilder()
+        .maximumSize(maxEntries)
+        .expireAfterWrite(ttlMillis, TimeUnit.MILLISECONDS)
+        .build();
+  }
+
+  /**
+   * Returns the metadata of {@code blobId}, or {@code null} if the object does not exist. The
+   * metadata is fetched from {@code storage} if it's not cached. The fetched metadata is not cached
+   * if an entry was invalidated while fetching it, as it might predate the change.
+   */
+  @Nullable
+  BlobInfo get(Storage storage, BlobId blobId) {
+    Optional<BlobInfo> blobInfo = cache.getIfPresent(blobId);
+    if (blobInfo == null) {
+      long fetchEpoch;
+      synchronized (lock) {
+        fetchEpoch = epoch;
+      }
+      blobInfo = Optional.<BlobInfo>fromNullable(storage.get(blobId));
+      synchronized (lock) {
+        if (epoch == fetchEpoch) {
+          cache.put(blobId, blobInfo);
+        }
+      }
+    }
+    return blobInfo.orNull();
+  }
+
+  /**
+   * Returns the current epoch. Metadata fetched after this call, e.g. by a listing, can be cached
+   * with {@link #put(BlobId, BlobInfo, long)}.
+   */
+  long epoch() {
+    synchronized (lock) {
+      return epoch;
+    }
+  }
+
+  /**
+   * Caches the metadata of {@code blobId}, e.g. as returned by a listing. A {@code null}
+   * {@code blobInfo} records that the object does not exist. The metadata is not cached if an
+   * entry was invalidated since {@code fetchEpoch}, the {@linkplain #epoch() epoch} at which it
+   * was fetched, as it might predate the change.
+   */
+  void put(BlobId blobId, @Nullable BlobInfo blobInfo, long fetchEpoch) {
+    synchronized (lock) {
+      if (epoch == fetchEpoch) {
+        cache.put(blobId, Optional.fromNullable(blobInfo));
+      }
+    }
+  }
+
+  /**
+   * Removes the cached metadata of {@code blobId}, if any.
+   */
+  void invalidate(BlobId blobId) {
+    synchronized (lock) {
+      epoch++;
+      cache.invalidate(blobId);
+    }
+  }
+
+  /**
+   * Returns the number of cached entries, including expired entries not yet evicted.
+   */
+  long size() {
+    return cache.size();
+  }
+}
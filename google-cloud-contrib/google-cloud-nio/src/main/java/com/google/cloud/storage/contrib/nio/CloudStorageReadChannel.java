@@ -29,39 +29,77 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonWritableChannelException;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.NoSuchFileException;
+import java.util.Arrays;
 
 import javax.annotation.CheckReturnValue;
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
  * Cloud Storage read channel.
  *
+ * <p>If a {@link CloudStorageBlockCache} is provided, the channel reads whole blocks of the
+ * object generation that existed when the channel was opened and serves reads from the cache,
+ * so that seeking back to data that was already read does not fetch it again.
+ *
  * @see CloudStorageWriteChannel
  */
 @ThreadSafe
 final class CloudStorageReadChannel implements SeekableByteChannel {
 
   private final ReadChannel channel;
+  private final BlobId blobId;
+  private final CloudStorageBlockCache cache;
   private long position;
   private long size;
+  private long channelPosition;
 
   @CheckReturnValue
-  @SuppressWarnings("resource")
   static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position)
       throws IOException {
+    return create(gcsStorage, file, position, null);
+  }
+
+  @CheckReturnValue
+  static CloudStorageReadChannel create(Storage gcsStorage, BlobId file, long position,
+      @Nullable CloudStorageBlockCache cache) throws IOException {
+    return create(gcsStorage, file, gcsStorage.get(file), position, cache);
+  }
+
+  /**
+   * Creates a channel reading {@code file}, whose metadata was already fetched as
+   * {@code blobInfo}. A {@code null} {@code blobInfo} means that the file does not exist.
+   */
+  @CheckReturnValue
+  @SuppressWarnings("resource")
+  static CloudStorageReadChannel create(Storage gcsStorage, BlobId file,
+      @Nullable BlobInfo blobInfo, long position, @Nullable CloudStorageBlockCache cache)
+      throws IOException {
+    if (blobInfo == null) {
+      throw new NoSuchFileException(String.format("gs://%s/%s", file.bucket(), file.name()));
+    }
+    if (cache != null && blobInfo.generation() != null) {
+      // Reading a fixed generation makes size and cached blocks consistent with the data read.
+      BlobId blobId = BlobId.of(file.bucket(), file.name(), blobInfo.generation());
+      ReadChannel channel = gcsStorage.reader(blobId);
+      channel.chunkSize(cache.blockSize());
+      return new CloudStorageReadChannel(position, blobInfo.size(), channel, blobId, cache);
+    }
     // XXX: Reading size and opening file should be atomic.
-    long size = fetchSize(gcsStorage, file);
     ReadChannel channel = gcsStorage.reader(file);
     if (position > 0) {
       channel.seek((int) position);
     }
-    return new CloudStorageReadChannel(position, size, channel);
+    return new CloudStorageReadChannel(position, blobInfo.size(), channel, file, null);
   }
 
-  private CloudStorageReadChannel(long position, long size, ReadChannel channel) {
+  private CloudStorageReadChannel(long position, long size, ReadChannel channel, BlobId blobId,
+      @Nullable CloudStorageBlockCache cache) {
     this.position = position;
     this.size = size;
     this.channel = channel;
+    this.blobId = blobId;
+    this.cache = cache;
   }
 
   @Override
@@ -82,10 +120,13 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
   public int read(ByteBuffer dst) throws IOException {
     synchronized (this) {
       checkOpen();
+      if (cache != null) {
+        return readCached(dst);
+      }
       int amt = channel.read(dst);
       if (amt > 0) {
         position += amt;
-        // XXX: This would only ever happen if the fetchSize() race-condition occurred.
+        // XXX: This would only ever happen if the metadata race-condition occurred.
         if (position > size) {
           size = position;
         }
@@ -118,12 +159,58 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
       if (newPosition == position) {
         return this;
       }
-      channel.seek(newPosition);
+      if (cache == null) {
+        channel.seek(newPosition);
+      }
       position = newPosition;
       return this;
     }
   }
 
+  private int readCached(ByteBuffer dst) throws IOException {
+    if (position >= size) {
+      return -1;
+    }
+    int amt = 0;
+    while (dst.hasRemaining() && position < size) {
+      long index = position / cache.blockSize();
+      byte[] block = cache.get(blobId, index);
+      if (block == null) {
+        block = fetchBlock(index);
+        cache.put(blobId, index, block);
+      }
+      int offset = (int) (position - index * cache.blockSize());
+      if (offset >= block.length) {
+        // The object is shorter than its reported size. Generations are immutable so this
+        // should never happen.
+        break;
+      }
+      int length = Math.min(block.length - offset, dst.remaining());
+      dst.put(block, offset, length);
+      position += length;
+      amt += length;
+    }
+    return amt > 0 ? amt : -1;
+  }
+
+  private byte[] fetchBlock(long index) throws IOException {
+    long blockStart = index * cache.blockSize();
+    if (channelPosition != blockStart) {
+      channel.seek(blockStart);
+      channelPosition = blockStart;
+    }
+    ByteBuffer block = ByteBuffer.allocate((int) Math.min(cache.blockSize(), size - blockStart));
+    while (block.hasRemaining()) {
+      int amt = channel.read(block);
+      if (amt < 0) {
+        break;
+      }
+      channelPosition += amt;
+    }
+    return block.position() == block.capacity()
+        ? block.array() : Arrays.copyOf(block.array(), block.position());
+  }
+
   @Override
   public int write(ByteBuffer src) throws IOException {
     throw new NonWritableChannelException();
@@ -139,12 +226,4 @@ final class CloudStorageReadChannel implements SeekableByteChannel {
       throw new ClosedChannelException();
     }
   }
-
-  private static long fetchSize(Storage gcsStorage, BlobId file) throws IOException {
-    BlobInfo blobInfo = gcsStorage.get(file);
-    if (blobInfo == null) {
-      throw new NoSuchFileException(String.format("gs://%s/%s", file.bucket(), file.name()));
-    }
-    return blobInfo.size();
-  }
 }
@@ -0,0 +1,467 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+import com.google.cloud.storage.StorageBatchResult;
+import com.google.cloud.storage.StorageBulkExecutor;
+import com.google.cloud.storage.StorageException;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.nio.file.CopyOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+
+/**
+ * Bulk operations on all the objects under a Cloud Storage directory.
+ *
+ * <p>{@link java.nio.file.Files#copy(Path, Path, CopyOption...)} and
+ * {@link java.nio.file.Files#move(Path, Path, CopyOption...)} operate on a single object and wait
+ * for it to complete. This class copies, moves and deletes whole directory trees instead, using
+ * server-side rewrites run by a pool of workers and batched delete requests. Objects are
+ * processed independently: the failure of an object does not stop the operation, it is reported
+ * to the {@link Listener}, if any, and in the returned {@link Result}.
+ *
+ * <p>Example of renaming a directory:
+ * <pre> {@code
+ * CloudStorageFileSystem fs = CloudStorageFileSystem.forBucket("bucket");
+ * CloudStorageTreeOperations operations = CloudStorageTreeOperations.builder()
+ *     .parallelism(32)
+ *     .build();
+ * CloudStorageTreeOperations.Result result =
+ *     operations.move(fs.getPath("output/tmp/"), fs.getPath("output/final/"));
+ * if (!result.failures().isEmpty()) {
+ *   // handle the objects that were not moved
+ * }}</pre>
+ */
+@ThreadSafe
+public final class CloudStorageTreeOperations {
+
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-nio-tree-%d")
+      .build();
+  private static final int DEFAULT_PARALLELISM = 16;
+  private static final int DEFAULT_BATCH_SIZE = 100;
+
+  private final int parallelism;
+  private final int batchSize;
+  private final Listener listener;
+
+  /**
+   * Receives the outcome of each object processed by an operation. Methods are called
+   * concurrently by the threads running the operation, implementations must be thread-safe.
+   */
+  public interface Listener {
+
+    /**
+     * Called when the object at {@code source} was successfully copied, moved or deleted.
+     */
+    void completed(Path source);
+
+    /**
+     * Called when copying, moving or deleting the object at {@code source} failed.
+     */
+    void failed(Path source, IOException exception);
+  }
+
+  /**
+   * The outcome of an operation.
+   */
+  public static final class Result {
+
+    private final long completed;
+    private final Map<Path, IOException> failures;
+
+    private Result(long completed, Map<Path, IOException> failures) {
+      this.completed = completed;
+      this.failures = ImmutableMap.copyOf(failures);
+    }
+
+    /**
+     * Returns the number of objects successfully copied, moved or deleted.
+     */
+    public long completed() {
+      return completed;
+    }
+
+    /**
+     * Returns the objects for which the operation failed, with the corresponding error.
+     */
+    public Map<Path, IOException> failures() {
+      return failures;
+    }
+  }
+
+  /**
+   * Builder for {@code CloudStorageTreeOperations} objects.
+   */
+  public static final class Builder {
+
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private Listener listener;
+
+    private Builder() {}
+
+    /**
+     * Sets the number of objects copied concurrently, which is also the maximum number of delete
+     * batches sent concurrently. The default parallelism is 16.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of objects deleted by a single batch request. The default batch
+     * size is 100.
+     *
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public Builder batchSize(int batchSize) {
+      checkArgument(batchSize > 0, "Batch size must be > 0");
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Sets a listener notified of the outcome of each object, e.g. to report progress.
+     */
+    public Builder listener(@Nullable Listener listener) {
+      this.listener = listener;
+      return this;
+    }
+
+    /**
+     * Creates a {@code CloudStorageTreeOperations} object.
+     */
+    public CloudStorageTreeOperations build() {
+      return new CloudStorageTreeOperations(this);
+    }
+  }
+
+  private CloudStorageTreeOperations(Builder builder) {
+    this.parallelism = builder.parallelism;
+    this.batchSize = builder.batchSize;
+    this.listener = builder.listener;
+  }
+
+  /**
+   * Returns a builder for {@code CloudStorageTreeOperations} objects.
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Returns the number of objects copied concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns the maximum number of objects deleted by a single batch request.
+   */
+  public int batchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Copies all the objects under the {@code source} directory to the {@code target} directory,
+   * keeping their names relative to the directories and their metadata. Existing objects are
+   * not replaced unless {@link StandardCopyOption#REPLACE_EXISTING} is provided.
+   *
+   * @throws IllegalArgumentException if {@code target} is inside {@code source}
+   * @throws UnsupportedOperationException if an option other than
+   *     {@link StandardCopyOption#REPLACE_EXISTING} is provided
+   * @throws IOException if listing the source objects fails
+   */
+  public Result copy(Path source, Path target, CopyOption... options) throws IOException {
+    return run(CloudStorageUtil.checkPath(source), CloudStorageUtil.checkPath(target), false,
+        replaceExisting(options));
+  }
+
+  /**
+   * Moves all the objects under the {@code source} directory to the {@code target} directory.
+   * Each object is copied as in {@link #copy(Path, Path, CopyOption...)} and then deleted. An
+   * object that fails to be copied is not deleted.
+   *
+   * @throws IllegalArgumentException if {@code target} is inside {@code source}
+   * @throws UnsupportedOperationException if an option other than
+   *     {@link StandardCopyOption#REPLACE_EXISTING} is provided
+   * @throws IOException if listing the source objects fails
+   */
+  public Result move(Path source, Path target, CopyOption... options) throws IOException {
+    return run(CloudStorageUtil.checkPath(source), CloudStorageUtil.checkPath(target), true,
+        replaceExisting(options));
+  }
+
+  /**
+   * Deletes all the objects under the {@code directory}.
+   *
+   * @throws IOException if listing the objects fails
+   */
+  public Result delete(Path directory) throws IOException {
+    return run(CloudStorageUtil.checkPath(directory), null, true, false);
+  }
+
+  private static boolean replaceExisting(CopyOption... options) {
+    boolean replaceExisting = false;
+    for (CopyOption option : options) {
+      if (option != StandardCopyOption.REPLACE_EXISTING) {
+        throw new UnsupportedOperationException(option.toString());
+      }
+      replaceExisting = true;
+    }
+    return replaceExisting;
+  }
+
+  /**
+   * Returns the name prefix of the objects under {@code directory}.
+   */
+  private static String prefix(CloudStoragePath directory) {
+    String name = directory.getBlobId().name();
+    return name.endsWith("/") ? name : name + "/";
+  }
+
+  /**
+   * Returns the path of the object named {@code name} in {@code fileSystem}.
+   */
+  private static CloudStoragePath path(CloudStorageFileSystem fileSystem, String name) {
+    return fileSystem.getPath(fileSystem.config().stripPrefixSlash() ? "/" + name : name);
+  }
+
+  /**
+   * Shuts {@code executor} down and waits for its tasks to complete, as they can't be abandoned
+   * while running.
+   */
+  private static void awaitTermination(ExecutorService executor) {
+    executor.shutdown();
+    boolean interrupted = false;
+    while (true) {
+      try {
+        if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+          break;
+        }
+      } catch (InterruptedException ex) {
+        interrupted = true;
+      }
+    }
+    if (interrupted) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Copies the objects under {@code source} to {@code target}, if not {@code null}, and deletes
+   * them if {@code delete} is {@code true}.
+   */
+  private Result run(CloudStoragePath source, @Nullable CloudStoragePath target, boolean delete,
+      boolean replaceExisting) throws IOException {
+    String sourcePrefix = prefix(source);
+    String targetPrefix = target != null ? prefix(target) : null;
+    checkArgument(target == null || !target.bucket().equals(source.bucket())
+        || !targetPrefix.startsWith(sourcePrefix), "Target %s is inside source %s", target, source);
+    Operation operation = new Operation(source, sourcePrefix, target, targetPrefix, delete,
+        replaceExisting);
+    try {
+      operation.run();
+    } catch (StorageException ex) {
+      throw CloudStorageFileSystemProvider.asIoException(ex);
+    }
+    return new Result(operation.completed.get(), operation.failures);
+  }
+
+  /**
+   * A single copy, move or delete operation.
+   */
+  private final class Operation {
+
+    private final CloudStorageFileSystem sourceFileSystem;
+    private final String sourceBucket;
+    private final String sourcePrefix;
+    private final CloudStorageFileSystem targetFileSystem;
+    private final String targetPrefix;
+    private final boolean delete;
+    private final boolean replaceExisting;
+    private final Storage storage;
+    private final Queue<Path> pendingDeletes = new ConcurrentLinkedQueue<>();
+    private final Map<Path, IOException> failures = new ConcurrentHashMap<>();
+    private final AtomicLong completed = new AtomicLong();
+
+    Operation(CloudStoragePath source, String sourcePrefix, @Nullable CloudStoragePath target,
+        @Nullable String targetPrefix, boolean delete, boolean replaceExisting) {
+      this.sourceFileSystem = source.getFileSystem();
+      this.sourceBucket = source.bucket();
+      this.sourcePrefix = sourcePrefix;
+      this.targetFileSystem = target != null ? target.getFileSystem() : null;
+      this.targetPrefix = targetPrefix;
+      this.delete = delete;
+      this.replaceExisting = replaceExisting;
+      this.storage = sourceFileSystem.provider().storage();
+    }
+
+    void run() {
+      // Only names are needed to delete, copies keep the source metadata.
+      Storage.BlobListOption[] listOptions = targetPrefix == null
+          ? new Storage.BlobListOption[] {Storage.BlobListOption.prefix(sourcePrefix),
+              Storage.BlobListOption.fields()}
+          : new Storage.BlobListOption[] {Storage.BlobListOption.prefix(sourcePrefix)};
+      Iterator<Blob> blobs = storage.list(sourceBucket, listOptions).iterateAll();
+      int deleteChunkSize = batchSize * parallelism;
+      if (targetPrefix == null) {
+        while (blobs.hasNext()) {
+          pendingDeletes.add(path(sourceFileSystem, blobs.next().name()));
+          if (pendingDeletes.size() >= deleteChunkSize) {
+            deletePending(deleteChunkSize);
+          }
+        }
+      } else {
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+        // Bounds the number of copies queued while listing.
+        final Semaphore permits = new Semaphore(2 * parallelism);
+        try {
+          while (blobs.hasNext()) {
+            final Blob blob = blobs.next();
+            permits.acquireUninterruptibly();
+            executor.execute(new Runnable() {
+              @Override
+              public void run() {
+                try {
+                  copy(blob);
+                } finally {
+                  permits.release();
+                }
+              }
+            });
+            if (delete && pendingDeletes.size() >= deleteChunkSize) {
+              deletePending(deleteChunkSize);
+            }
+          }
+        } finally {
+          awaitTermination(executor);
+        }
+      }
+      deletePending(Integer.MAX_VALUE);
+    }
+
+    private void copy(Blob blob) {
+      Path sourcePath = path(sourceFileSystem, blob.name());
+      CloudStoragePath targetPath =
+          path(targetFileSystem, targetPrefix + blob.name().substring(sourcePrefix.length()));
+      BlobInfo.Builder targetInfo = BlobInfo.builder(targetPath.getBlobId())
+          .contentType(blob.contentType())
+          .contentEncoding(blob.contentEncoding())
+          .contentDisposition(blob.contentDisposition())
+          .contentLanguage(blob.contentLanguage())
+          .cacheControl(blob.cacheControl())
+          .metadata(blob.metadata());
+      Storage.CopyRequest.Builder request =
+          Storage.CopyRequest.builder().source(blob.blobId().bucket(), blob.name());
+      if (replaceExisting) {
+        request.target(targetInfo.build());
+      } else {
+        request.target(targetInfo.build(), Storage.BlobTargetOption.doesNotExist());
+      }
+      try {
+        storage.copy(request.build()).result();
+      } catch (StorageException ex) {
+        failed(sourcePath, CloudStorageFileSystemProvider.asIoException(ex));
+        return;
+      } finally {
+        CloudStorageUtil.invalidateBlobInfo(targetPath);
+      }
+      if (delete) {
+        pendingDeletes.add(sourcePath);
+      } else {
+        completed(sourcePath);
+      }
+    }
+
+    /**
+     * Deletes up to {@code max} of the pending objects with batch requests.
+     */
+    private void deletePending(int max) {
+      StorageBulkExecutor executor = StorageBulkExecutor.builder(storage)
+          .batchSize(batchSize)
+          .parallelism(parallelism)
+          .build();
+      List<Path> paths = new ArrayList<>();
+      List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+      Path path;
+      while (paths.size() < max && (path = pendingDeletes.poll()) != null) {
+        paths.add(path);
+        results.add(executor.delete(((CloudStoragePath) path).getBlobId()));
+      }
+      if (paths.isEmpty()) {
+        return;
+      }
+      executor.submit();
+      for (int i = 0; i < paths.size(); i++) {
+        CloudStorageUtil.invalidateBlobInfo((CloudStoragePath) paths.get(i));
+        try {
+          // A missing object was deleted concurrently, that's what was asked.
+          results.get(i).get();
+          completed(paths.get(i));
+        } catch (StorageException ex) {
+          failed(paths.get(i), CloudStorageFileSystemProvider.asIoException(ex));
+        }
+      }
+    }
+
+    private void completed(Path source) {
+      completed.incrementAndGet();
+      if (listener != null) {
+        listener.completed(source);
+      }
+    }
+
+    private void failed(Path source, IOException exception) {
+      failures.put(source, exception);
+      if (listener != null) {
+        listener.failed(source, exception);
+      }
+    }
+  }
+}
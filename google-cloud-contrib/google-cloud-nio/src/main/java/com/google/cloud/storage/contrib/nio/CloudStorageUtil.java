@@ -19,12 +19,17 @@ package com.google.cloud.storage.contrib.nio;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.file.Path;
 import java.nio.file.ProviderMismatchException;
 import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
 final class CloudStorageUtil {
 
   private static final Pattern BUCKET_PATTERN = Pattern.compile("[a-z0-9][-._a-z0-9]+[a-z0-9]");
@@ -66,6 +71,26 @@ final class CloudStorageUtil {
     }
   }
 
+  /**
+   * Returns the metadata of the object at {@code path}, or {@code null} if it does not exist.
+   * Uses the metadata cache of the path's file system, if enabled.
+   */
+  @Nullable
+  static BlobInfo getBlobInfo(Storage storage, CloudStoragePath path) {
+    CloudStorageMetadataCache cache = path.getFileSystem().metadataCache();
+    return cache != null ? cache.get(storage, path.getBlobId()) : storage.get(path.getBlobId());
+  }
+
+  /**
+   * Invalidates the cached metadata of the object at {@code path}, if any.
+   */
+  static void invalidateBlobInfo(CloudStoragePath path) {
+    CloudStorageMetadataCache cache = path.getFileSystem().metadataCache();
+    if (cache != null) {
+      cache.invalidate(path.getBlobId());
+    }
+  }
+
   /**
    * Makes {@code NullPointerTester} happy.
    */
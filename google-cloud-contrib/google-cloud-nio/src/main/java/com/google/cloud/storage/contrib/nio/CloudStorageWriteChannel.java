@@ -24,6 +24,7 @@ import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonReadableChannelException;
 import java.nio.channels.SeekableByteChannel;
 
+import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 
 /**
@@ -37,11 +38,21 @@ import javax.annotation.concurrent.ThreadSafe;
 final class CloudStorageWriteChannel implements SeekableByteChannel {
 
   private final WriteChannel channel;
+  private final CloudStoragePath path;
   private long position;
   private long size;
 
   CloudStorageWriteChannel(WriteChannel channel) {
+    this(channel, null);
+  }
+
+  /**
+   * Creates a channel writing to {@code path}. Closing the channel invalidates the cached
+   * metadata of {@code path}, if not {@code null}.
+   */
+  CloudStorageWriteChannel(WriteChannel channel, @Nullable CloudStoragePath path) {
     this.channel = channel;
+    this.path = path;
   }
 
   @Override
@@ -54,7 +65,13 @@ final class CloudStorageWriteChannel implements SeekableByteChannel {
   @Override
   public void close() throws IOException {
     synchronized (this) {
-      channel.close();
+      try {
+        channel.close();
+      } finally {
+        if (path != null) {
+          CloudStorageUtil.invalidateBlobInfo(path);
+        }
+      }
     }
   }
 
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.storage.BlobId;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+/**
+ * Unit tests for {@link CloudStorageBlockCache}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageBlockCacheTest {
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private final BlobId blob = BlobId.of("bucket", "blob", 1L);
+  private final BlobId newerBlob = BlobId.of("bucket", "blob", 2L);
+
+  @Test
+  public void testGetAndPut() {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(4, 16);
+    assertThat(cache.get(blob, 0)).isNull();
+    cache.put(blob, 0, new byte[] {1, 2, 3, 4});
+    assertThat(cache.get(blob, 0)).isEqualTo(new byte[] {1, 2, 3, 4});
+    assertThat(cache.get(blob, 1)).isNull();
+    assertThat(cache.get(newerBlob, 0)).isNull();
+    assertThat(cache.size()).isEqualTo(4L);
+  }
+
+  @Test
+  public void testPut_evictsLeastRecentlyUsed() {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(4, 8);
+    cache.put(blob, 0, new byte[4]);
+    cache.put(blob, 1, new byte[4]);
+    cache.get(blob, 0);
+    cache.put(blob, 2, new byte[2]);
+    assertThat(cache.get(blob, 0)).isNotNull();
+    assertThat(cache.get(blob, 1)).isNull();
+    assertThat(cache.get(blob, 2)).isNotNull();
+    assertThat(cache.size()).isEqualTo(6L);
+  }
+
+  @Test
+  public void testPut_replacesBlock() {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(4, 8);
+    cache.put(blob, 0, new byte[4]);
+    cache.put(blob, 0, new byte[2]);
+    assertThat(cache.size()).isEqualTo(2L);
+  }
+
+  @Test
+  public void testPut_blockLargerThanCache_isNotCached() {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(16, 8);
+    cache.put(blob, 0, new byte[16]);
+    assertThat(cache.get(blob, 0)).isNull();
+    assertThat(cache.size()).isEqualTo(0L);
+  }
+
+  @Test
+  public void testPut_withoutGeneration_throwsIae() {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(4, 8);
+    thrown.expect(IllegalArgumentException.class);
+    cache.put(BlobId.of("bucket", "blob"), 0, new byte[4]);
+  }
+}
@@ -43,12 +43,18 @@ public class CloudStorageConfigurationTest {
             .stripPrefixSlash(false)
             .usePseudoDirectories(false)
             .blockSize(666)
+            .blockCacheSize(1024)
+            .metadataCacheSize(100)
+            .metadataCacheTtlMillis(500)
             .build();
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.blockCacheSize()).isEqualTo(1024L);
+    assertThat(config.metadataCacheSize()).isEqualTo(100L);
+    assertThat(config.metadataCacheTtlMillis()).isEqualTo(500L);
   }
 
   @Test
@@ -61,12 +67,30 @@ public class CloudStorageConfigurationTest {
                 .put("stripPrefixSlash", false)
                 .put("usePseudoDirectories", false)
                 .put("blockSize", 666)
+                .put("blockCacheSize", 1024)
+                .put("metadataCacheSize", 100)
+                .put("metadataCacheTtlMillis", 500L)
                 .build());
     assertThat(config.workingDirectory()).isEqualTo("/omg");
     assertThat(config.permitEmptyPathComponents()).isTrue();
     assertThat(config.stripPrefixSlash()).isFalse();
     assertThat(config.usePseudoDirectories()).isFalse();
     assertThat(config.blockSize()).isEqualTo(666);
+    assertThat(config.blockCacheSize()).isEqualTo(1024L);
+    assertThat(config.metadataCacheSize()).isEqualTo(100L);
+    assertThat(config.metadataCacheTtlMillis()).isEqualTo(500L);
+  }
+
+  @Test
+  public void testBuilder_negativeBlockCacheSize_throwsIae() {
+    thrown.expect(IllegalArgumentException.class);
+    CloudStorageConfiguration.builder().blockCacheSize(-1);
+  }
+
+  @Test
+  public void testBuilder_nonPositiveMetadataCacheTtl_throwsIae() {
+    thrown.expect(IllegalArgumentException.class);
+    CloudStorageConfiguration.builder().metadataCacheTtlMillis(0);
   }
 
   @Test
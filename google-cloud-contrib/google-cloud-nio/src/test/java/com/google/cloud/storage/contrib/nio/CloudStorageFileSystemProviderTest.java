@@ -46,6 +46,7 @@ import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.SeekableByteChannel;
 import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.FileSystem;
 import java.nio.file.FileSystems;
@@ -54,6 +55,7 @@ import java.nio.file.NoSuchFileException;
 import java.nio.file.OpenOption;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -644,6 +646,98 @@ public class CloudStorageFileSystemProviderTest {
     assertThat(path1.getFileSystem().provider()).isNotEqualTo(path3.getFileSystem().provider());
   }
 
+  @Test
+  public void testMetadataCache_deleteThroughFileSystem_invalidates() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket", metadataCache());
+        CloudStorageFileSystem uncachedFs = forBucket("bucket")) {
+      Path path = fs.getPath("wat");
+      Files.write(path, SINGULARITY.getBytes(UTF_8));
+      assertThat(Files.exists(path)).isTrue();
+      Files.delete(uncachedFs.getPath("wat"));
+      assertThat(Files.exists(path)).isTrue();
+      assertThat(Files.size(path)).isEqualTo(SINGULARITY.getBytes(UTF_8).length);
+      assertThat(Files.deleteIfExists(path)).isFalse();
+      assertThat(Files.exists(path)).isFalse();
+    }
+  }
+
+  @Test
+  public void testMetadataCache_writeThroughFileSystem_invalidates() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket", metadataCache());
+        CloudStorageFileSystem uncachedFs = forBucket("bucket")) {
+      Path path = fs.getPath("wat");
+      assertThat(Files.exists(path)).isFalse();
+      Files.write(uncachedFs.getPath("wat"), SINGULARITY.getBytes(UTF_8));
+      assertThat(Files.exists(path)).isFalse();
+      Files.write(path, FILE_CONTENTS, UTF_8);
+      assertThat(Files.exists(path)).isTrue();
+      assertThat(Files.readAllLines(path, UTF_8)).isEqualTo(FILE_CONTENTS);
+    }
+  }
+
+  @Test
+  public void testMetadataCache_copyThroughFileSystem_invalidates() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket", metadataCache())) {
+      Path source = fs.getPath("source");
+      Path target = fs.getPath("target");
+      Files.write(source, SINGULARITY.getBytes(UTF_8));
+      assertThat(Files.exists(target)).isFalse();
+      Files.copy(source, target);
+      assertThat(Files.exists(target)).isTrue();
+      Files.move(target, fs.getPath("moved"));
+      assertThat(Files.exists(target)).isFalse();
+      assertThat(Files.exists(fs.getPath("moved"))).isTrue();
+    }
+  }
+
+  @Test
+  public void testMetadataCache_directoryStream_cachesEntryAttributes() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket", metadataCache());
+        CloudStorageFileSystem uncachedFs = forBucket("bucket")) {
+      Files.write(fs.getPath("dir/angel"), SINGULARITY.getBytes(UTF_8));
+      Files.write(fs.getPath("dir/beast"), new byte[] {1, 2, 3},
+          CloudStorageOptions.withMimeType("application/octet-stream"));
+      Files.write(fs.getPath("dir/sub/fallen"), SINGULARITY.getBytes(UTF_8));
+      List<Path> entries = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir/"))) {
+        for (Path entry : stream) {
+          entries.add(entry);
+        }
+      }
+      assertThat(entries).containsExactly(
+          fs.getPath("dir/angel"), fs.getPath("dir/beast"), fs.getPath("dir/sub/"));
+      Files.delete(uncachedFs.getPath("dir/angel"));
+      Files.delete(uncachedFs.getPath("dir/beast"));
+      assertThat(Files.size(fs.getPath("dir/angel")))
+          .isEqualTo(SINGULARITY.getBytes(UTF_8).length);
+      CloudStorageFileAttributes attributes =
+          Files.readAttributes(fs.getPath("dir/beast"), CloudStorageFileAttributes.class);
+      assertThat(attributes.size()).isEqualTo(3);
+      assertThat(attributes.mimeType().get()).isEqualTo("application/octet-stream");
+      assertThat(Files.isDirectory(fs.getPath("dir/sub/"))).isTrue();
+    }
+  }
+
+  @Test
+  public void testMetadataCache_directoryStream_writeAfterListing() throws IOException {
+    try (CloudStorageFileSystem fs = forBucket("bucket", metadataCache())) {
+      Files.write(fs.getPath("dir/angel"), SINGULARITY.getBytes(UTF_8));
+      Files.write(fs.getPath("dir/beast"), new byte[] {1, 2, 3});
+      List<Path> entries = new ArrayList<>();
+      try (DirectoryStream<Path> stream = Files.newDirectoryStream(fs.getPath("dir/"))) {
+        // the directory is listed before the files are changed but iterated after
+        Files.write(fs.getPath("dir/angel"), new byte[] {1});
+        Files.delete(fs.getPath("dir/beast"));
+        for (Path entry : stream) {
+          entries.add(entry);
+        }
+      }
+      assertThat(entries).containsExactly(fs.getPath("dir/angel"), fs.getPath("dir/beast"));
+      assertThat(Files.size(fs.getPath("dir/angel"))).isEqualTo(1);
+      assertThat(Files.exists(fs.getPath("dir/beast"))).isFalse();
+    }
+  }
+
   private static CloudStorageConfiguration permitEmptyPathComponents(boolean value) {
     return CloudStorageConfiguration.builder().permitEmptyPathComponents(value).build();
   }
@@ -651,4 +745,8 @@ public class CloudStorageFileSystemProviderTest {
   private static CloudStorageConfiguration usePseudoDirectories(boolean value) {
     return CloudStorageConfiguration.builder().usePseudoDirectories(value).build();
   }
-}
\ No newline at end of file
+
+  private static CloudStorageConfiguration metadataCache() {
+    return CloudStorageConfiguration.builder().metadataCacheSize(100).build();
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.cloud.storage.Blob;
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.Storage;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+/**
+ * Unit tests for {@link CloudStorageMetadataCache}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageMetadataCacheTest {
+
+  private static final BlobId BLOB_ID = BlobId.of("bucket", "blob");
+
+  private final Storage storage = mock(Storage.class);
+  private final Blob oldBlob = mock(Blob.class);
+  private final Blob newBlob = mock(Blob.class);
+  private final CloudStorageMetadataCache cache = new CloudStorageMetadataCache(10, 60_000);
+
+  @Test
+  public void testGetCachesMetadata() {
+    when(storage.get(BLOB_ID)).thenReturn(oldBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(oldBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(oldBlob);
+    verify(storage, times(1)).get(BLOB_ID);
+  }
+
+  @Test
+  public void testGetCachesMissingObject() {
+    when(storage.get(BLOB_ID)).thenReturn(null);
+    assertThat(cache.get(storage, BLOB_ID)).isNull();
+    assertThat(cache.get(storage, BLOB_ID)).isNull();
+    verify(storage, times(1)).get(BLOB_ID);
+  }
+
+  @Test
+  public void testInvalidateDuringFetch() {
+    // The object is overwritten, and its entry invalidated, while its old metadata is fetched
+    when(storage.get(BLOB_ID)).thenAnswer(new Answer<Blob>() {
+      @Override
+      public Blob answer(InvocationOnMock invocation) {
+        cache.invalidate(BLOB_ID);
+        return oldBlob;
+      }
+    });
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(oldBlob);
+    assertThat(cache.size()).isEqualTo(0);
+    when(storage.get(BLOB_ID)).thenReturn(newBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(newBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(newBlob);
+    verify(storage, times(2)).get(BLOB_ID);
+  }
+
+  @Test
+  public void testInvalidateDuringNegativeFetch() {
+    // The object is created while its absence is being fetched
+    when(storage.get(BLOB_ID)).thenAnswer(new Answer<Blob>() {
+      @Override
+      public Blob answer(InvocationOnMock invocation) {
+        cache.invalidate(BLOB_ID);
+        return null;
+      }
+    });
+    assertThat(cache.get(storage, BLOB_ID)).isNull();
+    when(storage.get(BLOB_ID)).thenReturn(newBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(newBlob);
+  }
+
+  @Test
+  public void testPutCachesMetadata() {
+    cache.put(BLOB_ID, oldBlob, cache.epoch());
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(oldBlob);
+    verify(storage, times(0)).get(BLOB_ID);
+  }
+
+  @Test
+  public void testInvalidateAfterListing() {
+    // The object is overwritten, and its entry invalidated, after its old metadata was listed
+    long listEpoch = cache.epoch();
+    cache.invalidate(BLOB_ID);
+    cache.put(BLOB_ID, oldBlob, listEpoch);
+    assertThat(cache.size()).isEqualTo(0);
+    when(storage.get(BLOB_ID)).thenReturn(newBlob);
+    assertThat(cache.get(storage, BLOB_ID)).isSameAs(newBlob);
+  }
+}
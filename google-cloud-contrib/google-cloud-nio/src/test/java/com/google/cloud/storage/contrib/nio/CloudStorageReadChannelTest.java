@@ -26,6 +26,7 @@ import static org.mockito.Mockito.verifyZeroInteractions;
 import static org.mockito.Mockito.when;
 
 import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
 import com.google.cloud.storage.Blob;
 import com.google.cloud.storage.BlobId;
 import com.google.cloud.storage.Storage;
@@ -41,6 +42,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.NonWritableChannelException;
+import java.util.Arrays;
 
 /**
  * Unit tests for {@link CloudStorageReadChannel}.
@@ -153,4 +155,114 @@ public class CloudStorageReadChannelTest {
     verify(gcsChannel).seek(1);
     verify(gcsChannel, times(5)).isOpen();
   }
+
+  @Test
+  public void testCachedRead_fetchesEachBlockOnce() throws IOException {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(16, 1024);
+    FakeReadChannel fakeChannel = cachedChannel(cache);
+    CloudStorageReadChannel cachedChan = CloudStorageReadChannel.create(gcsStorage, file, 0, cache);
+    ByteBuffer buffer = ByteBuffer.allocate(10);
+    cachedChan.position(36);
+    assertThat(cachedChan.read(buffer)).isEqualTo(6);
+    assertThat(Arrays.copyOf(buffer.array(), 6)).isEqualTo(range(36, 42));
+    buffer.clear();
+    assertThat(cachedChan.read(buffer)).isEqualTo(-1);
+    cachedChan.position(10);
+    assertThat(cachedChan.read(buffer)).isEqualTo(10);
+    assertThat(buffer.array()).isEqualTo(range(10, 20));
+    assertThat(cachedChan.position()).isEqualTo(20L);
+    buffer.clear();
+    cachedChan.position(32);
+    assertThat(cachedChan.read(buffer)).isEqualTo(10);
+    assertThat(buffer.array()).isEqualTo(range(32, 42));
+    assertThat(fakeChannel.fetches).isEqualTo(3);
+    assertThat(cache.size()).isEqualTo(42L);
+  }
+
+  @Test
+  public void testCachedRead_sharesBlocksAcrossChannels() throws IOException {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(16, 1024);
+    FakeReadChannel fakeChannel = cachedChannel(cache);
+    ByteBuffer buffer = ByteBuffer.allocate(42);
+    assertThat(CloudStorageReadChannel.create(gcsStorage, file, 0, cache).read(buffer))
+        .isEqualTo(42);
+    assertThat(buffer.array()).isEqualTo(range(0, 42));
+    buffer.clear();
+    assertThat(CloudStorageReadChannel.create(gcsStorage, file, 0, cache).read(buffer))
+        .isEqualTo(42);
+    assertThat(buffer.array()).isEqualTo(range(0, 42));
+    assertThat(fakeChannel.fetches).isEqualTo(3);
+  }
+
+  @Test
+  public void testCachedRead_withoutGeneration_bypassesCache() throws IOException {
+    CloudStorageBlockCache cache = new CloudStorageBlockCache(16, 1024);
+    when(metadata.generation()).thenReturn(null);
+    CloudStorageReadChannel uncachedChan =
+        CloudStorageReadChannel.create(gcsStorage, file, 0, cache);
+    ByteBuffer buffer = ByteBuffer.allocate(1);
+    when(gcsChannel.read(eq(buffer))).thenReturn(1);
+    assertThat(uncachedChan.read(buffer)).isEqualTo(1);
+    assertThat(cache.size()).isEqualTo(0L);
+  }
+
+  private FakeReadChannel cachedChannel(CloudStorageBlockCache cache) {
+    when(metadata.generation()).thenReturn(7L);
+    FakeReadChannel fakeChannel = new FakeReadChannel(range(0, 42));
+    when(gcsStorage.reader(eq(BlobId.of(file.bucket(), file.name(), 7L))))
+        .thenReturn(fakeChannel);
+    return fakeChannel;
+  }
+
+  private static byte[] range(int from, int to) {
+    byte[] bytes = new byte[to - from];
+    for (int i = 0; i < bytes.length; i++) {
+      bytes[i] = (byte) (from + i);
+    }
+    return bytes;
+  }
+
+  private static final class FakeReadChannel implements ReadChannel {
+
+    private final byte[] content;
+    private int position;
+    private int fetches;
+
+    FakeReadChannel(byte[] content) {
+      this.content = content;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return true;
+    }
+
+    @Override
+    public void close() {}
+
+    @Override
+    public void seek(long position) {
+      this.position = (int) position;
+    }
+
+    @Override
+    public void chunkSize(int chunkSize) {}
+
+    @Override
+    public int read(ByteBuffer dst) {
+      if (position >= content.length) {
+        return -1;
+      }
+      fetches++;
+      int length = Math.min(dst.remaining(), content.length - position);
+      dst.put(content, position, length);
+      position += length;
+      return length;
+    }
+
+    @Override
+    public RestorableState<ReadChannel> capture() {
+      throw new UnsupportedOperationException();
+    }
+  }
 }
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.collect.ImmutableList;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.io.IOException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Unit tests for {@link CloudStorageTreeOperations}.
+ */
+@RunWith(JUnit4.class)
+public class CloudStorageTreeOperationsTest {
+
+  private static final List<String> NAMES =
+      ImmutableList.of("a", "b", "sub/c", "sub/deeper/d", "sub/deeper/e");
+
+  @Rule public final ExpectedException thrown = ExpectedException.none();
+
+  private final Map<Path, Boolean> outcomes = new ConcurrentHashMap<>();
+  private CloudStorageFileSystem fs;
+  private CloudStorageTreeOperations operations;
+
+  @Before
+  public void before() throws IOException {
+    CloudStorageFileSystemProvider.setStorageOptions(LocalStorageHelper.options());
+    fs = CloudStorageFileSystem.forBucket("bucket");
+    for (String name : NAMES) {
+      Files.write(fs.getPath("dir/" + name), name.getBytes(UTF_8));
+    }
+    Files.write(fs.getPath("dirt"), "not in dir".getBytes(UTF_8));
+    operations = CloudStorageTreeOperations.builder()
+        .parallelism(3)
+        .batchSize(2)
+        .listener(new CloudStorageTreeOperations.Listener() {
+          @Override
+          public void completed(Path source) {
+            outcomes.put(source, true);
+          }
+
+          @Override
+          public void failed(Path source, IOException exception) {
+            outcomes.put(source, false);
+          }
+        })
+        .build();
+  }
+
+  @After
+  public void after() throws IOException {
+    fs.close();
+  }
+
+  @Test
+  public void testBuilder() {
+    assertThat(operations.parallelism()).isEqualTo(3);
+    assertThat(operations.batchSize()).isEqualTo(2);
+    CloudStorageTreeOperations defaults = CloudStorageTreeOperations.builder().build();
+    assertThat(defaults.parallelism()).isEqualTo(16);
+    assertThat(defaults.batchSize()).isEqualTo(100);
+  }
+
+  @Test
+  public void testBuilder_invalidParallelism_throwsIae() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Parallelism must be > 0");
+    CloudStorageTreeOperations.builder().parallelism(0);
+  }
+
+  @Test
+  public void testCopy() throws IOException {
+    CloudStorageTreeOperations.Result result =
+        operations.copy(fs.getPath("dir/"), fs.getPath("copy"));
+    assertThat(result.completed()).isEqualTo(NAMES.size());
+    assertThat(result.failures()).isEmpty();
+    for (String name : NAMES) {
+      assertThat(new String(Files.readAllBytes(fs.getPath("copy/" + name)), UTF_8))
+          .isEqualTo(name);
+      assertThat(Files.exists(fs.getPath("dir/" + name))).isTrue();
+      assertThat(outcomes).containsEntry(fs.getPath("/dir/" + name), true);
+    }
+    assertThat(Files.exists(fs.getPath("copy/dirt"))).isFalse();
+  }
+
+  @Test
+  public void testCopy_existingTarget_reportsFailure() throws IOException {
+    Files.write(fs.getPath("copy/b"), "existing".getBytes(UTF_8));
+    CloudStorageTreeOperations.Result result =
+        operations.copy(fs.getPath("dir"), fs.getPath("copy/"));
+    assertThat(result.completed()).isEqualTo(NAMES.size() - 1);
+    assertThat(result.failures().keySet()).containsExactly(fs.getPath("/dir/b"));
+    assertThat(result.failures().get(fs.getPath("/dir/b")))
+        .isInstanceOf(FileAlreadyExistsException.class);
+    assertThat(outcomes).containsEntry(fs.getPath("/dir/b"), false);
+    assertThat(new String(Files.readAllBytes(fs.getPath("copy/b")), UTF_8)).isEqualTo("existing");
+  }
+
+  @Test
+  public void testCopy_replaceExisting() throws IOException {
+    Files.write(fs.getPath("copy/b"), "existing".getBytes(UTF_8));
+    CloudStorageTreeOperations.Result result = operations.copy(
+        fs.getPath("dir"), fs.getPath("copy/"), StandardCopyOption.REPLACE_EXISTING);
+    assertThat(result.completed()).isEqualTo(NAMES.size());
+    assertThat(new String(Files.readAllBytes(fs.getPath("copy/b")), UTF_8)).isEqualTo("b");
+  }
+
+  @Test
+  public void testCopy_targetInsideSource_throwsIae() throws IOException {
+    thrown.expect(IllegalArgumentException.class);
+    operations.copy(fs.getPath("dir/"), fs.getPath("dir/sub/"));
+  }
+
+  @Test
+  public void testMove() throws IOException {
+    CloudStorageTreeOperations.Result result =
+        operations.move(fs.getPath("dir/"), fs.getPath("moved/"));
+    assertThat(result.completed()).isEqualTo(NAMES.size());
+    assertThat(result.failures()).isEmpty();
+    for (String name : NAMES) {
+      assertThat(new String(Files.readAllBytes(fs.getPath("moved/" + name)), UTF_8))
+          .isEqualTo(name);
+      assertThat(Files.exists(fs.getPath("dir/" + name))).isFalse();
+    }
+    assertThat(outcomes).hasSize(NAMES.size());
+  }
+
+  @Test
+  public void testMove_failedCopy_keepsSource() throws IOException {
+    Files.write(fs.getPath("moved/sub/c"), "existing".getBytes(UTF_8));
+    CloudStorageTreeOperations.Result result =
+        operations.move(fs.getPath("dir/"), fs.getPath("moved/"));
+    assertThat(result.completed()).isEqualTo(NAMES.size() - 1);
+    assertThat(result.failures().keySet()).containsExactly(fs.getPath("/dir/sub/c"));
+    assertThat(Files.exists(fs.getPath("dir/sub/c"))).isTrue();
+    assertThat(Files.exists(fs.getPath("dir/a"))).isFalse();
+  }
+
+  @Test
+  public void testDelete() throws IOException {
+    CloudStorageTreeOperations.Result result = operations.delete(fs.getPath("dir/"));
+    assertThat(result.completed()).isEqualTo(NAMES.size());
+    for (String name : NAMES) {
+      assertThat(Files.exists(fs.getPath("dir/" + name))).isFalse();
+    }
+    assertThat(Files.exists(fs.getPath("dirt"))).isTrue();
+    assertThat(outcomes).hasSize(NAMES.size());
+  }
+}
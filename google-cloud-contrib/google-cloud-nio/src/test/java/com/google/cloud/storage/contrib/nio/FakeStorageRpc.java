@@ -16,6 +16,7 @@
 
 package com.google.cloud.storage.contrib.nio;
 
+import com.google.api.client.googleapis.json.GoogleJsonError;
 import com.google.api.services.storage.model.Bucket;
 import com.google.api.services.storage.model.BucketAccessControl;
 import com.google.api.services.storage.model.ObjectAccessControl;
@@ -27,6 +28,7 @@ import com.google.cloud.storage.spi.StorageRpc;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.math.BigInteger;
 import java.nio.file.FileAlreadyExistsException;
 import java.util.ArrayList;
@@ -34,13 +36,14 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-import javax.annotation.concurrent.NotThreadSafe;
 
 /**
  * A bare-bones in-memory implementation of Storage, meant for testing.
  *
- * <p>This class is <i>not</i> thread-safe. It's also (currently) limited in the following ways:
+ * <p>Different objects can be accessed concurrently, but operations on the same object are not
+ * atomic. This class is also (currently) limited in the following ways:
  * <ul>
  * <li>Supported
  *   <ul>
@@ -48,6 +51,7 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   <li>object get
  *   <li>object delete
  *   <li>list the contents of a bucket
+ *   <li>batched object delete and get
  *   </ul>
  * <li>Unsupported
  *   <ul>
@@ -59,20 +63,18 @@ import javax.annotation.concurrent.NotThreadSafe;
  *   <li>file attributes
  *   <li>patch
  *   <li>continueRewrite
- *   <li>createBatch
  *   <li>checksums, etags
  *   </ul>
  * </ul>
  */
-@NotThreadSafe
 class FakeStorageRpc implements StorageRpc {
 
   // fullname -> metadata
-  Map<String, StorageObject> metadata = new HashMap<>();
+  Map<String, StorageObject> metadata = new ConcurrentHashMap<>();
   // fullname -> contents
-  Map<String, byte[]> contents = new HashMap<>();
+  Map<String, byte[]> contents = new ConcurrentHashMap<>();
   // fullname -> future contents that will be visible on close.
-  Map<String, byte[]> futureContents = new HashMap<>();
+  Map<String, byte[]> futureContents = new ConcurrentHashMap<>();
 
   private final boolean throwIfOption;
 
@@ -85,8 +87,8 @@ class FakeStorageRpc implements StorageRpc {
 
   // remove all files
   void reset() {
-    metadata = new HashMap<>();
-    contents = new HashMap<>();
+    metadata = new ConcurrentHashMap<>();
+    contents = new ConcurrentHashMap<>();
   }
 
   @Override
@@ -148,6 +150,9 @@ class FakeStorageRpc implements StorageRpc {
       if (processedAsFolder(so, delimiter, prefix, folders)) {
         continue;
       }
+      if (contents.containsKey(fullname(so))) {
+        so.setSize(BigInteger.valueOf(contents.get(fullname(so)).length));
+      }
       values.add(so);
     }
     values.addAll(folders.values());
@@ -216,8 +221,67 @@ class FakeStorageRpc implements StorageRpc {
 
   @Override
   public RpcBatch createBatch() {
-    //return new DefaultRpcBatch(storage);
-    throw new UnsupportedOperationException();
+    return new FakeRpcBatch();
+  }
+
+  /**
+   * A batch that runs its requests one at a time when submitted.
+   */
+  private class FakeRpcBatch implements RpcBatch {
+
+    private final List<Runnable> requests = new ArrayList<>();
+
+    @Override
+    public void addDelete(final StorageObject storageObject, final Callback<Void> callback,
+        final Map<Option, ?> options) {
+      requests.add(new Runnable() {
+        @Override
+        public void run() {
+          if (delete(storageObject, options)) {
+            callback.onSuccess(null);
+          } else {
+            callback.onFailure(notFound(storageObject));
+          }
+        }
+      });
+    }
+
+    @Override
+    public void addPatch(StorageObject storageObject, Callback<StorageObject> callback,
+        Map<Option, ?> options) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void addGet(final StorageObject storageObject, final Callback<StorageObject> callback,
+        final Map<Option, ?> options) {
+      requests.add(new Runnable() {
+        @Override
+        public void run() {
+          StorageObject result = get(storageObject, options);
+          if (result != null) {
+            callback.onSuccess(result);
+          } else {
+            callback.onFailure(notFound(storageObject));
+          }
+        }
+      });
+    }
+
+    @Override
+    public void submit() {
+      for (Runnable request : requests) {
+        request.run();
+      }
+      requests.clear();
+    }
+
+    private GoogleJsonError notFound(StorageObject storageObject) {
+      GoogleJsonError error = new GoogleJsonError();
+      error.setCode(404);
+      error.setMessage("File not found: " + fullname(storageObject));
+      return error;
+    }
   }
 
   @Override
@@ -262,6 +326,18 @@ class FakeStorageRpc implements StorageRpc {
     return Tuple.of("etag-goes-here", ret);
   }
 
+  @Override
+  public Tuple<String, Long> read(StorageObject from, Map<Option, ?> options, long position,
+      int bytes, OutputStream outputStream) throws StorageException {
+    Tuple<String, byte[]> result = read(from, options, position, bytes);
+    try {
+      outputStream.write(result.y());
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+    return Tuple.of(result.x(), (long) result.y().length);
+  }
+
   @Override
   public String open(StorageObject object, Map<Option, ?> options) throws StorageException {
     String key = fullname(object);
@@ -303,6 +379,14 @@ class FakeStorageRpc implements StorageRpc {
     }
   }
 
+  @Override
+  public StorageObject writeWithResponse(String uploadId, byte[] toWrite, int toWriteOffset,
+      long destOffset, int length, boolean last, String crc32c, String md5)
+      throws StorageException {
+    write(uploadId, toWrite, toWriteOffset, destOffset, length, last);
+    return last ? metadata.get(uploadId) : null;
+  }
+
   @Override
   public RewriteResponse openRewrite(RewriteRequest rewriteRequest) throws StorageException {
     String sourceKey = fullname(rewriteRequest.source);
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.spi.ServiceRpcFactory;
+import com.google.cloud.storage.StorageException;
+import com.google.cloud.storage.StorageOptions;
+import com.google.cloud.storage.spi.StorageRpc;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Map;
+
+/**
+ * A {@link FakeStorageRpc} that does not copy blob contents, so that benchmarks measure the cost
+ * of the channels rather than the cost of the fake. Reads are served directly from the stored
+ * contents and uploaded chunks are discarded, only the size of the upload is kept.
+ */
+class BenchmarkStorageRpc extends FakeStorageRpc {
+
+  BenchmarkStorageRpc() {
+    super(false);
+  }
+
+  /**
+   * Returns {@link StorageOptions} whose service uses a new {@code BenchmarkStorageRpc}.
+   */
+  static StorageOptions options() {
+    final BenchmarkStorageRpc rpc = new BenchmarkStorageRpc();
+    return StorageOptions.builder()
+        .projectId("dummy-project-for-benchmarks")
+        .serviceRpcFactory(new ServiceRpcFactory<StorageRpc, StorageOptions>() {
+          @Override
+          public StorageRpc create(StorageOptions options) {
+            return rpc;
+          }
+        })
+        .build();
+  }
+
+  @Override
+  public Tuple<String, Long> read(StorageObject from, Map<Option, ?> options, long position,
+      int bytes, OutputStream outputStream) {
+    String key = from.getBucket() + "/" + from.getName();
+    byte[] content = contents.get(key);
+    if (content == null) {
+      throw new StorageException(404, "File not found: " + key);
+    }
+    int length = (int) Math.max(0, Math.min(bytes, content.length - position));
+    try {
+      outputStream.write(content, (int) position, length);
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+    return Tuple.of("etag-goes-here", (long) length);
+  }
+
+  @Override
+  public void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset,
+      int length, boolean last) {
+    if (last) {
+      metadata.get(uploadId).setSize(BigInteger.valueOf(destOffset + length));
+    }
+  }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.WriteChannel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast the channels returned by {@code Storage.reader} and {@code Storage.writer}
+ * transfer a whole blob. Each operation reads or writes {@code blobSize} bytes, run with
+ * {@code -prof gc} to also report the allocation rate per operation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class BlobChannelBenchmark {
+
+  @Benchmark
+  public long read(ChannelBenchmarkState state) throws IOException {
+    long total = 0;
+    ByteBuffer buffer = state.buffer;
+    buffer.clear();
+    try (ReadChannel reader = state.storage.reader(state.blobId)) {
+      reader.chunkSize(state.chunkSize);
+      int read;
+      while ((read = reader.read(buffer)) > 0) {
+        total += read;
+        buffer.clear();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void write(ChannelBenchmarkState state) throws IOException {
+    ByteBuffer buffer = state.buffer;
+    try (WriteChannel writer = state.storage.writer(state.uploadInfo)) {
+      writer.chunkSize(state.chunkSize);
+      for (int written = 0; written < state.blobSize; written += state.bufferSize) {
+        buffer.clear();
+        buffer.limit(Math.min(state.bufferSize, state.blobSize - written));
+        writer.write(buffer);
+      }
+    }
+  }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.cloud.storage.BlobId;
+import com.google.cloud.storage.BlobInfo;
+import com.google.cloud.storage.Storage;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Benchmark state shared by the channel benchmarks: an in-memory storage holding a blob of
+ * {@code blobSize} random bytes and a caller buffer of {@code bufferSize} bytes. Channels use
+ * {@code chunkSize} bytes per request.
+ */
+@State(Scope.Benchmark)
+public class ChannelBenchmarkState {
+
+  static final String BUCKET = "bucket";
+
+  @Param({"262144", "2097152", "8388608"})
+  public int chunkSize;
+
+  @Param({"8192", "65536", "1048576"})
+  public int bufferSize;
+
+  @Param({"16777216"})
+  public int blobSize;
+
+  Storage storage;
+  BlobId blobId;
+  BlobInfo uploadInfo;
+  ByteBuffer buffer;
+
+  @Setup
+  public void setUp() {
+    storage = BenchmarkStorageRpc.options().service();
+    byte[] content = new byte[blobSize];
+    new Random(0).nextBytes(content);
+    blobId = storage.create(BlobInfo.builder(BUCKET, "blob").build(), content).blobId();
+    uploadInfo = BlobInfo.builder(BUCKET, "upload").build();
+    buffer = ByteBuffer.allocate(bufferSize);
+    new Random(1).nextBytes(buffer.array());
+  }
+}
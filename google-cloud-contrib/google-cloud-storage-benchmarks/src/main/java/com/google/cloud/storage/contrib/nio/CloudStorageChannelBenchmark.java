@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage.contrib.nio;
+
+import com.google.cloud.WriteChannel;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast {@link CloudStorageReadChannel} and {@link CloudStorageWriteChannel} transfer
+ * a whole blob, on top of the storage channels measured by {@link BlobChannelBenchmark}. Each
+ * operation reads or writes {@code blobSize} bytes, run with {@code -prof gc} to also report the
+ * allocation rate per operation. The read channel uses the storage reader's default chunk size,
+ * so {@code chunkSize} only affects writes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class CloudStorageChannelBenchmark {
+
+  @Benchmark
+  public long read(ChannelBenchmarkState state) throws IOException {
+    long total = 0;
+    ByteBuffer buffer = state.buffer;
+    buffer.clear();
+    try (SeekableByteChannel channel =
+        CloudStorageReadChannel.create(state.storage, state.blobId, 0)) {
+      int read;
+      while ((read = channel.read(buffer)) > 0) {
+        total += read;
+        buffer.clear();
+      }
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void write(ChannelBenchmarkState state) throws IOException {
+    ByteBuffer buffer = state.buffer;
+    WriteChannel writer = state.storage.writer(state.uploadInfo);
+    writer.chunkSize(state.chunkSize);
+    try (SeekableByteChannel channel = new CloudStorageWriteChannel(writer)) {
+      for (int written = 0; written < state.blobSize; written += state.bufferSize) {
+        buffer.clear();
+        buffer.limit(Math.min(state.bufferSize, state.blobSize - written));
+        channel.write(buffer);
+      }
+    }
+  }
+}
@@ -18,17 +18,33 @@ package com.google.cloud;
 
 import com.google.cloud.BaseWriteChannel.BaseState;
 import com.google.common.base.MoreObjects;
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Base implementation for a {@link WriteChannel}.
  *
+ * <p>By default each chunk is uploaded by the thread calling {@link #write(ByteBuffer)}. Channels
+ * that return {@code true} from {@link #supportsPipelining()} and a positive value from
+ * {@link #maxPendingChunks()} upload chunks in order from a background thread, so that the caller
+ * can fill the next chunk while the previous one is being sent. A failed chunk upload is reported
+ * by the next call to {@link #write(ByteBuffer)}, {@link #close()} or {@link #capture()}.
+ *
  * @param <ServiceOptionsT> the service options used by the channel to issue RPC requests
  * @param <EntityT> the entity this channel writes data to. Possibly with additional configuration
  */
@@ -38,6 +54,10 @@ public abstract class BaseWriteChannel<
 
   private static final int MIN_CHUNK_SIZE = 256 * 1024;
   private static final int DEFAULT_CHUNK_SIZE = 8 * MIN_CHUNK_SIZE;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("write-channel-uploader-%d")
+      .build();
 
   private final ServiceOptionsT options;
   private final EntityT entity;
@@ -47,6 +67,10 @@ public abstract class BaseWriteChannel<
   private int limit;
   private boolean isOpen = true;
   private int chunkSize = defaultChunkSize();
+  private final Deque<Future<?>> pendingChunks = new ArrayDeque<>();
+  private ExecutorService uploader;
+  private volatile boolean uploadFailed;
+  private Throwable uploadFailure;
 
   protected int minChunkSize() {
     return MIN_CHUNK_SIZE;
@@ -56,6 +80,33 @@ public abstract class BaseWriteChannel<
     return DEFAULT_CHUNK_SIZE;
   }
 
+  /**
+   * Returns the pool used to allocate and recycle chunk buffers. By default buffers are shared
+   * with all write channels through {@link BufferPool#defaultInstance()}.
+   */
+  protected BufferPool bufferPool() {
+    return BufferPool.defaultInstance();
+  }
+
+  /**
+   * Returns the maximum number of chunks that can be queued for upload by a background thread. If
+   * this method returns 0, the default, chunks are uploaded synchronously by
+   * {@link #flushBuffer(int, boolean)}. This value is ignored, and uploads stay synchronous, if
+   * {@link #supportsPipelining()} returns {@code false}.
+   */
+  protected int maxPendingChunks() {
+    return 0;
+  }
+
+  /**
+   * Returns whether this channel can upload queued chunks from a background thread. Channels that
+   * return {@code true} must override {@link #flushChunk(byte[], int, int, boolean)}. The default
+   * implementation returns {@code false}.
+   */
+  protected boolean supportsPipelining() {
+    return false;
+  }
+
   /**
    * Writes {@code length} bytes of {@link #buffer()} to the {@link #uploadId()} URL.
    *
@@ -64,6 +115,23 @@ public abstract class BaseWriteChannel<
    */
   protected abstract void flushBuffer(int length, boolean last);
 
+  /**
+   * Writes the first {@code length} bytes of {@code chunk} to the {@link #uploadId()} URL, at
+   * offset {@code position}. This method is used to upload queued chunks when
+   * {@link #supportsPipelining()} returns {@code true} and {@link #maxPendingChunks()} is positive.
+   * It is called from a background thread, one chunk at a time and in order. The default
+   * implementation delegates to {@link #flushBuffer(int, boolean)}, hence it can only write
+   * {@link #buffer()} at {@link #position()}.
+   *
+   * @param chunk the chunk's data
+   * @param position the offset of the chunk in the upload
+   * @param length the number of bytes to write from {@code chunk}
+   * @param last if {@code true} the resumable session is closed
+   */
+  protected void flushChunk(byte[] chunk, int position, int length, boolean last) {
+    flushBuffer(length, last);
+  }
+
   protected ServiceOptionsT options() {
     return options;
   }
@@ -107,12 +175,90 @@ public abstract class BaseWriteChannel<
   private void flush() {
     if (limit >= chunkSize) {
       final int length = limit - limit % minChunkSize();
+      if (supportsPipelining() && maxPendingChunks() > 0) {
+        enqueueChunk(length);
+        return;
+      }
       flushBuffer(length, false);
       position += length;
       limit -= length;
-      byte[] temp = new byte[chunkSize];
-      System.arraycopy(buffer, length, temp, 0, limit);
-      buffer = temp;
+      if (buffer.length == chunkSize) {
+        System.arraycopy(buffer, length, buffer, 0, limit);
+      } else {
+        byte[] temp = bufferPool().acquire(chunkSize);
+        System.arraycopy(buffer, length, temp, 0, limit);
+        bufferPool().release(buffer);
+        buffer = temp;
+      }
+    }
+  }
+
+  /**
+   * Queues the first {@code length} bytes of the buffer for upload and moves the remaining bytes
+   * to a new buffer. Blocks while {@link #maxPendingChunks()} chunks are already queued.
+   */
+  private void enqueueChunk(final int length) {
+    awaitPendingChunks(maxPendingChunks() - 1);
+    if (uploader == null) {
+      uploader = Executors.newSingleThreadExecutor(THREAD_FACTORY);
+    }
+    final byte[] chunk = buffer;
+    final int chunkPosition = position;
+    pendingChunks.addLast(uploader.submit(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          if (!uploadFailed) {
+            flushChunk(chunk, chunkPosition, length, false);
+          }
+        } catch (RuntimeException | Error ex) {
+          uploadFailed = true;
+          throw ex;
+        } finally {
+          bufferPool().release(chunk);
+        }
+      }
+    }));
+    position += length;
+    limit -= length;
+    buffer = bufferPool().acquire(chunkSize);
+    System.arraycopy(chunk, length, buffer, 0, limit);
+  }
+
+  /**
+   * Waits until at most {@code maxPending} chunks are queued for upload. Rethrows the first upload
+   * failure, if any.
+   */
+  private void awaitPendingChunks(int maxPending) {
+    if (uploadFailure != null) {
+      throw Throwables.propagate(uploadFailure);
+    }
+    while (pendingChunks.size() > maxPending) {
+      getUpload(pendingChunks.removeFirst());
+    }
+    while (!pendingChunks.isEmpty() && pendingChunks.peekFirst().isDone()) {
+      getUpload(pendingChunks.removeFirst());
+    }
+  }
+
+  private void getUpload(Future<?> upload) {
+    try {
+      Uninterruptibles.getUninterruptibly(upload);
+    } catch (ExecutionException ex) {
+      cancelPendingChunks();
+      uploadFailure = ex.getCause();
+      throw Throwables.propagate(uploadFailure);
+    }
+  }
+
+  private void cancelPendingChunks() {
+    for (Future<?> pendingChunk : pendingChunks) {
+      pendingChunk.cancel(false);
+    }
+    pendingChunks.clear();
+    if (uploader != null) {
+      uploader.shutdown();
+      uploader = null;
     }
   }
 
@@ -125,12 +271,18 @@ public abstract class BaseWriteChannel<
   @Override
   public final int write(ByteBuffer byteBuffer) throws IOException {
     validateOpen();
+    awaitPendingChunks(maxPendingChunks());
     int toWrite = byteBuffer.remaining();
     int spaceInBuffer = buffer.length - limit;
     if (spaceInBuffer >= toWrite) {
       byteBuffer.get(buffer, limit, toWrite);
     } else {
-      buffer = Arrays.copyOf(buffer, Math.max(chunkSize, buffer.length + toWrite - spaceInBuffer));
+      // grow to a multiple of chunkSize so that buffers can be recycled by other channels
+      int length = ((limit + toWrite - 1) / chunkSize + 1) * chunkSize;
+      byte[] temp = bufferPool().acquire(length);
+      System.arraycopy(buffer, 0, temp, 0, limit);
+      bufferPool().release(buffer);
+      buffer = temp;
       byteBuffer.get(buffer, limit, toWrite);
     }
     limit += toWrite;
@@ -146,9 +298,15 @@ public abstract class BaseWriteChannel<
   @Override
   public final void close() throws IOException {
     if (isOpen) {
+      try {
+        awaitPendingChunks(0);
+      } finally {
+        cancelPendingChunks();
+      }
       flushBuffer(limit, true);
       position += buffer.length;
       isOpen = false;
+      bufferPool().release(buffer);
       buffer = null;
     }
   }
@@ -163,6 +321,7 @@ public abstract class BaseWriteChannel<
     byte[] bufferToSave = null;
     if (isOpen) {
       flush();
+      awaitPendingChunks(0);
       bufferToSave = Arrays.copyOf(buffer, limit);
     }
     return stateBuilder()
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of byte arrays, grouped by length. Write channels use a pool to reuse their chunk
+ * buffers across chunks and across channels, rather than allocating a new large array for every
+ * chunk. At most {@link #maxPooledBytes()} bytes are retained by the pool: arrays released once
+ * the pool is full are left to the garbage collector. Arrays returned by {@link #acquire(int)} are
+ * not cleared and may contain data from previous uses.
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BufferPool {
+
+  private static final long DEFAULT_MAX_POOLED_BYTES = 32L * 1024 * 1024;
+  private static final BufferPool DEFAULT_INSTANCE = new BufferPool(DEFAULT_MAX_POOLED_BYTES);
+
+  private final long maxPooledBytes;
+  private final AtomicLong pooledBytes = new AtomicLong();
+  private final ConcurrentMap<Integer, Queue<byte[]>> buffers = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a pool that retains at most {@code maxPooledBytes} bytes.
+   *
+   * @throws IllegalArgumentException if {@code maxPooledBytes} is negative
+   */
+  public BufferPool(long maxPooledBytes) {
+    checkArgument(maxPooledBytes >= 0, "Max pooled bytes must be >= 0");
+    this.maxPooledBytes = maxPooledBytes;
+  }
+
+  /**
+   * Returns a pooled array of {@code length} bytes, or a new one if none is available.
+   */
+  public byte[] acquire(int length) {
+    Queue<byte[]> queue = buffers.get(length);
+    byte[] buffer = queue != null ? queue.poll() : null;
+    if (buffer == null) {
+      return new byte[length];
+    }
+    pooledBytes.addAndGet(-length);
+    return buffer;
+  }
+
+  /**
+   * Returns {@code buffer} to the pool. The caller must not use {@code buffer} afterwards.
+   */
+  public void release(byte[] buffer) {
+    if (buffer == null || buffer.length == 0) {
+      return;
+    }
+    long current;
+    do {
+      current = pooledBytes.get();
+      if (current + buffer.length > maxPooledBytes) {
+        return;
+      }
+    } while (!pooledBytes.compareAndSet(current, current + buffer.length));
+    Queue<byte[]> queue = buffers.get(buffer.length);
+    if (queue == null) {
+      Queue<byte[]> newQueue = new ConcurrentLinkedQueue<>();
+      queue = buffers.putIfAbsent(buffer.length, newQueue);
+      if (queue == null) {
+        queue = newQueue;
+      }
+    }
+    queue.offer(buffer);
+  }
+
+  /**
+   * Returns the maximum number of bytes retained by the pool.
+   */
+  public long maxPooledBytes() {
+    return maxPooledBytes;
+  }
+
+  /**
+   * Returns the number of bytes currently retained by the pool.
+   */
+  public long pooledBytes() {
+    return pooledBytes.get();
+  }
+
+  /**
+   * Returns the pool shared by all write channels, which retains at most 32 MiB.
+   */
+  public static BufferPool defaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+}
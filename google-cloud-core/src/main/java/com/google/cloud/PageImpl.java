@@ -16,14 +16,27 @@
 
 package com.google.cloud;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.common.base.Throwables;
 import com.google.common.collect.AbstractIterator;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Base implementation for Google Cloud paginated results.
@@ -33,6 +46,8 @@ import java.util.Objects;
 public class PageImpl<T> implements Page<T>, Serializable {
 
   private static final long serialVersionUID = 3914827379823557934L;
+  private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(
+      new ThreadFactoryBuilder().setDaemon(true).setNameFormat("page-prefetcher-%d").build());
 
   private final String cursor;
   private final Iterable<T> results;
@@ -70,6 +85,77 @@ public class PageImpl<T> implements Page<T>, Serializable {
     }
   }
 
+  static class PrefetchingPageIterator<T> extends AbstractIterator<T> {
+
+    private final int prefetchDepth;
+    private final ExecutorService executor;
+    private final Deque<Future<Page<T>>> pendingPages = new ArrayDeque<>();
+    private Iterator<T> currentPageIterator;
+    private Future<Page<T>> lastPage;
+
+    PrefetchingPageIterator(Page<T> currentPage, int prefetchDepth, ExecutorService executor) {
+      this.currentPageIterator = currentPage.values().iterator();
+      this.lastPage = Futures.immediateFuture(currentPage);
+      this.prefetchDepth = prefetchDepth;
+      this.executor = executor;
+      prefetch();
+    }
+
+    private void prefetch() {
+      while (pendingPages.size() < prefetchDepth) {
+        final Future<Page<T>> previousPage = lastPage;
+        lastPage = executor.submit(new Callable<Page<T>>() {
+          @Override
+          public Page<T> call() {
+            Page<T> page = getPage(previousPage);
+            return page == null || page.nextPageCursor() == null ? null : page.nextPage();
+          }
+        });
+        pendingPages.add(lastPage);
+      }
+    }
+
+    private static <T> Page<T> getPage(Future<Page<T>> future) {
+      try {
+        return Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException ex) {
+        throw Throwables.propagate(ex.getCause());
+      }
+    }
+
+    private void cancelPending() {
+      for (Future<Page<T>> pendingPage : pendingPages) {
+        pendingPage.cancel(true);
+      }
+      pendingPages.clear();
+    }
+
+    @Override
+    protected T computeNext() {
+      while (!currentPageIterator.hasNext()) {
+        Page<T> currentPage;
+        try {
+          currentPage = getPage(pendingPages.remove());
+        } catch (RuntimeException ex) {
+          cancelPending();
+          throw ex;
+        }
+        if (currentPage == null) {
+          cancelPending();
+          return endOfData();
+        }
+        currentPageIterator = currentPage.values().iterator();
+        if (currentPage.nextPageCursor() == null) {
+          cancelPending();
+          pendingPages.add(Futures.<Page<T>>immediateFuture(null));
+        } else {
+          prefetch();
+        }
+      }
+      return currentPageIterator.next();
+    }
+  }
+
   /**
    * Creates a {@code PageImpl} object. In order for the object to be serializable the {@code
    * results} parameter must be serializable.
@@ -118,6 +204,47 @@ public class PageImpl<T> implements Page<T>, Serializable {
         && Objects.equals(results, other.results);
   }
 
+  /**
+   * Returns an iterator for all values of {@code page} and of the pages that follow it. Unlike
+   * {@link Page#iterateAll()}, the returned iterator fetches the following pages in background
+   * threads, starting as soon as a page is returned and keeping at most {@code prefetchDepth}
+   * pages ahead of the page being iterated. Errors fetching a page are thrown by the iterator
+   * when it reaches that page. This method can be used with any {@link Page} implementation.
+   *
+   * <p>Example of iterating over all blobs in a bucket, prefetching up to 2 pages ahead:
+   * <pre> {@code
+   * Iterator<Blob> blobIterator = PageImpl.prefetchingIterator(storage.list(bucketName), 2);
+   * while (blobIterator.hasNext()) {
+   *   Blob blob = blobIterator.next();
+   *   // do something with the blob
+   * }}</pre>
+   *
+   * @param <T> the value type that the page holds
+   * @param page the first page of results
+   * @param prefetchDepth the maximum number of pages to fetch ahead of the page being iterated
+   * @throws IllegalArgumentException if {@code prefetchDepth} is not positive
+   */
+  public static <T> Iterator<T> prefetchingIterator(Page<T> page, int prefetchDepth) {
+    return prefetchingIterator(page, prefetchDepth, PREFETCH_EXECUTOR);
+  }
+
+  /**
+   * Returns an iterator for all values of {@code page} and of the pages that follow it, fetching
+   * the following pages with the provided executor. At most {@code prefetchDepth} pages are fetched
+   * ahead of the page being iterated. See {@link #prefetchingIterator(Page, int)}.
+   *
+   * @param <T> the value type that the page holds
+   * @param page the first page of results
+   * @param prefetchDepth the maximum number of pages to fetch ahead of the page being iterated
+   * @param executor the executor used to fetch pages
+   * @throws IllegalArgumentException if {@code prefetchDepth} is not positive
+   */
+  public static <T> Iterator<T> prefetchingIterator(Page<T> page, int prefetchDepth,
+      ExecutorService executor) {
+    checkArgument(prefetchDepth > 0, "Prefetch depth must be > 0");
+    return new PrefetchingPageIterator<>(page, prefetchDepth, executor);
+  }
+
   /**
    * Utility method to construct the options map for the next page request.
    *
@@ -21,6 +21,7 @@ import static junit.framework.TestCase.assertTrue;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 import com.google.cloud.spi.ServiceRpcFactory;
 
@@ -33,7 +34,10 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Random;
 
 public class BaseWriteChannelTest {
@@ -59,12 +63,14 @@ public class BaseWriteChannelTest {
   private static final int DEFAULT_CHUNK_SIZE = 8 * MIN_CHUNK_SIZE;
   private static final Random RANDOM = new Random();
   private static BaseWriteChannel channel;
+  private static BufferPool bufferPool;
 
   @Rule
   public ExpectedException thrown = ExpectedException.none();
 
   @Before
   public void setUp() {
+    bufferPool = new BufferPool(4 * DEFAULT_CHUNK_SIZE);
     channel = new BaseWriteChannel<CustomServiceOptions, Serializable>(null, ENTITY, UPLOAD_ID) {
       @Override
       public RestorableState<WriteChannel> capture() {
@@ -78,6 +84,11 @@ public class BaseWriteChannelTest {
       protected BaseState.Builder<CustomServiceOptions, Serializable> stateBuilder() {
         return null;
       }
+
+      @Override
+      protected BufferPool bufferPool() {
+        return bufferPool;
+      }
     };
   }
 
@@ -136,6 +147,150 @@ public class BaseWriteChannelTest {
     assertArrayEquals(newContent, channel.buffer());
   }
 
+  @Test
+  public void testWriteAndFlushReusesBuffer() throws IOException {
+    channel.write(randomBuffer(DEFAULT_CHUNK_SIZE - 1));
+    byte[] buffer = channel.buffer();
+    ByteBuffer content = randomBuffer(2);
+    channel.write(content);
+    assertEquals(DEFAULT_CHUNK_SIZE, channel.position());
+    assertEquals(1, channel.limit());
+    assertSame(buffer, channel.buffer());
+    assertEquals(content.get(1), channel.buffer()[0]);
+  }
+
+  @Test
+  public void testWriteGrowsToChunkSizeMultiple() throws IOException {
+    channel.write(ByteBuffer.wrap(CONTENT));
+    channel.write(randomBuffer(DEFAULT_CHUNK_SIZE));
+    assertEquals(DEFAULT_CHUNK_SIZE, channel.position());
+    assertEquals(CONTENT.length, channel.limit());
+    assertEquals(DEFAULT_CHUNK_SIZE, channel.buffer().length);
+    assertEquals(2 * DEFAULT_CHUNK_SIZE, bufferPool.pooledBytes());
+  }
+
+  @Test
+  public void testCloseReleasesBuffer() throws IOException {
+    channel.write(ByteBuffer.wrap(CONTENT));
+    byte[] buffer = channel.buffer();
+    channel.close();
+    assertEquals(DEFAULT_CHUNK_SIZE, bufferPool.pooledBytes());
+    assertSame(buffer, bufferPool.acquire(DEFAULT_CHUNK_SIZE));
+  }
+
+  @Test
+  public void testPipelinedWrite() throws IOException {
+    final List<Integer> positions = Collections.synchronizedList(new ArrayList<Integer>());
+    final ByteBuffer uploaded = ByteBuffer.allocate(3 * DEFAULT_CHUNK_SIZE + CONTENT.length);
+    BaseWriteChannel<CustomServiceOptions, Serializable> pipelined =
+        new PipelinedWriteChannel(2) {
+          @Override
+          protected void flushChunk(byte[] chunk, int position, int length, boolean last) {
+            assertFalse(last);
+            positions.add(position);
+            uploaded.put(chunk, 0, length);
+          }
+
+          @Override
+          protected void flushBuffer(int length, boolean last) {
+            assertTrue(last);
+            positions.add(position());
+            uploaded.put(buffer(), 0, length);
+          }
+        };
+    ByteBuffer content = randomBuffer(3 * DEFAULT_CHUNK_SIZE + CONTENT.length);
+    while (content.hasRemaining()) {
+      ByteBuffer slice = content.slice();
+      slice.limit(Math.min(slice.remaining(), MIN_CHUNK_SIZE + 1));
+      content.position(content.position() + pipelined.write(slice));
+    }
+    pipelined.close();
+    assertEquals(Arrays.asList(0, DEFAULT_CHUNK_SIZE, 2 * DEFAULT_CHUNK_SIZE,
+        3 * DEFAULT_CHUNK_SIZE), positions);
+    assertArrayEquals(content.array(), uploaded.array());
+  }
+
+  @Test
+  public void testPipelinedWriteFailure() throws IOException {
+    final RuntimeException failure = new RuntimeException("upload failed");
+    BaseWriteChannel<CustomServiceOptions, Serializable> pipelined =
+        new PipelinedWriteChannel(1) {
+          @Override
+          protected void flushChunk(byte[] chunk, int position, int length, boolean last) {
+            throw failure;
+          }
+        };
+    pipelined.write(randomBuffer(DEFAULT_CHUNK_SIZE));
+    thrown.expect(RuntimeException.class);
+    thrown.expectMessage("upload failed");
+    pipelined.close();
+  }
+
+  @Test
+  public void testPipelinedWriteNotSupported() throws IOException {
+    final Thread writer = Thread.currentThread();
+    final List<Integer> positions = new ArrayList<>();
+    final ByteBuffer uploaded = ByteBuffer.allocate(2 * DEFAULT_CHUNK_SIZE + CONTENT.length);
+    BaseWriteChannel<CustomServiceOptions, Serializable> pipelined =
+        new PipelinedWriteChannel(2) {
+          @Override
+          protected boolean supportsPipelining() {
+            return false;
+          }
+
+          @Override
+          protected void flushBuffer(int length, boolean last) {
+            assertSame(writer, Thread.currentThread());
+            positions.add(position());
+            uploaded.put(buffer(), 0, length);
+          }
+        };
+    ByteBuffer content = randomBuffer(2 * DEFAULT_CHUNK_SIZE + CONTENT.length);
+    pipelined.write(content);
+    pipelined.close();
+    assertEquals(Arrays.asList(0, 2 * DEFAULT_CHUNK_SIZE), positions);
+    assertArrayEquals(content.array(), uploaded.array());
+  }
+
+  private static class PipelinedWriteChannel
+      extends BaseWriteChannel<CustomServiceOptions, Serializable> {
+
+    private final int maxPendingChunks;
+
+    PipelinedWriteChannel(int maxPendingChunks) {
+      super(null, ENTITY, UPLOAD_ID);
+      this.maxPendingChunks = maxPendingChunks;
+    }
+
+    @Override
+    public RestorableState<WriteChannel> capture() {
+      return null;
+    }
+
+    @Override
+    protected int maxPendingChunks() {
+      return maxPendingChunks;
+    }
+
+    @Override
+    protected boolean supportsPipelining() {
+      return true;
+    }
+
+    @Override
+    protected void flushBuffer(int length, boolean last) {}
+
+    @Override
+    protected BaseState.Builder<CustomServiceOptions, Serializable> stateBuilder() {
+      return null;
+    }
+
+    @Override
+    protected BufferPool bufferPool() {
+      return bufferPool;
+    }
+  }
+
   private static ByteBuffer randomBuffer(int size) {
     byte[] byteArray = new byte[size];
     RANDOM.nextBytes(byteArray);
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+public class BufferPoolTest {
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Test
+  public void testAcquireNew() {
+    BufferPool pool = new BufferPool(1024);
+    assertEquals(42, pool.acquire(42).length);
+    assertEquals(0, pool.pooledBytes());
+  }
+
+  @Test
+  public void testReleaseAndAcquire() {
+    BufferPool pool = new BufferPool(1024);
+    byte[] buffer = new byte[512];
+    pool.release(buffer);
+    assertEquals(512, pool.pooledBytes());
+    assertNotSame(buffer, pool.acquire(256));
+    assertSame(buffer, pool.acquire(512));
+    assertEquals(0, pool.pooledBytes());
+    assertNotSame(buffer, pool.acquire(512));
+  }
+
+  @Test
+  public void testReleaseOverLimit() {
+    BufferPool pool = new BufferPool(1024);
+    byte[] first = new byte[512];
+    byte[] second = new byte[512];
+    pool.release(first);
+    pool.release(second);
+    pool.release(new byte[512]);
+    assertEquals(1024, pool.pooledBytes());
+    assertSame(first, pool.acquire(512));
+    assertSame(second, pool.acquire(512));
+    assertEquals(0, pool.pooledBytes());
+  }
+
+  @Test
+  public void testReleaseEmpty() {
+    BufferPool pool = new BufferPool(1024);
+    pool.release(null);
+    pool.release(new byte[0]);
+    assertEquals(0, pool.pooledBytes());
+  }
+
+  @Test
+  public void testDefaultInstance() {
+    assertSame(BufferPool.defaultInstance(), BufferPool.defaultInstance());
+    assertEquals(32L * 1024 * 1024, BufferPool.defaultInstance().maxPooledBytes());
+  }
+
+  @Test
+  public void testNegativeMaxPooledBytes() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Max pooled bytes must be >= 0");
+    new BufferPool(-1);
+  }
+}
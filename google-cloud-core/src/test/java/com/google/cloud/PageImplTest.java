@@ -17,10 +17,21 @@
 package com.google.cloud;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.google.common.collect.ImmutableList;
 
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PageImplTest {
 
@@ -31,6 +42,9 @@ public class PageImplTest {
       .addAll(NEXT_VALUES)
       .build();
 
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
   @Test
   public void testPage() {
     final PageImpl<String> nextResult = new PageImpl<>(null, "c", NEXT_VALUES);
@@ -60,4 +74,104 @@ public class PageImplTest {
     PageImpl<String> result = new PageImpl<>(fetcher, "c", VALUES);
     assertEquals(ALL_VALUES, ImmutableList.copyOf(result.iterateAll()));
   }
+
+  @Test
+  public void testPrefetchingIterator() {
+    final PageImpl<String> nextResult = new PageImpl<>(null, "c", NEXT_VALUES);
+    PageImpl.NextPageFetcher<String> fetcher = new PageImpl.NextPageFetcher<String>() {
+      @Override
+      public PageImpl<String> nextPage() {
+        return nextResult;
+      }
+    };
+    PageImpl<String> result = new PageImpl<>(fetcher, "c", VALUES);
+    assertEquals(ALL_VALUES,
+        ImmutableList.copyOf(PageImpl.prefetchingIterator(result, 2)));
+  }
+
+  @Test
+  public void testPrefetchingIteratorSinglePage() {
+    PageImpl<String> result = new PageImpl<>(null, null, VALUES);
+    assertEquals(VALUES, ImmutableList.copyOf(PageImpl.prefetchingIterator(result, 1)));
+  }
+
+  @Test
+  public void testPrefetchingIteratorFetchesAhead() throws InterruptedException {
+    final Semaphore fetched = new Semaphore(0);
+    final AtomicInteger fetchCount = new AtomicInteger();
+    Page<String> first = new PageImpl<>(new CountingFetcher(10, fetched, fetchCount), "c", VALUES);
+    Iterator<String> iterator = PageImpl.prefetchingIterator(first, 2);
+    assertTrue(fetched.tryAcquire(2, 5, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    assertEquals(2, fetchCount.get());
+    assertEquals("1", iterator.next());
+    assertEquals("2", iterator.next());
+    assertEquals("page1", iterator.next());
+    assertTrue(fetched.tryAcquire(5, TimeUnit.SECONDS));
+    Thread.sleep(50);
+    assertEquals(3, fetchCount.get());
+    List<String> values = new ArrayList<>();
+    while (iterator.hasNext()) {
+      values.add(iterator.next());
+    }
+    assertEquals(9, values.size());
+    assertEquals("page10", values.get(8));
+    assertEquals(10, fetchCount.get());
+  }
+
+  @Test
+  public void testPrefetchingIteratorFailure() {
+    final RuntimeException exception = new RuntimeException("fetch failed");
+    PageImpl.NextPageFetcher<String> fetcher = new PageImpl.NextPageFetcher<String>() {
+      @Override
+      public PageImpl<String> nextPage() {
+        throw exception;
+      }
+    };
+    Iterator<String> iterator =
+        PageImpl.prefetchingIterator(new PageImpl<>(fetcher, "c", VALUES), 3);
+    assertEquals("1", iterator.next());
+    assertEquals("2", iterator.next());
+    try {
+      iterator.hasNext();
+      fail("Expected RuntimeException");
+    } catch (RuntimeException ex) {
+      assertEquals(exception, ex);
+    }
+  }
+
+  @Test
+  public void testPrefetchingIteratorInvalidDepth() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Prefetch depth must be > 0");
+    PageImpl.prefetchingIterator(new PageImpl<>(null, null, VALUES), 0);
+  }
+
+  private static class CountingFetcher implements PageImpl.NextPageFetcher<String> {
+
+    private final int pages;
+    private final int index;
+    private final Semaphore fetched;
+    private final AtomicInteger fetchCount;
+
+    CountingFetcher(int pages, Semaphore fetched, AtomicInteger fetchCount) {
+      this(pages, 1, fetched, fetchCount);
+    }
+
+    private CountingFetcher(int pages, int index, Semaphore fetched, AtomicInteger fetchCount) {
+      this.pages = pages;
+      this.index = index;
+      this.fetched = fetched;
+      this.fetchCount = fetchCount;
+    }
+
+    @Override
+    public Page<String> nextPage() {
+      fetchCount.incrementAndGet();
+      fetched.release();
+      String cursor = index < pages ? "c" : null;
+      return new PageImpl<>(new CountingFetcher(pages, index + 1, fetched, fetchCount), cursor,
+          ImmutableList.of("page" + index));
+    }
+  }
 }
@@ -18,17 +18,17 @@ package com.google.cloud.pubsub;
 
 import com.google.cloud.Clock;
 import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
-import com.google.common.base.MoreObjects;
 import com.google.common.collect.LinkedListMultimap;
 import com.google.common.collect.ListMultimap;
 import com.google.common.collect.Multimaps;
 
-import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -38,6 +38,12 @@ import java.util.concurrent.TimeUnit;
  * acknowledge deadline of messages added to it (via {@link #add(String, String)} or
  * {@link #add(String, Iterable)}. The acknowledge deadlines of added messages are renewed until the
  * messages are explicitly removed using {@link #remove(String, String)}.
+ *
+ * <p>Messages are kept in a hashed timing wheel: each slot of the wheel covers
+ * {@code TICK_MILLIS} milliseconds and holds the messages whose expected deadline falls in that
+ * interval. Adding and removing messages does not require locking: the current entry of each
+ * message is kept in a per-subscription concurrent map and slots are lock-free queues. Entries
+ * that were removed or replaced are discarded when their slot is processed.
  */
 class AckDeadlineRenewer implements AutoCloseable {
 
@@ -45,156 +51,110 @@ class AckDeadlineRenewer implements AutoCloseable {
   private static final int DEADLINE_SLACK_MILLIS = 1_000;
   private static final int RENEW_THRESHOLD_MILLIS = 3_000;
   private static final int NEXT_RENEWAL_THRESHOLD_MILLIS = 1_000;
+  private static final int TICK_MILLIS = 1_000;
+  private static final int WHEEL_SIZE = 16;
 
   private final PubSub pubsub;
   private final ScheduledExecutorService executor;
   private final ExecutorFactory<ScheduledExecutorService> executorFactory;
   private final Clock clock;
-  private final Queue<Message> messageQueue;
-  private final Map<MessageId, Long> messageDeadlines;
-  private final Object lock = new Object();
+  private final ConcurrentMap<String, ConcurrentMap<String, Entry>> entries;
+  private final Queue<Entry>[] wheel;
   private final Object futureLock = new Object();
-  private Future<?> renewerFuture;
+  // Guarded by futureLock, renewerFuture can be read without holding it
+  private volatile Future<?> renewerFuture;
   private boolean closed;
+  // Only accessed by the renewal task, renewals never run concurrently
+  private long lastProcessedTick;
 
   /**
-   * This class holds the identity of a message to renew: subscription and acknowledge id.
+   * This class holds the identity of a message to renew and its expected ack deadline. An entry is
+   * current as long as it is the one mapped to its acknowledge id in {@link #entries}.
    */
-  private static class MessageId {
+  private static final class Entry {
 
     private final String subscription;
     private final String ackId;
+    private long deadline;
 
-    MessageId(String subscription, String ackId) {
+    Entry(String subscription, String ackId, long deadline) {
       this.subscription = subscription;
       this.ackId = ackId;
+      this.deadline = deadline;
     }
+  }
 
-    String subscription() {
-      return subscription;
+  @SuppressWarnings("unchecked")
+  AckDeadlineRenewer(PubSub pubsub) {
+    PubSubOptions options = pubsub.options();
+    this.pubsub = pubsub;
+    this.executorFactory = options.executorFactory();
+    this.executor = executorFactory.get();
+    this.clock = options.clock();
+    this.entries = new ConcurrentHashMap<>();
+    this.wheel = new Queue[WHEEL_SIZE];
+    for (int i = 0; i < WHEEL_SIZE; i++) {
+      wheel[i] = new ConcurrentLinkedQueue<>();
     }
+    this.lastProcessedTick = clock.millis() / TICK_MILLIS - 1;
+  }
 
-    String ackId() {
-      return ackId;
-    }
+  private Queue<Entry> slot(long tick) {
+    return wheel[(int) (tick % WHEEL_SIZE)];
+  }
 
-    @Override
-    public boolean equals(Object obj) {
-      if (obj == this) {
-        return true;
-      }
-      if (!(obj instanceof MessageId)) {
-        return false;
+  private ConcurrentMap<String, Entry> subscriptionEntries(String subscription) {
+    ConcurrentMap<String, Entry> subscriptionEntries = entries.get(subscription);
+    if (subscriptionEntries == null) {
+      subscriptionEntries = new ConcurrentHashMap<>();
+      ConcurrentMap<String, Entry> existing =
+          entries.putIfAbsent(subscription, subscriptionEntries);
+      if (existing != null) {
+        subscriptionEntries = existing;
       }
-      MessageId other = (MessageId) obj;
-      return Objects.equals(other.subscription, this.subscription)
-          && Objects.equals(other.ackId, this.ackId);
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(subscription, ackId);
-    }
-
-    @Override
-    public String toString() {
-      return MoreObjects.toStringHelper(this)
-          .add("subscription", subscription)
-          .add("ackId", ackId)
-          .toString();
     }
+    return subscriptionEntries;
   }
 
-  /**
-   * This class holds the identity of a message to renew and its expected ack deadline.
-   */
-  private static final class Message {
-
-    private final MessageId messageId;
-    private final Long deadline;
-
-    Message(MessageId messageId, Long deadline) {
-      this.messageId = messageId;
-      this.deadline = deadline;
-    }
-
-    MessageId messageId() {
-      return messageId;
-    }
-
-    Long expectedDeadline() {
-      return deadline;
-    }
+  private boolean isCurrent(Entry entry) {
+    ConcurrentMap<String, Entry> subscriptionEntries = entries.get(entry.subscription);
+    return subscriptionEntries != null && subscriptionEntries.get(entry.ackId) == entry;
+  }
 
-    @Override
-    public boolean equals(Object obj) {
-      if (obj == this) {
-        return true;
+  private void scheduleRenewal(long tick) {
+    // Schedules a renewal if none is scheduled. Deadlines of added messages never precede those of
+    // messages already in the wheel, so a scheduled renewal can always handle them
+    if (renewerFuture == null) {
+      synchronized (futureLock) {
+        if (renewerFuture == null && !closed) {
+          scheduleRenewalAt(tick);
+        }
       }
-      if (!(obj instanceof Message)) {
-        return false;
-      }
-      Message other = (Message) obj;
-      return Objects.equals(other.messageId, this.messageId)
-          && Objects.equals(other.deadline, this.deadline);
-    }
-
-    @Override
-    public int hashCode() {
-      return Objects.hash(messageId, deadline);
-    }
-
-    @Override
-    public String toString() {
-      return MoreObjects.toStringHelper(this)
-          .add("messageId", messageId)
-          .add("expectedDeadline", deadline)
-          .toString();
     }
   }
 
-  AckDeadlineRenewer(PubSub pubsub) {
-    PubSubOptions options = pubsub.options();
-    this.pubsub = pubsub;
-    this.executorFactory = options.executorFactory();
-    this.executor = executorFactory.get();
-    this.clock = options.clock();
-    this.messageQueue = new LinkedList<>();
-    this.messageDeadlines = new HashMap<>();
+  private void scheduleRenewalAt(long tick) {
+    long delay = tick * TICK_MILLIS - NEXT_RENEWAL_THRESHOLD_MILLIS - clock.millis();
+    renewerFuture = executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        renewAckDeadlines();
+      }
+    }, delay, TimeUnit.MILLISECONDS);
   }
 
   private void unsetAndScheduleNextRenewal() {
     synchronized (futureLock) {
       renewerFuture = null;
-      scheduleNextRenewal();
-    }
-  }
-
-  private void scheduleNextRenewal() {
-    // Schedules next renewal if there are still messages to process and no renewals scheduled that
-    // could handle them, otherwise does nothing
-    Message nextMessage;
-    synchronized (lock) {
-      Message peek = messageQueue.peek();
-      // We remove from the queue messages that were removed from the ack deadline renewer (and
-      // possibly re-added)
-      while (peek != null && (!messageDeadlines.containsKey(peek.messageId())
-          || messageDeadlines.get(peek.messageId()) > peek.expectedDeadline())) {
-        messageQueue.poll();
-        peek = messageQueue.peek();
+      if (closed) {
+        return;
       }
-      nextMessage = peek;
-    }
-    synchronized (futureLock) {
-      if (renewerFuture == null && nextMessage != null) {
-        long delay =
-            (nextMessage.expectedDeadline() - clock.millis()) - NEXT_RENEWAL_THRESHOLD_MILLIS;
-        renewerFuture = executor.schedule(new Runnable() {
-          @Override
-          public void run() {
-            renewAckDeadlines();
-          }
-        }, delay, TimeUnit.MILLISECONDS);
+      // Schedules next renewal for the first non-empty slot, if any
+      for (long tick = lastProcessedTick + 1; tick <= lastProcessedTick + WHEEL_SIZE; tick++) {
+        if (!slot(tick).isEmpty()) {
+          scheduleRenewalAt(tick);
+          return;
+        }
       }
     }
   }
@@ -203,15 +163,33 @@ class AckDeadlineRenewer implements AutoCloseable {
     ListMultimap<String, String> messagesToRenewNext = LinkedListMultimap.create();
     // At every activation we renew all ack deadlines that will expire in the following
     // RENEW_THRESHOLD_MILLIS
-    long threshold = clock.millis() + RENEW_THRESHOLD_MILLIS;
-    Message message;
-    while ((message = nextMessageToRenew(threshold)) != null) {
-      // If the expected deadline is null the message was removed and we must ignore it, otherwise
-      // we renew its ack deadline
-      if (message.expectedDeadline() != null) {
-        messagesToRenewNext.put(message.messageId().subscription(), message.messageId().ackId());
+    long now = clock.millis();
+    long threshold = now + RENEW_THRESHOLD_MILLIS;
+    long nextDeadline = now + MIN_DEADLINE_MILLIS - DEADLINE_SLACK_MILLIS;
+    long lastTick = threshold / TICK_MILLIS;
+    long firstTick = Math.max(lastProcessedTick + 1, lastTick - WHEEL_SIZE + 1);
+    List<Entry> notDue = new ArrayList<>();
+    for (long tick = firstTick; tick <= lastTick; tick++) {
+      Queue<Entry> slot = slot(tick);
+      Entry entry;
+      while ((entry = slot.poll()) != null) {
+        if (!isCurrent(entry)) {
+          // the message was removed or added again, we should not renew its deadline
+          continue;
+        }
+        if (entry.deadline > threshold) {
+          // the entry belongs to a later turn of the wheel
+          notDue.add(entry);
+          continue;
+        }
+        messagesToRenewNext.put(entry.subscription, entry.ackId);
+        entry.deadline = nextDeadline;
+        slot(nextDeadline / TICK_MILLIS).add(entry);
       }
+      slot.addAll(notDue);
+      notDue.clear();
     }
+    lastProcessedTick = lastTick;
     for (Map.Entry<String, List<String>> entry : Multimaps.asMap(messagesToRenewNext).entrySet()) {
       // We send all ack deadline renewals for a subscription
       pubsub.modifyAckDeadlineAsync(entry.getKey(), MIN_DEADLINE_MILLIS, TimeUnit.MILLISECONDS,
@@ -220,29 +198,6 @@ class AckDeadlineRenewer implements AutoCloseable {
     unsetAndScheduleNextRenewal();
   }
 
-  private Message nextMessageToRenew(long threshold) {
-    synchronized (lock) {
-      Message message = messageQueue.peek();
-      // if the queue is empty or the next expected deadline is after threshold we stop
-      if (message == null || message.expectedDeadline() > threshold) {
-        return null;
-      }
-      MessageId messageId = messageQueue.poll().messageId();
-      // Check if the next expected deadline changed. This can happen if the message was removed
-      // from the ack deadline renewer or if it was nacked and then pulled again
-      Long deadline = messageDeadlines.get(messageId);
-      if (deadline == null || deadline > threshold) {
-        // the message was removed (deadline == null) or removed and then added back
-        // (deadline > threshold), we should not renew its deadline (yet)
-        return new Message(messageId, null);
-      } else {
-        // Message deadline must be renewed, we must submit it again to the renewer
-        add(messageId.subscription(), messageId.ackId());
-        return new Message(messageId, deadline);
-      }
-    }
-  }
-
   /**
    * Adds a new message for which the acknowledge deadline should be automatically renewed. The
    * message is identified by the subscription from which it was pulled and its acknowledge id.
@@ -253,13 +208,12 @@ class AckDeadlineRenewer implements AutoCloseable {
    * @param ackId the message's acknowledge id
    */
   void add(String subscription, String ackId) {
-    synchronized (lock) {
-      long deadline = clock.millis() + MIN_DEADLINE_MILLIS - DEADLINE_SLACK_MILLIS;
-      Message message = new Message(new MessageId(subscription, ackId), deadline);
-      messageQueue.add(message);
-      messageDeadlines.put(message.messageId(), deadline);
-    }
-    scheduleNextRenewal();
+    long deadline = clock.millis() + MIN_DEADLINE_MILLIS - DEADLINE_SLACK_MILLIS;
+    long tick = deadline / TICK_MILLIS;
+    Entry entry = new Entry(subscription, ackId, deadline);
+    subscriptionEntries(subscription).put(ackId, entry);
+    slot(tick).add(entry);
+    scheduleRenewal(tick);
   }
 
   /**
@@ -272,15 +226,16 @@ class AckDeadlineRenewer implements AutoCloseable {
    * @param ackIds the acknowledge ids of the messages
    */
   void add(String subscription, Iterable<String> ackIds) {
-    synchronized (lock) {
-      long deadline = clock.millis() + MIN_DEADLINE_MILLIS - DEADLINE_SLACK_MILLIS;
-      for (String ackId : ackIds) {
-        Message message = new Message(new MessageId(subscription, ackId), deadline);
-        messageQueue.add(message);
-        messageDeadlines.put(message.messageId(), deadline);
-      }
+    long deadline = clock.millis() + MIN_DEADLINE_MILLIS - DEADLINE_SLACK_MILLIS;
+    long tick = deadline / TICK_MILLIS;
+    ConcurrentMap<String, Entry> subscriptionEntries = subscriptionEntries(subscription);
+    Queue<Entry> slot = slot(tick);
+    for (String ackId : ackIds) {
+      Entry entry = new Entry(subscription, ackId, deadline);
+      subscriptionEntries.put(ackId, entry);
+      slot.add(entry);
     }
-    scheduleNextRenewal();
+    scheduleRenewal(tick);
   }
 
   /**
@@ -292,22 +247,23 @@ class AckDeadlineRenewer implements AutoCloseable {
    * @param ackId the message's acknowledge id
    */
   void remove(String subscription, String ackId) {
-    synchronized (lock) {
-      messageDeadlines.remove(new MessageId(subscription, ackId));
+    ConcurrentMap<String, Entry> subscriptionEntries = entries.get(subscription);
+    if (subscriptionEntries != null) {
+      subscriptionEntries.remove(ackId);
     }
   }
 
   @Override
   public void close() throws Exception {
-    if (closed) {
-      return;
-    }
-    closed = true;
-    synchronized (lock) {
-      messageDeadlines.clear();
-      messageQueue.clear();
-    }
     synchronized (futureLock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      entries.clear();
+      for (Queue<Entry> slot : wheel) {
+        slot.clear();
+      }
       if (renewerFuture != null) {
         renewerFuture.cancel(true);
       }
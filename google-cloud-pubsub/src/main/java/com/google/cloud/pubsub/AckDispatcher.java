@@ -0,0 +1,263 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub;
+
+import static com.google.common.base.MoreObjects.firstNonNull;
+
+import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class that coalesces acks and nacks of pulled messages. Acknowledge ids are grouped per
+ * subscription and sent in a single acknowledge (or modify ack deadline) request once a group
+ * holds {@code maxBatchSize} ids or {@code maxBatchDelayMillis} after the first pending id was
+ * added. Groups whose request fails are sent again, up to {@code maxAttempts} times. Messages
+ * whose ack could not be sent are eventually redelivered by the service.
+ */
+final class AckDispatcher implements AutoCloseable {
+
+  static final int MAX_BATCH_SIZE = 1000;
+  static final long MAX_BATCH_DELAY_MILLIS = 100;
+  static final int MAX_ATTEMPTS = 3;
+
+  private final PubSub pubsub;
+  private final ExecutorFactory<ScheduledExecutorService> executorFactory;
+  private final ScheduledExecutorService executor;
+  private final int maxBatchSize;
+  private final long maxBatchDelayMillis;
+  private final int maxAttempts;
+  private final Object lock = new Object();
+  private final Runnable flushRunnable = new Runnable() {
+    @Override
+    public void run() {
+      flush();
+    }
+  };
+  private Map<Action, Map<String, List<String>>> pending = newPending();
+  private Future<?> flushFuture;
+  private boolean closed;
+
+  /**
+   * The operations to dispatch.
+   */
+  private enum Action {
+    ACK {
+      @Override
+      Future<Void> send(PubSub pubsub, String subscription, List<String> ackIds) {
+        return pubsub.ackAsync(subscription, ackIds);
+      }
+    },
+    NACK {
+      @Override
+      Future<Void> send(PubSub pubsub, String subscription, List<String> ackIds) {
+        return pubsub.nackAsync(subscription, ackIds);
+      }
+    };
+
+    abstract Future<Void> send(PubSub pubsub, String subscription, List<String> ackIds);
+  }
+
+  private AckDispatcher(Builder builder) {
+    this.pubsub = builder.pubsubOptions.service();
+    this.executorFactory = builder.pubsubOptions.executorFactory();
+    this.executor = executorFactory.get();
+    this.maxBatchSize = firstNonNull(builder.maxBatchSize, MAX_BATCH_SIZE);
+    this.maxBatchDelayMillis = firstNonNull(builder.maxBatchDelayMillis, MAX_BATCH_DELAY_MILLIS);
+    this.maxAttempts = firstNonNull(builder.maxAttempts, MAX_ATTEMPTS);
+  }
+
+  private static Map<Action, Map<String, List<String>>> newPending() {
+    Map<Action, Map<String, List<String>>> pending = new EnumMap<>(Action.class);
+    for (Action action : Action.values()) {
+      pending.put(action, new LinkedHashMap<String, List<String>>());
+    }
+    return pending;
+  }
+
+  /**
+   * Schedules the acknowledgement of a message, identified by the subscription from which it was
+   * pulled and its acknowledge id.
+   */
+  void ack(String subscription, String ackId) {
+    add(Action.ACK, subscription, ackId);
+  }
+
+  /**
+   * Schedules the "nack" of a message, identified by the subscription from which it was pulled and
+   * its acknowledge id.
+   */
+  void nack(String subscription, String ackId) {
+    add(Action.NACK, subscription, ackId);
+  }
+
+  private void add(Action action, String subscription, String ackId) {
+    List<String> ackIdsToSend = null;
+    synchronized (lock) {
+      Map<String, List<String>> groups = pending.get(action);
+      List<String> ackIds = groups.get(subscription);
+      if (ackIds == null) {
+        ackIds = new ArrayList<>();
+        groups.put(subscription, ackIds);
+      }
+      ackIds.add(ackId);
+      // Once closed there is no executor to delay requests, ack ids are sent right away
+      if (closed || ackIds.size() >= maxBatchSize) {
+        groups.remove(subscription);
+        ackIdsToSend = ackIds;
+      } else if (flushFuture == null) {
+        flushFuture = executor.schedule(flushRunnable, maxBatchDelayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (ackIdsToSend != null) {
+      send(action, subscription, ackIdsToSend, 1);
+    }
+  }
+
+  /**
+   * Sends all pending acks and nacks.
+   */
+  void flush() {
+    Map<Action, Map<String, List<String>>> groupsToSend;
+    synchronized (lock) {
+      if (flushFuture != null) {
+        flushFuture.cancel(false);
+        flushFuture = null;
+      }
+      groupsToSend = pending;
+      pending = newPending();
+    }
+    for (Map.Entry<Action, Map<String, List<String>>> actionEntry : groupsToSend.entrySet()) {
+      for (Map.Entry<String, List<String>> entry : actionEntry.getValue().entrySet()) {
+        send(actionEntry.getKey(), entry.getKey(), entry.getValue(), 1);
+      }
+    }
+  }
+
+  private void send(final Action action, final String subscription, final List<String> ackIds,
+      final int attempt) {
+    Future<Void> future = action.send(pubsub, subscription, ackIds);
+    ListenableFuture<Void> listenableFuture = future instanceof ListenableFuture
+        ? (ListenableFuture<Void>) future
+        : JdkFutureAdapters.listenInPoolThread(future);
+    Futures.addCallback(listenableFuture, new FutureCallback<Void>() {
+      @Override
+      public void onSuccess(Void result) {
+        // nothing to do
+      }
+
+      @Override
+      public void onFailure(Throwable error) {
+        if (attempt < maxAttempts) {
+          retry(action, subscription, ackIds, attempt + 1);
+        }
+      }
+    });
+  }
+
+  private void retry(final Action action, final String subscription, final List<String> ackIds,
+      final int attempt) {
+    synchronized (lock) {
+      if (!closed) {
+        executor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            send(action, subscription, ackIds, attempt);
+          }
+        }, maxBatchDelayMillis, TimeUnit.MILLISECONDS);
+        return;
+      }
+    }
+    send(action, subscription, ackIds, attempt);
+  }
+
+  /**
+   * Sends all pending acks and nacks and releases the executor. Acks and nacks added after this
+   * method is called are sent immediately.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    flush();
+    executorFactory.release(executor);
+  }
+
+  static final class Builder {
+    private final PubSubOptions pubsubOptions;
+    private Integer maxBatchSize;
+    private Long maxBatchDelayMillis;
+    private Integer maxAttempts;
+
+    Builder(PubSubOptions pubsubOptions) {
+      this.pubsubOptions = pubsubOptions;
+    }
+
+    /**
+     * Sets the maximum number of acknowledge ids sent in a single request.
+     */
+    Builder maxBatchSize(Integer maxBatchSize) {
+      this.maxBatchSize = maxBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, an acknowledge id waits before being sent.
+     */
+    Builder maxBatchDelayMillis(Long maxBatchDelayMillis) {
+      this.maxBatchDelayMillis = maxBatchDelayMillis;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of times a request is sent, if it fails.
+     */
+    Builder maxAttempts(Integer maxAttempts) {
+      this.maxAttempts = maxAttempts;
+      return this;
+    }
+
+    /**
+     * Creates an {@code AckDispatcher} object.
+     */
+    AckDispatcher build() {
+      return new AckDispatcher(this);
+    }
+  }
+
+  /**
+   * Returns a builder for {@code AckDispatcher} objects given the service options.
+   */
+  static Builder builder(PubSubOptions pubsubOptions) {
+    return new Builder(pubsubOptions);
+  }
+}
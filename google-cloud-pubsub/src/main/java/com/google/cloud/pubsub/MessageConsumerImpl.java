@@ -30,12 +30,16 @@ import com.google.pubsub.v1.PullResponse;
 
 import io.grpc.internal.SharedResourceHolder;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Default implementation for a message consumer.
@@ -43,6 +47,8 @@ import java.util.concurrent.atomic.AtomicInteger;
 final class MessageConsumerImpl implements MessageConsumer {
 
   private static final int MAX_QUEUED_CALLBACKS = 100;
+  private static final int MAX_CONCURRENT_PULLS = 1;
+  private static final long MAX_QUEUED_BYTES = 100L * 1024L * 1024L;
   // shared scheduled executor, used to schedule pulls
   private static final SharedResourceHolder.Resource<ExecutorService> CONSUMER_EXECUTOR =
       new SharedResourceHolder.Resource<ExecutorService>() {
@@ -61,45 +67,177 @@ final class MessageConsumerImpl implements MessageConsumer {
   private final PubSubRpc pubsubRpc;
   private final PubSub pubsub;
   private final AckDeadlineRenewer deadlineRenewer;
+  private final AckDispatcher ackDispatcher;
   private final String subscription;
   private final MessageProcessor messageProcessor;
   private final ExecutorService consumerExecutor;
   private final ExecutorFactory<ExecutorService> executorFactory;
   private final ExecutorService executor;
+  // Messages either queued or requested by pulls that are still in flight
   private final AtomicInteger queuedCallbacks;
+  private final AtomicLong queuedBytes;
   private final int maxQueuedCallbacks;
+  private final int maxMessagesPerPull;
   private final Object futureLock = new Object();
-  private final Runnable consumerRunnable;
+  private final List<ConsumerRunnable> consumerRunnables;
   private final NextPullPolicy pullPolicy;
-  private boolean closed;
-  private Future<?> scheduledFuture;
-  private PullFuture pullerFuture;
+  private volatile boolean closed;
 
   /**
-   * Interface for policies according to which the consumer should pull messages.
+   * Interface for policies according to which the consumer should pull messages. Policies are
+   * notified of every processed message, so that they can size pulls according to the observed
+   * message sizes and processing latency.
    */
   interface NextPullPolicy {
 
-    boolean shouldPull(int queuedCallbacks);
+    /**
+     * Returns whether a consumer that stopped pulling should pull again, given the number of queued
+     * messages and their total size in bytes.
+     */
+    boolean shouldPull(int queuedCallbacks, long queuedBytes);
+
+    /**
+     * Returns the maximum number of messages the next pull can request, given the number of queued
+     * messages and their total size in bytes. Returns {@code 0} if the consumer should stop
+     * pulling.
+     */
+    int maxMessages(int queuedCallbacks, long queuedBytes);
+
+    /**
+     * Notifies the policy that a message of {@code sizeBytes} bytes has been processed,
+     * {@code latencyMillis} milliseconds after it was pulled.
+     */
+    void processed(int sizeBytes, long latencyMillis);
   }
 
   /**
    * Default pull policy. The consumer will pull again once {@code nextPullThreshold} messages out
-   * of {@code maxQueuedCallbacks} have been processed.
+   * of {@code maxQueuedCallbacks} have been processed and less than half of {@code maxQueuedBytes}
+   * are queued. Pulls request no more messages than the ones that are expected to fit in
+   * {@code maxQueuedBytes}, according to the average size of processed messages.
    */
   static class DefaultNextPullPolicy implements NextPullPolicy {
 
+    // Weight of the last processed message in the average message size
+    private static final double SIZE_WEIGHT = 0.125;
+
     final int maxQueuedCallbacks;
     final int nextPullThreshold;
+    final long maxQueuedBytes;
+    private volatile double averageSize;
 
-    DefaultNextPullPolicy(int maxQueuedCallbacks, int nextPullThreshold) {
+    DefaultNextPullPolicy(int maxQueuedCallbacks, int nextPullThreshold, long maxQueuedBytes) {
       this.maxQueuedCallbacks = maxQueuedCallbacks;
       this.nextPullThreshold = nextPullThreshold;
+      this.maxQueuedBytes = maxQueuedBytes;
     }
 
     @Override
-    public boolean shouldPull(int queuedCallbacks) {
-      return (maxQueuedCallbacks - queuedCallbacks) >= nextPullThreshold;
+    public boolean shouldPull(int queuedCallbacks, long queuedBytes) {
+      return (maxQueuedCallbacks - queuedCallbacks) >= nextPullThreshold
+          && queuedBytes <= maxQueuedBytes / 2;
+    }
+
+    @Override
+    public int maxMessages(int queuedCallbacks, long queuedBytes) {
+      return fittingMessages(maxQueuedCallbacks - queuedCallbacks, queuedBytes);
+    }
+
+    /**
+     * Returns how many of {@code freeCallbacks} messages are expected to fit in the bytes that are
+     * not queued. At least one message is pulled if some bytes are free, otherwise messages larger
+     * than {@code maxQueuedBytes} would never be pulled.
+     */
+    int fittingMessages(int freeCallbacks, long queuedBytes) {
+      long freeBytes = maxQueuedBytes - queuedBytes;
+      if (freeCallbacks <= 0 || freeBytes <= 0) {
+        return 0;
+      }
+      double size = averageSize;
+      if (size == 0) {
+        // no message was processed yet
+        return freeCallbacks;
+      }
+      return (int) Math.max(1, Math.min(freeCallbacks, freeBytes / size));
+    }
+
+    @Override
+    public synchronized void processed(int sizeBytes, long latencyMillis) {
+      averageSize = averageSize == 0
+          ? sizeBytes : (1 - SIZE_WEIGHT) * averageSize + SIZE_WEIGHT * sizeBytes;
+    }
+  }
+
+  /**
+   * Pull policy that adapts the number of queued messages to the observed processing latency,
+   * similarly to TCP congestion control. The policy keeps a window of messages that can be queued,
+   * the latency of a message is measured from when it is pulled to when its processing completes
+   * and grows if messages wait in the queue. Every time a window of messages has been processed
+   * the window is doubled (at first) or increased by one message if their average latency is
+   * within twice the base latency, the minimum latency observed recently. Otherwise the window is
+   * halved and it is only increased by one message from then on. The window never exceeds
+   * {@code maxQueuedCallbacks}, queued bytes are limited as in {@link DefaultNextPullPolicy}.
+   */
+  static class AdaptiveNextPullPolicy extends DefaultNextPullPolicy {
+
+    private static final int INITIAL_WINDOW = 10;
+    // Latencies within this tolerance from the base latency are not considered congestion
+    private static final long LATENCY_TOLERANCE_MILLIS = 100;
+    // Number of windows after which the base latency is measured again
+    private static final int BASE_LATENCY_WINDOWS = 16;
+
+    private int window;
+    private boolean slowStart = true;
+    private int windowMessages;
+    private long windowLatency;
+    private long windowMinLatency = Long.MAX_VALUE;
+    private long baseLatency = Long.MAX_VALUE;
+    private int windows;
+
+    AdaptiveNextPullPolicy(int maxQueuedCallbacks, long maxQueuedBytes) {
+      super(maxQueuedCallbacks, maxQueuedCallbacks / 2, maxQueuedBytes);
+      this.window = Math.min(INITIAL_WINDOW, maxQueuedCallbacks);
+    }
+
+    synchronized int window() {
+      return window;
+    }
+
+    @Override
+    public synchronized boolean shouldPull(int queuedCallbacks, long queuedBytes) {
+      return (window - queuedCallbacks) >= window / 2 && queuedBytes <= maxQueuedBytes / 2;
+    }
+
+    @Override
+    public synchronized int maxMessages(int queuedCallbacks, long queuedBytes) {
+      return fittingMessages(window - queuedCallbacks, queuedBytes);
+    }
+
+    @Override
+    public synchronized void processed(int sizeBytes, long latencyMillis) {
+      super.processed(sizeBytes, latencyMillis);
+      windowMessages++;
+      windowLatency += latencyMillis;
+      windowMinLatency = Math.min(windowMinLatency, latencyMillis);
+      if (windowMessages < window) {
+        return;
+      }
+      if (++windows % BASE_LATENCY_WINDOWS == 0) {
+        // processing might have become slower, the base latency is measured again
+        baseLatency = windowMinLatency;
+      } else {
+        baseLatency = Math.min(baseLatency, windowMinLatency);
+      }
+      long averageLatency = windowLatency / windowMessages;
+      if (averageLatency <= Math.max(2 * baseLatency, baseLatency + LATENCY_TOLERANCE_MILLIS)) {
+        window = Math.min(maxQueuedCallbacks, slowStart ? 2 * window : window + 1);
+      } else {
+        window = Math.max(1, window / 2);
+        slowStart = false;
+      }
+      windowMessages = 0;
+      windowLatency = 0;
+      windowMinLatency = Long.MAX_VALUE;
     }
   }
 
@@ -109,7 +247,16 @@ final class MessageConsumerImpl implements MessageConsumer {
    */
   static class DefaultExecutorFactory implements ExecutorFactory<ExecutorService> {
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ExecutorService executor;
+
+    DefaultExecutorFactory() {
+      this(1);
+    }
+
+    DefaultExecutorFactory(int threads) {
+      executor = threads == 1
+          ? Executors.newSingleThreadExecutor() : Executors.newFixedThreadPool(threads);
+    }
 
     @Override
     public ExecutorService get() {
@@ -122,55 +269,93 @@ final class MessageConsumerImpl implements MessageConsumer {
     }
   }
 
+  /**
+   * A pull stream. Each stream has at most one pull in flight, streams share the
+   * {@code maxQueuedCallbacks} budget.
+   */
   class ConsumerRunnable implements Runnable {
 
+    // Not null while this stream is scheduled or has a pull in flight, guarded by futureLock
+    private Future<?> scheduledFuture;
+    private PullFuture pullerFuture;
+
     @Override
     public void run() {
       if (closed) {
         return;
       }
-      pullerFuture = pubsubRpc.pull(createPullRequest());
-      pullerFuture.addCallback(new PullCallback() {
+      final int maxMessages;
+      synchronized (futureLock) {
+        // Reserving and clearing the future atomically ensures that a message processed in between
+        // sees this stream as stopped and restarts it through pullIfNeeded()
+        maxMessages = reserveCallbacks();
+        if (maxMessages == 0) {
+          // Other streams used up the budget, this stream will be restarted by pullIfNeeded()
+          scheduledFuture = null;
+          return;
+        }
+      }
+      PullFuture future = pubsubRpc.pull(createPullRequest(maxMessages));
+      synchronized (futureLock) {
+        pullerFuture = future;
+        if (closed) {
+          future.cancel(true);
+        }
+      }
+      future.addCallback(new PullCallback() {
         @Override
         public void success(PullResponse response) {
           List<com.google.pubsub.v1.ReceivedMessage> messages = response.getReceivedMessagesList();
-          queuedCallbacks.addAndGet(messages.size());
+          long pullNanos = System.nanoTime();
+          long bytes = 0;
+          for (com.google.pubsub.v1.ReceivedMessage message : messages) {
+            bytes += message.getMessage().getSerializedSize();
+          }
+          queuedBytes.addAndGet(bytes);
+          // Releases the part of the reservation that was not used
+          queuedCallbacks.addAndGet(messages.size() - maxMessages);
           for (com.google.pubsub.v1.ReceivedMessage message : messages) {
             deadlineRenewer.add(subscription, message.getAckId());
             ReceivedMessage receivedMessage = ReceivedMessage.fromPb(pubsub, subscription, message);
-            executor.execute(ackingRunnable(receivedMessage));
+            executor.execute(ackingRunnable(receivedMessage,
+                message.getMessage().getSerializedSize(), pullNanos));
           }
-          nextPull();
+          nextPull(ConsumerRunnable.this);
         }
 
         @Override
         public void failure(Throwable error) {
+          queuedCallbacks.addAndGet(-maxMessages);
           if (!(error instanceof CancellationException)) {
-            nextPull();
+            nextPull(ConsumerRunnable.this);
           }
         }
       });
     }
 
-    private PullRequest createPullRequest() {
+    private PullRequest createPullRequest(int maxMessages) {
       return PullRequest.newBuilder()
           .setSubscription(formatSubscriptionName(pubsubOptions.projectId(), subscription))
-          .setMaxMessages(maxQueuedCallbacks - queuedCallbacks.get())
+          .setMaxMessages(maxMessages)
           .setReturnImmediately(false)
           .build();
     }
 
-    private Runnable ackingRunnable(final ReceivedMessage receivedMessage) {
+    private Runnable ackingRunnable(final ReceivedMessage receivedMessage, final int sizeBytes,
+        final long pullNanos) {
       return new Runnable() {
         @Override
         public void run() {
           try {
             messageProcessor.process(receivedMessage);
-            pubsub.ackAsync(receivedMessage.subscription(), receivedMessage.ackId());
+            ackDispatcher.ack(receivedMessage.subscription(), receivedMessage.ackId());
           } catch (Exception ex) {
-            pubsub.nackAsync(receivedMessage.subscription(), receivedMessage.ackId());
+            ackDispatcher.nack(receivedMessage.subscription(), receivedMessage.ackId());
           } finally {
             deadlineRenewer.remove(receivedMessage.subscription(), receivedMessage.ackId());
+            pullPolicy.processed(sizeBytes,
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - pullNanos));
+            queuedBytes.addAndGet(-sizeBytes);
             queuedCallbacks.decrementAndGet();
             // We can now pull more messages, according to the next pull policy.
             pullIfNeeded();
@@ -187,35 +372,85 @@ final class MessageConsumerImpl implements MessageConsumer {
     this.pubsubRpc = pubsubOptions.rpc();
     this.pubsub = pubsubOptions.service();
     this.deadlineRenewer = builder.deadlineRenewer;
+    this.ackDispatcher = AckDispatcher.builder(pubsubOptions)
+        .maxBatchSize(builder.maxAckBatchSize)
+        .maxBatchDelayMillis(builder.maxAckDelayMillis)
+        .build();
     this.queuedCallbacks = new AtomicInteger();
+    this.queuedBytes = new AtomicLong();
     this.consumerExecutor = SharedResourceHolder.get(CONSUMER_EXECUTOR);
-    this.executorFactory =
-        builder.executorFactory != null ? builder.executorFactory : new DefaultExecutorFactory();
+    if (builder.executorFactory != null) {
+      this.executorFactory = builder.executorFactory;
+    } else {
+      this.executorFactory = new DefaultExecutorFactory(firstNonNull(builder.processorThreads, 1));
+    }
     this.executor = executorFactory.get();
     this.maxQueuedCallbacks = firstNonNull(builder.maxQueuedCallbacks, MAX_QUEUED_CALLBACKS);
-    this.consumerRunnable = new ConsumerRunnable();
-    int nextPullThreshold = builder.nextPullThreshold != null ? builder.nextPullThreshold
-        : this.maxQueuedCallbacks / 2;
-    this.pullPolicy = new DefaultNextPullPolicy(maxQueuedCallbacks, nextPullThreshold);
-    nextPull();
+    int maxConcurrentPulls = firstNonNull(builder.maxConcurrentPulls, MAX_CONCURRENT_PULLS);
+    // Each stream pulls at most its share of the budget, rounded up
+    this.maxMessagesPerPull = (maxQueuedCallbacks + maxConcurrentPulls - 1) / maxConcurrentPulls;
+    List<ConsumerRunnable> runnables = new ArrayList<>(maxConcurrentPulls);
+    for (int i = 0; i < maxConcurrentPulls; i++) {
+      runnables.add(new ConsumerRunnable());
+    }
+    this.consumerRunnables = Collections.unmodifiableList(runnables);
+    long maxQueuedBytes = firstNonNull(builder.maxQueuedBytes, MAX_QUEUED_BYTES);
+    if (builder.nextPullPolicy != null) {
+      this.pullPolicy = builder.nextPullPolicy;
+    } else if (firstNonNull(builder.adaptivePullSize, false)) {
+      this.pullPolicy = new AdaptiveNextPullPolicy(maxQueuedCallbacks, maxQueuedBytes);
+    } else {
+      int nextPullThreshold = builder.nextPullThreshold != null ? builder.nextPullThreshold
+          : this.maxQueuedCallbacks / 2;
+      this.pullPolicy =
+          new DefaultNextPullPolicy(maxQueuedCallbacks, nextPullThreshold, maxQueuedBytes);
+    }
+    for (ConsumerRunnable consumerRunnable : consumerRunnables) {
+      nextPull(consumerRunnable);
+    }
+  }
+
+  /**
+   * Reserves part of the {@code maxQueuedCallbacks} budget for a pull. Returns the maximum number
+   * of messages the pull can request, {@code 0} if the budget is used up or the pull policy does
+   * not allow more messages.
+   */
+  private int reserveCallbacks() {
+    while (true) {
+      int queued = queuedCallbacks.get();
+      int maxMessages = Math.min(maxQueuedCallbacks - queued, maxMessagesPerPull);
+      maxMessages = Math.min(maxMessages, pullPolicy.maxMessages(queued, queuedBytes.get()));
+      if (maxMessages <= 0) {
+        return 0;
+      }
+      if (queuedCallbacks.compareAndSet(queued, queued + maxMessages)) {
+        return maxMessages;
+      }
+    }
   }
 
   private void pullIfNeeded() {
     synchronized (futureLock) {
-      if (closed || scheduledFuture != null || !pullPolicy.shouldPull(queuedCallbacks.get())) {
-        return;
+      for (ConsumerRunnable consumerRunnable : consumerRunnables) {
+        if (closed || !pullPolicy.shouldPull(queuedCallbacks.get(), queuedBytes.get())) {
+          return;
+        }
+        if (consumerRunnable.scheduledFuture == null) {
+          consumerRunnable.scheduledFuture = consumerExecutor.submit(consumerRunnable);
+        }
       }
-      scheduledFuture = consumerExecutor.submit(consumerRunnable);
     }
   }
 
-  private void nextPull() {
+  private void nextPull(ConsumerRunnable consumerRunnable) {
     synchronized (futureLock) {
-      if (closed || queuedCallbacks.get() == maxQueuedCallbacks) {
-        scheduledFuture = null;
+      int queued = queuedCallbacks.get();
+      if (closed || queued >= maxQueuedCallbacks
+          || pullPolicy.maxMessages(queued, queuedBytes.get()) <= 0) {
+        consumerRunnable.scheduledFuture = null;
         return;
       }
-      scheduledFuture = consumerExecutor.submit(consumerRunnable);
+      consumerRunnable.scheduledFuture = consumerExecutor.submit(consumerRunnable);
     }
   }
 
@@ -226,15 +461,18 @@ final class MessageConsumerImpl implements MessageConsumer {
         return;
       }
       closed = true;
-      if (scheduledFuture != null) {
-        scheduledFuture.cancel(true);
-      }
-      if (pullerFuture != null) {
-        pullerFuture.cancel(true);
+      for (ConsumerRunnable consumerRunnable : consumerRunnables) {
+        if (consumerRunnable.scheduledFuture != null) {
+          consumerRunnable.scheduledFuture.cancel(true);
+        }
+        if (consumerRunnable.pullerFuture != null) {
+          consumerRunnable.pullerFuture.cancel(true);
+        }
       }
     }
     SharedResourceHolder.release(CONSUMER_EXECUTOR, consumerExecutor);
     executorFactory.release(executor);
+    ackDispatcher.close();
   }
 
   static final class Builder {
@@ -245,6 +483,13 @@ final class MessageConsumerImpl implements MessageConsumer {
     private Integer maxQueuedCallbacks;
     private ExecutorFactory<ExecutorService> executorFactory;
     private Integer nextPullThreshold;
+    private Integer maxAckBatchSize;
+    private Integer maxConcurrentPulls;
+    private Integer processorThreads;
+    private Long maxAckDelayMillis;
+    private Long maxQueuedBytes;
+    private Boolean adaptivePullSize;
+    private NextPullPolicy nextPullPolicy;
 
     Builder(PubSubOptions pubsubOptions, String subscription, AckDeadlineRenewer deadlineRenewer,
         MessageProcessor messageProcessor) {
@@ -262,6 +507,51 @@ final class MessageConsumerImpl implements MessageConsumer {
       return this;
     }
 
+    /**
+     * Sets the maximum total size, in bytes, of callbacks either being executed or waiting for
+     * execution.
+     */
+    Builder maxQueuedBytes(Long maxQueuedBytes) {
+      this.maxQueuedBytes = maxQueuedBytes;
+      return this;
+    }
+
+    /**
+     * Sets whether the number of queued callbacks should adapt to the observed processing latency
+     * (see {@link AdaptiveNextPullPolicy}). Ignored if a next pull policy is set.
+     */
+    Builder adaptivePullSize(Boolean adaptivePullSize) {
+      this.adaptivePullSize = adaptivePullSize;
+      return this;
+    }
+
+    /**
+     * Sets the policy used to decide when to pull and how many messages to request. If set,
+     * {@code nextPullThreshold}, {@code maxQueuedBytes} and {@code adaptivePullSize} are ignored.
+     */
+    Builder nextPullPolicy(NextPullPolicy nextPullPolicy) {
+      this.nextPullPolicy = nextPullPolicy;
+      return this;
+    }
+
+    /**
+     * Sets the number of pulls that can be in flight at the same time. Concurrent pulls share the
+     * {@code maxQueuedCallbacks} budget.
+     */
+    Builder maxConcurrentPulls(Integer maxConcurrentPulls) {
+      this.maxConcurrentPulls = maxConcurrentPulls;
+      return this;
+    }
+
+    /**
+     * Sets the number of threads of the default executor used to run message processor callbacks.
+     * Ignored if an executor factory is set.
+     */
+    Builder processorThreads(Integer processorThreads) {
+      this.processorThreads = processorThreads;
+      return this;
+    }
+
     /**
      * Sets the executor factory, used to manage the executor that will run message processor
      * callbacks message consumer.
@@ -281,6 +571,22 @@ final class MessageConsumerImpl implements MessageConsumer {
       return this;
     }
 
+    /**
+     * Sets the maximum number of acks (or nacks) sent in a single request.
+     */
+    Builder maxAckBatchSize(Integer maxAckBatchSize) {
+      this.maxAckBatchSize = maxAckBatchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, an ack (or nack) waits before being sent.
+     */
+    Builder maxAckDelayMillis(Long maxAckDelayMillis) {
+      this.maxAckDelayMillis = maxAckDelayMillis;
+      return this;
+    }
+
     /**
      * Creates a {@code MessageConsumerImpl} object.
      */
@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub;
+
+import static com.google.cloud.pubsub.spi.v1.PublisherApi.formatTopicName;
+import static com.google.common.base.MoreObjects.firstNonNull;
+import static com.google.common.base.Preconditions.checkState;
+
+import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
+import com.google.cloud.pubsub.PubSub.MessagePublisher;
+import com.google.cloud.pubsub.spi.PubSubRpc;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.JdkFutureAdapters;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+import com.google.pubsub.v1.PubsubMessage;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Default implementation for a message publisher. Messages are collected in a batch that is sent
+ * as a single publish request once it holds {@code maxBatchMessages} messages or
+ * {@code maxBatchBytes} bytes, or {@code maxBatchDelayMillis} after its first message was added.
+ * Up to {@code maxInFlightBatches} publish requests are sent concurrently, further batches wait
+ * for a request to complete. {@link #publish(Message)} blocks while the messages that were
+ * published but not yet sent or acknowledged by the service exceed {@code maxOutstandingBytes}.
+ */
+final class MessagePublisherImpl implements MessagePublisher {
+
+  static final int MAX_BATCH_MESSAGES = 100;
+  static final int MAX_BATCH_BYTES = 1000 * 1000;
+  static final long MAX_BATCH_DELAY_MILLIS = 10;
+  static final int MAX_IN_FLIGHT_BATCHES = 10;
+  static final long MAX_OUTSTANDING_BYTES = 100 * 1024 * 1024;
+
+  private final PubSubRpc pubsubRpc;
+  private final String topic;
+  private final ExecutorFactory<ScheduledExecutorService> executorFactory;
+  private final ScheduledExecutorService executor;
+  private final int maxBatchMessages;
+  private final int maxBatchBytes;
+  private final long maxBatchDelayMillis;
+  private final int maxInFlightBatches;
+  private final long maxOutstandingBytes;
+  private final Object lock = new Object();
+  private final Deque<Batch> queuedBatches = new ArrayDeque<>();
+  private Batch batch = new Batch();
+  private Future<?> flushFuture;
+  private int inFlightBatches;
+  private long outstandingBytes;
+  private boolean closed;
+
+  /**
+   * A message waiting to be published and the future completed with its id.
+   */
+  private static final class PendingMessage {
+
+    private final PubsubMessage message;
+    private final int size;
+    private final SettableFuture<String> future = SettableFuture.create();
+
+    PendingMessage(PubsubMessage message) {
+      this.message = message;
+      this.size = message.getSerializedSize();
+    }
+  }
+
+  /**
+   * Messages to be sent in a single publish request.
+   */
+  private static final class Batch {
+
+    private final List<PendingMessage> messages = new ArrayList<>();
+    private long bytes;
+
+    void add(PendingMessage message) {
+      messages.add(message);
+      bytes += message.size;
+    }
+
+    boolean isEmpty() {
+      return messages.isEmpty();
+    }
+  }
+
+  private MessagePublisherImpl(Builder builder) {
+    this.pubsubRpc = builder.pubsubOptions.rpc();
+    this.topic = formatTopicName(builder.pubsubOptions.projectId(), builder.topic);
+    this.executorFactory = builder.pubsubOptions.executorFactory();
+    this.executor = executorFactory.get();
+    this.maxBatchMessages = firstNonNull(builder.maxBatchMessages, MAX_BATCH_MESSAGES);
+    this.maxBatchBytes = firstNonNull(builder.maxBatchBytes, MAX_BATCH_BYTES);
+    this.maxBatchDelayMillis = firstNonNull(builder.maxBatchDelayMillis, MAX_BATCH_DELAY_MILLIS);
+    this.maxInFlightBatches = firstNonNull(builder.maxInFlightBatches, MAX_IN_FLIGHT_BATCHES);
+    this.maxOutstandingBytes = firstNonNull(builder.maxOutstandingBytes, MAX_OUTSTANDING_BYTES);
+  }
+
+  @Override
+  public Future<String> publish(Message message) {
+    PendingMessage pendingMessage = new PendingMessage(message.toPb());
+    List<Batch> batchesToSend;
+    synchronized (lock) {
+      checkState(!closed, "Publisher is closed");
+      // A message larger than the limit is accepted when nothing else is outstanding
+      while (outstandingBytes > 0 && outstandingBytes + pendingMessage.size > maxOutstandingBytes) {
+        try {
+          lock.wait();
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new IllegalStateException("Interrupted while waiting to publish", ex);
+        }
+        checkState(!closed, "Publisher is closed");
+      }
+      outstandingBytes += pendingMessage.size;
+      if (!batch.isEmpty() && batch.bytes + pendingMessage.size > maxBatchBytes) {
+        queueBatch();
+      }
+      batch.add(pendingMessage);
+      if (batch.messages.size() >= maxBatchMessages || batch.bytes >= maxBatchBytes) {
+        queueBatch();
+      } else if (batch.messages.size() == 1) {
+        flushFuture = executor.schedule(new Runnable() {
+          @Override
+          public void run() {
+            flush();
+          }
+        }, maxBatchDelayMillis, TimeUnit.MILLISECONDS);
+      }
+      batchesToSend = batchesToSend();
+    }
+    send(batchesToSend);
+    return pendingMessage.future;
+  }
+
+  @Override
+  public void flush() {
+    List<Batch> batchesToSend;
+    synchronized (lock) {
+      if (!batch.isEmpty()) {
+        queueBatch();
+      }
+      batchesToSend = batchesToSend();
+    }
+    send(batchesToSend);
+  }
+
+  /**
+   * Moves the current batch to the queue of batches to send. Must be called holding the lock.
+   */
+  private void queueBatch() {
+    if (flushFuture != null) {
+      flushFuture.cancel(false);
+      flushFuture = null;
+    }
+    queuedBatches.add(batch);
+    batch = new Batch();
+  }
+
+  /**
+   * Returns the queued batches that can be sent without exceeding the maximum number of in-flight
+   * requests. Must be called holding the lock.
+   */
+  private List<Batch> batchesToSend() {
+    List<Batch> batches = new ArrayList<>();
+    while (inFlightBatches < maxInFlightBatches && !queuedBatches.isEmpty()) {
+      inFlightBatches++;
+      batches.add(queuedBatches.poll());
+    }
+    return batches;
+  }
+
+  private void send(List<Batch> batches) {
+    for (final Batch batchToSend : batches) {
+      PublishRequest.Builder builder = PublishRequest.newBuilder().setTopic(topic);
+      for (PendingMessage message : batchToSend.messages) {
+        builder.addMessages(message.message);
+      }
+      Future<PublishResponse> future;
+      try {
+        future = pubsubRpc.publish(builder.build());
+      } catch (RuntimeException ex) {
+        failed(batchToSend, ex);
+        continue;
+      }
+      ListenableFuture<PublishResponse> listenableFuture = future instanceof ListenableFuture
+          ? (ListenableFuture<PublishResponse>) future
+          : JdkFutureAdapters.listenInPoolThread(future);
+      Futures.addCallback(listenableFuture, new FutureCallback<PublishResponse>() {
+        @Override
+        public void onSuccess(PublishResponse response) {
+          List<String> messageIds = response.getMessageIdsList();
+          if (messageIds.size() != batchToSend.messages.size()) {
+            failed(batchToSend, new IllegalStateException("Expected "
+                + batchToSend.messages.size() + " message ids, got " + messageIds.size()));
+            return;
+          }
+          try {
+            for (int i = 0; i < batchToSend.messages.size(); i++) {
+              batchToSend.messages.get(i).future.set(messageIds.get(i));
+            }
+          } finally {
+            completed(batchToSend);
+          }
+        }
+
+        @Override
+        public void onFailure(Throwable error) {
+          failed(batchToSend, error);
+        }
+      });
+    }
+  }
+
+  /**
+   * Completes the futures of all messages in {@code failedBatch} with {@code error}.
+   */
+  private void failed(Batch failedBatch, Throwable error) {
+    try {
+      for (PendingMessage message : failedBatch.messages) {
+        message.future.setException(error);
+      }
+    } finally {
+      completed(failedBatch);
+    }
+  }
+
+  private void completed(Batch completedBatch) {
+    List<Batch> batchesToSend;
+    synchronized (lock) {
+      inFlightBatches--;
+      outstandingBytes -= completedBatch.bytes;
+      lock.notifyAll();
+      batchesToSend = batchesToSend();
+    }
+    send(batchesToSend);
+  }
+
+  /**
+   * Sends all buffered messages and waits until all publish requests have completed.
+   */
+  @Override
+  public void close() throws InterruptedException {
+    List<Batch> batchesToSend;
+    synchronized (lock) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!batch.isEmpty()) {
+        queueBatch();
+      }
+      batchesToSend = batchesToSend();
+    }
+    send(batchesToSend);
+    try {
+      synchronized (lock) {
+        lock.notifyAll();
+        while (inFlightBatches > 0 || !queuedBatches.isEmpty()) {
+          lock.wait();
+        }
+      }
+    } finally {
+      executorFactory.release(executor);
+    }
+  }
+
+  static final class Builder {
+    private final PubSubOptions pubsubOptions;
+    private final String topic;
+    private Integer maxBatchMessages;
+    private Integer maxBatchBytes;
+    private Long maxBatchDelayMillis;
+    private Integer maxInFlightBatches;
+    private Long maxOutstandingBytes;
+
+    Builder(PubSubOptions pubsubOptions, String topic) {
+      this.pubsubOptions = pubsubOptions;
+      this.topic = topic;
+    }
+
+    /**
+     * Sets the maximum number of messages sent in a single publish request.
+     */
+    Builder maxBatchMessages(Integer maxBatchMessages) {
+      this.maxBatchMessages = maxBatchMessages;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size, in bytes, of the messages sent in a single publish request.
+     */
+    Builder maxBatchBytes(Integer maxBatchBytes) {
+      this.maxBatchBytes = maxBatchBytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum time, in milliseconds, a message waits for its batch to be sent.
+     */
+    Builder maxBatchDelayMillis(Long maxBatchDelayMillis) {
+      this.maxBatchDelayMillis = maxBatchDelayMillis;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of publish requests sent concurrently.
+     */
+    Builder maxInFlightBatches(Integer maxInFlightBatches) {
+      this.maxInFlightBatches = maxInFlightBatches;
+      return this;
+    }
+
+    /**
+     * Sets the maximum size, in bytes, of the messages published but not yet acknowledged by the
+     * service.
+     */
+    Builder maxOutstandingBytes(Long maxOutstandingBytes) {
+      this.maxOutstandingBytes = maxOutstandingBytes;
+      return this;
+    }
+
+    /**
+     * Creates a {@code MessagePublisherImpl} object.
+     */
+    MessagePublisherImpl build() {
+      return new MessagePublisherImpl(this);
+    }
+  }
+
+  /**
+   * Returns a builder for {@code MessagePublisherImpl} objects given the service options and the
+   * topic to which messages must be published.
+   */
+  static Builder builder(PubSubOptions pubsubOptions, String topic) {
+    return new Builder(pubsubOptions, topic);
+  }
+}
@@ -16,6 +16,8 @@
 
 package com.google.cloud.pubsub;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.cloud.AsyncPage;
 import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
 import com.google.cloud.Page;
@@ -88,7 +90,11 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
 
     enum OptionType implements Option.OptionType {
       EXECUTOR_FACTORY,
-      MAX_QUEUED_CALLBACKS;
+      MAX_QUEUED_CALLBACKS,
+      MAX_CONCURRENT_PULLS,
+      PROCESSOR_THREADS,
+      MAX_QUEUED_BYTES,
+      ADAPTIVE_PULL_SIZE;
 
       @SuppressWarnings("unchecked")
       <T> T get(Map<Option.OptionType, ?> options) {
@@ -99,6 +105,14 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
         return get(options);
       }
 
+      Long getLong(Map<Option.OptionType, ?> options) {
+        return get(options);
+      }
+
+      Boolean getBoolean(Map<Option.OptionType, ?> options) {
+        return get(options);
+      }
+
       ExecutorFactory<ExecutorService> getExecutorFactory(Map<Option.OptionType, ?> options) {
         return get(options);
       }
@@ -119,6 +133,59 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
       return new PullOption(OptionType.MAX_QUEUED_CALLBACKS, maxQueuedCallbacks);
     }
 
+    /**
+     * Returns an option to specify the maximum total size, in bytes, of the messages that can be
+     * queued in the message consumer at any time. The consumer requests no more messages than the
+     * ones expected to fit in the limit, according to the average size of the processed messages.
+     * The limit might be exceeded by the messages returned by a single pull. If not provided, at
+     * most 100 MiB of messages can be in the queue.
+     *
+     * @throws IllegalArgumentException if {@code maxQueuedBytes} is not positive
+     */
+    public static PullOption maxQueuedBytes(long maxQueuedBytes) {
+      checkArgument(maxQueuedBytes > 0, "Max queued bytes must be > 0");
+      return new PullOption(OptionType.MAX_QUEUED_BYTES, maxQueuedBytes);
+    }
+
+    /**
+     * Returns an option to specify whether the number of queued messages should adapt to the
+     * observed processing latency. If {@code true}, the message consumer starts with a small queue
+     * and grows it while the time from pulling a message to the end of its processing stays close
+     * to the lowest observed, shrinking it when messages start waiting in the queue. The queue
+     * never exceeds the limits set by {@link #maxQueuedCallbacks(int)} and
+     * {@link #maxQueuedBytes(long)}. If not provided, the queue is not adapted.
+     */
+    public static PullOption adaptivePullSize(boolean adaptivePullSize) {
+      return new PullOption(OptionType.ADAPTIVE_PULL_SIZE, adaptivePullSize);
+    }
+
+    /**
+     * Returns an option to specify the number of pull requests the message consumer can have in
+     * flight at the same time. Concurrent pulls share the budget set by
+     * {@link #maxQueuedCallbacks(int)}: each pull requests at most its share of the queued
+     * messages. Using several concurrent pulls reduces the time spent waiting for pull round trips
+     * on busy subscriptions. If not provided, a single pull request is in flight at any time.
+     *
+     * @throws IllegalArgumentException if {@code maxConcurrentPulls} is not positive
+     */
+    public static PullOption maxConcurrentPulls(int maxConcurrentPulls) {
+      checkArgument(maxConcurrentPulls > 0, "Max concurrent pulls must be > 0");
+      return new PullOption(OptionType.MAX_CONCURRENT_PULLS, maxConcurrentPulls);
+    }
+
+    /**
+     * Returns an option to specify the number of threads used to execute message processor
+     * callbacks, that is the number of messages that can be processed at the same time. This option
+     * is ignored if an executor is provided with {@link #executorFactory(ExecutorFactory)}. If not
+     * provided, a single-threaded executor is used.
+     *
+     * @throws IllegalArgumentException if {@code processorThreads} is not positive
+     */
+    public static PullOption processorThreads(int processorThreads) {
+      checkArgument(processorThreads > 0, "Processor threads must be > 0");
+      return new PullOption(OptionType.PROCESSOR_THREADS, processorThreads);
+    }
+
     /**
      * Returns an option to specify the executor used to execute message processor callbacks. The
      * executor determines the number of messages that can be processed at the same time. If not
@@ -139,6 +206,102 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
     }
   }
 
+  /**
+   * Class for specifying options for publishing messages through a {@link MessagePublisher}.
+   */
+  final class PublishOption extends Option {
+
+    private static final long serialVersionUID = -3466436380837925473L;
+
+    enum OptionType implements Option.OptionType {
+      MAX_BATCH_MESSAGES,
+      MAX_BATCH_BYTES,
+      MAX_BATCH_DELAY_MILLIS,
+      MAX_IN_FLIGHT_BATCHES,
+      MAX_OUTSTANDING_BYTES;
+
+      @SuppressWarnings("unchecked")
+      <T> T get(Map<Option.OptionType, ?> options) {
+        return (T) options.get(this);
+      }
+
+      Integer getInteger(Map<Option.OptionType, ?> options) {
+        return get(options);
+      }
+
+      Long getLong(Map<Option.OptionType, ?> options) {
+        return get(options);
+      }
+    }
+
+    private PublishOption(Option.OptionType option, Object value) {
+      super(option, value);
+    }
+
+    /**
+     * Returns an option to specify the maximum number of messages sent in a single publish
+     * request. A batch is sent as soon as it holds this many messages. If not provided, at most 100
+     * messages are sent in a single request.
+     *
+     * @throws IllegalArgumentException if {@code maxBatchMessages} is not in the range [1, 1000]
+     */
+    public static PublishOption maxBatchMessages(int maxBatchMessages) {
+      checkArgument(maxBatchMessages > 0 && maxBatchMessages <= 1000,
+          "Max batch messages must be in the range [1, 1000]");
+      return new PublishOption(OptionType.MAX_BATCH_MESSAGES, maxBatchMessages);
+    }
+
+    /**
+     * Returns an option to specify the maximum size, in bytes, of the messages sent in a single
+     * publish request. A batch is sent as soon as it reaches this size. A message larger than this
+     * value is sent in a request of its own. If not provided, at most 1000000 bytes are sent in a
+     * single request.
+     *
+     * @throws IllegalArgumentException if {@code maxBatchBytes} is not positive
+     */
+    public static PublishOption maxBatchBytes(int maxBatchBytes) {
+      checkArgument(maxBatchBytes > 0, "Max batch bytes must be > 0");
+      return new PublishOption(OptionType.MAX_BATCH_BYTES, maxBatchBytes);
+    }
+
+    /**
+     * Returns an option to specify the maximum time a published message waits for its batch to be
+     * sent. If not provided, a batch is sent at most 10 milliseconds after its first message was
+     * published.
+     *
+     * @throws IllegalArgumentException if {@code maxBatchDelay} is negative
+     */
+    public static PublishOption maxBatchDelay(long maxBatchDelay, TimeUnit unit) {
+      checkArgument(maxBatchDelay >= 0, "Max batch delay must be >= 0");
+      return new PublishOption(OptionType.MAX_BATCH_DELAY_MILLIS, unit.toMillis(maxBatchDelay));
+    }
+
+    /**
+     * Returns an option to specify the maximum number of publish requests that can be sent
+     * concurrently. Batches ready to be sent wait for one of the requests to complete. If not
+     * provided, at most 10 requests are sent concurrently.
+     *
+     * @throws IllegalArgumentException if {@code maxInFlightBatches} is not positive
+     */
+    public static PublishOption maxInFlightBatches(int maxInFlightBatches) {
+      checkArgument(maxInFlightBatches > 0, "Max in-flight batches must be > 0");
+      return new PublishOption(OptionType.MAX_IN_FLIGHT_BATCHES, maxInFlightBatches);
+    }
+
+    /**
+     * Returns an option to specify the maximum size, in bytes, of the messages that were published
+     * but not yet acknowledged by the service. {@link MessagePublisher#publish(Message)} blocks
+     * while this limit is exceeded. If not provided, at most 100 MiB of messages can be
+     * outstanding.
+     *
+     * @throws IllegalArgumentException if {@code maxOutstandingBytes} is not positive
+     */
+    public static PublishOption maxOutstandingBytes(long maxOutstandingBytes) {
+      checkArgument(maxOutstandingBytes > 0, "Max outstanding bytes must be > 0");
+      return new PublishOption(OptionType.MAX_OUTSTANDING_BYTES, maxOutstandingBytes);
+    }
+  }
+
   /**
    * A callback to process pulled messages. The received message will be ack'ed upon successful
    * return or nack'ed if exception is thrown.
@@ -164,6 +327,36 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
     void close() throws Exception;
   }
 
+  /**
+   * An interface to publish messages to a topic in batches. Published messages are collected and
+   * sent together in a single publish request.
+   */
+  interface MessagePublisher extends AutoCloseable {
+
+    /**
+     * Adds a message to the current batch. This method returns a {@code Future} object that is
+     * completed with the service-generated id of the message once its batch was published. This
+     * method blocks if the size of the outstanding messages exceeds the limit set by
+     * {@link PublishOption#maxOutstandingBytes(long)}.
+     *
+     * @throws IllegalStateException if the publisher is closed
+     */
+    Future<String> publish(Message message);
+
+    /**
+     * Sends the messages in the current batch without waiting for the batch to fill up or for the
+     * maximum batch delay to elapse.
+     */
+    void flush();
+
+    /**
+     * Sends all messages in the current batch and waits for all publish requests to complete.
+     * Messages can no longer be published after this method is called.
+     */
+    @Override
+    void close() throws Exception;
+  }
+
   /**
    * Creates a new topic.
    *
@@ -441,6 +634,30 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
    */
   Future<List<String>> publishAsync(String topic, Iterable<Message> messages);
 
+  /**
+   * Returns a message publisher for the provided topic. The publisher collects messages into
+   * batches and sends each batch in a single publish request, once the batch is full or after a
+   * maximum delay. Several batches can be in flight at the same time. Each published message gets
+   * its own {@code Future} for its service-generated id. The publisher must be closed to send any
+   * remaining messages and release its resources.
+   *
+   * <p>Example of publishing messages in batches.
+   * <pre> {@code
+   * String topicName = "my_topic_name";
+   * MessagePublisher publisher = pubsub.publisher(topicName,
+   *     PublishOption.maxBatchMessages(500), PublishOption.maxBatchDelay(50, TimeUnit.MILLISECONDS));
+   * List<Future<String>> futures = new LinkedList<>();
+   * for (int i = 0; i < 1000; i++) {
+   *   futures.add(publisher.publish(Message.of("payload" + i)));
+   * }
+   * publisher.close();
+   * }</pre>
+   *
+   * @param topic the topic where messages are published
+   * @param options publishing options
+   */
+  MessagePublisher publisher(String topic, PublishOption... options);
+
   /**
    * Creates a new subscription.
    *
@@ -763,9 +980,14 @@ public interface PubSub extends AutoCloseable, Service<PubSubOptions> {
    * acknowledged or "nacked".
    *
    * <p>The {@link PullOption#maxQueuedCallbacks(int)} option can be used to control the maximum
-   * number of queued messages (messages either being processed or waiting to be processed). The
+   * number of queued messages (messages either being processed or waiting to be processed),
+   * {@link PullOption#maxQueuedBytes(long)} their maximum total size and
+   * {@link PullOption#adaptivePullSize(boolean)} lets the consumer adapt the number of queued
+   * messages to the observed processing latency. The
    * {@link PullOption#executorFactory(ExecutorFactory)} can be used to provide an executor to run
-   * message processor callbacks.
+   * message processor callbacks, {@link PullOption#processorThreads(int)} to set the number of
+   * threads of the default executor. The {@link PullOption#maxConcurrentPulls(int)} option can be
+   * used to have several pull requests in flight at the same time.
    *
    * <p>Example of continuously pulling messages from a subscription.
    * <pre> {@code
@@ -18,8 +18,17 @@ package com.google.cloud.pubsub;
 
 import static com.google.cloud.pubsub.PubSub.ListOption.OptionType.PAGE_SIZE;
 import static com.google.cloud.pubsub.PubSub.ListOption.OptionType.PAGE_TOKEN;
+import static com.google.cloud.pubsub.PubSub.PublishOption.OptionType.MAX_BATCH_BYTES;
+import static com.google.cloud.pubsub.PubSub.PublishOption.OptionType.MAX_BATCH_DELAY_MILLIS;
+import static com.google.cloud.pubsub.PubSub.PublishOption.OptionType.MAX_BATCH_MESSAGES;
+import static com.google.cloud.pubsub.PubSub.PublishOption.OptionType.MAX_IN_FLIGHT_BATCHES;
+import static com.google.cloud.pubsub.PubSub.PublishOption.OptionType.MAX_OUTSTANDING_BYTES;
+import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.ADAPTIVE_PULL_SIZE;
 import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.EXECUTOR_FACTORY;
+import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.MAX_CONCURRENT_PULLS;
+import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.MAX_QUEUED_BYTES;
 import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.MAX_QUEUED_CALLBACKS;
+import static com.google.cloud.pubsub.PubSub.PullOption.OptionType.PROCESSOR_THREADS;
 import static com.google.common.base.MoreObjects.firstNonNull;
 import static com.google.common.base.Preconditions.checkArgument;
 
@@ -340,6 +349,18 @@ class PubSubImpl extends BaseService<PubSubOptions> implements PubSub {
         });
   }
 
+  @Override
+  public MessagePublisher publisher(String topic, PublishOption... options) {
+    Map<Option.OptionType, ?> optionMap = optionMap(options);
+    return MessagePublisherImpl.builder(options(), topic)
+        .maxBatchMessages(MAX_BATCH_MESSAGES.getInteger(optionMap))
+        .maxBatchBytes(MAX_BATCH_BYTES.getInteger(optionMap))
+        .maxBatchDelayMillis(MAX_BATCH_DELAY_MILLIS.getLong(optionMap))
+        .maxInFlightBatches(MAX_IN_FLIGHT_BATCHES.getInteger(optionMap))
+        .maxOutstandingBytes(MAX_OUTSTANDING_BYTES.getLong(optionMap))
+        .build();
+  }
+
   @Override
   public Subscription create(SubscriptionInfo subscription) {
     return get(createAsync(subscription));
@@ -538,6 +559,10 @@ class PubSubImpl extends BaseService<PubSubOptions> implements PubSub {
     Map<Option.OptionType, ?> optionMap = optionMap(options);
     return MessageConsumerImpl.builder(options(), subscription, ackDeadlineRenewer, callback)
         .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS.getInteger(optionMap))
+        .maxConcurrentPulls(MAX_CONCURRENT_PULLS.getInteger(optionMap))
+        .processorThreads(PROCESSOR_THREADS.getInteger(optionMap))
+        .maxQueuedBytes(MAX_QUEUED_BYTES.getLong(optionMap))
+        .adaptivePullSize(ADAPTIVE_PULL_SIZE.getBoolean(optionMap))
         .executorFactory(EXECUTOR_FACTORY.getExecutorFactory(optionMap))
         .build();
   }
@@ -22,6 +22,8 @@ import com.google.cloud.AsyncPage;
 import com.google.cloud.Page;
 import com.google.cloud.Policy;
 import com.google.cloud.pubsub.PubSub.ListOption;
+import com.google.cloud.pubsub.PubSub.MessagePublisher;
+import com.google.cloud.pubsub.PubSub.PublishOption;
 import com.google.common.base.Function;
 
 import java.io.IOException;
@@ -320,6 +322,25 @@ public class Topic extends TopicInfo {
     return pubsub.publishAsync(name(), messages);
   }
 
+  /**
+   * Returns a message publisher for this topic. The publisher collects messages into batches and
+   * sends each batch in a single publish request. Use {@link PublishOption} to configure batch
+   * limits and flow control.
+   *
+   * <p>Example of publishing messages in batches.
+   * <pre> {@code
+   * MessagePublisher publisher = topic.publisher(PublishOption.maxBatchMessages(500));
+   * Future<String> future = publisher.publish(Message.of("payload"));
+   * publisher.close();
+   * String messageId = future.get();
+   * }</pre>
+   *
+   * @param options publishing options
+   */
+  public MessagePublisher publisher(PublishOption... options) {
+    return pubsub.publisher(name(), options);
+  }
+
   /**
    * Lists the identities of the subscriptions for this topic. This method returns a {@link Page}
    * object that can be used to consume paginated results. Use {@link ListOption} to specify the
@@ -16,8 +16,10 @@
 
 package com.google.cloud.pubsub;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
+import com.google.cloud.Clock;
 import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
 import com.google.common.collect.ImmutableList;
 
@@ -29,6 +31,10 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.Timeout;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -39,6 +45,8 @@ import java.util.concurrent.atomic.AtomicLong;
 public class AckDeadlineRenewerTest {
 
   private static final int MIN_DEADLINE_MILLIS = 10_000;
+  // Aligned to the renewer's 1 second ticks
+  private static final long START_MILLIS = 1_000_000;
 
   private static final String SUBSCRIPTION1 = "subscription1";
   private static final String SUBSCRIPTION2 = "subscription2";
@@ -81,6 +89,82 @@ public class AckDeadlineRenewerTest {
     };
   }
 
+  /**
+   * A clock whose time is only changed by tests.
+   */
+  private static final class TestClock extends Clock {
+
+    private long millis = START_MILLIS;
+
+    @Override
+    public synchronized long millis() {
+      return millis;
+    }
+
+    synchronized void set(long millis) {
+      this.millis = millis;
+    }
+  }
+
+  /**
+   * An executor factory whose executor records the renewals scheduled by the renewer, so that
+   * tests can run them at the time of their choice.
+   */
+  private static final class ManualExecutorFactory
+      implements ExecutorFactory<ScheduledExecutorService> {
+
+    private final Deque<Runnable> renewals = new ArrayDeque<>();
+    private final List<Long> delays = new ArrayList<>();
+    private final ScheduledExecutorService executor =
+        EasyMock.createMock(ScheduledExecutorService.class);
+    private int released;
+
+    @SuppressWarnings("unchecked")
+    ManualExecutorFactory() {
+      final ScheduledFuture future = EasyMock.createNiceMock(ScheduledFuture.class);
+      EasyMock.expect((ScheduledFuture) executor.schedule(EasyMock.<Runnable>anyObject(),
+          EasyMock.anyLong(), EasyMock.eq(TimeUnit.MILLISECONDS)))
+          .andAnswer(new IAnswer<ScheduledFuture>() {
+            @Override
+            public ScheduledFuture answer() {
+              Object[] arguments = EasyMock.getCurrentArguments();
+              renewals.addLast((Runnable) arguments[0]);
+              delays.add((Long) arguments[1]);
+              return future;
+            }
+          }).anyTimes();
+      EasyMock.replay(executor, future);
+    }
+
+    @Override
+    public ScheduledExecutorService get() {
+      return executor;
+    }
+
+    @Override
+    public void release(ScheduledExecutorService executor) {
+      released++;
+    }
+
+    void runNextRenewal() {
+      renewals.removeFirst().run();
+    }
+  }
+
+  private static AckDeadlineRenewer createRenewer(PubSub pubsub, Clock clock,
+      ManualExecutorFactory executorFactory) {
+    PubSubOptions options = PubSubOptions.builder()
+        .projectId("projectId")
+        .clock(clock)
+        .executorFactory(executorFactory)
+        .build();
+    EasyMock.expect(pubsub.options()).andReturn(options);
+    EasyMock.replay(pubsub);
+    AckDeadlineRenewer renewer = new AckDeadlineRenewer(pubsub);
+    EasyMock.reset(pubsub);
+    return renewer;
+  }
+
   @Test
   public void testAddOneMessage() throws InterruptedException {
     EasyMock.reset(pubsub);
@@ -283,4 +367,110 @@ public class AckDeadlineRenewerTest {
     ackDeadlineRenewer.close();
     EasyMock.verify(pubsub, executor, executorFactory, future);
   }
+
+  @Test
+  public void testAddAfterRemoveSkipsStaleEntry() throws Exception {
+    PubSub pubsub = EasyMock.createStrictMock(PubSub.class);
+    TestClock clock = new TestClock();
+    ManualExecutorFactory executorFactory = new ManualExecutorFactory();
+    AckDeadlineRenewer renewer = createRenewer(pubsub, clock, executorFactory);
+    // the message is renewed once, for the entry added last
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION1, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID1))).andReturn(null);
+    EasyMock.replay(pubsub);
+    renewer.add(SUBSCRIPTION1, ACK_ID1);
+    renewer.remove(SUBSCRIPTION1, ACK_ID1);
+    clock.set(START_MILLIS + 5_000);
+    renewer.add(SUBSCRIPTION1, ACK_ID1);
+    // the first renewal only finds the removed entry, the added one is not due yet
+    clock.set(START_MILLIS + 8_000);
+    executorFactory.runNextRenewal();
+    clock.set(START_MILLIS + 13_000);
+    executorFactory.runNextRenewal();
+    assertEquals(ImmutableList.of(8_000L, 5_000L, 8_000L), executorFactory.delays);
+    renewer.close();
+    EasyMock.verify(pubsub);
+  }
+
+  @Test
+  public void testAddDuringRenewalSchedulesNextRenewal() throws Exception {
+    PubSub pubsub = EasyMock.createStrictMock(PubSub.class);
+    final TestClock clock = new TestClock();
+    ManualExecutorFactory executorFactory = new ManualExecutorFactory();
+    final AckDeadlineRenewer renewer = createRenewer(pubsub, clock, executorFactory);
+    // while the renewal is running the renewed message is removed and another one is added
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION1, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID1))).andAnswer(new IAnswer<Future<Void>>() {
+          @Override
+          public Future<Void> answer() {
+            renewer.remove(SUBSCRIPTION1, ACK_ID1);
+            renewer.add(SUBSCRIPTION2, ACK_ID2);
+            return null;
+          }
+        });
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION2, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID2))).andReturn(null);
+    EasyMock.replay(pubsub);
+    renewer.add(SUBSCRIPTION1, ACK_ID1);
+    clock.set(START_MILLIS + 8_000);
+    executorFactory.runNextRenewal();
+    // the renewal in progress did not see the added message, but schedules the next one for it
+    assertEquals(ImmutableList.of(8_000L, 8_000L), executorFactory.delays);
+    clock.set(START_MILLIS + 16_000);
+    executorFactory.runNextRenewal();
+    renewer.close();
+    EasyMock.verify(pubsub);
+  }
+
+  @Test
+  public void testEntryOfNextWheelTurnIsKept() throws Exception {
+    PubSub pubsub = EasyMock.createStrictMock(PubSub.class);
+    TestClock clock = new TestClock();
+    ManualExecutorFactory executorFactory = new ManualExecutorFactory();
+    AckDeadlineRenewer renewer = createRenewer(pubsub, clock, executorFactory);
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION1, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID1))).andReturn(null);
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION1, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID2, ACK_ID1))).andReturn(null);
+    EasyMock.replay(pubsub);
+    renewer.add(SUBSCRIPTION1, ACK_ID1);
+    // ACK_ID2 lands in the slot of the first tick processed by the next renewal, a turn later
+    clock.set(START_MILLIS + 7_000);
+    renewer.add(SUBSCRIPTION1, ACK_ID2);
+    clock.set(START_MILLIS + 8_000);
+    executorFactory.runNextRenewal();
+    // the next renewal is scheduled for ACK_ID2, which was put back into its slot
+    assertEquals(ImmutableList.of(8_000L, 7_000L), executorFactory.delays);
+    clock.set(START_MILLIS + 15_000);
+    executorFactory.runNextRenewal();
+    renewer.close();
+    EasyMock.verify(pubsub);
+  }
+
+  @Test
+  public void testCloseDuringRenewal() throws Exception {
+    PubSub pubsub = EasyMock.createStrictMock(PubSub.class);
+    TestClock clock = new TestClock();
+    ManualExecutorFactory executorFactory = new ManualExecutorFactory();
+    final AckDeadlineRenewer renewer = createRenewer(pubsub, clock, executorFactory);
+    EasyMock.expect(pubsub.modifyAckDeadlineAsync(SUBSCRIPTION1, MIN_DEADLINE_MILLIS,
+        TimeUnit.MILLISECONDS, ImmutableList.of(ACK_ID1))).andAnswer(new IAnswer<Future<Void>>() {
+          @Override
+          public Future<Void> answer() throws Exception {
+            renewer.close();
+            return null;
+          }
+        });
+    EasyMock.replay(pubsub);
+    renewer.add(SUBSCRIPTION1, ACK_ID1);
+    clock.set(START_MILLIS + 8_000);
+    executorFactory.runNextRenewal();
+    // no renewal is scheduled after close, adding messages does nothing
+    renewer.add(SUBSCRIPTION1, ACK_ID2);
+    assertEquals(ImmutableList.of(8_000L), executorFactory.delays);
+    assertEquals(1, executorFactory.released);
+    renewer.close();
+    assertEquals(1, executorFactory.released);
+    EasyMock.verify(pubsub);
+  }
 }
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub;
+
+import static org.junit.Assert.assertEquals;
+
+import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.Futures;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class AckDispatcherTest {
+
+  private static final String SUBSCRIPTION1 = "subscription1";
+  private static final String SUBSCRIPTION2 = "subscription2";
+  private static final String ACK_ID1 = "ack-id1";
+  private static final String ACK_ID2 = "ack-id2";
+  private static final String ACK_ID3 = "ack-id3";
+  private static final long NO_DELAY = TimeUnit.HOURS.toMillis(1);
+  private static final Future<Void> SUCCESS = Futures.immediateFuture(null);
+  private static final Future<Void> FAILURE =
+      Futures.immediateFailedFuture(new PubSubException(new IOException(), true));
+
+  private PubSub pubsub;
+  private PubSubOptions options;
+
+  @Rule
+  public Timeout globalTimeout = Timeout.seconds(60);
+
+  @Before
+  public void setUp() {
+    pubsub = EasyMock.createStrictMock(PubSub.class);
+    options = EasyMock.createMock(PubSubOptions.class);
+    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.executorFactory())
+        .andReturn(new MessageConsumerImplTest.TestScheduledExecutorFactory());
+    EasyMock.replay(options);
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(pubsub, options);
+  }
+
+  private static IAnswer<Future<Void>> createAnswer(final CountDownLatch latch,
+      final Future<Void> result) {
+    return new IAnswer<Future<Void>>() {
+      @Override
+      public Future<Void> answer() {
+        latch.countDown();
+        return result;
+      }
+    };
+  }
+
+  @Test
+  public void testFlushOnClose() {
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(SUCCESS);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION2, ImmutableList.of(ACK_ID1))).andReturn(SUCCESS);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID3)))
+        .andReturn(SUCCESS);
+    EasyMock.replay(pubsub);
+    AckDispatcher dispatcher = AckDispatcher.builder(options)
+        .maxBatchDelayMillis(NO_DELAY)
+        .build();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+    dispatcher.ack(SUBSCRIPTION2, ACK_ID1);
+    dispatcher.nack(SUBSCRIPTION1, ACK_ID3);
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID2);
+    dispatcher.close();
+    // closing again should do nothing
+    dispatcher.close();
+  }
+
+  @Test
+  public void testFlushOnBatchSize() {
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(SUCCESS);
+    EasyMock.replay(pubsub);
+    AckDispatcher dispatcher = AckDispatcher.builder(options)
+        .maxBatchSize(2)
+        .maxBatchDelayMillis(NO_DELAY)
+        .build();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+    dispatcher.nack(SUBSCRIPTION1, ACK_ID3);
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID2);
+    EasyMock.verify(pubsub);
+    EasyMock.reset(pubsub);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID3)))
+        .andReturn(SUCCESS);
+    EasyMock.replay(pubsub);
+    dispatcher.close();
+  }
+
+  @Test
+  public void testFlushOnDelay() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(2);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andAnswer(createAnswer(latch, SUCCESS));
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION2, ImmutableList.of(ACK_ID3)))
+        .andAnswer(createAnswer(latch, SUCCESS));
+    EasyMock.replay(pubsub);
+    AckDispatcher dispatcher = AckDispatcher.builder(options)
+        .maxBatchDelayMillis(10L)
+        .build();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID2);
+    dispatcher.nack(SUBSCRIPTION2, ACK_ID3);
+    latch.await();
+    dispatcher.close();
+  }
+
+  @Test
+  public void testRetryFailedGroup() throws InterruptedException {
+    CountDownLatch latch = new CountDownLatch(3);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andAnswer(createAnswer(latch, FAILURE)).times(2);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andAnswer(createAnswer(latch, SUCCESS));
+    EasyMock.replay(pubsub);
+    AckDispatcher dispatcher = AckDispatcher.builder(options)
+        .maxBatchSize(2)
+        .maxBatchDelayMillis(10L)
+        .build();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID2);
+    latch.await();
+    dispatcher.close();
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testRetryGivesUp() {
+    final int maxAttempts = 3;
+    final AtomicInteger attempts = new AtomicInteger();
+    final Deque<Runnable> retries = new ArrayDeque<>();
+    ExecutorFactory<ScheduledExecutorService> executorFactory =
+        EasyMock.createStrictMock(ExecutorFactory.class);
+    ScheduledExecutorService executor = EasyMock.createMock(ScheduledExecutorService.class);
+    EasyMock.reset(options);
+    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.executorFactory()).andReturn(executorFactory);
+    EasyMock.expect(executorFactory.get()).andReturn(executor);
+    EasyMock.expect((ScheduledFuture) executor.schedule(EasyMock.anyObject(Runnable.class),
+        EasyMock.eq(10L), EasyMock.eq(TimeUnit.MILLISECONDS)))
+        .andAnswer(new IAnswer<ScheduledFuture>() {
+          @Override
+          public ScheduledFuture answer() {
+            retries.add((Runnable) EasyMock.getCurrentArguments()[0]);
+            return null;
+          }
+        }).anyTimes();
+    executorFactory.release(executor);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1)))
+        .andAnswer(new IAnswer<Future<Void>>() {
+          @Override
+          public Future<Void> answer() {
+            attempts.incrementAndGet();
+            return FAILURE;
+          }
+        }).anyTimes();
+    EasyMock.replay(options, pubsub, executorFactory, executor);
+    AckDispatcher dispatcher = AckDispatcher.builder(options)
+        .maxBatchSize(1)
+        .maxBatchDelayMillis(10L)
+        .maxAttempts(maxAttempts)
+        .build();
+    dispatcher.nack(SUBSCRIPTION1, ACK_ID1);
+    // run scheduled retries, stopping as soon as the dispatcher retries more than expected
+    while (!retries.isEmpty() && attempts.get() <= maxAttempts) {
+      retries.poll().run();
+    }
+    dispatcher.close();
+    assertEquals(maxAttempts, attempts.get());
+    EasyMock.verify(executorFactory, executor);
+  }
+
+  @Test
+  public void testAckAfterClose() {
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1))).andReturn(SUCCESS);
+    EasyMock.replay(pubsub);
+    AckDispatcher dispatcher = AckDispatcher.builder(options).build();
+    dispatcher.close();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testCloseReleasesExecutor() {
+    ExecutorFactory<ScheduledExecutorService> executorFactory =
+        EasyMock.createStrictMock(ExecutorFactory.class);
+    ScheduledExecutorService executor = EasyMock.createStrictMock(ScheduledExecutorService.class);
+    ScheduledFuture<?> future = EasyMock.createStrictMock(ScheduledFuture.class);
+    EasyMock.reset(options);
+    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.executorFactory()).andReturn(executorFactory);
+    EasyMock.expect(executorFactory.get()).andReturn(executor);
+    EasyMock.expect(executor.schedule(EasyMock.anyObject(Runnable.class),
+        EasyMock.eq(AckDispatcher.MAX_BATCH_DELAY_MILLIS), EasyMock.eq(TimeUnit.MILLISECONDS)))
+        .andReturn((ScheduledFuture) future);
+    EasyMock.expect(future.cancel(false)).andReturn(true);
+    executorFactory.release(executor);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION1, ImmutableList.of(ACK_ID1))).andReturn(SUCCESS);
+    EasyMock.replay(options, pubsub, executorFactory, executor, future);
+    AckDispatcher dispatcher = AckDispatcher.builder(options).build();
+    dispatcher.ack(SUBSCRIPTION1, ACK_ID1);
+    dispatcher.close();
+    EasyMock.verify(executorFactory, executor, future);
+  }
+}
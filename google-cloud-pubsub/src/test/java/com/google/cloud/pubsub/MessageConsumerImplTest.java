@@ -16,15 +16,21 @@
 
 package com.google.cloud.pubsub;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
 import com.google.cloud.pubsub.PubSub.MessageConsumer;
 import com.google.cloud.pubsub.PubSub.MessageProcessor;
 import com.google.cloud.pubsub.spi.PubSubRpc;
 import com.google.cloud.pubsub.spi.PubSubRpc.PullCallback;
 import com.google.cloud.pubsub.spi.PubSubRpc.PullFuture;
+import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.ForwardingListenableFuture;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
 import com.google.pubsub.v1.PullRequest;
 import com.google.pubsub.v1.PullResponse;
 
@@ -37,8 +43,12 @@ import org.junit.Test;
 import org.junit.rules.Timeout;
 
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Future;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class MessageConsumerImplTest {
 
@@ -77,11 +87,14 @@ public class MessageConsumerImplTest {
     }
   };
   private static final PullResponse EMPTY_RESPONSE = PullResponse.getDefaultInstance();
+  // acks are only sent when the consumer is closed
+  private static final long ACK_DELAY_MILLIS = TimeUnit.HOURS.toMillis(1);
 
   private PubSubRpc pubsubRpc;
   private PubSub pubsub;
   private PubSubOptions options;
   private AckDeadlineRenewer renewer;
+  private ExecutorFactory<ScheduledExecutorService> ackExecutorFactory;
 
   @Rule
   public Timeout globalTimeout = Timeout.seconds(60);
@@ -94,6 +107,10 @@ public class MessageConsumerImplTest {
       super(Futures.immediateFuture(response));
     }
 
+    TestPullFuture(ListenableFuture<PullResponse> response) {
+      super(response);
+    }
+
     @Override
     public void addCallback(final PullCallback callback) {
       Futures.addCallback(delegate(), new FutureCallback<PullResponse>() {
@@ -110,12 +127,27 @@ public class MessageConsumerImplTest {
     }
   }
 
+  static final class TestScheduledExecutorFactory
+      implements ExecutorFactory<ScheduledExecutorService> {
+
+    @Override
+    public ScheduledExecutorService get() {
+      return Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @Override
+    public void release(ScheduledExecutorService executor) {
+      executor.shutdown();
+    }
+  }
+
   @Before
   public void setUp() {
     pubsubRpc = EasyMock.createStrictMock(PubSubRpc.class);
     pubsub = EasyMock.createMock(PubSub.class);
     options = EasyMock.createStrictMock(PubSubOptions.class);
     renewer = EasyMock.createMock(AckDeadlineRenewer.class);
+    ackExecutorFactory = new TestScheduledExecutorFactory();
   }
 
   @After
@@ -135,6 +167,25 @@ public class MessageConsumerImplTest {
         .build();
   }
 
+  /**
+   * Returns a message processor that waits for {@code latch} before processing the message with
+   * the provided acknowledge id. If {@code fail} is {@code true} the processor throws.
+   */
+  private static MessageProcessor processor(final String ackId, final CountDownLatch latch,
+      final boolean fail) {
+    return new MessageProcessor() {
+      @Override
+      public void process(Message message) throws Exception {
+        if (ackId.equals(((ReceivedMessage) message).ackId())) {
+          latch.await();
+        }
+        if (fail) {
+          throw new RuntimeException();
+        }
+      }
+    };
+  }
+
   private static IAnswer<Void> createAnswer(final CountDownLatch latch) {
     return new IAnswer<Void>() {
       @Override
@@ -149,12 +200,13 @@ public class MessageConsumerImplTest {
   public void testMessageConsumerAck() throws Exception {
     PullRequest request = pullRequest(MAX_QUEUED_CALLBACKS);
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     EasyMock.expect(pubsub.options()).andReturn(options).times(2);
     final CountDownLatch latch = new CountDownLatch(2);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID2)).andReturn(null);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request)).andReturn(new TestPullFuture(PULL_RESPONSE));
     EasyMock.expect(pubsubRpc.pull(EasyMock.<PullRequest>anyObject()))
@@ -171,6 +223,7 @@ public class MessageConsumerImplTest {
     try (MessageConsumer consumer =
          MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, DO_NOTHING_PROCESSOR)
              .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+             .maxAckDelayMillis(ACK_DELAY_MILLIS)
              .build()) {
       latch.await();
     }
@@ -180,12 +233,13 @@ public class MessageConsumerImplTest {
   public void testMessageConsumerNack() throws Exception {
     PullRequest request = pullRequest(MAX_QUEUED_CALLBACKS);
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     EasyMock.expect(pubsub.options()).andReturn(options).times(2);
     final CountDownLatch latch = new CountDownLatch(2);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID2)).andReturn(null);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request)).andReturn(new TestPullFuture(PULL_RESPONSE));
     EasyMock.expect(pubsubRpc.pull(EasyMock.<PullRequest>anyObject()))
@@ -202,6 +256,7 @@ public class MessageConsumerImplTest {
     try (MessageConsumer consumer =
         MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, THROW_PROCESSOR)
             .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+            .maxAckDelayMillis(ACK_DELAY_MILLIS)
             .build()) {
       latch.await();
     }
@@ -218,20 +273,14 @@ public class MessageConsumerImplTest {
         .addReceivedMessages(MESSAGE2_PB)
         .build();
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     final CountDownLatch nextPullLatch = new CountDownLatch(1);
     final CountDownLatch latch = new CountDownLatch(2);
-    EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID1)).andAnswer(new IAnswer<Future<Void>>() {
-      @Override
-      public Future<Void> answer() throws Throwable {
-        nextPullLatch.await();
-        return null;
-      }
-    });
-    EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID2)).andReturn(null);
+    EasyMock.expect(pubsub.options()).andReturn(options).times(2);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request1)).andReturn(new TestPullFuture(response1));
     EasyMock.expect(pubsubRpc.pull(request2)).andAnswer(new IAnswer<PullFuture>() {
@@ -253,8 +302,9 @@ public class MessageConsumerImplTest {
     EasyMock.expectLastCall().andAnswer(createAnswer(latch));
     EasyMock.replay(pubsubRpc, options, renewer);
     try (MessageConsumer consumer =
-        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, DO_NOTHING_PROCESSOR)
+        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, processor(ACK_ID1, nextPullLatch, false))
             .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+            .maxAckDelayMillis(ACK_DELAY_MILLIS)
             .build()) {
       latch.await();
     }
@@ -271,20 +321,14 @@ public class MessageConsumerImplTest {
         .addReceivedMessages(MESSAGE2_PB)
         .build();
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     final CountDownLatch nextPullLatch = new CountDownLatch(1);
     final CountDownLatch latch = new CountDownLatch(2);
-    EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID1)).andAnswer(new IAnswer<Future<Void>>() {
-      @Override
-      public Future<Void> answer() throws Throwable {
-        nextPullLatch.await();
-        return null;
-      }
-    });
-    EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID2)).andReturn(null);
+    EasyMock.expect(pubsub.options()).andReturn(options).times(2);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request1)).andReturn(new TestPullFuture(response1));
     EasyMock.expect(pubsubRpc.pull(request2)).andAnswer(new IAnswer<PullFuture>() {
@@ -306,8 +350,9 @@ public class MessageConsumerImplTest {
     EasyMock.expectLastCall().andAnswer(createAnswer(latch));
     EasyMock.replay(pubsubRpc, options, renewer);
     try (MessageConsumer consumer =
-        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, THROW_PROCESSOR)
+        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, processor(ACK_ID1, nextPullLatch, true))
             .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+            .maxAckDelayMillis(ACK_DELAY_MILLIS)
             .build()) {
       latch.await();
     }
@@ -321,21 +366,15 @@ public class MessageConsumerImplTest {
         .addReceivedMessages(MESSAGE1_PB)
         .build();
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     EasyMock.expect(pubsub.options()).andReturn(options).times(2);
     final CountDownLatch nextPullLatch = new CountDownLatch(1);
     final CountDownLatch latch = new CountDownLatch(3);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID2)).andAnswer(new IAnswer<Future<Void>>() {
-      @Override
-      public Future<Void> answer() throws Throwable {
-        nextPullLatch.await();
-        return null;
-      }
-    });
     EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2, ACK_ID1)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request1)).andReturn(new TestPullFuture(PULL_RESPONSE));
     EasyMock.expect(pubsubRpc.pull(request2)).andAnswer(new IAnswer<PullFuture>() {
@@ -361,8 +400,9 @@ public class MessageConsumerImplTest {
     EasyMock.expectLastCall().andAnswer(createAnswer(latch));
     EasyMock.replay(pubsubRpc, options, renewer);
     try (MessageConsumer consumer =
-         MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, DO_NOTHING_PROCESSOR)
+         MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, processor(ACK_ID2, nextPullLatch, false))
              .maxQueuedCallbacks(2)
+             .maxAckDelayMillis(ACK_DELAY_MILLIS)
              .build()) {
       latch.await();
     }
@@ -376,21 +416,15 @@ public class MessageConsumerImplTest {
         .addReceivedMessages(MESSAGE1_PB)
         .build();
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
     EasyMock.expect(pubsub.options()).andReturn(options).times(2);
     final CountDownLatch nextPullLatch = new CountDownLatch(1);
     final CountDownLatch latch = new CountDownLatch(3);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID2)).andAnswer(new IAnswer<Future<Void>>() {
-      @Override
-      public Future<Void> answer() throws Throwable {
-        nextPullLatch.await();
-        return null;
-      }
-    });
     EasyMock.expect(pubsub.options()).andReturn(options);
-    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ACK_ID1)).andReturn(null);
+    EasyMock.expect(pubsub.nackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1, ACK_ID2, ACK_ID1)))
+        .andReturn(Futures.<Void>immediateFuture(null));
     EasyMock.replay(pubsub);
     EasyMock.expect(pubsubRpc.pull(request1)).andReturn(new TestPullFuture(PULL_RESPONSE));
     EasyMock.expect(pubsubRpc.pull(request2)).andAnswer(new IAnswer<PullFuture>() {
@@ -416,17 +450,214 @@ public class MessageConsumerImplTest {
     EasyMock.expectLastCall().andAnswer(createAnswer(latch));
     EasyMock.replay(pubsubRpc, options, renewer);
     try (MessageConsumer consumer =
-         MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, THROW_PROCESSOR)
+         MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, processor(ACK_ID2, nextPullLatch, true))
              .maxQueuedCallbacks(2)
+             .maxAckDelayMillis(ACK_DELAY_MILLIS)
              .build()) {
       latch.await();
     }
   }
 
+  @Test
+  public void testMessageConsumerConcurrentPulls() throws Exception {
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
+    EasyMock.replay(pubsub);
+    final CountDownLatch latch = new CountDownLatch(2);
+    // Pulls never complete, the second pull is sent while the first one is in flight
+    EasyMock.expect(pubsubRpc.pull(pullRequest(2))).andAnswer(new IAnswer<PullFuture>() {
+      @Override
+      public PullFuture answer() throws Throwable {
+        latch.countDown();
+        return new TestPullFuture(SettableFuture.<PullResponse>create());
+      }
+    }).times(2);
+    EasyMock.replay(pubsubRpc, options, renewer);
+    try (MessageConsumer consumer =
+        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, DO_NOTHING_PROCESSOR)
+            .maxQueuedCallbacks(4)
+            .maxConcurrentPulls(2)
+            .build()) {
+      latch.await();
+    }
+  }
+
+  @Test
+  public void testMessageConsumerProcessorThreads() throws Exception {
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
+    EasyMock.expect(pubsub.options()).andReturn(options).times(2);
+    final CountDownLatch latch = new CountDownLatch(2);
+    // Messages are processed concurrently, acks can be batched in any order
+    EasyMock.expect(pubsub.ackAsync(EasyMock.eq(SUBSCRIPTION), EasyMock.<Iterable<String>>anyObject()))
+        .andReturn(Futures.<Void>immediateFuture(null));
+    EasyMock.replay(pubsub);
+    EasyMock.expect(pubsubRpc.pull(pullRequest(MAX_QUEUED_CALLBACKS)))
+        .andReturn(new TestPullFuture(PULL_RESPONSE));
+    EasyMock.expect(pubsubRpc.pull(EasyMock.<PullRequest>anyObject()))
+        .andReturn(new TestPullFuture(EMPTY_RESPONSE)).anyTimes();
+    renewer.add(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall();
+    renewer.add(SUBSCRIPTION, ACK_ID2);
+    EasyMock.expectLastCall();
+    renewer.remove(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall().andAnswer(createAnswer(latch));
+    renewer.remove(SUBSCRIPTION, ACK_ID2);
+    EasyMock.expectLastCall().andAnswer(createAnswer(latch));
+    EasyMock.replay(pubsubRpc, options, renewer);
+    // Both messages must be processed at the same time to get past the barrier
+    final CyclicBarrier barrier = new CyclicBarrier(2);
+    MessageProcessor processor = new MessageProcessor() {
+      @Override
+      public void process(Message message) throws Exception {
+        barrier.await();
+      }
+    };
+    try (MessageConsumer consumer =
+        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, processor)
+            .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+            .processorThreads(2)
+            .maxAckDelayMillis(ACK_DELAY_MILLIS)
+            .build()) {
+      latch.await();
+    }
+  }
+
+  @Test
+  public void testMessageConsumerNextPullPolicy() throws Exception {
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
+    EasyMock.expect(pubsub.options()).andReturn(options);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1)))
+        .andReturn(Futures.<Void>immediateFuture(null));
+    EasyMock.replay(pubsub);
+    final CountDownLatch latch = new CountDownLatch(2);
+    PullResponse response = PullResponse.newBuilder().addReceivedMessages(MESSAGE1_PB).build();
+    // The policy allows a single queued message, the second pull is sent once it is processed
+    EasyMock.expect(pubsubRpc.pull(pullRequest(1))).andReturn(new TestPullFuture(response));
+    EasyMock.expect(pubsubRpc.pull(pullRequest(1))).andAnswer(new IAnswer<PullFuture>() {
+      @Override
+      public PullFuture answer() throws Throwable {
+        latch.countDown();
+        return new TestPullFuture(SettableFuture.<PullResponse>create());
+      }
+    });
+    renewer.add(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall();
+    renewer.remove(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall();
+    EasyMock.replay(pubsubRpc, options, renewer);
+    final AtomicInteger processedBytes = new AtomicInteger();
+    MessageConsumerImpl.NextPullPolicy policy = new MessageConsumerImpl.NextPullPolicy() {
+      @Override
+      public boolean shouldPull(int queuedCallbacks, long queuedBytes) {
+        return queuedCallbacks == 0;
+      }
+
+      @Override
+      public int maxMessages(int queuedCallbacks, long queuedBytes) {
+        return queuedCallbacks == 0 ? 1 : 0;
+      }
+
+      @Override
+      public void processed(int sizeBytes, long latencyMillis) {
+        processedBytes.set(sizeBytes);
+        latch.countDown();
+      }
+    };
+    try (MessageConsumer consumer =
+        MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer, DO_NOTHING_PROCESSOR)
+            .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+            .nextPullPolicy(policy)
+            .maxAckDelayMillis(ACK_DELAY_MILLIS)
+            .build()) {
+      latch.await();
+      assertEquals(MESSAGE1_PB.getMessage().getSerializedSize(), processedBytes.get());
+    }
+  }
+
+  @Test
+  public void testMessageConsumerRestartsStoppedStream() throws Exception {
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT).anyTimes();
+    EasyMock.expect(pubsub.options()).andReturn(options);
+    EasyMock.expect(pubsub.ackAsync(SUBSCRIPTION, ImmutableList.of(ACK_ID1)))
+        .andReturn(Futures.<Void>immediateFuture(null));
+    EasyMock.replay(pubsub);
+    final CountDownLatch processLatch = new CountDownLatch(1);
+    final CountDownLatch pullCheckedLatch = new CountDownLatch(1);
+    final CountDownLatch secondPullLatch = new CountDownLatch(1);
+    PullResponse response = PullResponse.newBuilder().addReceivedMessages(MESSAGE1_PB).build();
+    EasyMock.expect(pubsubRpc.pull(pullRequest(1))).andReturn(new TestPullFuture(response));
+    EasyMock.expect(pubsubRpc.pull(pullRequest(1))).andAnswer(new IAnswer<PullFuture>() {
+      @Override
+      public PullFuture answer() throws Throwable {
+        secondPullLatch.countDown();
+        return new TestPullFuture(SettableFuture.<PullResponse>create());
+      }
+    });
+    renewer.add(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall();
+    renewer.remove(SUBSCRIPTION, ACK_ID1);
+    EasyMock.expectLastCall();
+    EasyMock.replay(pubsubRpc, options, renewer);
+    final AtomicInteger maxMessagesCalls = new AtomicInteger();
+    MessageConsumerImpl.NextPullPolicy policy = new MessageConsumerImpl.NextPullPolicy() {
+      @Override
+      public boolean shouldPull(int queuedCallbacks, long queuedBytes) {
+        pullCheckedLatch.countDown();
+        return queuedCallbacks == 0;
+      }
+
+      @Override
+      public int maxMessages(int queuedCallbacks, long queuedBytes) {
+        switch (maxMessagesCalls.incrementAndGet()) {
+          case 1:
+          case 2:
+          case 3:
+            // the first pull and the stream scheduled after it
+            return 1;
+          case 4:
+            // the stream finds the window shrunk while the queued message completes
+            processLatch.countDown();
+            try {
+              pullCheckedLatch.await(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException ex) {
+              Thread.currentThread().interrupt();
+            }
+            return 0;
+          default:
+            return queuedCallbacks == 0 ? 1 : 0;
+        }
+      }
+
+      @Override
+      public void processed(int sizeBytes, long latencyMillis) {}
+    };
+    try (MessageConsumer consumer = MessageConsumerImpl.builder(options, SUBSCRIPTION, renewer,
+        processor(ACK_ID1, processLatch, false))
+        .maxQueuedCallbacks(MAX_QUEUED_CALLBACKS)
+        .maxConcurrentPulls(1)
+        .nextPullPolicy(policy)
+        .maxAckDelayMillis(ACK_DELAY_MILLIS)
+        .build()) {
+      assertTrue(secondPullLatch.await(10, TimeUnit.SECONDS));
+    }
+  }
+
   @Test
   public void testClose() throws Exception {
     EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
+    EasyMock.expect(options.executorFactory()).andReturn(ackExecutorFactory);
     final ExecutorService executor = EasyMock.createStrictMock(ExecutorService.class);
     executor.shutdown();
     EasyMock.expectLastCall();
@@ -0,0 +1,363 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
+import com.google.cloud.pubsub.spi.PubSubRpc;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.SettableFuture;
+import com.google.pubsub.v1.PublishRequest;
+import com.google.pubsub.v1.PublishResponse;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class MessagePublisherImplTest {
+
+  private static final String PROJECT = "project";
+  private static final String TOPIC = "topic";
+  private static final String TOPIC_PB = "projects/project/topics/topic";
+  private static final Message MESSAGE1 = Message.of("payload1");
+  private static final Message MESSAGE2 = Message.of("payload2");
+  private static final Message MESSAGE3 = Message.of("payload3");
+  private static final int MESSAGE_SIZE = MESSAGE1.toPb().getSerializedSize();
+  private static final long NO_DELAY = TimeUnit.HOURS.toMillis(1);
+
+  private final BlockingQueue<PendingRequest> requests = new LinkedBlockingQueue<>();
+  private PubSubRpc pubsubRpc;
+  private PubSubOptions options;
+  private TestExecutorFactory executorFactory;
+  private volatile RuntimeException publishException;
+
+  @Rule
+  public Timeout globalTimeout = Timeout.seconds(60);
+
+  private static final class PendingRequest {
+
+    private final PublishRequest request;
+    private final SettableFuture<PublishResponse> future = SettableFuture.create();
+
+    PendingRequest(PublishRequest request) {
+      this.request = request;
+    }
+
+    void respond(String... messageIds) {
+      future.set(PublishResponse.newBuilder()
+          .addAllMessageIds(ImmutableList.copyOf(messageIds))
+          .build());
+    }
+  }
+
+  private static final class TestExecutorFactory
+      implements ExecutorFactory<ScheduledExecutorService> {
+
+    private final ScheduledExecutorService executor = new ScheduledThreadPoolExecutor(1);
+    private int released;
+
+    @Override
+    public ScheduledExecutorService get() {
+      return executor;
+    }
+
+    @Override
+    public synchronized void release(ScheduledExecutorService executor) {
+      released++;
+      executor.shutdown();
+    }
+
+    synchronized int released() {
+      return released;
+    }
+  }
+
+  @Before
+  public void setUp() {
+    pubsubRpc = EasyMock.createMock(PubSubRpc.class);
+    options = EasyMock.createMock(PubSubOptions.class);
+    executorFactory = new TestExecutorFactory();
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpc);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT);
+    EasyMock.expect(options.executorFactory()).andReturn(executorFactory);
+    EasyMock.expect(pubsubRpc.publish(EasyMock.anyObject(PublishRequest.class)))
+        .andAnswer(new IAnswer<Future<PublishResponse>>() {
+          @Override
+          public Future<PublishResponse> answer() {
+            if (publishException != null) {
+              throw publishException;
+            }
+            PendingRequest pendingRequest =
+                new PendingRequest((PublishRequest) EasyMock.getCurrentArguments()[0]);
+            requests.add(pendingRequest);
+            return pendingRequest.future;
+          }
+        }).anyTimes();
+    EasyMock.replay(pubsubRpc, options);
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(pubsubRpc, options);
+  }
+
+  private static void assertRequest(PendingRequest pendingRequest, Message... messages) {
+    PublishRequest.Builder expected = PublishRequest.newBuilder().setTopic(TOPIC_PB);
+    for (Message message : messages) {
+      expected.addMessages(message.toPb());
+    }
+    assertEquals(expected.build(), pendingRequest.request);
+  }
+
+  @Test
+  public void testBatchMessageCount() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(2)
+        .maxBatchDelayMillis(NO_DELAY)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    assertTrue(requests.isEmpty());
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    Future<String> future3 = publisher.publish(MESSAGE3);
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE1, MESSAGE2);
+    assertTrue(requests.isEmpty());
+    request.respond("id1", "id2");
+    assertEquals("id1", future1.get());
+    assertEquals("id2", future2.get());
+    assertFalse(future3.isDone());
+    publisher.flush();
+    request = requests.take();
+    assertRequest(request, MESSAGE3);
+    request.respond("id3");
+    assertEquals("id3", future3.get());
+    publisher.close();
+  }
+
+  @Test
+  public void testBatchBytes() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchBytes(2 * MESSAGE_SIZE + 1)
+        .maxBatchDelayMillis(NO_DELAY)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    assertTrue(requests.isEmpty());
+    Future<String> future3 = publisher.publish(MESSAGE3);
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE1, MESSAGE2);
+    request.respond("id1", "id2");
+    assertEquals("id1", future1.get());
+    assertEquals("id2", future2.get());
+    assertFalse(future3.isDone());
+    publisher.flush();
+    requests.take().respond("id3");
+    assertEquals("id3", future3.get());
+    publisher.close();
+  }
+
+  @Test
+  public void testBatchDelay() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchDelayMillis(10L)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE1, MESSAGE2);
+    request.respond("id1", "id2");
+    assertEquals("id1", future1.get());
+    assertEquals("id2", future2.get());
+    publisher.close();
+  }
+
+  @Test
+  public void testMaxInFlightBatches() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(1)
+        .maxInFlightBatches(2)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    Future<String> future3 = publisher.publish(MESSAGE3);
+    PendingRequest request1 = requests.take();
+    PendingRequest request2 = requests.take();
+    assertRequest(request1, MESSAGE1);
+    assertRequest(request2, MESSAGE2);
+    assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+    request2.respond("id2");
+    PendingRequest request3 = requests.take();
+    assertRequest(request3, MESSAGE3);
+    request1.respond("id1");
+    request3.respond("id3");
+    assertEquals("id1", future1.get());
+    assertEquals("id2", future2.get());
+    assertEquals("id3", future3.get());
+    publisher.close();
+  }
+
+  @Test
+  public void testPublishFailure() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(2)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    RuntimeException exception = new RuntimeException();
+    requests.take().future.setException(exception);
+    for (Future<String> future : ImmutableList.of(future1, future2)) {
+      try {
+        future.get();
+        fail("Expected ExecutionException");
+      } catch (ExecutionException ex) {
+        assertSame(exception, ex.getCause());
+      }
+    }
+    publisher.close();
+  }
+
+  @Test
+  public void testPublishThrows() throws Exception {
+    publishException = new RuntimeException();
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(2)
+        .maxInFlightBatches(1)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    for (Future<String> future : ImmutableList.of(future1, future2)) {
+      try {
+        future.get();
+        fail("Expected ExecutionException");
+      } catch (ExecutionException ex) {
+        assertSame(publishException, ex.getCause());
+      }
+    }
+    publishException = null;
+    Future<String> future3 = publisher.publish(MESSAGE3);
+    publisher.flush();
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE3);
+    request.respond("id3");
+    assertEquals("id3", future3.get());
+    publisher.close();
+  }
+
+  @Test
+  public void testPublishMissingMessageIds() throws Exception {
+    MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(2)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    Future<String> future2 = publisher.publish(MESSAGE2);
+    requests.take().respond("id1");
+    for (Future<String> future : ImmutableList.of(future1, future2)) {
+      try {
+        future.get();
+        fail("Expected ExecutionException");
+      } catch (ExecutionException ex) {
+        assertTrue(ex.getCause() instanceof IllegalStateException);
+        assertEquals("Expected 2 message ids, got 1", ex.getCause().getMessage());
+      }
+    }
+    publisher.close();
+  }
+
+  @Test
+  public void testFlowControl() throws Exception {
+    final MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchMessages(1)
+        .maxOutstandingBytes((long) MESSAGE_SIZE)
+        .build();
+    Future<String> future1 = publisher.publish(MESSAGE1);
+    final SettableFuture<Future<String>> future2 = SettableFuture.create();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        future2.set(publisher.publish(MESSAGE2));
+      }
+    };
+    thread.start();
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE1);
+    assertNull(requests.poll(100, TimeUnit.MILLISECONDS));
+    assertFalse(future2.isDone());
+    request.respond("id1");
+    assertEquals("id1", future1.get());
+    request = requests.take();
+    assertRequest(request, MESSAGE2);
+    request.respond("id2");
+    assertEquals("id2", future2.get().get());
+    thread.join();
+    publisher.close();
+  }
+
+  @Test
+  public void testClose() throws Exception {
+    final MessagePublisherImpl publisher = MessagePublisherImpl.builder(options, TOPIC)
+        .maxBatchDelayMillis(NO_DELAY)
+        .build();
+    Future<String> future = publisher.publish(MESSAGE1);
+    final SettableFuture<Void> closed = SettableFuture.create();
+    Thread thread = new Thread() {
+      @Override
+      public void run() {
+        try {
+          publisher.close();
+          closed.set(null);
+        } catch (Exception ex) {
+          closed.setException(ex);
+        }
+      }
+    };
+    thread.start();
+    PendingRequest request = requests.take();
+    assertRequest(request, MESSAGE1);
+    assertFalse(closed.isDone());
+    request.respond("id1");
+    closed.get();
+    assertEquals("id1", future.get());
+    assertEquals(1, executorFactory.released());
+    try {
+      publisher.publish(MESSAGE2);
+      fail("Expected IllegalStateException");
+    } catch (IllegalStateException ex) {
+      assertEquals("Publisher is closed", ex.getMessage());
+    }
+    publisher.close();
+    assertEquals(1, executorFactory.released());
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.pubsub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.pubsub.MessageConsumerImpl.AdaptiveNextPullPolicy;
+import com.google.cloud.pubsub.MessageConsumerImpl.DefaultNextPullPolicy;
+
+import org.junit.Test;
+
+public class NextPullPolicyTest {
+
+  private static final int MAX_QUEUED_CALLBACKS = 100;
+  private static final long MAX_QUEUED_BYTES = 1000;
+
+  private static void process(AdaptiveNextPullPolicy policy, int messages, long latencyMillis) {
+    for (int i = 0; i < messages; i++) {
+      policy.processed(1, latencyMillis);
+    }
+  }
+
+  @Test
+  public void testDefaultPolicy() {
+    DefaultNextPullPolicy policy =
+        new DefaultNextPullPolicy(MAX_QUEUED_CALLBACKS, 50, MAX_QUEUED_BYTES);
+    assertTrue(policy.shouldPull(0, 0));
+    assertTrue(policy.shouldPull(50, 0));
+    assertFalse(policy.shouldPull(51, 0));
+    assertEquals(MAX_QUEUED_CALLBACKS, policy.maxMessages(0, 0));
+    assertEquals(40, policy.maxMessages(60, 0));
+    assertEquals(0, policy.maxMessages(MAX_QUEUED_CALLBACKS, 0));
+  }
+
+  @Test
+  public void testDefaultPolicyQueuedBytes() {
+    DefaultNextPullPolicy policy =
+        new DefaultNextPullPolicy(MAX_QUEUED_CALLBACKS, 50, MAX_QUEUED_BYTES);
+    policy.processed(100, 0);
+    // 600 free bytes fit 6 messages of 100 bytes
+    assertEquals(6, policy.maxMessages(0, 400));
+    assertTrue(policy.shouldPull(0, 500));
+    assertFalse(policy.shouldPull(0, 501));
+    assertEquals(0, policy.maxMessages(0, MAX_QUEUED_BYTES));
+    // messages larger than the free bytes are pulled one at a time
+    policy = new DefaultNextPullPolicy(MAX_QUEUED_CALLBACKS, 50, MAX_QUEUED_BYTES);
+    policy.processed(5000, 0);
+    assertEquals(1, policy.maxMessages(0, 0));
+  }
+
+  @Test
+  public void testAdaptivePolicySlowStart() {
+    AdaptiveNextPullPolicy policy =
+        new AdaptiveNextPullPolicy(MAX_QUEUED_CALLBACKS, Long.MAX_VALUE);
+    assertEquals(10, policy.window());
+    assertEquals(10, policy.maxMessages(0, 0));
+    assertTrue(policy.shouldPull(5, 0));
+    assertFalse(policy.shouldPull(6, 0));
+    process(policy, 10, 10);
+    assertEquals(20, policy.window());
+    process(policy, 20, 10);
+    assertEquals(40, policy.window());
+    process(policy, 40, 10);
+    assertEquals(80, policy.window());
+    process(policy, 80, 10);
+    assertEquals(MAX_QUEUED_CALLBACKS, policy.window());
+  }
+
+  @Test
+  public void testAdaptivePolicyCongestion() {
+    AdaptiveNextPullPolicy policy =
+        new AdaptiveNextPullPolicy(MAX_QUEUED_CALLBACKS, Long.MAX_VALUE);
+    process(policy, 10, 10);
+    assertEquals(20, policy.window());
+    // messages wait in the queue, the window is halved
+    process(policy, 20, 1000);
+    assertEquals(10, policy.window());
+    assertEquals(4, policy.maxMessages(6, 0));
+    // after congestion the window grows linearly
+    process(policy, 10, 10);
+    assertEquals(11, policy.window());
+    process(policy, 11, 10);
+    assertEquals(12, policy.window());
+  }
+
+  @Test
+  public void testAdaptivePolicyQueuedBytes() {
+    AdaptiveNextPullPolicy policy = new AdaptiveNextPullPolicy(MAX_QUEUED_CALLBACKS, 1000);
+    process(policy, 10, 10);
+    assertEquals(20, policy.window());
+    // messages are 1 byte, 5 free bytes
+    assertEquals(5, policy.maxMessages(0, 995));
+    assertFalse(policy.shouldPull(0, 501));
+  }
+}
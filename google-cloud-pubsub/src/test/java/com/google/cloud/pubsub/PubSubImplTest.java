@@ -33,9 +33,12 @@ import com.google.cloud.Policy;
 import com.google.cloud.RetryParams;
 import com.google.cloud.Role;
 import com.google.cloud.pubsub.MessageConsumerImplTest.TestPullFuture;
+import com.google.cloud.pubsub.MessageConsumerImplTest.TestScheduledExecutorFactory;
 import com.google.cloud.pubsub.PubSub.ListOption;
 import com.google.cloud.pubsub.PubSub.MessageConsumer;
 import com.google.cloud.pubsub.PubSub.MessageProcessor;
+import com.google.cloud.pubsub.PubSub.MessagePublisher;
+import com.google.cloud.pubsub.PubSub.PublishOption;
 import com.google.cloud.pubsub.PubSub.PullOption;
 import com.google.cloud.pubsub.spi.PubSubRpc;
 import com.google.cloud.pubsub.spi.PubSubRpc.PullCallback;
@@ -85,6 +88,8 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 public class PubSubImplTest {
@@ -608,6 +613,52 @@ public class PubSubImplTest {
     assertEquals(messageIds, pubsub.publishAsync(TOPIC, ImmutableList.of(MESSAGE, MESSAGE)).get());
   }
 
+  @Test
+  @SuppressWarnings("unchecked")
+  public void testMessagePublisherWithOptions() throws Exception {
+    pubsub = new PubSubImpl(options, renewerMock);
+    EasyMock.reset(options);
+    ExecutorFactory<ScheduledExecutorService> executorFactoryMock =
+        EasyMock.createStrictMock(ExecutorFactory.class);
+    ScheduledExecutorService executorServiceMock =
+        EasyMock.createStrictMock(ScheduledExecutorService.class);
+    EasyMock.expect(options.rpc()).andReturn(pubsubRpcMock);
+    EasyMock.expect(options.projectId()).andReturn(PROJECT);
+    EasyMock.expect(options.executorFactory()).andReturn(executorFactoryMock);
+    ScheduledFuture<?> flushFutureMock = EasyMock.createStrictMock(ScheduledFuture.class);
+    EasyMock.expect(executorFactoryMock.get()).andReturn(executorServiceMock);
+    EasyMock.expect(executorServiceMock.schedule(EasyMock.anyObject(Runnable.class),
+        EasyMock.eq(TimeUnit.HOURS.toMillis(1)), EasyMock.eq(TimeUnit.MILLISECONDS)))
+        .andReturn((ScheduledFuture) flushFutureMock);
+    EasyMock.expect(flushFutureMock.cancel(false)).andReturn(true);
+    executorFactoryMock.release(executorServiceMock);
+    EasyMock.replay(options);
+    PublishRequest request = PublishRequest.newBuilder()
+        .setTopic(TOPIC_NAME_PB)
+        .addAllMessages(ImmutableList.of(MESSAGE.toPb(), MESSAGE.toPb()))
+        .build();
+    List<String> messageIds = ImmutableList.of("messageId1", "messageId2");
+    PublishResponse response = PublishResponse.newBuilder()
+        .addAllMessageIds(messageIds)
+        .build();
+    EasyMock.expect(pubsubRpcMock.publish(request))
+        .andReturn(Futures.immediateFuture(response));
+    EasyMock.replay(pubsubRpcMock, renewerMock, executorFactoryMock, executorServiceMock,
+        flushFutureMock);
+    PublishOption[] options = {PublishOption.maxBatchMessages(2),
+        PublishOption.maxBatchDelay(1, TimeUnit.HOURS), PublishOption.maxInFlightBatches(1),
+        PublishOption.maxBatchBytes(4096), PublishOption.maxOutstandingBytes(8192)};
+    Future<String> future1;
+    Future<String> future2;
+    try (MessagePublisher publisher = pubsub.publisher(TOPIC, options)) {
+      future1 = publisher.publish(MESSAGE);
+      future2 = publisher.publish(MESSAGE);
+    }
+    assertEquals("messageId1", future1.get());
+    assertEquals("messageId2", future2.get());
+    EasyMock.verify(executorFactoryMock, executorServiceMock, flushFutureMock);
+  }
+
   @Test
   public void testCreateSubscription() {
     com.google.pubsub.v1.Subscription subscriptionPb = SUBSCRIPTION_INFO.toPb(PROJECT);
@@ -1384,9 +1435,10 @@ public class PubSubImplTest {
   public void testMessageConsumer() throws Exception {
     pubsub = new PubSubImpl(options, renewerMock);
     EasyMock.reset(options);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
     EasyMock.expect(options.rpc()).andReturn(pubsubRpcMock);
     EasyMock.expect(options.projectId()).andReturn(PROJECT);
+    EasyMock.expect(options.executorFactory()).andReturn(new TestScheduledExecutorFactory());
     EasyMock.replay(options);
     PullRequest request = PullRequest.newBuilder()
         .setSubscription(SUBSCRIPTION_NAME_PB)
@@ -1412,9 +1464,10 @@ public class PubSubImplTest {
   public void testMessageConsumerWithOptions() throws Exception {
     pubsub = new PubSubImpl(options, renewerMock);
     EasyMock.reset(options);
-    EasyMock.expect(options.service()).andReturn(pubsub);
+    EasyMock.expect(options.service()).andReturn(pubsub).times(2);
     EasyMock.expect(options.rpc()).andReturn(pubsubRpcMock);
     EasyMock.expect(options.projectId()).andReturn(PROJECT);
+    EasyMock.expect(options.executorFactory()).andReturn(new TestScheduledExecutorFactory());
     EasyMock.replay(options);
     ExecutorFactory executorFactoryMock = EasyMock.createStrictMock(ExecutorFactory.class);
     ExecutorService executorServiceMock = EasyMock.createStrictMock(ExecutorService.class);
@@ -21,16 +21,31 @@ import static org.junit.Assert.assertSame;
 
 import com.google.cloud.GrpcServiceOptions.ExecutorFactory;
 import com.google.cloud.pubsub.PubSub.ListOption;
+import com.google.cloud.pubsub.PubSub.PublishOption;
 import com.google.cloud.pubsub.PubSub.PullOption;
 
 import org.easymock.EasyMock;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.TimeUnit;
 
 public class PubSubTest {
 
   private static final int PAGE_SIZE = 42;
   private static final String PAGE_TOKEN = "page token";
   private static final int MAX_QUEUED_CALLBACKS = 42;
+  private static final int MAX_CONCURRENT_PULLS = 4;
+  private static final int PROCESSOR_THREADS = 8;
+  private static final long MAX_QUEUED_BYTES = 1024L;
+  private static final int MAX_BATCH_MESSAGES = 500;
+  private static final int MAX_BATCH_BYTES = 4096;
+  private static final int MAX_IN_FLIGHT_BATCHES = 3;
+  private static final long MAX_OUTSTANDING_BYTES = 1L << 32;
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
 
   @Test
   public void testListOption() {
@@ -51,9 +66,65 @@ public class PubSubTest {
     PullOption pullOption = PullOption.maxQueuedCallbacks(MAX_QUEUED_CALLBACKS);
     assertEquals(MAX_QUEUED_CALLBACKS, pullOption.value());
     assertEquals(PullOption.OptionType.MAX_QUEUED_CALLBACKS, pullOption.optionType());
+    // max concurrent pulls
+    pullOption = PullOption.maxConcurrentPulls(MAX_CONCURRENT_PULLS);
+    assertEquals(MAX_CONCURRENT_PULLS, pullOption.value());
+    assertEquals(PullOption.OptionType.MAX_CONCURRENT_PULLS, pullOption.optionType());
+    // processor threads
+    pullOption = PullOption.processorThreads(PROCESSOR_THREADS);
+    assertEquals(PROCESSOR_THREADS, pullOption.value());
+    assertEquals(PullOption.OptionType.PROCESSOR_THREADS, pullOption.optionType());
+    // max queued bytes
+    pullOption = PullOption.maxQueuedBytes(MAX_QUEUED_BYTES);
+    assertEquals(MAX_QUEUED_BYTES, pullOption.value());
+    assertEquals(PullOption.OptionType.MAX_QUEUED_BYTES, pullOption.optionType());
+    // adaptive pull size
+    pullOption = PullOption.adaptivePullSize(true);
+    assertEquals(true, pullOption.value());
+    assertEquals(PullOption.OptionType.ADAPTIVE_PULL_SIZE, pullOption.optionType());
     ExecutorFactory executorFactory = EasyMock.createStrictMock(ExecutorFactory.class);
     pullOption = PullOption.executorFactory(executorFactory);
     assertSame(executorFactory, pullOption.value());
     assertEquals(PullOption.OptionType.EXECUTOR_FACTORY, pullOption.optionType());
   }
+
+  @Test
+  public void testPublishOptions() {
+    PublishOption publishOption = PublishOption.maxBatchMessages(MAX_BATCH_MESSAGES);
+    assertEquals(MAX_BATCH_MESSAGES, publishOption.value());
+    assertEquals(PublishOption.OptionType.MAX_BATCH_MESSAGES, publishOption.optionType());
+    publishOption = PublishOption.maxBatchBytes(MAX_BATCH_BYTES);
+    assertEquals(MAX_BATCH_BYTES, publishOption.value());
+    assertEquals(PublishOption.OptionType.MAX_BATCH_BYTES, publishOption.optionType());
+    publishOption = PublishOption.maxBatchDelay(2, TimeUnit.SECONDS);
+    assertEquals(2000L, publishOption.value());
+    assertEquals(PublishOption.OptionType.MAX_BATCH_DELAY_MILLIS, publishOption.optionType());
+    publishOption = PublishOption.maxInFlightBatches(MAX_IN_FLIGHT_BATCHES);
+    assertEquals(MAX_IN_FLIGHT_BATCHES, publishOption.value());
+    assertEquals(PublishOption.OptionType.MAX_IN_FLIGHT_BATCHES, publishOption.optionType());
+    publishOption = PublishOption.maxOutstandingBytes(MAX_OUTSTANDING_BYTES);
+    assertEquals(MAX_OUTSTANDING_BYTES, publishOption.value());
+    assertEquals(PublishOption.OptionType.MAX_OUTSTANDING_BYTES, publishOption.optionType());
+  }
+
+  @Test
+  public void testPublishOptionsInvalidMaxBatchMessages() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Max batch messages must be in the range [1, 1000]");
+    PublishOption.maxBatchMessages(1001);
+  }
+
+  @Test
+  public void testPullOptionsInvalidMaxConcurrentPulls() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Max concurrent pulls must be > 0");
+    PullOption.maxConcurrentPulls(0);
+  }
+
+  @Test
+  public void testPullOptionsInvalidMaxQueuedBytes() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Max queued bytes must be > 0");
+    PullOption.maxQueuedBytes(0);
+  }
 }
@@ -24,6 +24,7 @@ import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import com.google.cloud.AsyncPage;
@@ -34,6 +35,8 @@ import com.google.cloud.PageImpl;
 import com.google.cloud.Policy;
 import com.google.cloud.Role;
 import com.google.cloud.pubsub.PubSub.ListOption;
+import com.google.cloud.pubsub.PubSub.MessagePublisher;
+import com.google.cloud.pubsub.PubSub.PublishOption;
 import com.google.common.collect.ImmutableList;
 import com.google.common.util.concurrent.Futures;
 
@@ -258,6 +261,18 @@ public class TopicTest {
     assertEquals(messageIds, topic.publishAsync(messages).get());
   }
 
+  @Test
+  public void testPublisher() {
+    initializeExpectedTopic(1);
+    expect(pubsub.options()).andReturn(mockOptions);
+    MessagePublisher publisher = createStrictMock(MessagePublisher.class);
+    PublishOption option = PublishOption.maxBatchMessages(500);
+    expect(pubsub.publisher(NAME, option)).andReturn(publisher);
+    replay(pubsub);
+    initializeTopic();
+    assertSame(publisher, topic.publisher(option));
+  }
+
   @Test
   public void testListSubscriptions() {
     initializeExpectedTopic(1);
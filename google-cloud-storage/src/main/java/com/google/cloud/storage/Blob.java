@@ -41,6 +41,7 @@ import com.google.common.io.BaseEncoding;
 import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.net.URL;
+import java.nio.file.Path;
 import java.security.Key;
 import java.util.Arrays;
 import java.util.List;
@@ -99,6 +100,8 @@ public class Blob extends BlobInfo {
           return Storage.BlobSourceOption.metagenerationNotMatch(blobInfo.metageneration());
         case CUSTOMER_SUPPLIED_KEY:
           return Storage.BlobSourceOption.decryptionKey((String) value());
+        case VERIFY_CHECKSUMS:
+          return Storage.BlobSourceOption.verifyChecksums();
         default:
           throw new AssertionError("Unexpected enum value");
       }
@@ -170,6 +173,16 @@ public class Blob extends BlobInfo {
       return new BlobSourceOption(StorageRpc.Option.CUSTOMER_SUPPLIED_KEY, key);
     }
 
+    /**
+     * Returns an option to verify the blob's checksums while it is read. This option only applies
+     * to {@link Blob#reader(BlobSourceOption...)}.
+     *
+     * @see Storage.BlobSourceOption#verifyChecksums()
+     */
+    public static BlobSourceOption verifyChecksums() {
+      return new BlobSourceOption(StorageRpc.Option.VERIFY_CHECKSUMS, true);
+    }
+
     static Storage.BlobSourceOption[] toSourceOptions(BlobInfo blobInfo,
         BlobSourceOption... options) {
       Storage.BlobSourceOption[] convertedOptions = new Storage.BlobSourceOption[options.length];
@@ -393,6 +406,27 @@ public class Blob extends BlobInfo {
     return storage.readAllBytes(blobId(), toSourceOptions(this, options));
   }
 
+  /**
+   * Downloads this blob's content to the file at {@code path}, with bounded memory. Use a
+   * {@link BlobDownloader} to configure the size and number of ranges fetched concurrently.
+   *
+   * <p>Example of downloading the blob to a file, if its generation matches the
+   * {@link Blob#generation()} value, otherwise a {@link StorageException} is thrown.
+   * <pre> {@code
+   * blob.downloadTo(Paths.get("blob.bin"), BlobSourceOption.generationMatch());
+   * }</pre>
+   *
+   * @param path the target file
+   * @param options blob read options
+   * @throws IOException upon failure writing the file
+   * @throws StorageException upon failure reading the blob
+   * @see BlobDownloader#download(BlobId, Path, Storage.BlobSourceOption...)
+   */
+  public void downloadTo(Path path, BlobSourceOption... options) throws IOException {
+    BlobDownloader.builder(storage).build()
+        .download(blobId(), path, toSourceOptions(this, options));
+  }
+
   /**
    * Fetches current blob's latest information. Returns {@code null} if the blob does not exist.
    *
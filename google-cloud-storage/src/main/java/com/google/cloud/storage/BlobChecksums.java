@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import com.google.cloud.BaseServiceException;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Incrementally computes the CRC32C and MD5 checksums of a blob's content as it is read or
+ * written, so that it can be verified against the checksums stored by the service without a
+ * second pass over the data.
+ *
+ * <p>The MD5 digest state can not be saved, so checksums resumed with
+ * {@link #resume(int, long)} after some bytes were processed only compute CRC32C.
+ */
+final class BlobChecksums {
+
+  private static final int COPY_BUFFER_SIZE = 8 * 1024;
+
+  private final Crc32c crc32c;
+  private final MessageDigest md5;
+  private long length;
+  private String md5Hash;
+
+  BlobChecksums() {
+    this(new Crc32c(), newMd5(), 0);
+  }
+
+  private BlobChecksums(Crc32c crc32c, MessageDigest md5, long length) {
+    this.crc32c = crc32c;
+    this.md5 = md5;
+    this.length = length;
+  }
+
+  /**
+   * Resumes checksums for {@code length} bytes whose CRC32C checksum is {@code crc32c}, as
+   * previously returned by {@link #crc32cValue()}.
+   */
+  static BlobChecksums resume(int crc32c, long length) {
+    return length == 0 ? new BlobChecksums() : new BlobChecksums(new Crc32c(crc32c), null, length);
+  }
+
+  void update(byte[] bytes, int offset, int length) {
+    crc32c.update(bytes, offset, length);
+    if (md5 != null) {
+      md5.update(bytes, offset, length);
+    }
+    this.length += length;
+  }
+
+  /**
+   * Updates the checksums with the remaining bytes of {@code bytes}, consuming them.
+   */
+  void update(ByteBuffer bytes) {
+    if (bytes.hasArray()) {
+      update(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+      bytes.position(bytes.limit());
+      return;
+    }
+    byte[] copy = new byte[Math.min(bytes.remaining(), COPY_BUFFER_SIZE)];
+    while (bytes.hasRemaining()) {
+      int length = Math.min(bytes.remaining(), copy.length);
+      bytes.get(copy, 0, length);
+      update(copy, 0, length);
+    }
+  }
+
+  /**
+   * Returns the number of bytes processed so far.
+   */
+  long length() {
+    return length;
+  }
+
+  int crc32cValue() {
+    return crc32c.intValue();
+  }
+
+  /**
+   * Returns the base64-encoded, big-endian CRC32C checksum of the bytes processed so far.
+   */
+  String crc32c() {
+    return BaseEncoding.base64().encode(Ints.toByteArray(crc32c.intValue()));
+  }
+
+  /**
+   * Returns the base64-encoded MD5 hash of the processed bytes or {@code null} if it is not
+   * available. This method completes the MD5 computation and must only be called once all bytes
+   * have been processed.
+   */
+  String md5() {
+    if (md5Hash == null && md5 != null) {
+      md5Hash = BaseEncoding.base64().encode(md5.digest());
+    }
+    return md5Hash;
+  }
+
+  /**
+   * Compares the computed checksums with the ones stored by the service for {@code blob}. Checksums
+   * that are {@code null} or were not computed are skipped.
+   *
+   * @throws StorageException if a checksum does not match
+   */
+  void verify(Object blob, String expectedCrc32c, String expectedMd5) {
+    if (expectedCrc32c != null && !expectedCrc32c.equals(crc32c())) {
+      throw mismatch(blob, "CRC32C", expectedCrc32c, crc32c());
+    }
+    if (expectedMd5 != null && md5() != null && !expectedMd5.equals(md5())) {
+      throw mismatch(blob, "MD5", expectedMd5, md5());
+    }
+  }
+
+  private static StorageException mismatch(Object blob, String checksum, String expected,
+      String actual) {
+    StringBuilder messageBuilder = new StringBuilder();
+    messageBuilder.append(checksum).append(" mismatch for blob ").append(blob)
+        .append(": expected ").append(expected).append(" but was ").append(actual);
+    return new StorageException(BaseServiceException.UNKNOWN_CODE, messageBuilder.toString());
+  }
+
+  private static MessageDigest newMd5() {
+    try {
+      return MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+}
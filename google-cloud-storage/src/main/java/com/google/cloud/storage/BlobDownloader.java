@@ -0,0 +1,414 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Downloads blobs to files or channels with bounded memory, as an alternative to
+ * {@link Storage#readAllBytes(BlobId, BlobSourceOption...)} for large blobs.
+ *
+ * <p>Downloads to a file split the blob in ranges of {@link #chunkSize()} bytes that are fetched
+ * by up to {@link #parallelism()} threads. The target file is first extended to the blob's size
+ * and each range is streamed from the response directly to its position in the file, so memory
+ * usage does not depend on the chunk size. All ranges are read from the blob generation that was
+ * current when the download started. Completed ranges are recorded in a progress file next to the
+ * target, named after it with the {@value #PROGRESS_FILE_SUFFIX} suffix: if a download fails, or
+ * the process is stopped, downloading the same blob to the same file again only fetches the
+ * missing ranges. The progress file is deleted once the download completes.
+ *
+ * <p>Downloads to a {@link WritableByteChannel} fetch ranges in parallel and write them to the
+ * channel in order, holding at most {@link #parallelism()} ranges in memory.
+ *
+ * <p>Example of downloading a large blob to a file.
+ * <pre> {@code
+ * BlobDownloader downloader = BlobDownloader.builder(storage)
+ *     .chunkSize(16 * 1024 * 1024)
+ *     .parallelism(8)
+ *     .build();
+ * Blob blob = downloader.download(BlobId.of("my_unique_bucket", "model.bin"),
+ *     Paths.get("model.bin"));
+ * }</pre>
+ */
+public final class BlobDownloader {
+
+  /**
+   * The suffix of the file that records the progress of a download to a file.
+   */
+  public static final String PROGRESS_FILE_SUFFIX = ".gcsdownload";
+
+  private static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int COPY_BUFFER_SIZE = 64 * 1024;
+  // generation, blob size and chunk size, followed by one byte per chunk
+  private static final int PROGRESS_HEADER_SIZE = 8 + 8 + 4;
+  private static final byte CHUNK_DONE = 1;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-blob-downloader-%d")
+      .build();
+
+  private final Storage storage;
+  private final StorageOptions options;
+  private final StorageRpc storageRpc;
+  private final int chunkSize;
+  private final int parallelism;
+
+  /**
+   * Builder for {@code BlobDownloader} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int chunkSize = DEFAULT_CHUNK_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the size of the ranges fetched concurrently, in bytes. Downloads to a channel hold up
+     * to {@link #parallelism(int)} ranges in memory. The default chunk size is 8 MiB.
+     *
+     * @throws IllegalArgumentException if {@code chunkSize} is not positive
+     */
+    public Builder chunkSize(int chunkSize) {
+      checkArgument(chunkSize > 0, "Chunk size must be > 0");
+      this.chunkSize = chunkSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of ranges fetched concurrently. The default parallelism is 4.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Creates a {@code BlobDownloader} object.
+     */
+    public BlobDownloader build() {
+      return new BlobDownloader(this);
+    }
+  }
+
+  private BlobDownloader(Builder builder) {
+    this.storage = builder.storage;
+    this.options = storage.options();
+    this.storageRpc = options.rpc();
+    this.chunkSize = builder.chunkSize;
+    this.parallelism = builder.parallelism;
+  }
+
+  /**
+   * Returns the size of the ranges fetched concurrently, in bytes.
+   */
+  public int chunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * Returns the maximum number of ranges fetched concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns a builder for {@code BlobDownloader} objects that download blobs with
+   * {@code storage}.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Downloads the content of a blob to the file at {@code path}, replacing its content. If a
+   * previous download of the same blob generation to the same file was interrupted, only the
+   * ranges that were not downloaded yet are fetched.
+   *
+   * @param blob the blob to download
+   * @param path the target file
+   * @param options blob read options
+   * @return the downloaded blob
+   * @throws IOException upon failure writing the file
+   * @throws StorageException if the blob does not exist or upon failure reading it
+   */
+  public Blob download(BlobId blob, Path path, BlobSourceOption... options) throws IOException {
+    Map<StorageRpc.Option, ?> rpcOptions = StorageImpl.optionMap(blob, options);
+    StorageObject metadata = get(blob.toPb(), rpcOptions);
+    if (metadata == null) {
+      throw new StorageException(404, "Blob " + blob + " not found");
+    }
+    long size = metadata.getSize().longValue();
+    int chunks = (int) ((size + chunkSize - 1) / chunkSize);
+    Path progressPath = path.resolveSibling(path.getFileName() + PROGRESS_FILE_SUFFIX);
+    boolean[] done = readProgress(progressPath, path, metadata.getGeneration(), size, chunks);
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE);
+        FileChannel progress = FileChannel.open(progressPath, StandardOpenOption.CREATE,
+            StandardOpenOption.WRITE)) {
+      if (channel.size() > size) {
+        channel.truncate(size);
+      } else if (channel.size() < size) {
+        channel.write(ByteBuffer.allocate(1), size - 1);
+      }
+      writeProgress(progress, metadata.getGeneration(), size, done);
+      StorageObject source = new StorageObject()
+          .setBucket(metadata.getBucket())
+          .setName(metadata.getName())
+          .setGeneration(metadata.getGeneration());
+      ExecutorService executor = Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+      try {
+        List<Future<?>> futures = new ArrayList<>();
+        for (int chunk = 0; chunk < chunks; chunk++) {
+          if (!done[chunk]) {
+            futures.add(executor.submit(
+                fetch(source, rpcOptions, chunk, size, channel, progress)));
+          }
+        }
+        await(futures);
+      } finally {
+        // wait for cancelled ranges, so that no task writes to the files once they are closed
+        executor.shutdownNow();
+        awaitTermination(executor);
+      }
+    }
+    Files.delete(progressPath);
+    return Blob.fromPb(storage, metadata);
+  }
+
+  /**
+   * Downloads the content of a blob to {@code channel}. The channel is not closed.
+   *
+   * @param blob the blob to download
+   * @param channel the target channel
+   * @param options blob read options
+   * @return the number of bytes written to {@code channel}
+   * @throws IOException upon failure writing to the channel
+   * @throws StorageException upon failure reading the blob
+   */
+  public long download(BlobId blob, WritableByteChannel channel, BlobSourceOption... options)
+      throws IOException {
+    long count = 0;
+    try (ReadChannel reader = storage.parallelReader(blob, parallelism, options)) {
+      reader.chunkSize(chunkSize);
+      ByteBuffer buffer = ByteBuffer.allocate(COPY_BUFFER_SIZE);
+      while (reader.read(buffer) >= 0) {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+          count += channel.write(buffer);
+        }
+        buffer.clear();
+      }
+    }
+    return count;
+  }
+
+  private StorageObject get(final StorageObject storageObject,
+      final Map<StorageRpc.Option, ?> rpcOptions) {
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.get(storageObject, rpcOptions);
+        }
+      }, options.retryParams(), StorageImpl.EXCEPTION_HANDLER, options.clock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * Returns a task that streams the {@code chunk}-th range of {@code source} to its position in
+   * {@code channel} and then marks it as done in {@code progress}. Failed attempts are retried
+   * from the start of the range.
+   */
+  private Callable<Void> fetch(final StorageObject source,
+      final Map<StorageRpc.Option, ?> rpcOptions, final int chunk, long size,
+      final FileChannel channel, final FileChannel progress) {
+    final long offset = (long) chunk * chunkSize;
+    final int length = (int) Math.min(chunkSize, size - offset);
+    return new Callable<Void>() {
+      @Override
+      public Void call() throws IOException {
+        Tuple<String, Long> result;
+        try {
+          result = runWithRetries(new Callable<Tuple<String, Long>>() {
+            @Override
+            public Tuple<String, Long> call() {
+              return storageRpc.read(source, rpcOptions, offset, length,
+                  new PositionalOutputStream(channel, offset));
+            }
+          }, options.retryParams(), StorageImpl.EXCEPTION_HANDLER, options.clock());
+        } catch (RetryHelper.RetryHelperException e) {
+          throw StorageException.translateAndThrow(e);
+        }
+        if (result.y() != length) {
+          throw new StorageException(BaseServiceException.UNKNOWN_CODE, "Expected " + length
+              + " bytes at offset " + offset + " of " + source.getName() + " but got "
+              + result.y());
+        }
+        progress.write(ByteBuffer.wrap(new byte[] {CHUNK_DONE}), PROGRESS_HEADER_SIZE + chunk);
+        return null;
+      }
+    };
+  }
+
+  /**
+   * Returns which chunks of a download are already in the file at {@code path}, according to the
+   * progress file. Chunks are only reused if the progress file was written for the same blob
+   * generation, size and chunk size.
+   */
+  private boolean[] readProgress(Path progressPath, Path path, long generation, long size,
+      int chunks) throws IOException {
+    boolean[] done = new boolean[chunks];
+    if (!Files.exists(progressPath) || !Files.exists(path) || Files.size(path) != size) {
+      return done;
+    }
+    ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(progressPath));
+    if (buffer.remaining() != PROGRESS_HEADER_SIZE + chunks || buffer.getLong() != generation
+        || buffer.getLong() != size || buffer.getInt() != chunkSize) {
+      return done;
+    }
+    for (int chunk = 0; chunk < chunks; chunk++) {
+      done[chunk] = buffer.get() == CHUNK_DONE;
+    }
+    return done;
+  }
+
+  private void writeProgress(FileChannel progress, long generation, long size, boolean[] done)
+      throws IOException {
+    ByteBuffer buffer = ByteBuffer.allocate(PROGRESS_HEADER_SIZE + done.length);
+    buffer.putLong(generation).putLong(size).putInt(chunkSize);
+    for (boolean chunkDone : done) {
+      buffer.put(chunkDone ? CHUNK_DONE : 0);
+    }
+    buffer.flip();
+    progress.truncate(0);
+    while (buffer.hasRemaining()) {
+      progress.write(buffer, buffer.position());
+    }
+  }
+
+  /**
+   * Waits for all {@code futures}. If a task failed, the remaining ones are cancelled and its
+   * failure is rethrown.
+   */
+  private static void await(List<Future<?>> futures) throws IOException {
+    try {
+      for (Future<?> future : futures) {
+        Uninterruptibles.getUninterruptibly(future);
+      }
+    } catch (ExecutionException ex) {
+      for (Future<?> future : futures) {
+        future.cancel(false);
+      }
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      } else if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(), cause);
+    }
+  }
+
+  private static void awaitTermination(ExecutorService executor) {
+    boolean interrupted = false;
+    try {
+      while (true) {
+        try {
+          if (executor.awaitTermination(1, TimeUnit.MINUTES)) {
+            return;
+          }
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+    } finally {
+      if (interrupted) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * An output stream that writes to consecutive positions of a {@link FileChannel}, starting at a
+   * given position, without changing the channel's position.
+   */
+  private static final class PositionalOutputStream extends OutputStream {
+
+    private final FileChannel channel;
+    private long position;
+
+    PositionalOutputStream(FileChannel channel, long position) {
+      this.channel = channel;
+      this.position = position;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      write(new byte[] {(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+      while (buffer.hasRemaining()) {
+        position += channel.write(buffer, position);
+      }
+    }
+  }
+}
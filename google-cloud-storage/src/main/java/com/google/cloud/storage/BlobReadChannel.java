@@ -27,7 +27,9 @@ import com.google.cloud.storage.spi.StorageRpc.Tuple;
 import com.google.common.base.MoreObjects;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Serializable;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.Map;
@@ -36,6 +38,11 @@ import java.util.concurrent.Callable;
 
 /**
  * Default implementation for ReadChannel.
+ *
+ * <p>If {@link StorageRpc.Option#VERIFY_CHECKSUMS} is set, the checksums of the data fetched
+ * sequentially from the beginning of the blob are computed while reading and, once the end of the
+ * blob is reached, are compared with the ones stored by the service. Fetching data from any other
+ * position, after a seek or a restore, disables verification.
  */
 class BlobReadChannel implements ReadChannel {
 
@@ -52,8 +59,10 @@ class BlobReadChannel implements ReadChannel {
 
   private final StorageRpc storageRpc;
   private final StorageObject storageObject;
-  private int bufferPos;
   private byte[] buffer;
+  private int bufferPos;
+  private int bufferLimit;
+  private BlobChecksums checksums;
 
   BlobReadChannel(StorageOptions serviceOptions, BlobId blob,
       Map<StorageRpc.Option, ?> requestOptions) {
@@ -63,6 +72,9 @@ class BlobReadChannel implements ReadChannel {
     isOpen = true;
     storageRpc = serviceOptions.rpc();
     storageObject = blob.toPb();
+    if (requestOptions.containsKey(StorageRpc.Option.VERIFY_CHECKSUMS)) {
+      checksums = new BlobChecksums();
+    }
   }
 
   @Override
@@ -72,7 +84,7 @@ class BlobReadChannel implements ReadChannel {
         .isOpen(isOpen)
         .endOfStream(endOfStream)
         .chunkSize(chunkSize);
-    if (buffer != null) {
+    if (bufferPos < bufferLimit) {
       builder.position(position + bufferPos);
       builder.endOfStream(false);
     }
@@ -88,6 +100,8 @@ class BlobReadChannel implements ReadChannel {
   public void close() {
     if (isOpen) {
       buffer = null;
+      bufferPos = 0;
+      bufferLimit = 0;
       isOpen = false;
     }
   }
@@ -102,8 +116,8 @@ class BlobReadChannel implements ReadChannel {
   public void seek(long position) throws IOException {
     validateOpen();
     this.position = position;
-    buffer = null;
     bufferPos = 0;
+    bufferLimit = 0;
     endOfStream = false;
   }
 
@@ -115,47 +129,153 @@ class BlobReadChannel implements ReadChannel {
   @Override
   public int read(ByteBuffer byteBuffer) throws IOException {
     validateOpen();
-    if (buffer == null) {
+    if (bufferPos >= bufferLimit) {
       if (endOfStream) {
         return -1;
       }
-      final int toRead = Math.max(byteBuffer.remaining(), chunkSize);
-      try {
-        Tuple<String, byte[]> result = runWithRetries(new Callable<Tuple<String, byte[]>>() {
-          @Override
-          public Tuple<String, byte[]> call() {
-            return storageRpc.read(storageObject, requestOptions, position, toRead);
+      int remaining = byteBuffer.remaining();
+      if (remaining >= chunkSize) {
+        // the whole range fits the caller's buffer, skip the local one
+        int read = fetch(byteBuffer, remaining);
+        position += read;
+        if (read < remaining) {
+          endOfStream = true;
+          if (read == 0) {
+            return -1;
           }
-        }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
-        if (result.y().length > 0 && lastEtag != null && !Objects.equals(result.x(), lastEtag)) {
-          StringBuilder messageBuilder = new StringBuilder();
-          messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
-          throw new StorageException(0, messageBuilder.toString());
         }
-        lastEtag = result.x();
-        buffer = result.y();
-      } catch (RetryHelper.RetryHelperException e) {
-        throw StorageException.translateAndThrow(e);
+        return read;
+      }
+      if (buffer == null || buffer.length != chunkSize) {
+        buffer = new byte[chunkSize];
       }
-      if (toRead > buffer.length) {
+      int read = fetch(ByteBuffer.wrap(buffer), chunkSize);
+      bufferPos = 0;
+      bufferLimit = read;
+      if (read < chunkSize) {
         endOfStream = true;
-        if (buffer.length == 0) {
-          buffer = null;
+        if (read == 0) {
           return -1;
         }
       }
     }
-    int toWrite = Math.min(buffer.length - bufferPos, byteBuffer.remaining());
+    int toWrite = Math.min(bufferLimit - bufferPos, byteBuffer.remaining());
     byteBuffer.put(buffer, bufferPos, toWrite);
     bufferPos += toWrite;
-    if (bufferPos >= buffer.length) {
-      position += buffer.length;
-      buffer = null;
+    if (bufferPos >= bufferLimit) {
+      position += bufferLimit;
       bufferPos = 0;
+      bufferLimit = 0;
     }
     return toWrite;
   }
 
+  /**
+   * Reads at most {@code length} bytes at the current position directly into {@code target}. If
+   * the read is retried or fails {@code target} is reset to its initial position.
+   *
+   * @return the number of bytes read
+   */
+  private int fetch(final ByteBuffer target, final int length) {
+    final int start = target.position();
+    try {
+      Tuple<String, Long> result = runWithRetries(new Callable<Tuple<String, Long>>() {
+        @Override
+        public Tuple<String, Long> call() {
+          target.position(start);
+          return storageRpc.read(storageObject, requestOptions, position, length,
+              new ByteBufferOutputStream(target));
+        }
+      }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
+      if (result.y() > 0 && lastEtag != null && !Objects.equals(result.x(), lastEtag)) {
+        target.position(start);
+        StringBuilder messageBuilder = new StringBuilder();
+        messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
+        throw new StorageException(0, messageBuilder.toString());
+      }
+      if (result.y() > 0) {
+        // reading past the end of the blob returns no etag, keep the one of the data read so far
+        lastEtag = result.x();
+      }
+      int read = target.position() - start;
+      if (checksums != null) {
+        updateChecksums(target, start, read < length);
+      }
+      return read;
+    } catch (RetryHelper.RetryHelperException e) {
+      target.position(start);
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * Updates the checksums with the bytes fetched into {@code target} since {@code start}. Once the
+   * end of the blob is reached the checksums are verified against the blob's metadata. Checksums
+   * are not verified if the blob was updated after it was read, as the metadata describes a
+   * different version of the blob. If no data was read the blob is only verified if it is still
+   * empty.
+   */
+  private void updateChecksums(ByteBuffer target, int start, boolean endOfBlob) {
+    if (checksums.length() != position) {
+      // data was not fetched sequentially from the beginning of the blob
+      checksums = null;
+      return;
+    }
+    ByteBuffer fetched = target.duplicate();
+    fetched.flip();
+    fetched.position(start);
+    checksums.update(fetched);
+    if (endOfBlob) {
+      BlobChecksums computed = checksums;
+      checksums = null;
+      StorageObject metadata = getMetadata();
+      if (metadata != null && (lastEtag != null
+          ? Objects.equals(metadata.getEtag(), lastEtag)
+          : BigInteger.ZERO.equals(metadata.getSize()))) {
+        computed.verify(blob, metadata.getCrc32c(), metadata.getMd5Hash());
+      }
+    }
+  }
+
+  private StorageObject getMetadata() {
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.get(storageObject, requestOptions);
+        }
+      }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * An output stream that writes to a {@link ByteBuffer}. Writing more bytes than the buffer's
+   * remaining capacity fails with an {@link IOException}.
+   */
+  static final class ByteBufferOutputStream extends OutputStream {
+
+    private final ByteBuffer target;
+
+    ByteBufferOutputStream(ByteBuffer target) {
+      this.target = target;
+    }
+
+    @Override
+    public void write(int value) throws IOException {
+      write(new byte[]{(byte) value}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (length > target.remaining()) {
+        throw new IOException("Received more data than requested");
+      }
+      target.put(bytes, offset, length);
+    }
+  }
+
   static class StateImpl implements RestorableState<ReadChannel>, Serializable {
 
     private static final long serialVersionUID = 3889420316004453706L;
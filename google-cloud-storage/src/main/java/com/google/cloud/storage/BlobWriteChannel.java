@@ -23,18 +23,34 @@ import com.google.cloud.BaseWriteChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryHelper;
 import com.google.cloud.WriteChannel;
+import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.Maps;
 
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.Callable;
 
 /**
  * Write channel implementation to upload Google Cloud Storage blobs.
+ *
+ * <p>If {@link StorageRpc.Option#VERIFY_CHECKSUMS} or {@link StorageRpc.Option#SEND_CHECKSUMS} is
+ * set, the checksums of the uploaded data are computed as chunks are sent and are compared with
+ * the ones of the created blob when the channel is closed. With
+ * {@link StorageRpc.Option#SEND_CHECKSUMS} the checksums are also sent with the last chunk, so
+ * that the service rejects a corrupted upload.
  */
 class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
 
+  private BlobChecksums checksums;
+  private boolean sendChecksums;
+
   BlobWriteChannel(StorageOptions options, BlobInfo blob, Map<StorageRpc.Option, ?> optionsMap) {
     this(options, blob, open(options, blob, optionsMap));
+    sendChecksums = optionsMap.containsKey(StorageRpc.Option.SEND_CHECKSUMS);
+    if (sendChecksums || optionsMap.containsKey(StorageRpc.Option.VERIFY_CHECKSUMS)) {
+      checksums = new BlobChecksums();
+    }
   }
 
   BlobWriteChannel(StorageOptions options, BlobInfo blobInfo, String uploadId) {
@@ -42,12 +58,38 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
   }
 
   @Override
-  protected void flushBuffer(final int length, final boolean last) {
+  protected int maxPendingChunks() {
+    return options().maxPendingUploadChunks();
+  }
+
+  @Override
+  protected boolean supportsPipelining() {
+    return true;
+  }
+
+  @Override
+  protected void flushBuffer(int length, boolean last) {
+    flushChunk(buffer(), position(), length, last);
+  }
+
+  @Override
+  protected void flushChunk(final byte[] chunk, final int position, final int length,
+      final boolean last) {
+    if (checksums != null) {
+      if (checksums.length() == position) {
+        // a chunk is only hashed once, even if closing the channel is attempted again
+        checksums.update(chunk, 0, length);
+      }
+      if (last) {
+        flushLastChunk(chunk, position, length);
+        return;
+      }
+    }
     try {
       runWithRetries(callable(new Runnable() {
         @Override
         public void run() {
-          options().rpc().write(uploadId(), buffer(), 0, position(), length, last);
+          options().rpc().write(uploadId(), chunk, 0, position, length, last);
         }
       }), options().retryParams(), StorageImpl.EXCEPTION_HANDLER, options().clock());
     } catch (RetryHelper.RetryHelperException e) {
@@ -55,17 +97,49 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
     }
   }
 
+  /**
+   * Writes the last chunk of the upload and verifies the checksums of the created blob.
+   */
+  private void flushLastChunk(final byte[] chunk, final int position, final int length) {
+    final String crc32c = sendChecksums ? checksums.crc32c() : null;
+    final String md5 = sendChecksums ? checksums.md5() : null;
+    StorageObject storageObject;
+    try {
+      storageObject = runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return options().rpc()
+              .writeWithResponse(uploadId(), chunk, 0, position, length, true, crc32c, md5);
+        }
+      }, options().retryParams(), StorageImpl.EXCEPTION_HANDLER, options().clock());
+    } catch (RetryHelper.RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+    if (storageObject != null) {
+      checksums.verify(entity().blobId(), storageObject.getCrc32c(), storageObject.getMd5Hash());
+    }
+  }
+
   protected StateImpl.Builder stateBuilder() {
-    return StateImpl.builder(options(), entity(), uploadId());
+    StateImpl.Builder builder = StateImpl.builder(options(), entity(), uploadId());
+    if (checksums != null) {
+      builder.checksums(checksums.crc32cValue(), sendChecksums);
+    }
+    return builder;
   }
 
   private static String open(final StorageOptions options, final BlobInfo blob,
-      final Map<StorageRpc.Option, ?> optionsMap) {
+      Map<StorageRpc.Option, ?> optionsMap) {
+    // checksum options are handled by the channel and must not be sent with the request
+    final Map<StorageRpc.Option, Object> rpcOptions = Maps.newEnumMap(StorageRpc.Option.class);
+    rpcOptions.putAll(optionsMap);
+    rpcOptions.remove(StorageRpc.Option.VERIFY_CHECKSUMS);
+    rpcOptions.remove(StorageRpc.Option.SEND_CHECKSUMS);
     try {
       return runWithRetries(new Callable<String>() {
         @Override
         public String call() {
-          return options.rpc().open(blob.toPb(), optionsMap);
+          return options.rpc().open(blob.toPb(), rpcOptions);
         }
       }, options.retryParams(), StorageImpl.EXCEPTION_HANDLER, options.clock());
     } catch (RetryHelper.RetryHelperException e) {
@@ -77,16 +151,33 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
 
     private static final long serialVersionUID = -9028324143780151286L;
 
+    private final Integer crc32c;
+    private final boolean sendChecksums;
+
     StateImpl(Builder builder) {
       super(builder);
+      this.crc32c = builder.crc32c;
+      this.sendChecksums = builder.sendChecksums;
     }
 
     static class Builder extends BaseWriteChannel.BaseState.Builder<StorageOptions, BlobInfo> {
 
+      private Integer crc32c;
+      private boolean sendChecksums;
+
       private Builder(StorageOptions options, BlobInfo blobInfo, String uploadId) {
         super(options, blobInfo, uploadId);
       }
 
+      /**
+       * Sets the CRC32C checksum of the data uploaded so far, for channels that verify checksums.
+       */
+      Builder checksums(int crc32c, boolean sendChecksums) {
+        this.crc32c = crc32c;
+        this.sendChecksums = sendChecksums;
+        return this;
+      }
+
       @Override
       public RestorableState<WriteChannel> build() {
         return new StateImpl(this);
@@ -101,7 +192,26 @@ class BlobWriteChannel extends BaseWriteChannel<StorageOptions, BlobInfo> {
     public WriteChannel restore() {
       BlobWriteChannel channel = new BlobWriteChannel(serviceOptions, entity, uploadId);
       channel.restore(this);
+      if (crc32c != null) {
+        channel.checksums = BlobChecksums.resume(crc32c, position);
+        channel.sendChecksums = sendChecksums;
+      }
       return channel;
     }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(super.hashCode(), crc32c, sendChecksums);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (!super.equals(obj) || !(obj instanceof StateImpl)) {
+        return false;
+      }
+      final StateImpl other = (StateImpl) obj;
+      return Objects.equals(this.crc32c, other.crc32c)
+          && this.sendChecksums == other.sendChecksums;
+    }
   }
 }
@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.cloud.AuthCredentials.ServiceAccountAuthCredentials;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.ServiceAccountSigner;
+import com.google.cloud.storage.Storage.SignUrlOption;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.net.URL;
+import java.security.GeneralSecurityException;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates signed URLs for many blobs at once. URLs are the same as the ones returned by
+ * {@link Storage#signUrl(BlobInfo, long, TimeUnit, SignUrlOption...)}, but the options, the signer
+ * and the first line of the string to sign are resolved once per call and blobs are signed by up
+ * to {@link #parallelism()} threads. Threads are pooled by the signer until {@link #close()} is
+ * called, and when signing with {@link ServiceAccountAuthCredentials} each thread initializes its
+ * {@link Signature} once and reuses it across calls, rather than once per URL.
+ *
+ * <p>The expiration time of signed URLs can be rounded up to a multiple of an
+ * {@linkplain Builder#expirationBucket(long, TimeUnit) expiration bucket}. URLs for the same blob
+ * signed within the same bucket are then identical and, if a {@linkplain Builder#cacheSize(long)
+ * cache} is configured, are only signed once.
+ *
+ * <p>Example of signing URLs for many blobs, valid for at least one hour.
+ * <pre> {@code
+ * BulkUrlSigner signer = BulkUrlSigner.builder(storage)
+ *     .expirationBucket(5, TimeUnit.MINUTES)
+ *     .cacheSize(10000)
+ *     .build();
+ * List<URL> urls = signer.signUrls(blobInfos, 1, TimeUnit.HOURS);
+ * // when no more URLs need to be signed
+ * signer.close();
+ * }</pre>
+ *
+ * <p>This class is thread-safe.
+ */
+public final class BulkUrlSigner implements AutoCloseable {
+
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final String SIGNATURE_ALGORITHM = "SHA256withRSA";
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-url-signer-%d")
+      .build();
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final StorageOptions options;
+  private final int parallelism;
+  private final long expirationBucketSeconds;
+  private final long cacheSize;
+  private final Cache<String, URL> cache;
+  private final ThreadPoolExecutor executor;
+  private final ThreadLocal<KeySignature> signatures = new ThreadLocal<>();
+
+  /**
+   * A {@link Signature} initialized with a private key.
+   */
+  private static final class KeySignature {
+
+    private final PrivateKey key;
+    private final Signature signature;
+
+    KeySignature(PrivateKey key, Signature signature) {
+      this.key = key;
+      this.signature = signature;
+    }
+  }
+
+  /**
+   * Builder for {@code BulkUrlSigner} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private long expirationBucketSeconds = 1;
+    private long cacheSize;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of threads signing URLs concurrently. The default parallelism is 4.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets the granularity of expiration times. The expiration time of signed URLs is rounded up
+     * to a multiple of {@code duration}, so URLs can be valid for up to {@code duration} longer
+     * than requested. By default expiration times are not rounded beyond whole seconds.
+     *
+     * @throws IllegalArgumentException if {@code duration} is shorter than one second
+     */
+    public Builder expirationBucket(long duration, TimeUnit unit) {
+      long seconds = unit.toSeconds(duration);
+      checkArgument(seconds > 0, "Expiration bucket must be at least one second");
+      this.expirationBucketSeconds = seconds;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of signed URLs kept in memory to be returned again for the same
+     * blob, options and expiration time. Cached URLs are evicted once their expiration bucket
+     * elapses. The default cache size is 0, which disables caching.
+     *
+     * @throws IllegalArgumentException if {@code cacheSize} is negative
+     */
+    public Builder cacheSize(long cacheSize) {
+      checkArgument(cacheSize >= 0, "Cache size must be >= 0");
+      this.cacheSize = cacheSize;
+      return this;
+    }
+
+    /**
+     * Creates a {@code BulkUrlSigner} object.
+     */
+    public BulkUrlSigner build() {
+      return new BulkUrlSigner(this);
+    }
+  }
+
+  private BulkUrlSigner(Builder builder) {
+    this.options = builder.storage.options();
+    this.parallelism = builder.parallelism;
+    this.expirationBucketSeconds = builder.expirationBucketSeconds;
+    this.cacheSize = builder.cacheSize;
+    this.cache = cacheSize > 0
+        ? CacheBuilder.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfterWrite(expirationBucketSeconds, TimeUnit.SECONDS)
+            .<String, URL>build()
+        : null;
+    // idle threads are released, so that a signer that is not used does not hold them
+    this.executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+    this.executor.allowCoreThreadTimeOut(true);
+  }
+
+  /**
+   * Returns the maximum number of threads signing URLs concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns the granularity of expiration times, in seconds.
+   */
+  public long expirationBucketSeconds() {
+    return expirationBucketSeconds;
+  }
+
+  /**
+   * Returns the maximum number of cached signed URLs, 0 if caching is disabled.
+   */
+  public long cacheSize() {
+    return cacheSize;
+  }
+
+  /**
+   * Returns a builder for {@code BulkUrlSigner} objects that sign URLs with the credentials of
+   * {@code storage}, unless {@link SignUrlOption#signWith(ServiceAccountSigner)} is used.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Generates a signed URL for a blob. The {@code options} can be used in the same way as for
+   * {@link Storage#signUrl(BlobInfo, long, TimeUnit, SignUrlOption...)}.
+   *
+   * @throws IllegalStateException if the signer is closed or if no signer was provided and the
+   *     service credentials can not sign
+   * @throws IllegalArgumentException if {@code blobInfo} is missing the md5 or the content type
+   *     requested with {@code options}
+   */
+  public URL signUrl(BlobInfo blobInfo, long duration, TimeUnit unit, SignUrlOption... options) {
+    return signUrls(ImmutableList.of(blobInfo), duration, unit, options).get(0);
+  }
+
+  /**
+   * Generates signed URLs for the provided blobs. All URLs share the same expiration time. The
+   * {@code options} can be used in the same way as for
+   * {@link Storage#signUrl(BlobInfo, long, TimeUnit, SignUrlOption...)}.
+   *
+   * @return an immutable list of signed URLs, in the same order as {@code blobInfos}
+   * @throws IllegalStateException if the signer is closed or if no signer was provided and the
+   *     service credentials can not sign
+   * @throws IllegalArgumentException if a blob is missing the md5 or the content type requested
+   *     with {@code options}
+   */
+  public List<URL> signUrls(Iterable<? extends BlobInfo> blobInfos, long duration, TimeUnit unit,
+      SignUrlOption... options) {
+    checkState(!executor.isShutdown(), "Signer is closed");
+    final List<BlobInfo> blobs = ImmutableList.copyOf(blobInfos);
+    final Map<SignUrlOption.Option, Object> optionMap = StorageImpl.signUrlOptionMap(options);
+    final ServiceAccountSigner signer = StorageImpl.signUrlSigner(this.options, optionMap);
+    final String prefix = StorageImpl.signUrlPrefix(optionMap);
+    final long expiration = expiration(duration, unit);
+    final URL[] urls = new URL[blobs.size()];
+    int sliceSize = (blobs.size() + parallelism - 1) / parallelism;
+    if (sliceSize == 0 || sliceSize == blobs.size()) {
+      signSlice(signer, prefix, optionMap, expiration, blobs, 0, urls);
+      return ImmutableList.copyOf(urls);
+    }
+    List<Future<?>> futures = new ArrayList<>();
+    int offset = 0;
+    for (final List<BlobInfo> slice : Lists.partition(blobs, sliceSize)) {
+      final int sliceOffset = offset;
+      futures.add(executor.submit(new Runnable() {
+        @Override
+        public void run() {
+          signSlice(signer, prefix, optionMap, expiration, slice, sliceOffset, urls);
+        }
+      }));
+      offset += slice.size();
+    }
+    RuntimeException failure = null;
+    for (Future<?> future : futures) {
+      try {
+        Uninterruptibles.getUninterruptibly(future);
+      } catch (ExecutionException ex) {
+        if (failure == null && ex.getCause() instanceof RuntimeException) {
+          failure = (RuntimeException) ex.getCause();
+        } else if (failure == null) {
+          failure = new StorageException(BaseServiceException.UNKNOWN_CODE,
+              ex.getCause().getMessage(), ex.getCause());
+        }
+      }
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    return ImmutableList.copyOf(urls);
+  }
+
+  /**
+   * Releases the threads used to sign URLs. URLs can no longer be signed once the signer is closed.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+  }
+
+  /**
+   * Returns the expiration time, in seconds since epoch, rounded up to the expiration bucket.
+   */
+  private long expiration(long duration, TimeUnit unit) {
+    long expiration = TimeUnit.SECONDS.convert(
+        options.clock().millis() + unit.toMillis(duration), TimeUnit.MILLISECONDS);
+    long remainder = expiration % expirationBucketSeconds;
+    return remainder == 0 ? expiration : expiration - remainder + expirationBucketSeconds;
+  }
+
+  /**
+   * Signs the URLs of {@code slice}, storing them in {@code urls} starting at {@code offset}.
+   */
+  private void signSlice(ServiceAccountSigner signer, String prefix,
+      Map<SignUrlOption.Option, Object> optionMap, long expiration, List<BlobInfo> slice,
+      int offset, URL[] urls) {
+    Signature signature = signature(signer);
+    StringBuilder builder = new StringBuilder();
+    for (BlobInfo blobInfo : slice) {
+      String path = StorageImpl.signUrlPath(blobInfo);
+      builder.setLength(0);
+      String toSign = StorageImpl.appendStringToSign(builder, prefix, blobInfo, optionMap,
+          expiration, path).toString();
+      String cacheKey = null;
+      URL url = null;
+      if (cache != null) {
+        cacheKey = signer.account() + '\n' + toSign;
+        url = cache.getIfPresent(cacheKey);
+      }
+      if (url == null) {
+        byte[] signatureBytes = sign(signer, signature, toSign.getBytes(UTF_8));
+        url = StorageImpl.signedUrl(path, signer.account(), expiration, signatureBytes);
+        if (cache != null) {
+          cache.put(cacheKey, url);
+        }
+      }
+      urls[offset++] = url;
+    }
+  }
+
+  /**
+   * Returns the current thread's {@link Signature} initialized with the private key of
+   * {@code signer}, or {@code null} if the signer's key is not available, in which case URLs are
+   * signed with {@link ServiceAccountSigner#sign(byte[])}. The signature is only initialized again
+   * if the thread last signed with a different key.
+   */
+  private Signature signature(ServiceAccountSigner signer) {
+    if (!(signer instanceof ServiceAccountAuthCredentials)) {
+      return null;
+    }
+    PrivateKey key = ((ServiceAccountAuthCredentials) signer).privateKey();
+    KeySignature keySignature = signatures.get();
+    if (keySignature != null && keySignature.key == key) {
+      return keySignature.signature;
+    }
+    try {
+      Signature signature = Signature.getInstance(SIGNATURE_ALGORITHM);
+      signature.initSign(key);
+      signatures.set(new KeySignature(key, signature));
+      return signature;
+    } catch (GeneralSecurityException ex) {
+      return null;
+    }
+  }
+
+  private static byte[] sign(ServiceAccountSigner signer, Signature signature, byte[] toSign) {
+    if (signature != null) {
+      try {
+        // sign() resets the signature, so it can be reused for the next URL
+        signature.update(toSign);
+        return signature.sign();
+      } catch (GeneralSecurityException ex) {
+        // fall back to the signer, which reports signing errors as SigningException
+      }
+    }
+    return signer.sign(toSign);
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.cloud.storage.Storage.ComposeRequest;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.Lists;
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads large blobs as parallel composite uploads. The content is split in parts of
+ * {@link #partSize()} bytes that are uploaded concurrently as temporary blobs in the target's
+ * bucket. Parts are then combined into the target blob with {@link Storage#compose}. Since a
+ * compose request accepts at most {@value #MAX_COMPOSE_SOURCES} sources, larger uploads are
+ * composed in several levels of intermediate blobs. Temporary blobs are deleted once the upload
+ * completes or fails. Contents that fit in a single part are uploaded with one
+ * {@link Storage#create(BlobInfo, byte[], BlobTargetOption...)} request.
+ *
+ * <p>Temporary blobs are named after the target blob, followed by a random upload identifier and
+ * the part index, and are created in the target's bucket. They get the target's customer-supplied
+ * encryption key and predefined ACL, if set, as compose requires sources to be encrypted with the
+ * target's key. Composite blobs have no MD5 hash but still carry a CRC32C checksum.
+ *
+ * <p>Example of uploading a file with 8 concurrent part uploads.
+ * <pre> {@code
+ * CompositeUploader uploader = CompositeUploader.builder(storage)
+ *     .partSize(64 * 1024 * 1024)
+ *     .parallelism(8)
+ *     .build();
+ * BlobInfo blobInfo = BlobInfo.builder("my_unique_bucket", "my_blob_name").build();
+ * Blob blob = uploader.upload(blobInfo, Paths.get("artifact.tar"));
+ * }</pre>
+ *
+ * @see <a href="https://cloud.google.com/storage/docs/composite-objects">Composite Objects</a>
+ */
+public final class CompositeUploader {
+
+  /**
+   * The maximum number of source blobs accepted by a compose request.
+   */
+  public static final int MAX_COMPOSE_SOURCES = 32;
+
+  private static final int DEFAULT_PART_SIZE = 32 * 1024 * 1024;
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int READ_BUFFER_SIZE = 2 * 1024 * 1024;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-composite-uploader-%d")
+      .build();
+
+  private final Storage storage;
+  private final int partSize;
+  private final int parallelism;
+
+  /**
+   * Builder for {@code CompositeUploader} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int partSize = DEFAULT_PART_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the size of the uploaded parts, in bytes. Uploads from an {@code InputStream} buffer up
+     * to {@link #parallelism(int)} parts in memory. The default part size is 32 MiB.
+     *
+     * @throws IllegalArgumentException if {@code partSize} is not positive
+     */
+    public Builder partSize(int partSize) {
+      checkArgument(partSize > 0, "Part size must be > 0");
+      this.partSize = partSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of parts uploaded, or composed, concurrently. The default
+     * parallelism is 4.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Creates a {@code CompositeUploader} object.
+     */
+    public CompositeUploader build() {
+      return new CompositeUploader(this);
+    }
+  }
+
+  private CompositeUploader(Builder builder) {
+    this.storage = builder.storage;
+    this.partSize = builder.partSize;
+    this.parallelism = builder.parallelism;
+  }
+
+  /**
+   * Returns the size of the uploaded parts, in bytes.
+   */
+  public int partSize() {
+    return partSize;
+  }
+
+  /**
+   * Returns the maximum number of parts uploaded, or composed, concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns a builder for {@code CompositeUploader} objects that upload blobs with
+   * {@code storage}.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Uploads the content of the file at {@code path} to the blob described by {@code blobInfo}.
+   *
+   * @param blobInfo the target blob
+   * @param path the file to upload
+   * @param options options applied to the target blob
+   * @return the uploaded blob
+   * @throws IOException upon failure reading the file
+   * @throws StorageException upon failure uploading or composing the blob
+   */
+  public Blob upload(BlobInfo blobInfo, Path path, BlobTargetOption... options)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+      return upload(blobInfo, channel, options);
+    }
+  }
+
+  /**
+   * Uploads the whole content of {@code channel}, regardless of its current position, to the blob
+   * described by {@code blobInfo}. Parts are read with positional reads, concurrently, and the
+   * channel's position is not modified. The channel is not closed.
+   *
+   * @param blobInfo the target blob
+   * @param channel the channel to upload
+   * @param options options applied to the target blob
+   * @return the uploaded blob
+   * @throws IOException upon failure reading the channel
+   * @throws StorageException upon failure uploading or composing the blob
+   */
+  public Blob upload(BlobInfo blobInfo, final FileChannel channel, BlobTargetOption... options)
+      throws IOException {
+    long length = channel.size();
+    if (length <= partSize) {
+      byte[] content = new byte[(int) length];
+      readFully(channel, ByteBuffer.wrap(content), 0);
+      return storage.create(blobInfo, content, options);
+    }
+    final Upload upload = new Upload(blobInfo, options);
+    try {
+      for (long offset = 0; offset < length; offset += partSize) {
+        final long partOffset = offset;
+        final long partLength = Math.min(partSize, length - offset);
+        final BlobInfo partInfo = upload.nextTemporaryBlob();
+        upload.submit(new Callable<BlobId>() {
+          @Override
+          public BlobId call() throws IOException {
+            ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(READ_BUFFER_SIZE, partLength));
+            long end = partOffset + partLength;
+            try (WriteChannel writer = storage.writer(partInfo, upload.temporaryWriteOptions)) {
+              for (long position = partOffset; position < end; position += buffer.limit()) {
+                buffer.clear();
+                buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                readFully(channel, buffer, position);
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                  writer.write(buffer);
+                }
+              }
+            }
+            return partInfo.blobId();
+          }
+        });
+      }
+      return upload.compose(options);
+    } finally {
+      upload.cleanUp();
+    }
+  }
+
+  /**
+   * Uploads {@code length} bytes read from {@code content} to the blob described by
+   * {@code blobInfo}. Parts are read sequentially and uploaded concurrently: at most
+   * {@link #parallelism()} parts are held in memory. The stream is not closed.
+   *
+   * @param blobInfo the target blob
+   * @param content the stream to upload
+   * @param length the number of bytes to read from {@code content}
+   * @param options options applied to the target blob
+   * @return the uploaded blob
+   * @throws EOFException if {@code content} has fewer than {@code length} bytes
+   * @throws IOException upon failure reading the stream
+   * @throws StorageException upon failure uploading or composing the blob
+   */
+  public Blob upload(BlobInfo blobInfo, InputStream content, long length,
+      BlobTargetOption... options) throws IOException {
+    checkArgument(length >= 0, "Length must be >= 0");
+    if (length <= partSize) {
+      byte[] bytes = new byte[(int) length];
+      ByteStreams.readFully(content, bytes);
+      return storage.create(blobInfo, bytes, options);
+    }
+    final Upload upload = new Upload(blobInfo, options);
+    try {
+      for (long offset = 0; offset < length; offset += partSize) {
+        upload.awaitPending(parallelism - 1);
+        final byte[] part = new byte[(int) Math.min(partSize, length - offset)];
+        ByteStreams.readFully(content, part);
+        final BlobInfo partInfo = upload.nextTemporaryBlob();
+        upload.submit(new Callable<BlobId>() {
+          @Override
+          public BlobId call() {
+            storage.create(partInfo, part, upload.temporaryOptions);
+            return partInfo.blobId();
+          }
+        });
+      }
+      return upload.compose(options);
+    } finally {
+      upload.cleanUp();
+    }
+  }
+
+  private static void readFully(FileChannel channel, ByteBuffer buffer, long position)
+      throws IOException {
+    while (buffer.hasRemaining()) {
+      int read = channel.read(buffer, position);
+      if (read < 0) {
+        throw new EOFException("File was truncated while uploading");
+      }
+      position += read;
+    }
+  }
+
+  /**
+   * The state of a single composite upload: the temporary blobs it created and its pending part
+   * uploads or compose requests.
+   */
+  private final class Upload {
+
+    private final BlobInfo target;
+    private final String temporaryPrefix;
+    private final BlobTargetOption[] temporaryOptions;
+    private final BlobWriteOption[] temporaryWriteOptions;
+    private final ExecutorService executor = Executors.newFixedThreadPool(parallelism,
+        THREAD_FACTORY);
+    private final Deque<Future<BlobId>> pending = new ArrayDeque<>();
+    private final List<BlobId> sources = new ArrayList<>();
+    private final List<BlobId> temporaryBlobs = new ArrayList<>();
+
+    Upload(BlobInfo target, BlobTargetOption... options) {
+      this.target = target;
+      this.temporaryPrefix = target.name() + "_" + UUID.randomUUID() + "_part_";
+      // Preconditions only apply to the target, the encryption key and ACL to all blobs
+      List<BlobTargetOption> temporaryOptions = new ArrayList<>();
+      List<BlobWriteOption> temporaryWriteOptions = new ArrayList<>();
+      for (BlobTargetOption option : options) {
+        if (option.rpcOption() == StorageRpc.Option.CUSTOMER_SUPPLIED_KEY
+            || option.rpcOption() == StorageRpc.Option.PREDEFINED_ACL) {
+          temporaryOptions.add(option);
+          temporaryWriteOptions.add(option.toWriteOption());
+        }
+      }
+      this.temporaryOptions =
+          temporaryOptions.toArray(new BlobTargetOption[temporaryOptions.size()]);
+      this.temporaryWriteOptions =
+          temporaryWriteOptions.toArray(new BlobWriteOption[temporaryWriteOptions.size()]);
+    }
+
+    BlobInfo nextTemporaryBlob() {
+      BlobId blobId = BlobId.of(target.bucket(), temporaryPrefix + temporaryBlobs.size());
+      temporaryBlobs.add(blobId);
+      return BlobInfo.builder(blobId).contentType(target.contentType()).build();
+    }
+
+    void submit(Callable<BlobId> task) {
+      pending.addLast(executor.submit(task));
+    }
+
+    /**
+     * Waits until at most {@code maxPending} tasks are pending, collecting their results in
+     * submission order.
+     */
+    void awaitPending(int maxPending) throws IOException {
+      while (pending.size() > maxPending) {
+        Future<BlobId> future = pending.removeFirst();
+        try {
+          sources.add(future.get());
+        } catch (InterruptedException ex) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        } catch (ExecutionException ex) {
+          Throwable cause = ex.getCause();
+          if (cause instanceof IOException) {
+            throw (IOException) cause;
+          } else if (cause instanceof RuntimeException) {
+            throw (RuntimeException) cause;
+          } else if (cause instanceof Error) {
+            throw (Error) cause;
+          }
+          throw new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(),
+              cause);
+        }
+      }
+    }
+
+    /**
+     * Waits for all parts to be uploaded and composes them into the target blob. Intermediate
+     * levels, if needed, are composed concurrently.
+     */
+    Blob compose(BlobTargetOption... options) throws IOException {
+      awaitPending(0);
+      while (sources.size() > MAX_COMPOSE_SOURCES) {
+        List<List<BlobId>> groups = Lists.partition(new ArrayList<>(sources),
+            MAX_COMPOSE_SOURCES);
+        sources.clear();
+        for (final List<BlobId> group : groups) {
+          final BlobInfo intermediate = nextTemporaryBlob();
+          submit(new Callable<BlobId>() {
+            @Override
+            public BlobId call() {
+              storage.compose(composeRequest(group, intermediate, temporaryOptions));
+              return intermediate.blobId();
+            }
+          });
+        }
+        awaitPending(0);
+      }
+      return storage.compose(composeRequest(sources, target, options));
+    }
+
+    private ComposeRequest composeRequest(List<BlobId> blobs, BlobInfo target,
+        BlobTargetOption... options) {
+      ComposeRequest.Builder builder = ComposeRequest.builder().target(target)
+          .targetOptions(options);
+      for (BlobId blob : blobs) {
+        builder.addSource(blob.name());
+      }
+      return builder.build();
+    }
+
+    /**
+     * Cancels pending tasks, waits for running ones and deletes all temporary blobs. Failures to
+     * delete temporary blobs are ignored.
+     */
+    void cleanUp() {
+      for (Future<BlobId> future : pending) {
+        future.cancel(false);
+      }
+      executor.shutdown();
+      boolean interrupted = false;
+      while (true) {
+        try {
+          executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+          break;
+        } catch (InterruptedException ex) {
+          interrupted = true;
+        }
+      }
+      try {
+        if (!temporaryBlobs.isEmpty()) {
+          storage.delete(temporaryBlobs);
+        }
+      } catch (StorageException ex) {
+        // temporary blobs that could not be deleted are left behind
+      } finally {
+        if (interrupted) {
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+  }
+}
@@ -17,6 +17,7 @@
 package com.google.cloud.storage;
 
 import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
 
 import com.google.cloud.Restorable;
 import com.google.cloud.RestorableState;
@@ -25,11 +26,20 @@ import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpc.RewriteRequest;
 import com.google.cloud.storage.spi.StorageRpc.RewriteResponse;
 import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Google Storage blob copy writer. A {@code CopyWriter} object allows to copy both blob's data and
@@ -44,13 +54,38 @@ import java.util.concurrent.Callable;
  * {@link CopyWriter#result()} can be used to automatically complete the copy and return information
  * on the newly created blob.
  *
+ * <p>The rewrite API copies a blob sequentially, one chunk per RPC, so a single copy can't be
+ * split among concurrent requests. {@link #results(List, int, ProgressListener)} can be used to
+ * complete several copies concurrently instead. {@link #capture()} can be called while the copy
+ * is in progress on another thread, e.g. from a {@link ProgressListener}, to save the state of the
+ * copy and resume it later.
+ *
  * @see <a href="https://cloud.google.com/storage/docs/json_api/v1/objects/rewrite">Rewrite</a>
  */
 public class CopyWriter implements Restorable<CopyWriter> {
 
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-copy-%d")
+      .build();
+
   private final StorageOptions serviceOptions;
   private final StorageRpc storageRpc;
-  private RewriteResponse rewriteResponse;
+  private volatile RewriteResponse rewriteResponse;
+
+  /**
+   * Interface for receiving the progress of a copy.
+   */
+  public interface ProgressListener {
+
+    /**
+     * Called after each chunk copied by {@code copyWriter}. {@link CopyWriter#totalBytesCopied()}
+     * and {@link CopyWriter#blobSize()} return the current progress of the copy. When copies are
+     * completed by {@link CopyWriter#results(List, int, ProgressListener)} this method is called
+     * concurrently for different copies.
+     */
+    void progress(CopyWriter copyWriter);
+  }
 
   CopyWriter(StorageOptions serviceOptions, RewriteResponse rewriteResponse) {
     this.serviceOptions = serviceOptions;
@@ -72,12 +107,78 @@ public class CopyWriter implements Restorable<CopyWriter> {
    * @throws StorageException upon failure
    */
   public Blob result() {
+    return result(null);
+  }
+
+  /**
+   * Returns the updated information for the written blob, copying all pending chunks as in
+   * {@link #result()}. {@code listener}, if not {@code null}, is notified after each chunk.
+   *
+   * @throws StorageException upon failure
+   */
+  public Blob result(ProgressListener listener) {
     while (!isDone()) {
       copyChunk();
+      if (listener != null) {
+        listener.progress(this);
+      }
     }
     return Blob.fromPb(serviceOptions.service(), rewriteResponse.result);
   }
 
+  /**
+   * Completes the provided copies, running at most {@code parallelism} of them concurrently, and
+   * returns the information for the written blobs, in the same order as {@code copyWriters}.
+   * {@code listener}, if not {@code null}, is notified after each copied chunk.
+   *
+   * <p>If a copy fails the other copies are still completed, then the first failure is thrown.
+   * Completed copies return their blob from {@link #result()} without further RPCs, copies that
+   * failed can be resumed by calling {@link #result()} again.
+   *
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   * @throws StorageException upon failure of any copy
+   */
+  public static List<Blob> results(List<CopyWriter> copyWriters, int parallelism,
+      final ProgressListener listener) {
+    checkArgument(parallelism > 0, "Parallelism must be > 0");
+    List<Blob> results = new ArrayList<>(copyWriters.size());
+    if (copyWriters.isEmpty()) {
+      return results;
+    }
+    ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(parallelism, copyWriters.size()), THREAD_FACTORY);
+    try {
+      List<Future<Blob>> futures = new ArrayList<>(copyWriters.size());
+      for (final CopyWriter copyWriter : copyWriters) {
+        futures.add(executor.submit(new Callable<Blob>() {
+          @Override
+          public Blob call() {
+            return copyWriter.result(listener);
+          }
+        }));
+      }
+      StorageException failure = null;
+      for (Future<Blob> future : futures) {
+        try {
+          results.add(Uninterruptibles.getUninterruptibly(future));
+        } catch (ExecutionException ex) {
+          if (failure == null) {
+            failure = ex.getCause() instanceof StorageException
+                ? (StorageException) ex.getCause()
+                : new StorageException(StorageException.UNKNOWN_CODE, ex.getCause().getMessage(),
+                    ex.getCause());
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+      return results;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
   /**
    * Returns the size of the blob being copied.
    */
@@ -105,7 +206,7 @@ public class CopyWriter implements Restorable<CopyWriter> {
    *
    * @throws StorageException upon failure
    */
-  public void copyChunk() {
+  public synchronized void copyChunk() {
     if (!isDone()) {
       try {
         this.rewriteResponse = runWithRetries(new Callable<RewriteResponse>() {
@@ -122,6 +223,7 @@ public class CopyWriter implements Restorable<CopyWriter> {
 
   @Override
   public RestorableState<CopyWriter> capture() {
+    RewriteResponse rewriteResponse = this.rewriteResponse;
     return StateImpl.builder(
         serviceOptions,
         BlobId.fromPb(rewriteResponse.rewriteRequest.source),
@@ -130,11 +232,11 @@ public class CopyWriter implements Restorable<CopyWriter> {
         BlobInfo.fromPb(rewriteResponse.rewriteRequest.target),
         rewriteResponse.rewriteRequest.targetOptions)
         .result(rewriteResponse.result != null ? BlobInfo.fromPb(rewriteResponse.result) : null)
-        .blobSize(blobSize())
-        .isDone(isDone())
+        .blobSize(rewriteResponse.blobSize)
+        .isDone(rewriteResponse.isDone)
         .megabytesCopiedPerChunk(rewriteResponse.rewriteRequest.megabytesRewrittenPerCall)
         .rewriteToken(rewriteResponse.rewriteToken)
-        .totalBytesRewritten(totalBytesCopied())
+        .totalBytesRewritten(rewriteResponse.totalBytesRewritten)
         .build();
   }
 
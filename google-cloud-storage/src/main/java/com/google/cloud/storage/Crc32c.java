@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import java.util.zip.Checksum;
+
+/**
+ * A CRC32C (Castagnoli) checksum, as used by Google Cloud Storage. Bytes are processed eight at a
+ * time using the slicing-by-8 algorithm, which is several times faster than a byte-wise table
+ * lookup. The checksum state is a single {@code int}, so a partial checksum can be saved with
+ * {@link #intValue()} and resumed with {@link #Crc32c(int)}.
+ */
+final class Crc32c implements Checksum {
+
+  private static final int POLYNOMIAL = 0x82F63B78;
+  private static final int[][] TABLES = tables();
+
+  private int crc;
+
+  /**
+   * Creates a checksum of no bytes.
+   */
+  Crc32c() {
+    this(0);
+  }
+
+  /**
+   * Creates a checksum that resumes from {@code value}, the checksum of the bytes processed so far.
+   */
+  Crc32c(int value) {
+    crc = ~value;
+  }
+
+  @Override
+  public void update(int value) {
+    crc = (crc >>> 8) ^ TABLES[0][(crc ^ value) & 0xff];
+  }
+
+  @Override
+  public void update(byte[] bytes, int offset, int length) {
+    int[] t0 = TABLES[0];
+    int[] t1 = TABLES[1];
+    int[] t2 = TABLES[2];
+    int[] t3 = TABLES[3];
+    int[] t4 = TABLES[4];
+    int[] t5 = TABLES[5];
+    int[] t6 = TABLES[6];
+    int[] t7 = TABLES[7];
+    int value = crc;
+    int limit = offset + (length & ~7);
+    while (offset < limit) {
+      value ^= (bytes[offset] & 0xff)
+          | (bytes[offset + 1] & 0xff) << 8
+          | (bytes[offset + 2] & 0xff) << 16
+          | (bytes[offset + 3] & 0xff) << 24;
+      value = t7[value & 0xff]
+          ^ t6[(value >>> 8) & 0xff]
+          ^ t5[(value >>> 16) & 0xff]
+          ^ t4[value >>> 24]
+          ^ t3[bytes[offset + 4] & 0xff]
+          ^ t2[bytes[offset + 5] & 0xff]
+          ^ t1[bytes[offset + 6] & 0xff]
+          ^ t0[bytes[offset + 7] & 0xff];
+      offset += 8;
+    }
+    limit += length & 7;
+    while (offset < limit) {
+      value = (value >>> 8) ^ t0[(value ^ bytes[offset++]) & 0xff];
+    }
+    crc = value;
+  }
+
+  /**
+   * Returns the checksum of the bytes processed so far.
+   */
+  int intValue() {
+    return ~crc;
+  }
+
+  @Override
+  public long getValue() {
+    return intValue() & 0xffffffffL;
+  }
+
+  @Override
+  public void reset() {
+    crc = ~0;
+  }
+
+  private static int[][] tables() {
+    int[][] tables = new int[8][256];
+    for (int i = 0; i < 256; i++) {
+      int value = i;
+      for (int bit = 0; bit < 8; bit++) {
+        value = (value & 1) != 0 ? (value >>> 1) ^ POLYNOMIAL : value >>> 1;
+      }
+      tables[0][i] = value;
+    }
+    for (int i = 0; i < 256; i++) {
+      for (int table = 1; table < 8; table++) {
+        int previous = tables[table - 1][i];
+        tables[table][i] = (previous >>> 8) ^ tables[0][previous & 0xff];
+      }
+    }
+    return tables;
+  }
+}
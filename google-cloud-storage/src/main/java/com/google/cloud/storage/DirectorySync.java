@@ -0,0 +1,482 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobField;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Synchronizes a local directory tree to the blobs under a prefix of a bucket. Each regular file
+ * in the tree is mapped to the blob named after the prefix followed by the file's path relative to
+ * the directory, with {@code /} as separator. A file is uploaded only if its blob is missing or
+ * differs from it:
+ * <ol>
+ *   <li>blobs whose size differs from the file's size are uploaded again;
+ *   <li>blobs whose {@value #FILE_MTIME_METADATA} metadata matches the file's last modified time
+ *       are left unchanged, without reading the file;
+ *   <li>otherwise the file's CRC32C checksum is computed and compared with the blob's. If they
+ *       match the blob is left unchanged and its modification time metadata is updated, so that
+ *       the file is not read again by the next synchronization.
+ * </ol>
+ *
+ * <p>The bucket is listed while the directory is walked, and files are compared and uploaded by
+ * up to {@link #parallelism()} threads as soon as they are found. Blobs under the prefix that do
+ * not match any file can optionally be deleted, once all uploads succeeded.
+ *
+ * <p>Example of synchronizing a directory, deleting blobs of removed files.
+ * <pre> {@code
+ * DirectorySync sync = DirectorySync.builder(storage)
+ *     .parallelism(16)
+ *     .deleteExtraneous(true)
+ *     .build();
+ * DirectorySync.Result result = sync.sync(Paths.get("site"), "my_unique_bucket", "www/");
+ * }</pre>
+ *
+ * <p>Blobs are compared with the {@link BlobInfo#crc32c()} returned by the service: composite
+ * blobs and blobs encrypted with a customer-supplied key are compared in the same way. Symbolic
+ * links are not followed.
+ */
+public final class DirectorySync {
+
+  /**
+   * The blob metadata key holding the last modified time of the uploaded file, in seconds since
+   * epoch. The same key is used by {@code gsutil rsync}.
+   */
+  public static final String FILE_MTIME_METADATA = "goog-reserved-file-mtime";
+
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final int DIRECT_UPLOAD_THRESHOLD = 4 * 1024 * 1024;
+  private static final int READ_BUFFER_SIZE = 256 * 1024;
+  private static final int DELETE_BATCH_SIZE = 100;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-directory-sync-%d")
+      .build();
+
+  private final Storage storage;
+  private final int parallelism;
+  private final boolean deleteExtraneous;
+  private final boolean compareChecksums;
+
+  /**
+   * Builder for {@code DirectorySync} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean deleteExtraneous;
+    private boolean compareChecksums = true;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of files compared or uploaded, and of delete batch requests sent,
+     * concurrently. The default parallelism is 4.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets whether blobs under the prefix that do not match any local file should be deleted. By
+     * default extraneous blobs are kept.
+     */
+    public Builder deleteExtraneous(boolean deleteExtraneous) {
+      this.deleteExtraneous = deleteExtraneous;
+      return this;
+    }
+
+    /**
+     * Sets whether files whose modification time differs from their blob's, but whose size is the
+     * same, should be compared by CRC32C checksum before being uploaded. If {@code false} such
+     * files are always uploaded. The default value is {@code true}.
+     */
+    public Builder compareChecksums(boolean compareChecksums) {
+      this.compareChecksums = compareChecksums;
+      return this;
+    }
+
+    /**
+     * Creates a {@code DirectorySync} object.
+     */
+    public DirectorySync build() {
+      return new DirectorySync(this);
+    }
+  }
+
+  /**
+   * The outcome of a synchronization.
+   */
+  public static final class Result {
+
+    private final List<Blob> uploaded;
+    private final List<String> unchanged;
+    private final List<BlobId> deleted;
+
+    private Result(List<Blob> uploaded, List<String> unchanged, List<BlobId> deleted) {
+      this.uploaded = ImmutableList.copyOf(uploaded);
+      this.unchanged = ImmutableList.copyOf(unchanged);
+      this.deleted = ImmutableList.copyOf(deleted);
+    }
+
+    /**
+     * Returns the blobs that were uploaded, because they were missing or out of date.
+     */
+    public List<Blob> uploaded() {
+      return uploaded;
+    }
+
+    /**
+     * Returns the names of the blobs that were already up to date.
+     */
+    public List<String> unchanged() {
+      return unchanged;
+    }
+
+    /**
+     * Returns the identities of the extraneous blobs that were deleted.
+     */
+    public List<BlobId> deleted() {
+      return deleted;
+    }
+  }
+
+  private DirectorySync(Builder builder) {
+    this.storage = builder.storage;
+    this.parallelism = builder.parallelism;
+    this.deleteExtraneous = builder.deleteExtraneous;
+    this.compareChecksums = builder.compareChecksums;
+  }
+
+  /**
+   * Returns the maximum number of files compared or uploaded concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns whether extraneous blobs are deleted.
+   */
+  public boolean deleteExtraneous() {
+    return deleteExtraneous;
+  }
+
+  /**
+   * Returns whether files are compared by CRC32C checksum when their modification time differs.
+   */
+  public boolean compareChecksums() {
+    return compareChecksums;
+  }
+
+  /**
+   * Returns a builder for {@code DirectorySync} objects that synchronize blobs with
+   * {@code storage}.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Synchronizes the tree rooted at {@code directory} to the blobs of {@code bucket} whose name
+   * starts with {@code prefix}. If not empty, {@code prefix} is used as a directory: a {@code /}
+   * is appended if missing, so that no blob outside of it is ever compared or deleted.
+   *
+   * @param directory the local directory to synchronize
+   * @param bucket the target bucket
+   * @param prefix the prefix of the target blobs, possibly empty
+   * @param options options applied to the uploaded blobs
+   * @return the uploaded, unchanged and deleted blobs
+   * @throws IOException upon failure walking or reading the directory
+   * @throws StorageException upon failure listing, uploading or deleting blobs
+   */
+  public Result sync(Path directory, String bucket, String prefix, BlobWriteOption... options)
+      throws IOException {
+    checkArgument(Files.isDirectory(directory), "%s is not a directory", directory);
+    final String blobPrefix =
+        prefix.isEmpty() || prefix.endsWith("/") ? prefix : prefix + "/";
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+    try {
+      Future<Map<String, Blob>> listing = executor.submit(list(bucket, blobPrefix));
+      List<Future<Blob>> uploads = new ArrayList<>();
+      List<String> names = new ArrayList<>();
+      walk(directory, bucket, blobPrefix, listing, executor, uploads, names, options);
+      List<Blob> results = await(uploads);
+      List<Blob> uploaded = new ArrayList<>();
+      List<String> unchanged = new ArrayList<>();
+      for (int i = 0; i < results.size(); i++) {
+        if (results.get(i) != null) {
+          uploaded.add(results.get(i));
+        } else {
+          unchanged.add(names.get(i));
+        }
+      }
+      List<BlobId> deleted = new ArrayList<>();
+      if (deleteExtraneous) {
+        Set<String> localNames = new HashSet<>(names);
+        List<BlobId> extraneous = new ArrayList<>();
+        for (Blob blob : getUnchecked(listing).values()) {
+          if (!localNames.contains(blob.name()) && !blob.name().endsWith("/")) {
+            extraneous.add(BlobId.of(bucket, blob.name()));
+          }
+        }
+        deleted.addAll(delete(executor, extraneous));
+      }
+      return new Result(uploaded, unchanged, deleted);
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private Callable<Map<String, Blob>> list(final String bucket, final String prefix) {
+    return new Callable<Map<String, Blob>>() {
+      @Override
+      public Map<String, Blob> call() {
+        Map<String, Blob> blobs = new HashMap<>();
+        Iterator<Blob> iterator = storage.list(bucket, BlobListOption.prefix(prefix),
+            BlobListOption.fields(BlobField.SIZE, BlobField.CRC32C, BlobField.METADATA))
+            .iterateAll();
+        while (iterator.hasNext()) {
+          Blob blob = iterator.next();
+          blobs.put(blob.name(), blob);
+        }
+        return blobs;
+      }
+    };
+  }
+
+  /**
+   * Walks {@code directory}, submitting the comparison and upload of each regular file to
+   * {@code executor} as soon as it is found. Blob names are added to {@code names} in the same
+   * order as their tasks to {@code uploads}.
+   */
+  private void walk(final Path directory, final String bucket, final String prefix,
+      final Future<Map<String, Blob>> listing, final ExecutorService executor,
+      final List<Future<Blob>> uploads, final List<String> names,
+      final BlobWriteOption... options) throws IOException {
+    Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+        if (attrs.isRegularFile()) {
+          final String name = prefix + relativeName(directory, file);
+          names.add(name);
+          uploads.add(executor.submit(new Callable<Blob>() {
+            @Override
+            public Blob call() throws IOException {
+              return syncFile(file, attrs, BlobId.of(bucket, name), getUnchecked(listing),
+                  options);
+            }
+          }));
+        }
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  /**
+   * Uploads {@code file} if it differs from its blob. Returns the uploaded blob or {@code null} if
+   * the blob was up to date.
+   */
+  private Blob syncFile(Path file, BasicFileAttributes attrs, BlobId blobId,
+      Map<String, Blob> remote, BlobWriteOption... options) throws IOException {
+    Blob blob = remote.get(blobId.name());
+    String mtime = Long.toString(attrs.lastModifiedTime().to(TimeUnit.SECONDS));
+    if (blob != null && blob.size() != null && blob.size() == attrs.size()) {
+      Map<String, String> metadata = blob.metadata();
+      if (metadata != null && mtime.equals(metadata.get(FILE_MTIME_METADATA))) {
+        return null;
+      }
+      if (compareChecksums && blob.crc32c() != null && blob.crc32c().equals(crc32c(file))) {
+        Map<String, String> updated = new HashMap<>();
+        if (metadata != null) {
+          updated.putAll(metadata);
+        }
+        updated.put(FILE_MTIME_METADATA, mtime);
+        storage.update(BlobInfo.builder(blobId).metadata(updated).build());
+        return null;
+      }
+    }
+    Map<String, String> metadata = new HashMap<>();
+    if (blob != null && blob.metadata() != null) {
+      metadata.putAll(blob.metadata());
+    }
+    metadata.put(FILE_MTIME_METADATA, mtime);
+    return upload(BlobInfo.builder(blobId).metadata(metadata).build(), file, attrs.size(),
+        options);
+  }
+
+  private Blob upload(BlobInfo blobInfo, Path file, long size, BlobWriteOption... options)
+      throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      if (size <= DIRECT_UPLOAD_THRESHOLD) {
+        ByteBuffer content = ByteBuffer.allocate((int) size);
+        while (content.hasRemaining()) {
+          if (channel.read(content) < 0) {
+            throw new EOFException("File " + file + " was truncated while uploading");
+          }
+        }
+        BlobTargetOption[] targetOptions = BlobTargetOption.convert(blobInfo, options).y();
+        return storage.create(blobInfo, content.array(), targetOptions);
+      }
+      try (WriteChannel writer = storage.writer(blobInfo, options)) {
+        ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        while (channel.read(buffer) >= 0) {
+          buffer.flip();
+          while (buffer.hasRemaining()) {
+            writer.write(buffer);
+          }
+          buffer.clear();
+        }
+      }
+      return storage.get(blobInfo.blobId());
+    }
+  }
+
+  /**
+   * Deletes {@code blobIds} in batch requests, up to {@link #parallelism()} concurrently. Returns
+   * the blobs that were actually deleted.
+   */
+  private List<BlobId> delete(ExecutorService executor, List<BlobId> blobIds) throws IOException {
+    List<Future<List<BlobId>>> batches = new ArrayList<>();
+    for (final List<BlobId> batch : Lists.partition(blobIds, DELETE_BATCH_SIZE)) {
+      batches.add(executor.submit(new Callable<List<BlobId>>() {
+        @Override
+        public List<BlobId> call() {
+          List<Boolean> results = storage.delete(batch);
+          List<BlobId> deleted = new ArrayList<>();
+          for (int i = 0; i < batch.size(); i++) {
+            if (results.get(i)) {
+              deleted.add(batch.get(i));
+            }
+          }
+          return deleted;
+        }
+      }));
+    }
+    List<BlobId> deleted = new ArrayList<>();
+    for (List<BlobId> batch : await(batches)) {
+      deleted.addAll(batch);
+    }
+    return deleted;
+  }
+
+  private static String crc32c(Path file) throws IOException {
+    Crc32c crc32c = new Crc32c();
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+      int read;
+      while ((read = channel.read(buffer)) >= 0) {
+        crc32c.update(buffer.array(), 0, read);
+        buffer.clear();
+      }
+    }
+    return BaseEncoding.base64().encode(Ints.toByteArray(crc32c.intValue()));
+  }
+
+  private static String relativeName(Path directory, Path file) {
+    StringBuilder name = new StringBuilder();
+    for (Path element : directory.relativize(file)) {
+      if (name.length() > 0) {
+        name.append('/');
+      }
+      name.append(element.toString());
+    }
+    return name.toString();
+  }
+
+  private static <T> T getUnchecked(Future<T> future) {
+    try {
+      return Uninterruptibles.getUninterruptibly(future);
+    } catch (ExecutionException ex) {
+      throw asRuntimeException(ex.getCause());
+    }
+  }
+
+  /**
+   * Waits for all {@code futures} and returns their results. If a task failed, the remaining ones
+   * are cancelled and its failure is rethrown.
+   */
+  private static <T> List<T> await(List<Future<T>> futures) throws IOException {
+    List<T> results = new ArrayList<>(futures.size());
+    try {
+      for (Future<T> future : futures) {
+        results.add(Uninterruptibles.getUninterruptibly(future));
+      }
+    } catch (ExecutionException ex) {
+      for (Future<T> future : futures) {
+        future.cancel(true);
+      }
+      if (ex.getCause() instanceof IOException) {
+        throw (IOException) ex.getCause();
+      }
+      throw asRuntimeException(ex.getCause());
+    }
+    return results;
+  }
+
+  private static RuntimeException asRuntimeException(Throwable cause) {
+    if (cause instanceof RuntimeException) {
+      return (RuntimeException) cause;
+    }
+    return new StorageException(BaseServiceException.UNKNOWN_CODE, cause.getMessage(), cause);
+  }
+}
@@ -0,0 +1,432 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryHelper.RetryHelperException;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Maps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Lists the blobs in a bucket with several concurrent list requests. The key space is split in
+ * shards, each shard is listed page by page by its own task and at most {@link #parallelism()}
+ * shards are listed concurrently. Results are merged into a single {@link Listing} iterator that
+ * is consumed lazily: a shard's task stops fetching pages while the consumer is behind.
+ *
+ * <p>By default shards are discovered by listing the bucket (or the prefix requested with
+ * {@link BlobListOption#prefix(String)}) with a delimiter: every returned directory becomes a
+ * shard, while blobs at the top level are returned directly. Discovery does not speed up listing
+ * buckets whose blob names do not contain the delimiter. For such buckets, explicit shard prefixes
+ * can be provided with {@link Builder#shardPrefixes(Iterable)}.
+ *
+ * <p>Blobs are returned as soon as their page is received, in no particular order. If
+ * {@link #ordered()} is {@code true} blobs are returned in lexicographic order of their names, as
+ * {@link Storage#list(String, BlobListOption...)} does, at the cost of waiting for shards in
+ * order.
+ *
+ * <p>Example of listing all blobs in a bucket with 16 concurrent requests.
+ * <pre> {@code
+ * ParallelBlobLister lister = ParallelBlobLister.builder(storage).parallelism(16).build();
+ * try (ParallelBlobLister.Listing listing = lister.list("my_unique_bucket")) {
+ *   while (listing.hasNext()) {
+ *     Blob blob = listing.next();
+ *     // do something with the blob
+ *   }
+ * }
+ * }</pre>
+ */
+public final class ParallelBlobLister {
+
+  private static final int DEFAULT_PARALLELISM = 8;
+  private static final String DEFAULT_DELIMITER = "/";
+  private static final int PAGES_PER_SHARD = 2;
+  private static final Object END_OF_SHARD = new Object();
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-parallel-lister-%d")
+      .build();
+
+  private final Storage storage;
+  private final StorageOptions serviceOptions;
+  private final int parallelism;
+  private final boolean ordered;
+  private final String delimiter;
+  private final List<String> shardPrefixes;
+
+  /**
+   * Builder for {@code ParallelBlobLister} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private boolean ordered;
+    private String delimiter = DEFAULT_DELIMITER;
+    private List<String> shardPrefixes;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of shards listed concurrently. The default parallelism is 8.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Sets whether blobs should be returned in lexicographic order of their names. By default
+     * blobs are returned in no particular order.
+     */
+    public Builder ordered(boolean ordered) {
+      this.ordered = ordered;
+      return this;
+    }
+
+    /**
+     * Sets the delimiter used to discover shards. The default delimiter is {@code /}.
+     */
+    public Builder delimiter(String delimiter) {
+      checkArgument(delimiter != null && !delimiter.isEmpty(), "Delimiter must not be empty");
+      this.delimiter = delimiter;
+      return this;
+    }
+
+    /**
+     * Sets explicit shard prefixes, relative to the listed prefix, instead of discovering shards
+     * with a delimiter. Blobs whose name does not start with any of the prefixes are not returned,
+     * and prefixes must not overlap: for instance, the 16 hexadecimal digits are valid shard
+     * prefixes for a bucket whose blob names are hashes.
+     */
+    public Builder shardPrefixes(Iterable<String> shardPrefixes) {
+      this.shardPrefixes = ImmutableList.copyOf(shardPrefixes);
+      checkArgument(!this.shardPrefixes.isEmpty(), "Shard prefixes must not be empty");
+      return this;
+    }
+
+    /**
+     * Creates a {@code ParallelBlobLister} object.
+     */
+    public ParallelBlobLister build() {
+      return new ParallelBlobLister(this);
+    }
+  }
+
+  private ParallelBlobLister(Builder builder) {
+    this.storage = builder.storage;
+    this.serviceOptions = storage.options();
+    this.parallelism = builder.parallelism;
+    this.ordered = builder.ordered;
+    this.delimiter = builder.delimiter;
+    this.shardPrefixes = builder.shardPrefixes;
+  }
+
+  /**
+   * Returns the maximum number of shards listed concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns whether blobs are returned in lexicographic order of their names.
+   */
+  public boolean ordered() {
+    return ordered;
+  }
+
+  /**
+   * Returns a builder for {@code ParallelBlobLister} objects that list blobs with
+   * {@code storage}.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Lists all the blobs in {@code bucket}. Supported options are
+   * {@link BlobListOption#prefix(String)}, {@link BlobListOption#pageSize(long)},
+   * {@link BlobListOption#versions(boolean)} and {@link BlobListOption#fields}. Shard discovery,
+   * if needed, is done before this method returns.
+   *
+   * @throws IllegalArgumentException if {@link BlobListOption#currentDirectory()} or
+   *     {@link BlobListOption#pageToken(String)} are provided
+   * @throws StorageException upon failure
+   */
+  public Listing list(String bucket, BlobListOption... options) {
+    Map<StorageRpc.Option, ?> optionsMap = StorageImpl.optionMap(options);
+    checkArgument(!optionsMap.containsKey(StorageRpc.Option.DELIMITER),
+        "Current directory listing is not supported");
+    checkArgument(!optionsMap.containsKey(StorageRpc.Option.PAGE_TOKEN),
+        "Page tokens are not supported");
+    String prefix = optionsMap.containsKey(StorageRpc.Option.PREFIX)
+        ? (String) optionsMap.get(StorageRpc.Option.PREFIX) : "";
+    List<Shard> shards = new ArrayList<>();
+    if (shardPrefixes != null) {
+      for (String shardPrefix : shardPrefixes) {
+        shards.add(new Shard(prefix + shardPrefix, null));
+      }
+    } else {
+      Map<StorageRpc.Option, Object> discoveryOptions = Maps.newEnumMap(StorageRpc.Option.class);
+      discoveryOptions.putAll(optionsMap);
+      discoveryOptions.put(StorageRpc.Option.DELIMITER, delimiter);
+      String pageToken = null;
+      do {
+        Tuple<String, Iterable<StorageObject>> page =
+            listPage(bucket, discoveryOptions, pageToken);
+        for (StorageObject storageObject : page.y()) {
+          if (Boolean.TRUE.equals(storageObject.get("isDirectory"))) {
+            shards.add(new Shard(storageObject.getName(), null));
+          } else {
+            shards.add(new Shard(storageObject.getName(),
+                Blob.fromPb(storage, storageObject)));
+          }
+        }
+        pageToken = page.x();
+      } while (pageToken != null);
+    }
+    if (ordered) {
+      Collections.sort(shards);
+    }
+    return new Listing(bucket, optionsMap, shards);
+  }
+
+  private Tuple<String, Iterable<StorageObject>> listPage(final String bucket,
+      Map<StorageRpc.Option, ?> options, String pageToken) {
+    Map<StorageRpc.Option, Object> pageOptions = Maps.newEnumMap(StorageRpc.Option.class);
+    pageOptions.putAll(options);
+    if (pageToken != null) {
+      pageOptions.put(StorageRpc.Option.PAGE_TOKEN, pageToken);
+    }
+    final Map<StorageRpc.Option, ?> requestOptions = pageOptions;
+    try {
+      Tuple<String, Iterable<StorageObject>> page = runWithRetries(
+          new Callable<Tuple<String, Iterable<StorageObject>>>() {
+            @Override
+            public Tuple<String, Iterable<StorageObject>> call() {
+              return serviceOptions.rpc().list(bucket, requestOptions);
+            }
+          }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
+      Iterable<StorageObject> storageObjects = page.y() == null
+          ? ImmutableList.<StorageObject>of() : page.y();
+      return Tuple.of(page.x(), storageObjects);
+    } catch (RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * A part of the key space: either all the blobs whose name starts with {@code key}, or the
+   * single blob {@code blob} found during shard discovery.
+   */
+  private static final class Shard implements Comparable<Shard> {
+
+    private final String key;
+    private final Blob blob;
+
+    Shard(String key, Blob blob) {
+      this.key = key;
+      this.blob = blob;
+    }
+
+    @Override
+    public int compareTo(Shard other) {
+      return key.compareTo(other.key);
+    }
+  }
+
+  /**
+   * An iterator over the blobs returned by {@link ParallelBlobLister#list}. Iteration methods
+   * throw {@link StorageException} if listing a shard failed. A listing that is not fully consumed
+   * should be closed to stop its pending list requests. This class is not thread-safe.
+   */
+  public final class Listing implements Iterator<Blob>, AutoCloseable {
+
+    private final List<BlockingQueue<Object>> queues = new ArrayList<>();
+    private final Iterator<Blob> initialBlobs;
+    private final ExecutorService executor;
+    private int remainingShards;
+    private int currentQueue;
+    private Iterator<Blob> currentPage = Collections.emptyIterator();
+    private boolean closed;
+
+    private Listing(final String bucket, final Map<StorageRpc.Option, ?> optionsMap,
+        List<Shard> shards) {
+      List<Blob> discoveredBlobs = new ArrayList<>();
+      List<Shard> prefixShards = new ArrayList<>();
+      BlockingQueue<Object> sharedQueue = null;
+      if (!ordered) {
+        sharedQueue = new ArrayBlockingQueue<>(PAGES_PER_SHARD * parallelism);
+        queues.add(sharedQueue);
+      }
+      for (Shard shard : shards) {
+        if (shard.blob != null && !ordered) {
+          discoveredBlobs.add(shard.blob);
+          continue;
+        }
+        BlockingQueue<Object> queue = sharedQueue;
+        if (ordered) {
+          queue = new ArrayBlockingQueue<>(PAGES_PER_SHARD);
+          queues.add(queue);
+        }
+        if (shard.blob != null) {
+          queue.add(Collections.singletonList(shard.blob));
+          queue.add(END_OF_SHARD);
+        } else {
+          prefixShards.add(shard);
+        }
+        remainingShards++;
+      }
+      initialBlobs = discoveredBlobs.iterator();
+      executor = prefixShards.isEmpty()
+          ? null : Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+      int queueIndex = 0;
+      for (final Shard shard : shards) {
+        if (shard.blob != null && !ordered) {
+          continue;
+        }
+        final BlockingQueue<Object> queue = queues.get(ordered ? queueIndex++ : 0);
+        if (shard.blob == null) {
+          executor.execute(new Runnable() {
+            @Override
+            public void run() {
+              listShard(bucket, optionsMap, shard.key, queue);
+            }
+          });
+        }
+      }
+      if (executor != null) {
+        executor.shutdown();
+      }
+    }
+
+    private void listShard(String bucket, Map<StorageRpc.Option, ?> optionsMap, String prefix,
+        BlockingQueue<Object> queue) {
+      Map<StorageRpc.Option, Object> shardOptions = Maps.newEnumMap(StorageRpc.Option.class);
+      shardOptions.putAll(optionsMap);
+      shardOptions.put(StorageRpc.Option.PREFIX, prefix);
+      try {
+        try {
+          String pageToken = null;
+          do {
+            Tuple<String, Iterable<StorageObject>> page =
+                listPage(bucket, shardOptions, pageToken);
+            List<Blob> blobs = new ArrayList<>();
+            for (StorageObject storageObject : page.y()) {
+              blobs.add(Blob.fromPb(storage, storageObject));
+            }
+            queue.put(blobs);
+            pageToken = page.x();
+          } while (pageToken != null);
+          queue.put(END_OF_SHARD);
+        } catch (RuntimeException ex) {
+          queue.put(ex);
+        }
+      } catch (InterruptedException ex) {
+        // the listing was closed
+      }
+    }
+
+    @Override
+    public boolean hasNext() {
+      if (initialBlobs.hasNext() || currentPage.hasNext()) {
+        return true;
+      }
+      while (!closed && remainingShards > 0) {
+        Object element;
+        try {
+          element = queues.get(currentQueue).take();
+        } catch (InterruptedException ex) {
+          close();
+          Thread.currentThread().interrupt();
+          throw new StorageException(StorageException.UNKNOWN_CODE,
+              "Interrupted while waiting for list results", ex);
+        }
+        if (element == END_OF_SHARD) {
+          remainingShards--;
+          if (ordered) {
+            currentQueue++;
+          }
+        } else if (element instanceof RuntimeException) {
+          close();
+          throw (RuntimeException) element;
+        } else {
+          @SuppressWarnings("unchecked")
+          List<Blob> page = (List<Blob>) element;
+          currentPage = page.iterator();
+          if (currentPage.hasNext()) {
+            return true;
+          }
+        }
+      }
+      close();
+      return false;
+    }
+
+    @Override
+    public Blob next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      return initialBlobs.hasNext() ? initialBlobs.next() : currentPage.next();
+    }
+
+    @Override
+    public void remove() {
+      throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Stops all pending list requests. Blobs that were already received are still returned.
+     */
+    @Override
+    public void close() {
+      if (!closed) {
+        closed = true;
+        if (executor != null) {
+          executor.shutdownNow();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,449 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.cloud.RetryHelper.runWithRetries;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.RetryHelper;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.common.base.MoreObjects;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link ReadChannel} that splits a blob in ranges of {@code chunkSize} bytes and fetches up to
+ * {@code parallelism} of them at the same time. Ranges are returned to the caller in order. Each
+ * channel uses its own bounded pool of daemon threads that is shut down when the channel is
+ * closed. Idle threads time out, so channels that are not closed do not hold threads. Ranges are
+ * streamed into chunk-sized arrays, and the array of a consumed range is reused for the next one.
+ *
+ * <p>In read-ahead mode the channel starts by fetching one range at a time and, as long as the
+ * caller reads sequentially, keeps up to {@link #MAX_READ_AHEAD_CHUNKS} more ranges in flight,
+ * within the {@link StorageOptions#maxReadAheadBytes()} budget. A seek drops back to one range.
+ */
+class ParallelBlobReadChannel implements ReadChannel {
+
+  static final int MAX_READ_AHEAD_CHUNKS = 2;
+  private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-parallel-reader-%d")
+      .build();
+  private static final long KEEP_ALIVE_SECONDS = 60;
+
+  private final StorageOptions serviceOptions;
+  private final BlobId blob;
+  private final Map<StorageRpc.Option, ?> requestOptions;
+  private final int parallelism;
+  private final boolean readAhead;
+  private String lastEtag;
+  private long position;
+  private boolean isOpen;
+  private boolean endOfStream;
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private final StorageRpc storageRpc;
+  private final StorageObject storageObject;
+  private final Deque<PendingRead> pendingReads = new ArrayDeque<>();
+  private ThreadPoolExecutor executor;
+  private long fetchPosition;
+  private int readAheadChunks;
+  private int bufferPos;
+  private int bufferLimit;
+  private byte[] buffer;
+  // The array of the last consumed range, reused by the next range read
+  private byte[] spareBuffer;
+
+  private static final class PendingRead {
+
+    private final byte[] buffer;
+    private final Future<Tuple<String, Long>> future;
+
+    PendingRead(byte[] buffer, Future<Tuple<String, Long>> future) {
+      this.buffer = buffer;
+      this.future = future;
+    }
+  }
+
+  ParallelBlobReadChannel(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions, int parallelism) {
+    this(serviceOptions, blob, requestOptions, parallelism, false);
+  }
+
+  private ParallelBlobReadChannel(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions, int parallelism, boolean readAhead) {
+    this.serviceOptions = serviceOptions;
+    this.blob = blob;
+    this.requestOptions = requestOptions;
+    this.parallelism = parallelism;
+    this.readAhead = readAhead;
+    isOpen = true;
+    storageRpc = serviceOptions.rpc();
+    storageObject = blob.toPb();
+    checkArgument(parallelism > 0, "Parallelism must be > 0");
+  }
+
+  /**
+   * Creates a channel that prefetches ranges when the blob is read sequentially.
+   */
+  static ParallelBlobReadChannel readAhead(StorageOptions serviceOptions, BlobId blob,
+      Map<StorageRpc.Option, ?> requestOptions) {
+    return new ParallelBlobReadChannel(serviceOptions, blob, requestOptions,
+        MAX_READ_AHEAD_CHUNKS + 1, true);
+  }
+
+  @Override
+  public RestorableState<ReadChannel> capture() {
+    StateImpl.Builder builder = StateImpl.builder(serviceOptions, blob, requestOptions, parallelism)
+        .readAhead(readAhead)
+        .lastEtag(lastEtag)
+        .position(position)
+        .isOpen(isOpen)
+        .endOfStream(endOfStream)
+        .chunkSize(chunkSize);
+    if (buffer != null) {
+      builder.position(position + bufferPos);
+      builder.endOfStream(false);
+    }
+    return builder.build();
+  }
+
+  @Override
+  public boolean isOpen() {
+    return isOpen;
+  }
+
+  @Override
+  public void close() {
+    if (isOpen) {
+      cancelPendingReads();
+      if (executor != null) {
+        executor.shutdownNow();
+        executor = null;
+      }
+      buffer = null;
+      spareBuffer = null;
+      isOpen = false;
+    }
+  }
+
+  private void validateOpen() throws ClosedChannelException {
+    if (!isOpen) {
+      throw new ClosedChannelException();
+    }
+  }
+
+  @Override
+  public void seek(long position) throws IOException {
+    validateOpen();
+    cancelPendingReads();
+    readAheadChunks = 0;
+    this.position = position;
+    buffer = null;
+    bufferPos = 0;
+    bufferLimit = 0;
+    endOfStream = false;
+  }
+
+  @Override
+  public void chunkSize(int chunkSize) {
+    this.chunkSize = chunkSize <= 0 ? DEFAULT_CHUNK_SIZE : chunkSize;
+  }
+
+  @Override
+  public int read(ByteBuffer byteBuffer) throws IOException {
+    validateOpen();
+    if (buffer == null) {
+      if (endOfStream) {
+        return -1;
+      }
+      fillPendingReads();
+      PendingRead pendingRead = pendingReads.removeFirst();
+      Tuple<String, Long> result = await(pendingRead.future);
+      int read = result.y().intValue();
+      if (read > 0 && lastEtag != null && !Objects.equals(result.x(), lastEtag)) {
+        cancelPendingReads();
+        StringBuilder messageBuilder = new StringBuilder();
+        messageBuilder.append("Blob ").append(blob).append(" was updated while reading");
+        throw new StorageException(0, messageBuilder.toString());
+      }
+      if (read > 0) {
+        lastEtag = result.x();
+      }
+      buffer = pendingRead.buffer;
+      bufferLimit = read;
+      if (read < buffer.length) {
+        endOfStream = true;
+        cancelPendingReads();
+        if (read == 0) {
+          buffer = null;
+          return -1;
+        }
+      }
+    }
+    int toWrite = Math.min(bufferLimit - bufferPos, byteBuffer.remaining());
+    byteBuffer.put(buffer, bufferPos, toWrite);
+    bufferPos += toWrite;
+    if (bufferPos >= bufferLimit) {
+      position += bufferLimit;
+      spareBuffer = buffer;
+      buffer = null;
+      bufferPos = 0;
+      bufferLimit = 0;
+      if (readAhead && readAheadChunks < parallelism - 1) {
+        readAheadChunks++;
+      }
+    }
+    return toWrite;
+  }
+
+  /**
+   * Returns the number of range reads that may be in flight. In read-ahead mode this grows with
+   * the number of chunks read sequentially and is bounded by the read-ahead byte budget.
+   */
+  private int maxPendingReads() {
+    if (!readAhead) {
+      return parallelism;
+    }
+    long budget = serviceOptions.maxReadAheadBytes() / chunkSize;
+    return 1 + (int) Math.min(readAheadChunks, budget);
+  }
+
+  /**
+   * Schedules range reads, starting after the last scheduled one, until {@link #maxPendingReads()}
+   * reads are in flight.
+   */
+  private void fillPendingReads() {
+    if (executor == null) {
+      executor = new ThreadPoolExecutor(parallelism, parallelism, KEEP_ALIVE_SECONDS,
+          TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+      executor.allowCoreThreadTimeOut(true);
+    }
+    if (pendingReads.isEmpty()) {
+      fetchPosition = position;
+    }
+    while (pendingReads.size() < maxPendingReads()) {
+      final long readPosition = fetchPosition;
+      final byte[] chunk = spareBuffer != null && spareBuffer.length == chunkSize
+          ? spareBuffer : new byte[chunkSize];
+      spareBuffer = null;
+      Future<Tuple<String, Long>> future = executor.submit(new Callable<Tuple<String, Long>>() {
+        @Override
+        public Tuple<String, Long> call() {
+          return runWithRetries(new Callable<Tuple<String, Long>>() {
+            @Override
+            public Tuple<String, Long> call() {
+              // a retried read starts again from the beginning of the chunk
+              return storageRpc.read(storageObject, requestOptions, readPosition, chunk.length,
+                  new BlobReadChannel.ByteBufferOutputStream(ByteBuffer.wrap(chunk)));
+            }
+          }, serviceOptions.retryParams(), StorageImpl.EXCEPTION_HANDLER, serviceOptions.clock());
+        }
+      });
+      pendingReads.addLast(new PendingRead(chunk, future));
+      fetchPosition += chunk.length;
+    }
+  }
+
+  private void cancelPendingReads() {
+    for (PendingRead pendingRead : pendingReads) {
+      pendingRead.future.cancel(true);
+    }
+    pendingReads.clear();
+  }
+
+  private Tuple<String, Long> await(Future<Tuple<String, Long>> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      cancelPendingReads();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for blob " + blob);
+    } catch (ExecutionException e) {
+      cancelPendingReads();
+      Throwable cause = e.getCause();
+      if (cause instanceof RetryHelper.RetryHelperException) {
+        throw StorageException.translateAndThrow((RetryHelper.RetryHelperException) cause);
+      }
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      throw new StorageException(StorageException.UNKNOWN_CODE, cause.getMessage(), cause);
+    }
+  }
+
+  static class StateImpl implements RestorableState<ReadChannel>, Serializable {
+
+    private static final long serialVersionUID = -4427186290578124473L;
+
+    private final StorageOptions serviceOptions;
+    private final BlobId blob;
+    private final Map<StorageRpc.Option, ?> requestOptions;
+    private final int parallelism;
+    private final boolean readAhead;
+    private final String lastEtag;
+    private final long position;
+    private final boolean isOpen;
+    private final boolean endOfStream;
+    private final int chunkSize;
+
+    StateImpl(Builder builder) {
+      this.serviceOptions = builder.serviceOptions;
+      this.blob = builder.blob;
+      this.requestOptions = builder.requestOptions;
+      this.parallelism = builder.parallelism;
+      this.readAhead = builder.readAhead;
+      this.lastEtag = builder.lastEtag;
+      this.position = builder.position;
+      this.isOpen = builder.isOpen;
+      this.endOfStream = builder.endOfStream;
+      this.chunkSize = builder.chunkSize;
+    }
+
+    static class Builder {
+      private final StorageOptions serviceOptions;
+      private final BlobId blob;
+      private final Map<StorageRpc.Option, ?> requestOptions;
+      private final int parallelism;
+      private boolean readAhead;
+      private String lastEtag;
+      private long position;
+      private boolean isOpen;
+      private boolean endOfStream;
+      private int chunkSize;
+
+      private Builder(StorageOptions options, BlobId blob, Map<StorageRpc.Option, ?> reqOptions,
+          int parallelism) {
+        this.serviceOptions = options;
+        this.blob = blob;
+        this.requestOptions = reqOptions;
+        this.parallelism = parallelism;
+      }
+
+      Builder readAhead(boolean readAhead) {
+        this.readAhead = readAhead;
+        return this;
+      }
+
+      Builder lastEtag(String lastEtag) {
+        this.lastEtag = lastEtag;
+        return this;
+      }
+
+      Builder position(long position) {
+        this.position = position;
+        return this;
+      }
+
+      Builder isOpen(boolean isOpen) {
+        this.isOpen = isOpen;
+        return this;
+      }
+
+      Builder endOfStream(boolean endOfStream) {
+        this.endOfStream = endOfStream;
+        return this;
+      }
+
+      Builder chunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+        return this;
+      }
+
+      RestorableState<ReadChannel> build() {
+        return new StateImpl(this);
+      }
+    }
+
+    static Builder builder(StorageOptions options, BlobId blob,
+        Map<StorageRpc.Option, ?> reqOptions, int parallelism) {
+      return new Builder(options, blob, reqOptions, parallelism);
+    }
+
+    @Override
+    public ReadChannel restore() {
+      ParallelBlobReadChannel channel =
+          new ParallelBlobReadChannel(serviceOptions, blob, requestOptions, parallelism, readAhead);
+      channel.lastEtag = lastEtag;
+      channel.position = position;
+      channel.isOpen = isOpen;
+      channel.endOfStream = endOfStream;
+      channel.chunkSize = chunkSize;
+      return channel;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(serviceOptions, blob, requestOptions, parallelism, readAhead, lastEtag,
+          position, isOpen, endOfStream, chunkSize);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (obj == null) {
+        return false;
+      }
+      if (!(obj instanceof StateImpl)) {
+        return false;
+      }
+      final StateImpl other = (StateImpl) obj;
+      return Objects.equals(this.serviceOptions, other.serviceOptions)
+          && Objects.equals(this.blob, other.blob)
+          && Objects.equals(this.requestOptions, other.requestOptions)
+          && this.parallelism == other.parallelism
+          && this.readAhead == other.readAhead
+          && Objects.equals(this.lastEtag, other.lastEtag)
+          && this.position == other.position
+          && this.isOpen == other.isOpen
+          && this.endOfStream == other.endOfStream
+          && this.chunkSize == other.chunkSize;
+    }
+
+    @Override
+    public String toString() {
+      return MoreObjects.toStringHelper(this)
+          .add("blob", blob)
+          .add("parallelism", parallelism)
+          .add("readAhead", readAhead)
+          .add("position", position)
+          .add("isOpen", isOpen)
+          .add("endOfStream", endOfStream)
+          .toString();
+    }
+  }
+}
@@ -346,6 +346,10 @@ public interface Storage extends Service<StorageOptions> {
       return new BlobTargetOption(StorageRpc.Option.CUSTOMER_SUPPLIED_KEY, key);
     }
 
+    BlobWriteOption toWriteOption() {
+      return new BlobWriteOption(BlobWriteOption.Option.valueOf(rpcOption().name()), value());
+    }
+
     static Tuple<BlobInfo, BlobTargetOption[]> convert(BlobInfo info, BlobWriteOption... options) {
       BlobInfo.Builder infoBuilder = info.toBuilder().crc32c(null).md5(null);
       List<BlobTargetOption> targetOptions = Lists.newArrayListWithCapacity(options.length);
@@ -379,7 +383,8 @@ public interface Storage extends Service<StorageOptions> {
 
     enum Option {
       PREDEFINED_ACL, IF_GENERATION_MATCH, IF_GENERATION_NOT_MATCH, IF_METAGENERATION_MATCH,
-      IF_METAGENERATION_NOT_MATCH, IF_MD5_MATCH, IF_CRC32C_MATCH, CUSTOMER_SUPPLIED_KEY;
+      IF_METAGENERATION_NOT_MATCH, IF_MD5_MATCH, IF_CRC32C_MATCH, CUSTOMER_SUPPLIED_KEY,
+      VERIFY_CHECKSUMS, SEND_CHECKSUMS;
 
       StorageRpc.Option toRpcOption() {
         return StorageRpc.Option.valueOf(this.name());
@@ -478,6 +483,28 @@ public interface Storage extends Service<StorageOptions> {
       return new BlobWriteOption(Option.IF_CRC32C_MATCH, true);
     }
 
+    /**
+     * Returns an option to verify the blob's data while it is uploaded. If this option is used the
+     * CRC32C checksum and MD5 hash of the written data are computed as it goes through the channel
+     * returned by {@link Storage#writer(BlobInfo, BlobWriteOption...)} and, when the channel is
+     * closed, are compared with the ones computed by the service. Closing the channel fails with a
+     * {@link StorageException} if they do not match. This option only applies to
+     * {@link Storage#writer(BlobInfo, BlobWriteOption...)}.
+     */
+    public static BlobWriteOption verifyChecksums() {
+      return new BlobWriteOption(Option.VERIFY_CHECKSUMS, true);
+    }
+
+    /**
+     * Returns an option to send the checksums of the blob's data with the last chunk of the
+     * upload. This option implies {@link #verifyChecksums()} and additionally lets the service
+     * reject the upload, rather than create a corrupted blob, if the checksums do not match. This
+     * option only applies to {@link Storage#writer(BlobInfo, BlobWriteOption...)}.
+     */
+    public static BlobWriteOption sendChecksums() {
+      return new BlobWriteOption(Option.SEND_CHECKSUMS, true);
+    }
+
     /**
      * Returns an option to set a customer-supplied AES256 key for server-side encryption of the
      * blob.
@@ -581,6 +608,20 @@ public interface Storage extends Service<StorageOptions> {
     public static BlobSourceOption decryptionKey(String key) {
       return new BlobSourceOption(StorageRpc.Option.CUSTOMER_SUPPLIED_KEY, key);
     }
+
+    /**
+     * Returns an option to verify the blob's data while it is read. If this option is used the
+     * CRC32C checksum and MD5 hash of the data read sequentially from the beginning of the blob are
+     * computed as it goes through the channel returned by
+     * {@link Storage#reader(BlobId, BlobSourceOption...)} and, once the end of the blob is reached,
+     * are compared with the ones stored by the service. Reading fails with a
+     * {@link StorageException} if they do not match. Verification is skipped if the channel is
+     * moved with {@link ReadChannel#seek(long)} away from the next byte to read or restored at a
+     * non-zero position. This option only applies to {@code reader} methods.
+     */
+    public static BlobSourceOption verifyChecksums() {
+      return new BlobSourceOption(StorageRpc.Option.VERIFY_CHECKSUMS, true);
+    }
   }
 
   /**
@@ -1326,7 +1367,9 @@ public interface Storage extends Service<StorageOptions> {
    * {@link #writer} is recommended as it uses resumable upload. By default any md5 and crc32c
    * values in the given {@code blobInfo} are ignored unless requested via the
    * {@code BlobWriteOption.md5Match} and {@code BlobWriteOption.crc32cMatch} options. The given
-   * input stream is closed upon success.
+   * input stream is closed upon success. If {@link StorageOptions#streamingUploadThreshold()} is
+   * positive, contents longer than the threshold are sent with a chunked resumable upload instead,
+   * where failed chunks are retried without reading the stream again.
    *
    * <p>Example of creating a blob from an input stream.
    * <pre> {@code
@@ -1767,6 +1810,10 @@ public interface Storage extends Service<StorageOptions> {
    * {@code blobReadChannel.read(ByteBuffer)} calls will throw {@link StorageException} if the
    * blob`s generation differs from the expected one.
    *
+   * <p>If {@link StorageOptions#maxReadAheadBytes()} is positive the returned channel prefetches
+   * the next chunks in the background while the blob is read sequentially, unless
+   * {@link BlobSourceOption#verifyChecksums()} is used.
+   *
    * <p>Example of reading a blob's content through a reader.
    * <pre> {@code
    * String bucketName = "my_unique_bucket";
@@ -1786,6 +1833,51 @@ public interface Storage extends Service<StorageOptions> {
    */
   ReadChannel reader(BlobId blob, BlobSourceOption... options);
 
+  /**
+   * Returns a channel for reading the blob's content that fetches up to {@code parallelism} ranges
+   * of the blob at the same time. Ranges are {@link ReadChannel#chunkSize(int)} bytes long and are
+   * returned in order, as for {@link #reader(String, String, BlobSourceOption...)}. The blob's
+   * latest generation is read. If the blob changes while reading (i.e. {@link BlobInfo#etag()}
+   * changes), subsequent calls to {@code blobReadChannel.read(ByteBuffer)} may throw
+   * {@link StorageException}. The channel uses a pool of {@code parallelism} threads that is
+   * released when the channel is closed.
+   *
+   * @throws StorageException upon failure
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  ReadChannel parallelReader(String bucket, String blob, int parallelism,
+      BlobSourceOption... options);
+
+  /**
+   * Returns a channel for reading the blob's content that fetches up to {@code parallelism} ranges
+   * of the blob at the same time. Ranges are {@link ReadChannel#chunkSize(int)} bytes long and are
+   * returned in order, as for {@link #reader(BlobId, BlobSourceOption...)}. If
+   * {@code blob.generation()} is set data corresponding to that generation is read. If
+   * {@code blob.generation()} is {@code null} the blob's latest generation is read. If the blob
+   * changes while reading (i.e. {@link BlobInfo#etag()} changes), subsequent calls to
+   * {@code blobReadChannel.read(ByteBuffer)} may throw {@link StorageException}. The channel uses
+   * a pool of {@code parallelism} threads that is released when the channel is closed.
+   *
+   * <p>Example of reading a blob's content with 8 parallel range requests.
+   * <pre> {@code
+   * String bucketName = "my_unique_bucket";
+   * String blobName = "my_blob_name";
+   * BlobId blobId = BlobId.of(bucketName, blobName);
+   * try (ReadChannel reader = storage.parallelReader(blobId, 8)) {
+   *   ByteBuffer bytes = ByteBuffer.allocate(64 * 1024);
+   *   while (reader.read(bytes) > 0) {
+   *     bytes.flip();
+   *     // do something with bytes
+   *     bytes.clear();
+   *   }
+   * }
+   * }</pre>
+   *
+   * @throws StorageException upon failure
+   * @throws IllegalArgumentException if {@code parallelism} is not positive
+   */
+  ReadChannel parallelReader(BlobId blob, int parallelism, BlobSourceOption... options);
+
   /**
    * Creates a blob and return a channel for writing its content. By default any md5 and crc32c
    * values in the given {@code blobInfo} are ignored unless requested via the
@@ -0,0 +1,364 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BaseServiceException;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.Storage.BlobGetOption;
+import com.google.cloud.storage.Storage.BlobSourceOption;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.spi.RpcBatch;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.google.common.util.concurrent.Uninterruptibles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Executes large sets of Google Cloud Storage operations as concurrent batch requests. Operations
+ * are added in the same way as for a {@link StorageBatch}, but any number of operations can be
+ * added: {@link #submit()} splits them in batches of at most {@link #batchSize()} operations and
+ * sends up to {@link #parallelism()} batches concurrently.
+ *
+ * <p>Operations that fail with a retryable error, and the operations of a batch request that
+ * fails as a whole with a retryable error, are sent again in a later batch. Retries follow the
+ * service's {@link StorageOptions#retryParams()}: at most
+ * {@link RetryParams#retryMaxAttempts()} attempts are made for each operation, with an
+ * exponential delay between attempts. Results are reported through the returned
+ * {@link StorageBatchResult} objects once an operation succeeds or fails permanently. Result
+ * callbacks may be called concurrently from different threads.
+ *
+ * <p>Example of deleting many blobs.
+ * <pre> {@code
+ * StorageBulkExecutor executor = StorageBulkExecutor.builder(storage).parallelism(8).build();
+ * List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+ * for (BlobId blobId : blobIds) {
+ *   results.add(executor.delete(blobId));
+ * }
+ * executor.submit();
+ * for (StorageBatchResult<Boolean> result : results) {
+ *   boolean deleted = result.get(); // returns delete result or throws StorageException
+ * }
+ * }</pre>
+ *
+ * <p>Operations are kept in memory until {@link #submit()} is called. To process very large sets
+ * of operations, add and submit them in groups: an executor can be submitted multiple times. This
+ * class is not thread-safe.
+ */
+public final class StorageBulkExecutor {
+
+  private static final int DEFAULT_BATCH_SIZE = 100;
+  private static final int DEFAULT_PARALLELISM = 4;
+  private static final ThreadFactory THREAD_FACTORY = new ThreadFactoryBuilder()
+      .setDaemon(true)
+      .setNameFormat("gcs-bulk-executor-%d")
+      .build();
+
+  private final StorageOptions options;
+  private final StorageRpc storageRpc;
+  private final int batchSize;
+  private final int parallelism;
+  private List<Entry<?>> entries = new ArrayList<>();
+
+  /**
+   * Builder for {@code StorageBulkExecutor} objects.
+   */
+  public static final class Builder {
+
+    private final Storage storage;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int parallelism = DEFAULT_PARALLELISM;
+
+    private Builder(Storage storage) {
+      this.storage = checkNotNull(storage);
+    }
+
+    /**
+     * Sets the maximum number of operations sent in a single batch request. The default batch
+     * size is 100.
+     *
+     * @throws IllegalArgumentException if {@code batchSize} is not positive
+     */
+    public Builder batchSize(int batchSize) {
+      checkArgument(batchSize > 0, "Batch size must be > 0");
+      this.batchSize = batchSize;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of batch requests sent concurrently. The default parallelism is 4.
+     *
+     * @throws IllegalArgumentException if {@code parallelism} is not positive
+     */
+    public Builder parallelism(int parallelism) {
+      checkArgument(parallelism > 0, "Parallelism must be > 0");
+      this.parallelism = parallelism;
+      return this;
+    }
+
+    /**
+     * Creates a {@code StorageBulkExecutor} object.
+     */
+    public StorageBulkExecutor build() {
+      return new StorageBulkExecutor(this);
+    }
+  }
+
+  private StorageBulkExecutor(Builder builder) {
+    this.options = builder.storage.options();
+    this.storageRpc = options.rpc();
+    this.batchSize = builder.batchSize;
+    this.parallelism = builder.parallelism;
+  }
+
+  /**
+   * Returns the maximum number of operations sent in a single batch request.
+   */
+  public int batchSize() {
+    return batchSize;
+  }
+
+  /**
+   * Returns the maximum number of batch requests sent concurrently.
+   */
+  public int parallelism() {
+    return parallelism;
+  }
+
+  /**
+   * Returns a builder for {@code StorageBulkExecutor} objects that send requests with
+   * {@code storage}.
+   */
+  public static Builder builder(Storage storage) {
+    return new Builder(storage);
+  }
+
+  /**
+   * Adds a request representing the "delete blob" operation. Calling
+   * {@link StorageBatchResult#get()} on the return value yields {@code true} upon successful
+   * deletion, {@code false} if the blob was not found, or throws a {@link StorageException} if the
+   * operation failed.
+   */
+  public StorageBatchResult<Boolean> delete(BlobId blob, BlobSourceOption... options) {
+    StorageBatchResult<Boolean> result = new StorageBatchResult<>();
+    entries.add(new Entry<Void>(blob.toPb(), StorageImpl.optionMap(blob, options),
+        StorageBatch.createDeleteCallback(result)) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<Void> callback) {
+        batch.addDelete(storageObject, callback, rpcOptions);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Adds a request representing the "update blob" operation. The {@code options} can be used in
+   * the same way as for {@link Storage#update(BlobInfo, BlobTargetOption...)}. Calling
+   * {@link StorageBatchResult#get()} on the return value yields the updated {@link Blob} if
+   * successful, or throws a {@link StorageException} if the operation failed.
+   */
+  public StorageBatchResult<Blob> update(BlobInfo blobInfo, BlobTargetOption... options) {
+    StorageBatchResult<Blob> result = new StorageBatchResult<>();
+    entries.add(new Entry<StorageObject>(blobInfo.toPb(),
+        StorageImpl.optionMap(blobInfo, options),
+        StorageBatch.createUpdateCallback(this.options, result)) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<StorageObject> callback) {
+        batch.addPatch(storageObject, callback, rpcOptions);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Adds a request representing the "get blob" operation. The {@code options} can be used in the
+   * same way as for {@link Storage#get(BlobId, BlobGetOption...)}. Calling
+   * {@link StorageBatchResult#get()} on the return value yields the requested {@link Blob} if
+   * successful, {@code null} if no such blob exists, or throws a {@link StorageException} if the
+   * operation failed.
+   */
+  public StorageBatchResult<Blob> get(BlobId blob, BlobGetOption... options) {
+    StorageBatchResult<Blob> result = new StorageBatchResult<>();
+    entries.add(new Entry<StorageObject>(blob.toPb(), StorageImpl.optionMap(blob, options),
+        StorageBatch.createGetCallback(this.options, result)) {
+      @Override
+      void addTo(RpcBatch batch, RpcBatch.Callback<StorageObject> callback) {
+        batch.addGet(storageObject, callback, rpcOptions);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Sends all the operations added since the last call to this method and waits until all of them
+   * have succeeded or failed permanently.
+   *
+   * @throws StorageException if the calling thread is interrupted while waiting to retry failed
+   *     operations. Operations that were not completed are left without a result
+   */
+  public void submit() {
+    List<Entry<?>> pending = entries;
+    entries = new ArrayList<>();
+    if (pending.isEmpty()) {
+      return;
+    }
+    RetryParams retryParams = options.retryParams();
+    ExecutorService executor = Executors.newFixedThreadPool(parallelism, THREAD_FACTORY);
+    try {
+      for (int attempt = 1; !pending.isEmpty(); attempt++) {
+        if (attempt > 1) {
+          sleep(retryDelay(retryParams, attempt));
+        }
+        final boolean lastAttempt = attempt >= retryParams.retryMaxAttempts();
+        final Queue<Entry<?>> retries = new ConcurrentLinkedQueue<>();
+        List<Future<?>> futures = new ArrayList<>();
+        for (final List<Entry<?>> part : Lists.partition(pending, batchSize)) {
+          futures.add(executor.submit(new Runnable() {
+            @Override
+            public void run() {
+              submitBatch(part, retries, lastAttempt);
+            }
+          }));
+        }
+        RuntimeException failure = null;
+        for (Future<?> future : futures) {
+          try {
+            Uninterruptibles.getUninterruptibly(future);
+          } catch (ExecutionException ex) {
+            if (failure == null && ex.getCause() instanceof RuntimeException) {
+              failure = (RuntimeException) ex.getCause();
+            } else if (failure == null) {
+              failure = new StorageException(BaseServiceException.UNKNOWN_CODE,
+                  ex.getCause().getMessage(), ex.getCause());
+            }
+          }
+        }
+        if (failure != null) {
+          throw failure;
+        }
+        pending = new ArrayList<>(retries);
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Sends {@code part} as a single batch request. Entries that fail with a retryable error are
+   * added to {@code retries}, unless this is the last attempt.
+   */
+  private void submitBatch(List<Entry<?>> part, Queue<Entry<?>> retries, boolean lastAttempt) {
+    RpcBatch batch = storageRpc.createBatch();
+    for (Entry<?> entry : part) {
+      entry.completed = false;
+      entry.queue(batch, retries, lastAttempt);
+    }
+    try {
+      batch.submit();
+    } catch (StorageException ex) {
+      for (Entry<?> entry : part) {
+        if (!entry.completed) {
+          entry.completed = true;
+          if (ex.retryable() && !lastAttempt) {
+            retries.add(entry);
+          } else {
+            entry.callback.onFailure(toError(ex));
+          }
+        }
+      }
+    }
+  }
+
+  private static GoogleJsonError toError(StorageException exception) {
+    GoogleJsonError error = new GoogleJsonError();
+    error.setCode(exception.code());
+    error.setMessage(exception.getMessage());
+    return error;
+  }
+
+  private static long retryDelay(RetryParams retryParams, int attempt) {
+    double delay = retryParams.initialRetryDelayMillis()
+        * Math.pow(retryParams.retryDelayBackoffFactor(), attempt - 2);
+    return (long) Math.min(delay, retryParams.maxRetryDelayMillis());
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new StorageException(BaseServiceException.UNKNOWN_CODE,
+          "Interrupted while waiting to retry batch operations", ex);
+    }
+  }
+
+  /**
+   * An operation added to the executor. {@code callback} delivers the final outcome of the
+   * operation to its {@link StorageBatchResult}.
+   */
+  private abstract static class Entry<T> {
+
+    final StorageObject storageObject;
+    final Map<StorageRpc.Option, ?> rpcOptions;
+    final RpcBatch.Callback<T> callback;
+    boolean completed;
+
+    Entry(StorageObject storageObject, Map<StorageRpc.Option, ?> rpcOptions,
+        RpcBatch.Callback<T> callback) {
+      this.storageObject = storageObject;
+      this.rpcOptions = rpcOptions;
+      this.callback = callback;
+    }
+
+    abstract void addTo(RpcBatch batch, RpcBatch.Callback<T> callback);
+
+    void queue(RpcBatch batch, final Queue<Entry<?>> retries, final boolean lastAttempt) {
+      addTo(batch, new RpcBatch.Callback<T>() {
+        @Override
+        public void onSuccess(T response) {
+          completed = true;
+          callback.onSuccess(response);
+        }
+
+        @Override
+        public void onFailure(GoogleJsonError googleJsonError) {
+          completed = true;
+          if (!lastAttempt && new StorageException(googleJsonError).retryable()) {
+            retries.add(Entry.this);
+          } else {
+            callback.onFailure(googleJsonError);
+          }
+        }
+      });
+    }
+  }
+}
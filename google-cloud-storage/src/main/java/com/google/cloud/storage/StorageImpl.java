@@ -54,17 +54,23 @@ import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import com.google.common.primitives.Ints;
 import com.google.common.net.UrlEscapers;
 
 import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.Deque;
 import java.util.EnumMap;
 import java.util.List;
 import java.util.Map;
@@ -74,6 +80,7 @@ import java.util.concurrent.TimeUnit;
 final class StorageImpl extends BaseService<StorageOptions> implements Storage {
 
   private static final byte[] EMPTY_BYTE_ARRAY = {};
+  private static final int STREAMING_UPLOAD_CHUNK_SIZE = 8 * 256 * 1024;
   private static final String EMPTY_BYTE_ARRAY_MD5 = "1B2M2Y8AsgTpgAmY7PhCfg==";
   private static final String EMPTY_BYTE_ARRAY_CRC32C = "AAAAAA==";
   private static final String PATH_DELIMITER = "/";
@@ -116,7 +123,7 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
         .md5(EMPTY_BYTE_ARRAY_MD5)
         .crc32c(EMPTY_BYTE_ARRAY_CRC32C)
         .build();
-    return create(updatedInfo, new ByteArrayInputStream(EMPTY_BYTE_ARRAY), options);
+    return create(updatedInfo, Collections.singletonList(EMPTY_BYTE_ARRAY), 0, options);
   }
 
   @Override
@@ -127,15 +134,145 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
         .crc32c(BaseEncoding.base64().encode(
             Ints.toByteArray(Hashing.crc32c().hashBytes(content).asInt())))
         .build();
-    return create(updatedInfo, new ByteArrayInputStream(content), options);
+    return create(updatedInfo, Collections.singletonList(content), content.length, options);
   }
 
   @Override
   public Blob create(BlobInfo blobInfo, InputStream content, BlobWriteOption... options) {
     Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
+    int threshold = options().streamingUploadThreshold();
+    if (threshold > 0 && content != null) {
+      return createStreaming(targetOptions.x(), content, threshold, targetOptions.y());
+    }
     return create(targetOptions.x(), content, targetOptions.y());
   }
 
+  /**
+   * Creates a blob with the content of {@code pieces}, of which only the first
+   * {@code lastPieceLength} bytes of the last piece are used. A new stream is created for every
+   * attempt so that failed requests can be retried.
+   */
+  private Blob create(BlobInfo info, final List<byte[]> pieces, final int lastPieceLength,
+      BlobTargetOption... options) {
+    final StorageObject blobPb = info.toPb();
+    final Map<StorageRpc.Option, ?> optionsMap = optionMap(info, options);
+    try {
+      return Blob.fromPb(this, runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          List<InputStream> streams = new ArrayList<>(pieces.size());
+          for (int i = 0; i < pieces.size(); i++) {
+            byte[] piece = pieces.get(i);
+            int length = i == pieces.size() - 1 ? lastPieceLength : piece.length;
+            streams.add(new ByteArrayInputStream(piece, 0, length));
+          }
+          InputStream content = streams.size() == 1
+              ? streams.get(0) : new SequenceInputStream(Collections.enumeration(streams));
+          return storageRpc.create(blobPb, content, optionsMap);
+        }
+      }, options().retryParams(), EXCEPTION_HANDLER, options().clock()));
+    } catch (RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  /**
+   * Creates a blob from {@code content}. Up to {@code threshold} bytes are buffered, one chunk at
+   * a time, so that short contents only take the memory they need: if the stream ends within the
+   * threshold the buffered content is sent with a direct upload. Longer contents are sent with a
+   * resumable upload, one chunk at a time: each chunk is kept in memory until the service
+   * acknowledges it, so that a failed chunk is retried from its offset without reading the stream
+   * again. Buffered chunks are released as they are uploaded and at most two chunks are held
+   * afterwards.
+   */
+  private Blob createStreaming(BlobInfo info, InputStream content, int threshold,
+      BlobTargetOption... options) {
+    try {
+      int pieceSize = Math.min(STREAMING_UPLOAD_CHUNK_SIZE, threshold + 1);
+      Deque<byte[]> head = new ArrayDeque<>();
+      long headLength = 0;
+      int pieceLength = pieceSize;
+      while (headLength <= threshold && pieceLength == pieceSize) {
+        byte[] piece = new byte[pieceSize];
+        pieceLength = ByteStreams.read(content, piece, 0, pieceSize);
+        head.addLast(piece);
+        headLength += pieceLength;
+      }
+      if (headLength <= threshold) {
+        Blob blob = create(info, new ArrayList<>(head), pieceLength, options);
+        content.close();
+        return blob;
+      }
+      // all buffered pieces are full: either chunks or a single piece shorter than a chunk
+      final String uploadId = open(info, options);
+      byte[] current;
+      int currentLength;
+      if (pieceSize < STREAMING_UPLOAD_CHUNK_SIZE) {
+        current = Arrays.copyOf(head.removeFirst(), STREAMING_UPLOAD_CHUNK_SIZE);
+        currentLength = pieceSize + ByteStreams.read(content, current, pieceSize,
+            STREAMING_UPLOAD_CHUNK_SIZE - pieceSize);
+      } else {
+        current = head.removeFirst();
+        currentLength = STREAMING_UPLOAD_CHUNK_SIZE;
+      }
+      byte[] spare = null;
+      long position = 0;
+      while (true) {
+        byte[] next;
+        int nextLength;
+        if (!head.isEmpty()) {
+          next = head.removeFirst();
+          nextLength = next.length;
+        } else {
+          next = spare != null ? spare : new byte[STREAMING_UPLOAD_CHUNK_SIZE];
+          nextLength = ByteStreams.read(content, next, 0, next.length);
+        }
+        boolean last = nextLength == 0;
+        StorageObject storageObject = writeChunk(uploadId, current, position, currentLength, last);
+        if (last) {
+          content.close();
+          return Blob.fromPb(this, storageObject);
+        }
+        position += currentLength;
+        spare = current;
+        current = next;
+        currentLength = nextLength;
+      }
+    } catch (IOException e) {
+      throw new StorageException(e);
+    }
+  }
+
+  private String open(BlobInfo info, BlobTargetOption... options) {
+    final StorageObject blobPb = info.toPb();
+    final Map<StorageRpc.Option, ?> optionsMap = optionMap(info, options);
+    try {
+      return runWithRetries(new Callable<String>() {
+        @Override
+        public String call() {
+          return storageRpc.open(blobPb, optionsMap);
+        }
+      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
+    } catch (RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
+  private StorageObject writeChunk(final String uploadId, final byte[] chunk,
+      final long position, final int length, final boolean last) {
+    try {
+      return runWithRetries(new Callable<StorageObject>() {
+        @Override
+        public StorageObject call() {
+          return storageRpc.writeWithResponse(uploadId, chunk, 0, position, length, last, null,
+              null);
+        }
+      }, options().retryParams(), EXCEPTION_HANDLER, options().clock());
+    } catch (RetryHelperException e) {
+      throw StorageException.translateAndThrow(e);
+    }
+  }
+
   private Blob create(BlobInfo info, final InputStream content, BlobTargetOption... options) {
     final StorageObject blobPb = info.toPb();
     final Map<StorageRpc.Option, ?> optionsMap = optionMap(info, options);
@@ -460,15 +597,36 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
   @Override
   public ReadChannel reader(String bucket, String blob, BlobSourceOption... options) {
     Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
-    return new BlobReadChannel(options(), BlobId.of(bucket, blob), optionsMap);
+    return reader(BlobId.of(bucket, blob), optionsMap);
   }
 
   @Override
   public ReadChannel reader(BlobId blob, BlobSourceOption... options) {
     Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    return reader(blob, optionsMap);
+  }
+
+  private ReadChannel reader(BlobId blob, Map<StorageRpc.Option, ?> optionsMap) {
+    if (options().maxReadAheadBytes() > 0
+        && !optionsMap.containsKey(StorageRpc.Option.VERIFY_CHECKSUMS)) {
+      return ParallelBlobReadChannel.readAhead(options(), blob, optionsMap);
+    }
     return new BlobReadChannel(options(), blob, optionsMap);
   }
 
+  @Override
+  public ReadChannel parallelReader(String bucket, String blob, int parallelism,
+      BlobSourceOption... options) {
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(options);
+    return new ParallelBlobReadChannel(options(), BlobId.of(bucket, blob), optionsMap, parallelism);
+  }
+
+  @Override
+  public ReadChannel parallelReader(BlobId blob, int parallelism, BlobSourceOption... options) {
+    Map<StorageRpc.Option, ?> optionsMap = optionMap(blob, options);
+    return new ParallelBlobReadChannel(options(), blob, optionsMap, parallelism);
+  }
+
   @Override
   public BlobWriteChannel writer(BlobInfo blobInfo, BlobWriteOption... options) {
     Tuple<BlobInfo, BlobTargetOption[]> targetOptions = BlobTargetOption.convert(blobInfo, options);
@@ -482,38 +640,55 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
 
   @Override
   public URL signUrl(BlobInfo blobInfo, long duration, TimeUnit unit, SignUrlOption... options) {
+    Map<SignUrlOption.Option, Object> optionMap = signUrlOptionMap(options);
+    ServiceAccountSigner authCredentials = signUrlSigner(options(), optionMap);
+    long expiration = TimeUnit.SECONDS.convert(
+        options().clock().millis() + unit.toMillis(duration), TimeUnit.MILLISECONDS);
+    String path = signUrlPath(blobInfo);
+    String toSign = appendStringToSign(new StringBuilder(), signUrlPrefix(optionMap), blobInfo,
+        optionMap, expiration, path).toString();
+    byte[] signatureBytes = authCredentials.sign(toSign.getBytes(UTF_8));
+    return signedUrl(path, authCredentials.account(), expiration, signatureBytes);
+  }
+
+  static Map<SignUrlOption.Option, Object> signUrlOptionMap(SignUrlOption... options) {
     EnumMap<SignUrlOption.Option, Object> optionMap = Maps.newEnumMap(SignUrlOption.Option.class);
     for (SignUrlOption option : options) {
       optionMap.put(option.option(), option.value());
     }
+    return optionMap;
+  }
+
+  /**
+   * Returns the signer set with {@link SignUrlOption#signWith(ServiceAccountSigner)} or, if not
+   * set, the service's credentials.
+   */
+  static ServiceAccountSigner signUrlSigner(StorageOptions serviceOptions,
+      Map<SignUrlOption.Option, Object> optionMap) {
     ServiceAccountSigner authCredentials =
         (ServiceAccountSigner) optionMap.get(SignUrlOption.Option.SERVICE_ACCOUNT_CRED);
     if (authCredentials == null) {
-      checkState(this.options().authCredentials() instanceof ServiceAccountSigner,
+      checkState(serviceOptions.authCredentials() instanceof ServiceAccountSigner,
           "Signing key was not provided and could not be derived");
-      authCredentials = (ServiceAccountSigner) this.options().authCredentials();
+      authCredentials = (ServiceAccountSigner) serviceOptions.authCredentials();
     }
-    // construct signature - see https://cloud.google.com/storage/docs/access-control#Signed-URLs
-    StringBuilder stBuilder = new StringBuilder();
+    return authCredentials;
+  }
+
+  /**
+   * Returns the first line of the string to sign, which only depends on the options.
+   */
+  static String signUrlPrefix(Map<SignUrlOption.Option, Object> optionMap) {
     if (optionMap.containsKey(SignUrlOption.Option.HTTP_METHOD)) {
-      stBuilder.append(optionMap.get(SignUrlOption.Option.HTTP_METHOD));
-    } else {
-      stBuilder.append(HttpMethod.GET);
+      return optionMap.get(SignUrlOption.Option.HTTP_METHOD) + "\n";
     }
-    stBuilder.append('\n');
-    if (firstNonNull((Boolean) optionMap.get(SignUrlOption.Option.MD5), false)) {
-      checkArgument(blobInfo.md5() != null, "Blob is missing a value for md5");
-      stBuilder.append(blobInfo.md5());
-    }
-    stBuilder.append('\n');
-    if (firstNonNull((Boolean) optionMap.get(SignUrlOption.Option.CONTENT_TYPE), false)) {
-      checkArgument(blobInfo.contentType() != null, "Blob is missing a value for content-type");
-      stBuilder.append(blobInfo.contentType());
-    }
-    stBuilder.append('\n');
-    long expiration = TimeUnit.SECONDS.convert(
-        options().clock().millis() + unit.toMillis(duration), TimeUnit.MILLISECONDS);
-    stBuilder.append(expiration).append('\n');
+    return HttpMethod.GET + "\n";
+  }
+
+  /**
+   * Returns the URL path of {@code blobInfo}, made of its escaped bucket and blob names.
+   */
+  static String signUrlPath(BlobInfo blobInfo) {
     StringBuilder path = new StringBuilder();
     if (!blobInfo.bucket().startsWith("/")) {
       path.append('/');
@@ -526,13 +701,38 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
       path.setLength(path.length() - 1);
     }
     path.append(UrlEscapers.urlPathSegmentEscaper().escape(blobInfo.name()));
-    stBuilder.append(path);
+    return path.toString();
+  }
+
+  /**
+   * Appends the string to sign for {@code blobInfo} to {@code builder}.
+   *
+   * @see <a href="https://cloud.google.com/storage/docs/access-control#Signed-URLs">Signed URLs</a>
+   */
+  static StringBuilder appendStringToSign(StringBuilder builder, String prefix,
+      BlobInfo blobInfo, Map<SignUrlOption.Option, Object> optionMap, long expiration,
+      String path) {
+    builder.append(prefix);
+    if (firstNonNull((Boolean) optionMap.get(SignUrlOption.Option.MD5), false)) {
+      checkArgument(blobInfo.md5() != null, "Blob is missing a value for md5");
+      builder.append(blobInfo.md5());
+    }
+    builder.append('\n');
+    if (firstNonNull((Boolean) optionMap.get(SignUrlOption.Option.CONTENT_TYPE), false)) {
+      checkArgument(blobInfo.contentType() != null, "Blob is missing a value for content-type");
+      builder.append(blobInfo.contentType());
+    }
+    builder.append('\n');
+    builder.append(expiration).append('\n');
+    return builder.append(path);
+  }
+
+  static URL signedUrl(String path, String account, long expiration, byte[] signatureBytes) {
     try {
-      byte[] signatureBytes = authCredentials.sign(stBuilder.toString().getBytes(UTF_8));
-      stBuilder = new StringBuilder("https://storage.googleapis.com").append(path);
+      StringBuilder stBuilder = new StringBuilder("https://storage.googleapis.com").append(path);
       String signature =
           URLEncoder.encode(BaseEncoding.base64().encode(signatureBytes), UTF_8.name());
-      stBuilder.append("?GoogleAccessId=").append(authCredentials.account());
+      stBuilder.append("?GoogleAccessId=").append(account);
       stBuilder.append("&Expires=").append(expiration);
       stBuilder.append("&Signature=").append(signature);
       return new URL(stBuilder.toString());
@@ -895,7 +1095,7 @@ final class StorageImpl extends BaseService<StorageOptions> implements Storage {
     return ImmutableMap.copyOf(temp);
   }
 
-  private static Map<StorageRpc.Option, ?> optionMap(Option... options) {
+  static Map<StorageRpc.Option, ?> optionMap(Option... options) {
     return optionMap(null, null, Arrays.asList(options));
   }
 
@@ -16,12 +16,15 @@
 
 package com.google.cloud.storage;
 
+import static com.google.common.base.Preconditions.checkArgument;
+
 import com.google.cloud.HttpServiceOptions;
 import com.google.cloud.storage.spi.DefaultStorageRpc;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpcFactory;
 import com.google.common.collect.ImmutableSet;
 
+import java.util.Objects;
 import java.util.Set;
 
 public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, StorageOptions> {
@@ -30,6 +33,10 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
   private static final String GCS_SCOPE = "https://www.googleapis.com/auth/devstorage.full_control";
   private static final Set<String> SCOPES = ImmutableSet.of(GCS_SCOPE);
 
+  private final long maxReadAheadBytes;
+  private final int maxPendingUploadChunks;
+  private final int streamingUploadThreshold;
+
   public static class DefaultStorageFactory implements StorageFactory {
 
     private static final StorageFactory INSTANCE = new DefaultStorageFactory();
@@ -53,10 +60,77 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
   public static class Builder extends
       HttpServiceOptions.Builder<Storage, StorageRpc, StorageOptions, Builder> {
 
+    private long maxReadAheadBytes;
+    private int maxPendingUploadChunks;
+    private int streamingUploadThreshold;
+
     private Builder() {}
 
     private Builder(StorageOptions options) {
       super(options);
+      maxReadAheadBytes = options.maxReadAheadBytes;
+      maxPendingUploadChunks = options.maxPendingUploadChunks;
+      streamingUploadThreshold = options.streamingUploadThreshold;
+    }
+
+    /**
+     * Sets the maximum number of bytes that a channel returned by {@link Storage#reader} may
+     * prefetch ahead of the caller. When set to a positive value readers detect sequential access
+     * and keep up to two chunks in flight in the background, as long as the prefetched chunks fit
+     * in {@code maxReadAheadBytes}. A seek cancels prefetched chunks and restarts detection. By
+     * default read-ahead is disabled.
+     *
+     * @param maxReadAheadBytes maximum number of prefetched bytes per reader, 0 to disable
+     *     read-ahead
+     * @return the builder
+     * @throws IllegalArgumentException if {@code maxReadAheadBytes} is negative
+     */
+    public Builder maxReadAheadBytes(long maxReadAheadBytes) {
+      checkArgument(maxReadAheadBytes >= 0, "Max read-ahead bytes must be >= 0");
+      this.maxReadAheadBytes = maxReadAheadBytes;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of chunks that a channel returned by {@link Storage#writer} may
+     * queue for upload. When set to a positive value chunks are uploaded in order by a background
+     * thread, so that the caller can fill the next chunk while previous ones are being sent. Each
+     * queued chunk holds a buffer of the channel's chunk size. If a chunk upload fails, the failure
+     * is reported by the next call to {@code write}, {@code close} or {@code capture}. By default
+     * chunks are uploaded synchronously.
+     *
+     * @param maxPendingUploadChunks maximum number of chunks queued for upload per writer, 0 to
+     *     upload chunks synchronously
+     * @return the builder
+     * @throws IllegalArgumentException if {@code maxPendingUploadChunks} is negative
+     */
+    public Builder maxPendingUploadChunks(int maxPendingUploadChunks) {
+      checkArgument(maxPendingUploadChunks >= 0, "Max pending upload chunks must be >= 0");
+      this.maxPendingUploadChunks = maxPendingUploadChunks;
+      return this;
+    }
+
+    /**
+     * Sets the size above which {@link Storage#create(BlobInfo, java.io.InputStream,
+     * Storage.BlobWriteOption...)} switches from a single direct upload to a chunked resumable
+     * upload. When set to a positive value up to {@code streamingUploadThreshold} bytes are
+     * buffered: shorter contents are sent with a direct upload that can be retried, longer ones are
+     * sent in chunks and a failed chunk is retried without reading the stream again. By default the
+     * stream is sent with a single direct upload, which can not be retried once the stream has been
+     * consumed.
+     *
+     * @param streamingUploadThreshold the maximum number of bytes sent with a direct upload, 0 to
+     *     always use a single direct upload
+     * @return the builder
+     * @throws IllegalArgumentException if {@code streamingUploadThreshold} is negative or equal to
+     *     {@link Integer#MAX_VALUE}
+     */
+    public Builder streamingUploadThreshold(int streamingUploadThreshold) {
+      checkArgument(streamingUploadThreshold >= 0
+          && streamingUploadThreshold < Integer.MAX_VALUE,
+          "Streaming upload threshold must be >= 0 and < Integer.MAX_VALUE");
+      this.streamingUploadThreshold = streamingUploadThreshold;
+      return this;
     }
 
     @Override
@@ -67,6 +141,9 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
 
   private StorageOptions(Builder builder) {
     super(StorageFactory.class, StorageRpcFactory.class, builder);
+    maxReadAheadBytes = builder.maxReadAheadBytes;
+    maxPendingUploadChunks = builder.maxPendingUploadChunks;
+    streamingUploadThreshold = builder.streamingUploadThreshold;
   }
 
   @Override
@@ -84,6 +161,30 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
     return SCOPES;
   }
 
+  /**
+   * Returns the maximum number of bytes a reader may prefetch ahead of the caller. 0 means that
+   * read-ahead is disabled.
+   */
+  public long maxReadAheadBytes() {
+    return maxReadAheadBytes;
+  }
+
+  /**
+   * Returns the maximum number of chunks a writer may queue for upload. 0 means that chunks are
+   * uploaded synchronously.
+   */
+  public int maxPendingUploadChunks() {
+    return maxPendingUploadChunks;
+  }
+
+  /**
+   * Returns the size above which blobs created from an input stream are uploaded in chunks. 0
+   * means that streams are always sent with a single direct upload.
+   */
+  public int streamingUploadThreshold() {
+    return streamingUploadThreshold;
+  }
+
   /**
    * Returns a default {@code StorageOptions} instance.
    */
@@ -99,12 +200,20 @@ public class StorageOptions extends HttpServiceOptions<Storage, StorageRpc, Stor
 
   @Override
   public int hashCode() {
-    return baseHashCode();
+    return Objects.hash(baseHashCode(), maxReadAheadBytes, maxPendingUploadChunks,
+        streamingUploadThreshold);
   }
 
   @Override
   public boolean equals(Object obj) {
-    return obj instanceof StorageOptions && baseEquals((StorageOptions) obj);
+    if (!(obj instanceof StorageOptions)) {
+      return false;
+    }
+    StorageOptions other = (StorageOptions) obj;
+    return baseEquals(other)
+        && maxReadAheadBytes == other.maxReadAheadBytes
+        && maxPendingUploadChunks == other.maxPendingUploadChunks
+        && streamingUploadThreshold == other.streamingUploadThreshold;
   }
 
   public static Builder builder() {
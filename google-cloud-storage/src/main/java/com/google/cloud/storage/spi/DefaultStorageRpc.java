@@ -71,16 +71,20 @@ import com.google.cloud.BaseServiceException;
 import com.google.cloud.storage.StorageException;
 import com.google.cloud.storage.StorageOptions;
 import com.google.common.base.Function;
+import com.google.common.base.Joiner;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Lists;
 import com.google.common.hash.HashFunction;
 import com.google.common.hash.Hashing;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
+import com.google.common.io.CountingOutputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Field;
 import java.math.BigInteger;
 import java.util.ArrayList;
@@ -452,11 +456,14 @@ public class DefaultStorageRpc implements StorageRpc {
     }
     request.setSourceObjects(sourceObjects);
     try {
-      return storage.objects()
+      Storage.Objects.Compose compose = storage.objects()
           .compose(target.getBucket(), target.getName(), request)
+          .setDestinationPredefinedAcl(PREDEFINED_ACL.getString(targetOptions))
           .setIfMetagenerationMatch(IF_METAGENERATION_MATCH.getLong(targetOptions))
-          .setIfGenerationMatch(IF_GENERATION_MATCH.getLong(targetOptions))
-          .execute();
+          .setIfGenerationMatch(IF_GENERATION_MATCH.getLong(targetOptions));
+      // Sources must be encrypted with the same key as the target
+      setEncryptionHeaders(compose.getRequestHeaders(), ENCRYPTION_KEY_PREFIX, targetOptions);
+      return compose.execute();
     } catch (IOException ex) {
       throw translate(ex);
     }
@@ -473,8 +480,19 @@ public class DefaultStorageRpc implements StorageRpc {
           .setIfGenerationMatch(IF_GENERATION_MATCH.getLong(options))
           .setIfGenerationNotMatch(IF_GENERATION_NOT_MATCH.getLong(options));
       setEncryptionHeaders(getRequest.getRequestHeaders(), ENCRYPTION_KEY_PREFIX, options);
+      HttpResponse httpResponse = getRequest.executeMedia();
+      Long contentLength = httpResponse.getHeaders().getContentLength();
+      if (httpResponse.getContentEncoding() == null && contentLength != null
+          && contentLength <= Integer.MAX_VALUE) {
+        // content is not decoded, read it straight into an array of the right size
+        byte[] content = new byte[contentLength.intValue()];
+        try (InputStream input = httpResponse.getContent()) {
+          ByteStreams.readFully(input, content);
+        }
+        return content;
+      }
       ByteArrayOutputStream out = new ByteArrayOutputStream();
-      getRequest.executeMedia().download(out);
+      httpResponse.download(out);
       return out.toByteArray();
     } catch (IOException ex) {
       throw translate(ex);
@@ -489,6 +507,14 @@ public class DefaultStorageRpc implements StorageRpc {
   @Override
   public Tuple<String, byte[]> read(StorageObject from, Map<Option, ?> options, long position,
       int bytes) {
+    ByteArrayOutputStream output = new ByteArrayOutputStream(bytes);
+    Tuple<String, Long> result = read(from, options, position, bytes, output);
+    return Tuple.of(result.x(), output.toByteArray());
+  }
+
+  @Override
+  public Tuple<String, Long> read(StorageObject from, Map<Option, ?> options, long position,
+      int bytes, OutputStream outputStream) {
     try {
       Get req = storage.objects()
           .get(from.getBucket(), from.getName())
@@ -503,7 +529,7 @@ public class DefaultStorageRpc implements StorageRpc {
       HttpHeaders requestHeaders = req.getRequestHeaders();
       requestHeaders.setRange(range.toString());
       setEncryptionHeaders(requestHeaders, ENCRYPTION_KEY_PREFIX, options);
-      ByteArrayOutputStream output = new ByteArrayOutputStream(bytes);
+      CountingOutputStream output = new CountingOutputStream(outputStream);
       HttpResponse httpResponse = req.executeMedia();
       // todo(mziccard) remove when
       // https://github.com/GoogleCloudPlatform/google-cloud-java/issues/982 is fixed
@@ -523,11 +549,11 @@ public class DefaultStorageRpc implements StorageRpc {
         httpResponse.download(output);
       }
       String etag = req.getLastResponseHeaders().getETag();
-      return Tuple.of(etag, output.toByteArray());
+      return Tuple.of(etag, output.getCount());
     } catch (IOException ex) {
       StorageException serviceException = translate(ex);
       if (serviceException.code() == SC_REQUESTED_RANGE_NOT_SATISFIABLE) {
-        return Tuple.of(null, new byte[0]);
+        return Tuple.of(null, 0L);
       }
       throw serviceException;
     }
@@ -536,9 +562,15 @@ public class DefaultStorageRpc implements StorageRpc {
   @Override
   public void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
       boolean last) {
+    writeWithResponse(uploadId, toWrite, toWriteOffset, destOffset, length, last, null, null);
+  }
+
+  @Override
+  public StorageObject writeWithResponse(String uploadId, byte[] toWrite, int toWriteOffset,
+      long destOffset, int length, boolean last, String crc32c, String md5) {
     try {
       if (length == 0 && !last) {
-        return;
+        return null;
       }
       GenericUrl url = new GenericUrl(uploadId);
       HttpRequest httpRequest = storage.getRequestFactory().buildPutRequest(url,
@@ -557,11 +589,25 @@ public class DefaultStorageRpc implements StorageRpc {
         range.append('*');
       }
       httpRequest.getHeaders().setContentRange(range.toString());
+      if (last) {
+        List<String> hashes = new ArrayList<>(2);
+        if (crc32c != null) {
+          hashes.add("crc32c=" + crc32c);
+        }
+        if (md5 != null) {
+          hashes.add("md5=" + md5);
+        }
+        if (!hashes.isEmpty()) {
+          httpRequest.getHeaders().set("X-Goog-Hash", Joiner.on(',').join(hashes));
+        }
+      }
+      httpRequest.setParser(storage.getObjectParser());
       int code;
       String message;
       IOException exception = null;
+      HttpResponse response = null;
       try {
-        HttpResponse response = httpRequest.execute();
+        response = httpRequest.execute();
         code = response.getStatusCode();
         message = response.getStatusMessage();
       } catch (HttpResponseException ex) {
@@ -578,6 +624,7 @@ public class DefaultStorageRpc implements StorageRpc {
         error.setMessage(message);
         throw translate(error);
       }
+      return last ? response.parseAs(StorageObject.class) : null;
     } catch (IOException ex) {
       throw translate(ex);
     }
@@ -23,6 +23,7 @@ import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.storage.StorageException;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
@@ -47,7 +48,9 @@ public interface StorageRpc {
     DELIMITER("delimiter"),
     VERSIONS("versions"),
     FIELDS("fields"),
-    CUSTOMER_SUPPLIED_KEY("customerSuppliedKey");
+    CUSTOMER_SUPPLIED_KEY("customerSuppliedKey"),
+    VERIFY_CHECKSUMS("verifyChecksums"),
+    SEND_CHECKSUMS("sendChecksums");
 
     private final String value;
 
@@ -287,6 +290,18 @@ public interface StorageRpc {
    */
   Tuple<String, byte[]> read(StorageObject from, Map<Option, ?> options, long position, int bytes);
 
+  /**
+   * Reads at most {@code bytes} bytes from a storage object at the given position and writes them
+   * to {@code outputStream} as they are received, without buffering the whole range in memory.
+   *
+   * @return a tuple containing the storage object's etag and the number of bytes written to
+   *     {@code outputStream}. If {@code position} is past the end of the storage object no bytes
+   *     are written
+   * @throws StorageException upon failure
+   */
+  Tuple<String, Long> read(StorageObject from, Map<Option, ?> options, long position, int bytes,
+      OutputStream outputStream);
+
   /**
    * Opens a resumable upload channel for a given storage object.
    *
@@ -302,6 +317,18 @@ public interface StorageRpc {
   void write(String uploadId, byte[] toWrite, int toWriteOffset, long destOffset, int length,
       boolean last);
 
+  /**
+   * Writes the provided bytes to a storage object at the provided location. If {@code last} is
+   * {@code true} the provided base64-encoded {@code crc32c} and {@code md5} checksums of the whole
+   * object, when not {@code null}, are sent with the request so that the upload fails if they do
+   * not match the uploaded data, and the storage object created by the upload is returned.
+   * Otherwise returns {@code null}.
+   *
+   * @throws StorageException upon failure
+   */
+  StorageObject writeWithResponse(String uploadId, byte[] toWrite, int toWriteOffset,
+      long destOffset, int length, boolean last, String crc32c, String md5);
+
   /**
    * Sends a rewrite request to open a rewrite channel.
    *
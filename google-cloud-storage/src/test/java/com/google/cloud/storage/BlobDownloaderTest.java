@@ -0,0 +1,283 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyInt;
+import static org.easymock.EasyMock.anyLong;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.reset;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BlobDownloaderTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final String BLOB_NAME = "n";
+  private static final BlobId BLOB_ID = BlobId.of(BUCKET_NAME, BLOB_NAME);
+  private static final int CHUNK_SIZE = 1024;
+  private static final byte[] CONTENT = new byte[10 * CHUNK_SIZE + 100];
+
+  static {
+    new Random().nextBytes(CONTENT);
+  }
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final AtomicInteger readCount = new AtomicInteger();
+  private StorageRpc storageRpcMock;
+  private Storage storage;
+  private Path path;
+
+  @Before
+  public void setUp() throws IOException {
+    StorageRpcFactory rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock);
+    storage = StorageOptions.builder()
+        .projectId("projectId")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RetryParams.noRetries())
+        .build()
+        .service();
+    path = folder.newFolder().toPath().resolve("blob.bin");
+  }
+
+  @After
+  public void tearDown() {
+    verify(storageRpcMock);
+  }
+
+  @Test
+  public void testBuilder() {
+    replay(storageRpcMock);
+    BlobDownloader downloader = BlobDownloader.builder(storage).build();
+    assertEquals(8 * 1024 * 1024, downloader.chunkSize());
+    assertEquals(4, downloader.parallelism());
+    downloader = BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(2).build();
+    assertEquals(CHUNK_SIZE, downloader.chunkSize());
+    assertEquals(2, downloader.parallelism());
+  }
+
+  @Test
+  public void testBuilderInvalidChunkSize() {
+    replay(storageRpcMock);
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Chunk size must be > 0");
+    BlobDownloader.builder(storage).chunkSize(0);
+  }
+
+  @Test
+  public void testDownloadToPath() throws IOException {
+    expectGet(42L);
+    expectReads(-1);
+    replay(storageRpcMock);
+    Files.write(path, new byte[2 * CONTENT.length]);
+    Blob blob = BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(3).build()
+        .download(BLOB_ID, path);
+    assertEquals(BLOB_NAME, blob.name());
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+    assertEquals(11, readCount.get());
+    assertFalse(Files.exists(progressPath()));
+  }
+
+  @Test
+  public void testDownloadEmptyBlob() throws IOException {
+    expect(storageRpcMock.get(anyObject(StorageObject.class), anyObject(Map.class)))
+        .andReturn(storageObject(42L).setSize(BigInteger.ZERO));
+    replay(storageRpcMock);
+    Files.write(path, CONTENT);
+    BlobDownloader.builder(storage).build().download(BLOB_ID, path);
+    assertEquals(0, Files.size(path));
+  }
+
+  @Test
+  public void testDownloadResume() throws IOException {
+    BlobDownloader downloader =
+        BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(1).build();
+    expectGet(42L);
+    expectReads(10 * CHUNK_SIZE);
+    replay(storageRpcMock);
+    try {
+      downloader.download(BLOB_ID, path);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(500, ex.code());
+    }
+    assertTrue(Files.exists(progressPath()));
+    assertEquals(CONTENT.length, Files.size(path));
+    verify(storageRpcMock);
+    reset(storageRpcMock);
+    readCount.set(0);
+    expectGet(42L);
+    expectReads(-1);
+    replay(storageRpcMock);
+    downloader.download(BLOB_ID, path);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+    assertEquals(1, readCount.get());
+    assertFalse(Files.exists(progressPath()));
+  }
+
+  @Test
+  public void testDownloadResumeGenerationChanged() throws IOException {
+    BlobDownloader downloader =
+        BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(1).build();
+    expectGet(42L);
+    expectReads(5 * CHUNK_SIZE);
+    replay(storageRpcMock);
+    try {
+      downloader.download(BLOB_ID, path);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(500, ex.code());
+    }
+    verify(storageRpcMock);
+    reset(storageRpcMock);
+    readCount.set(0);
+    expectGet(43L);
+    expectReads(-1);
+    replay(storageRpcMock);
+    downloader.download(BLOB_ID, path);
+    assertArrayEquals(CONTENT, Files.readAllBytes(path));
+    assertEquals(11, readCount.get());
+  }
+
+  @Test
+  public void testDownloadNotFound() throws IOException {
+    expect(storageRpcMock.get(anyObject(StorageObject.class), anyObject(Map.class)))
+        .andReturn(null);
+    replay(storageRpcMock);
+    thrown.expect(StorageException.class);
+    thrown.expectMessage("not found");
+    BlobDownloader.builder(storage).build().download(BLOB_ID, path);
+  }
+
+  @Test
+  public void testDownloadShortRead() throws IOException {
+    expectGet(42L);
+    expect(storageRpcMock.read(anyObject(StorageObject.class), anyObject(Map.class), anyLong(),
+        anyInt(), anyObject(OutputStream.class))).andReturn(Tuple.of("etag", 1L)).anyTimes();
+    replay(storageRpcMock);
+    thrown.expect(StorageException.class);
+    thrown.expectMessage("Expected 1024 bytes at offset 0 of n but got 1");
+    BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(1).build()
+        .download(BLOB_ID, path);
+  }
+
+  @Test
+  public void testDownloadToChannel() throws IOException {
+    expect(storageRpcMock.read(anyObject(StorageObject.class), anyObject(Map.class), anyLong(),
+        anyInt(), anyObject(OutputStream.class))).andAnswer(new IAnswer<Tuple<String, Long>>() {
+          @Override
+          public Tuple<String, Long> answer() throws IOException {
+            long position = (Long) getCurrentArguments()[2];
+            int length = (Integer) getCurrentArguments()[3];
+            OutputStream output = (OutputStream) getCurrentArguments()[4];
+            int end = (int) Math.min(CONTENT.length, position + length);
+            output.write(CONTENT, (int) position, end - (int) position);
+            return Tuple.of("etag", (long) (end - position));
+          }
+        }).anyTimes();
+    replay(storageRpcMock);
+    ByteArrayOutputStream output = new ByteArrayOutputStream();
+    long count = BlobDownloader.builder(storage).chunkSize(CHUNK_SIZE).parallelism(3).build()
+        .download(BLOB_ID, Channels.newChannel(output));
+    assertEquals(CONTENT.length, count);
+    assertArrayEquals(CONTENT, output.toByteArray());
+  }
+
+  private Path progressPath() {
+    return path.resolveSibling(path.getFileName() + BlobDownloader.PROGRESS_FILE_SUFFIX);
+  }
+
+  private static StorageObject storageObject(long generation) {
+    return new StorageObject()
+        .setBucket(BUCKET_NAME)
+        .setName(BLOB_NAME)
+        .setGeneration(generation)
+        .setSize(BigInteger.valueOf(CONTENT.length));
+  }
+
+  private void expectGet(long generation) {
+    expect(storageRpcMock.get(anyObject(StorageObject.class), anyObject(Map.class)))
+        .andReturn(storageObject(generation));
+  }
+
+  /**
+   * Expects range reads of the blob with generation pinned. If {@code failAt} is not negative, the
+   * read of the range starting at {@code failAt} fails.
+   */
+  private void expectReads(final long failAt) {
+    expect(storageRpcMock.read(anyObject(StorageObject.class), anyObject(Map.class), anyLong(),
+        anyInt(), anyObject(OutputStream.class))).andAnswer(new IAnswer<Tuple<String, Long>>() {
+          @Override
+          public Tuple<String, Long> answer() throws IOException {
+            StorageObject source = (StorageObject) getCurrentArguments()[0];
+            assertEquals(BLOB_NAME, source.getName());
+            assertTrue(source.getGeneration() != null);
+            long position = (Long) getCurrentArguments()[2];
+            int length = (Integer) getCurrentArguments()[3];
+            OutputStream output = (OutputStream) getCurrentArguments()[4];
+            readCount.incrementAndGet();
+            if (position == failAt) {
+              throw new StorageException(500, "Internal error");
+            }
+            int end = (int) Math.min(CONTENT.length, position + length);
+            output.write(CONTENT, (int) position, end - (int) position);
+            return Tuple.of("etag", (long) (end - position));
+          }
+        }).anyTimes();
+  }
+}
@@ -18,7 +18,9 @@ package com.google.cloud.storage;
 
 import static org.easymock.EasyMock.anyObject;
 import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
 import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertArrayEquals;
@@ -26,18 +28,25 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.ReadChannel;
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryParams;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpcFactory;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
 
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.util.Arrays;
@@ -50,6 +59,8 @@ public class BlobReadChannelTest {
   private static final String BLOB_NAME = "n";
   private static final BlobId BLOB_ID = BlobId.of(BUCKET_NAME, BLOB_NAME, -1L);
   private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final Map<StorageRpc.Option, ?> VERIFY_RPC_OPTIONS =
+      ImmutableMap.of(StorageRpc.Option.VERIFY_CHECKSUMS, true);
   private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
   private static final int CUSTOM_CHUNK_SIZE = 2 * 1024 * 1024;
   private static final Random RANDOM = new Random();
@@ -90,8 +101,7 @@ public class BlobReadChannelTest {
     byte[] result = randomByteArray(DEFAULT_CHUNK_SIZE);
     ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
     ByteBuffer secondReadBuffer = ByteBuffer.allocate(42);
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result));
+    expectRead(BLOB_ID, 0, DEFAULT_CHUNK_SIZE, "etag", result);
     replay(storageRpcMock);
     reader.read(firstReadBuffer);
     reader.read(secondReadBuffer);
@@ -110,11 +120,8 @@ public class BlobReadChannelTest {
     byte[] secondResult = randomByteArray(DEFAULT_CHUNK_SIZE);
     ByteBuffer firstReadBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
     ByteBuffer secondReadBuffer = ByteBuffer.allocate(42);
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", firstResult));
-    expect(storageRpcMock.read(
-        BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, DEFAULT_CHUNK_SIZE, CUSTOM_CHUNK_SIZE))
-            .andReturn(StorageRpc.Tuple.of("etag", secondResult));
+    expectRead(BLOB_ID, 0, DEFAULT_CHUNK_SIZE, "etag", firstResult);
+    expectRead(BLOB_ID, DEFAULT_CHUNK_SIZE, CUSTOM_CHUNK_SIZE, "etag", secondResult);
     replay(storageRpcMock);
     reader.read(firstReadBuffer);
     reader.read(secondReadBuffer);
@@ -128,8 +135,7 @@ public class BlobReadChannelTest {
     reader = new BlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
     byte[] result = {};
     ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result));
+    expectRead(BLOB_ID, 0, DEFAULT_CHUNK_SIZE, "etag", result);
     replay(storageRpcMock);
     assertEquals(-1, reader.read(readBuffer));
   }
@@ -140,8 +146,7 @@ public class BlobReadChannelTest {
     reader.seek(42);
     byte[] result = randomByteArray(DEFAULT_CHUNK_SIZE);
     ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 42, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result));
+    expectRead(BLOB_ID, 42, DEFAULT_CHUNK_SIZE, "etag", result);
     replay(storageRpcMock);
     reader.read(readBuffer);
     assertArrayEquals(result, readBuffer.array());
@@ -178,11 +183,8 @@ public class BlobReadChannelTest {
     byte[] secondResult = randomByteArray(DEFAULT_CHUNK_SIZE);
     ByteBuffer firstReadBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
     ByteBuffer secondReadBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
-    expect(storageRpcMock.read(blobId.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag1", firstResult));
-    expect(
-        storageRpcMock.read(blobId.toPb(), EMPTY_RPC_OPTIONS, DEFAULT_CHUNK_SIZE,
-            DEFAULT_CHUNK_SIZE)).andReturn(StorageRpc.Tuple.of("etag2", secondResult));
+    expectRead(blobId, 0, DEFAULT_CHUNK_SIZE, "etag1", firstResult);
+    expectRead(blobId, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE, "etag2", secondResult);
     replay(storageRpcMock);
     reader.read(firstReadBuffer);
     try {
@@ -192,6 +194,7 @@ public class BlobReadChannelTest {
       StringBuilder messageBuilder = new StringBuilder();
       messageBuilder.append("Blob ").append(blobId).append(" was updated while reading");
       assertEquals(messageBuilder.toString(), ex.getMessage());
+      assertEquals(0, secondReadBuffer.position());
     }
   }
 
@@ -201,10 +204,8 @@ public class BlobReadChannelTest {
     byte[] secondResult = randomByteArray(DEFAULT_CHUNK_SIZE);
     ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
     ByteBuffer secondReadBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", firstResult));
-    expect(storageRpcMock.read(BLOB_ID.toPb(), EMPTY_RPC_OPTIONS, 42, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", secondResult));
+    expectRead(BLOB_ID, 0, DEFAULT_CHUNK_SIZE, "etag", firstResult);
+    expectRead(BLOB_ID, 42, DEFAULT_CHUNK_SIZE, "etag", secondResult);
     replay(storageRpcMock);
     reader = new BlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS);
     reader.read(firstReadBuffer);
@@ -229,6 +230,151 @@ public class BlobReadChannelTest {
     assertEquals(state.toString(), secondState.toString());
   }
 
+  @Test
+  public void testReadVerifiesChecksums() throws IOException {
+    byte[] result = randomByteArray(42);
+    ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, "etag", result);
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(result, false));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    assertEquals(42, reader.read(readBuffer));
+    assertEquals(-1, reader.read(readBuffer));
+    assertArrayEquals(result, Arrays.copyOf(readBuffer.array(), 42));
+  }
+
+  @Test
+  public void testReadBufferedVerifiesChecksums() throws IOException {
+    byte[] firstResult = randomByteArray(DEFAULT_CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(42);
+    ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE / 2);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, "etag", firstResult);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE, "etag",
+        secondResult);
+    byte[] content = Arrays.copyOf(firstResult, DEFAULT_CHUNK_SIZE + 42);
+    System.arraycopy(secondResult, 0, content, DEFAULT_CHUNK_SIZE, 42);
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(content, false));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    long total = 0;
+    int read;
+    while ((read = reader.read(readBuffer)) > 0) {
+      total += read;
+      readBuffer.clear();
+    }
+    assertEquals(content.length, total);
+  }
+
+  @Test
+  public void testReadChecksumMismatch() throws IOException {
+    byte[] result = randomByteArray(42);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, "etag", result);
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(result, true));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    try {
+      reader.read(ByteBuffer.allocate(DEFAULT_CHUNK_SIZE));
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertTrue(ex.getMessage().startsWith("CRC32C mismatch for blob " + BLOB_ID));
+    }
+  }
+
+  @Test
+  public void testReadEmptyBlobChecksumMismatch() throws IOException {
+    // reading past the end of the blob returns no data and no etag
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, null, new byte[0]);
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(new byte[0], true));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    try {
+      reader.read(ByteBuffer.allocate(DEFAULT_CHUNK_SIZE));
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertTrue(ex.getMessage().startsWith("CRC32C mismatch for blob " + BLOB_ID));
+    }
+  }
+
+  @Test
+  public void testReadChunkSizeMultipleChecksumMismatch() throws IOException {
+    byte[] firstResult = randomByteArray(DEFAULT_CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(DEFAULT_CHUNK_SIZE);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, "etag", firstResult);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE, "etag",
+        secondResult);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 2 * DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE, null,
+        new byte[0]);
+    byte[] content = Arrays.copyOf(firstResult, 2 * DEFAULT_CHUNK_SIZE);
+    System.arraycopy(secondResult, 0, content, DEFAULT_CHUNK_SIZE, DEFAULT_CHUNK_SIZE);
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(content, true));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    ByteBuffer readBuffer = ByteBuffer.allocate(DEFAULT_CHUNK_SIZE);
+    assertEquals(DEFAULT_CHUNK_SIZE, reader.read(readBuffer));
+    readBuffer.clear();
+    assertEquals(DEFAULT_CHUNK_SIZE, reader.read(readBuffer));
+    readBuffer.clear();
+    try {
+      reader.read(readBuffer);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertTrue(ex.getMessage().startsWith("CRC32C mismatch for blob " + BLOB_ID));
+    }
+  }
+
+  @Test
+  public void testReadUpdatedBlobSkipsVerification() throws IOException {
+    byte[] result = randomByteArray(42);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 0, DEFAULT_CHUNK_SIZE, "etag", result);
+    // the blob was overwritten after the last chunk was read, its checksums differ
+    expect(storageRpcMock.get(BLOB_ID.toPb(), VERIFY_RPC_OPTIONS))
+        .andReturn(storageObject(randomByteArray(42), false).setEtag("etag2"));
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    assertEquals(42, reader.read(ByteBuffer.allocate(DEFAULT_CHUNK_SIZE)));
+  }
+
+  @Test
+  public void testReadAfterSeekSkipsVerification() throws IOException {
+    byte[] result = randomByteArray(42);
+    expectRead(BLOB_ID, VERIFY_RPC_OPTIONS, 10, DEFAULT_CHUNK_SIZE, "etag", result);
+    replay(storageRpcMock);
+    reader = new BlobReadChannel(options, BLOB_ID, VERIFY_RPC_OPTIONS);
+    reader.seek(10);
+    assertEquals(42, reader.read(ByteBuffer.allocate(DEFAULT_CHUNK_SIZE)));
+  }
+
+  private static StorageObject storageObject(byte[] content, boolean corrupted) {
+    int crc32c = Hashing.crc32c().hashBytes(content).asInt();
+    return BLOB_ID.toPb()
+        .setEtag("etag")
+        .setSize(BigInteger.valueOf(content.length))
+        .setCrc32c(BaseEncoding.base64().encode(Ints.toByteArray(corrupted ? ~crc32c : crc32c)))
+        .setMd5Hash(BaseEncoding.base64().encode(Hashing.md5().hashBytes(content).asBytes()));
+  }
+
+  private void expectRead(BlobId blobId, long position, int length, final String etag,
+      final byte[] result) {
+    expectRead(blobId, EMPTY_RPC_OPTIONS, position, length, etag, result);
+  }
+
+  private void expectRead(BlobId blobId, Map<StorageRpc.Option, ?> rpcOptions, long position,
+      int length, final String etag, final byte[] result) {
+    expect(storageRpcMock.read(eq(blobId.toPb()), eq(rpcOptions), eq(position), eq(length),
+        anyObject(OutputStream.class))).andAnswer(new IAnswer<StorageRpc.Tuple<String, Long>>() {
+          @Override
+          public StorageRpc.Tuple<String, Long> answer() throws Throwable {
+            ((OutputStream) getCurrentArguments()[4]).write(result);
+            return StorageRpc.Tuple.of(etag, (long) result.length);
+          }
+        });
+  }
+
   private static byte[] randomByteArray(int size) {
     byte[] byteArray = new byte[size];
     RANDOM.nextBytes(byteArray);
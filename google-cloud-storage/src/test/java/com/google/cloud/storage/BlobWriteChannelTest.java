@@ -30,14 +30,20 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import com.google.api.services.storage.model.StorageObject;
 import com.google.cloud.RestorableState;
 import com.google.cloud.WriteChannel;
 import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpcFactory;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
 
 import org.easymock.Capture;
 import org.easymock.CaptureType;
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Rule;
@@ -47,7 +53,10 @@ import org.junit.rules.ExpectedException;
 import java.io.IOException;
 import java.net.SocketException;
 import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
 
@@ -58,6 +67,10 @@ public class BlobWriteChannelTest {
   private static final String UPLOAD_ID = "uploadid";
   private static final BlobInfo BLOB_INFO = BlobInfo.builder(BUCKET_NAME, BLOB_NAME).build();
   private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final Map<StorageRpc.Option, ?> VERIFY_RPC_OPTIONS =
+      ImmutableMap.of(StorageRpc.Option.VERIFY_CHECKSUMS, true);
+  private static final Map<StorageRpc.Option, ?> SEND_RPC_OPTIONS =
+      ImmutableMap.of(StorageRpc.Option.SEND_CHECKSUMS, true);
   private static final int MIN_CHUNK_SIZE = 256 * 1024;
   private static final int DEFAULT_CHUNK_SIZE = 8 * MIN_CHUNK_SIZE;
   private static final int CUSTOM_CHUNK_SIZE = 4 * MIN_CHUNK_SIZE;
@@ -158,6 +171,65 @@ public class BlobWriteChannelTest {
     }
   }
 
+  @Test
+  public void testPipelinedWritesAndClose() throws IOException {
+    options = options.toBuilder().maxPendingUploadChunks(2).build();
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    final List<byte[]> uploadedChunks = Collections.synchronizedList(new ArrayList<byte[]>());
+    IAnswer<Void> recordChunk = new IAnswer<Void>() {
+      @Override
+      public Void answer() {
+        Object[] args = EasyMock.getCurrentArguments();
+        // chunk buffers are reused once uploaded, copy their content
+        uploadedChunks.add(Arrays.copyOf((byte[]) args[1], (Integer) args[4]));
+        return null;
+      }
+    };
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andAnswer(recordChunk);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq((long) DEFAULT_CHUNK_SIZE), eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andAnswer(recordChunk);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq(2L * DEFAULT_CHUNK_SIZE), eq(MIN_CHUNK_SIZE), eq(true));
+    expectLastCall().andAnswer(recordChunk);
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    ByteBuffer buffer = randomBuffer(2 * DEFAULT_CHUNK_SIZE + MIN_CHUNK_SIZE);
+    while (buffer.hasRemaining()) {
+      ByteBuffer slice = buffer.slice();
+      slice.limit(Math.min(slice.remaining(), MIN_CHUNK_SIZE));
+      buffer.position(buffer.position() + writer.write(slice));
+    }
+    writer.close();
+    assertEquals(3, uploadedChunks.size());
+    ByteBuffer uploaded = ByteBuffer.allocate(buffer.capacity());
+    for (byte[] chunk : uploadedChunks) {
+      uploaded.put(chunk);
+    }
+    assertArrayEquals(buffer.array(), uploaded.array());
+  }
+
+  @Test
+  public void testPipelinedWriteFailure() throws IOException {
+    options = options.toBuilder().maxPendingUploadChunks(1).build();
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    StorageException exception = new StorageException(400, "Bad request");
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    expectLastCall().andThrow(exception);
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, EMPTY_RPC_OPTIONS);
+    assertEquals(DEFAULT_CHUNK_SIZE, writer.write(randomBuffer(DEFAULT_CHUNK_SIZE)));
+    try {
+      writer.close();
+      fail("Expected close to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.code());
+    }
+  }
+
   @Test
   public void testCloseWithoutFlush() throws IOException {
     expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
@@ -262,6 +334,78 @@ public class BlobWriteChannelTest {
     assertEquals(state.toString(), state2.toString());
   }
 
+  @Test
+  public void testCloseVerifiesChecksums() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    ByteBuffer buffer = randomBuffer(MIN_CHUNK_SIZE);
+    expect(storageRpcMock.writeWithResponse(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq(0L), eq(MIN_CHUNK_SIZE), eq(true), EasyMock.<String>isNull(),
+        EasyMock.<String>isNull())).andReturn(storageObject(buffer.array(), false));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, VERIFY_RPC_OPTIONS);
+    writer.write(buffer);
+    writer.close();
+    assertTrue(!writer.isOpen());
+  }
+
+  @Test
+  public void testCloseChecksumMismatch() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    ByteBuffer buffer = randomBuffer(MIN_CHUNK_SIZE);
+    expect(storageRpcMock.writeWithResponse(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq(0L), eq(MIN_CHUNK_SIZE), eq(true), EasyMock.<String>isNull(),
+        EasyMock.<String>isNull())).andReturn(storageObject(buffer.array(), true));
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, VERIFY_RPC_OPTIONS);
+    writer.write(buffer);
+    thrown.expect(StorageException.class);
+    thrown.expectMessage("CRC32C mismatch for blob " + BLOB_INFO.blobId());
+    writer.close();
+  }
+
+  @Test
+  public void testCloseSendsChecksums() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    ByteBuffer buffer = randomBuffer(MIN_CHUNK_SIZE);
+    StorageObject storageObject = storageObject(buffer.array(), false);
+    expect(storageRpcMock.writeWithResponse(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq(0L), eq(MIN_CHUNK_SIZE), eq(true), eq(storageObject.getCrc32c()),
+        eq(storageObject.getMd5Hash()))).andReturn(storageObject);
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, SEND_RPC_OPTIONS);
+    writer.write(buffer);
+    writer.close();
+  }
+
+  @Test
+  public void testSaveAndRestoreWithChecksums() throws IOException {
+    expect(storageRpcMock.open(BLOB_INFO.toPb(), EMPTY_RPC_OPTIONS)).andReturn(UPLOAD_ID);
+    ByteBuffer buffer1 = randomBuffer(DEFAULT_CHUNK_SIZE);
+    ByteBuffer buffer2 = randomBuffer(MIN_CHUNK_SIZE);
+    byte[] content = Arrays.copyOf(buffer1.array(), DEFAULT_CHUNK_SIZE + MIN_CHUNK_SIZE);
+    System.arraycopy(buffer2.array(), 0, content, DEFAULT_CHUNK_SIZE, MIN_CHUNK_SIZE);
+    StorageObject storageObject = storageObject(content, false);
+    storageRpcMock.write(eq(UPLOAD_ID), anyObject(byte[].class), eq(0), eq(0L),
+        eq(DEFAULT_CHUNK_SIZE), eq(false));
+    // the MD5 digest state can not be restored, only the CRC32C checksum is sent
+    expect(storageRpcMock.writeWithResponse(eq(UPLOAD_ID), anyObject(byte[].class), eq(0),
+        eq((long) DEFAULT_CHUNK_SIZE), eq(MIN_CHUNK_SIZE), eq(true),
+        eq(storageObject.getCrc32c()), EasyMock.<String>isNull())).andReturn(storageObject);
+    replay(storageRpcMock);
+    writer = new BlobWriteChannel(options, BLOB_INFO, SEND_RPC_OPTIONS);
+    writer.write(buffer1);
+    WriteChannel restoredWriter = writer.capture().restore();
+    restoredWriter.write(buffer2);
+    restoredWriter.close();
+  }
+
+  private static StorageObject storageObject(byte[] content, boolean corrupted) {
+    int crc32c = Hashing.crc32c().hashBytes(content).asInt();
+    return BLOB_INFO.toPb()
+        .setCrc32c(BaseEncoding.base64().encode(Ints.toByteArray(corrupted ? ~crc32c : crc32c)))
+        .setMd5Hash(BaseEncoding.base64().encode(Hashing.md5().hashBytes(content).asBytes()));
+  }
+
   private static ByteBuffer randomBuffer(int size) {
     byte[] byteArray = new byte[size];
     RANDOM.nextBytes(byteArray);
@@ -0,0 +1,247 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.AuthCredentials.ServiceAccountAuthCredentials;
+import com.google.cloud.Clock;
+import com.google.cloud.ServiceAccountSigner;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableList;
+
+import org.easymock.EasyMock;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.net.URL;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class BulkUrlSignerTest {
+
+  private static final String ACCOUNT = "account";
+  private static final List<BlobInfo> BLOB_INFOS;
+
+  static {
+    ImmutableList.Builder<BlobInfo> builder = ImmutableList.builder();
+    for (int i = 0; i < 25; i++) {
+      builder.add(BlobInfo.builder("bucket", "dir/blob " + i)
+          .contentType("text/plain")
+          .md5("md5-" + i)
+          .build());
+    }
+    BLOB_INFOS = builder.build();
+  }
+
+  private static KeyPair keyPair;
+
+  private final AtomicInteger signCount = new AtomicInteger();
+  private long millis = 42000L;
+  private Storage storage;
+  private ServiceAccountSigner countingSigner;
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @BeforeClass
+  public static void beforeClass() throws NoSuchAlgorithmException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    keyPair = generator.generateKeyPair();
+  }
+
+  @Before
+  public void setUp() {
+    StorageRpcFactory rpcFactoryMock = EasyMock.createMock(StorageRpcFactory.class);
+    EasyMock.expect(rpcFactoryMock.create(EasyMock.anyObject(StorageOptions.class)))
+        .andReturn(EasyMock.createMock(StorageRpc.class));
+    EasyMock.replay(rpcFactoryMock);
+    final ServiceAccountAuthCredentials credentials =
+        ServiceAccountAuthCredentials.createFor(ACCOUNT, keyPair.getPrivate());
+    storage = StorageOptions.builder()
+        .projectId("projectId")
+        .authCredentials(credentials)
+        .clock(new Clock() {
+          @Override
+          public long millis() {
+            return millis;
+          }
+        })
+        .serviceRpcFactory(rpcFactoryMock)
+        .build()
+        .service();
+    countingSigner = new ServiceAccountSigner() {
+      @Override
+      public String account() {
+        return ACCOUNT;
+      }
+
+      @Override
+      public byte[] sign(byte[] toSign) {
+        signCount.incrementAndGet();
+        return credentials.sign(toSign);
+      }
+    };
+  }
+
+  @Test
+  public void testBuilder() {
+    BulkUrlSigner signer = BulkUrlSigner.builder(storage).build();
+    assertEquals(4, signer.parallelism());
+    assertEquals(1, signer.expirationBucketSeconds());
+    assertEquals(0, signer.cacheSize());
+    signer = BulkUrlSigner.builder(storage)
+        .parallelism(8)
+        .expirationBucket(5, TimeUnit.MINUTES)
+        .cacheSize(100)
+        .build();
+    assertEquals(8, signer.parallelism());
+    assertEquals(300, signer.expirationBucketSeconds());
+    assertEquals(100, signer.cacheSize());
+  }
+
+  @Test
+  public void testBuilderInvalidParallelism() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Parallelism must be > 0");
+    BulkUrlSigner.builder(storage).parallelism(0);
+  }
+
+  @Test
+  public void testBuilderInvalidExpirationBucket() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Expiration bucket must be at least one second");
+    BulkUrlSigner.builder(storage).expirationBucket(500, TimeUnit.MILLISECONDS);
+  }
+
+  @Test
+  public void testSignUrlsMatchStorage() {
+    BulkUrlSigner signer = BulkUrlSigner.builder(storage).parallelism(3).build();
+    List<URL> urls = signer.signUrls(BLOB_INFOS, 14, TimeUnit.DAYS);
+    assertEquals(BLOB_INFOS.size(), urls.size());
+    for (int i = 0; i < BLOB_INFOS.size(); i++) {
+      assertEquals(storage.signUrl(BLOB_INFOS.get(i), 14, TimeUnit.DAYS).toString(),
+          urls.get(i).toString());
+    }
+    assertEquals(storage.signUrl(BLOB_INFOS.get(0), 14, TimeUnit.DAYS).toString(),
+        signer.signUrl(BLOB_INFOS.get(0), 14, TimeUnit.DAYS).toString());
+  }
+
+  @Test
+  public void testSignUrlsWithOptionsMatchStorage() {
+    Storage.SignUrlOption[] options = {Storage.SignUrlOption.httpMethod(HttpMethod.PUT),
+        Storage.SignUrlOption.withContentType(), Storage.SignUrlOption.withMd5(),
+        Storage.SignUrlOption.signWith(countingSigner)};
+    List<URL> urls = BulkUrlSigner.builder(storage).build()
+        .signUrls(BLOB_INFOS, 1, TimeUnit.HOURS, options);
+    assertEquals(BLOB_INFOS.size(), signCount.get());
+    for (int i = 0; i < BLOB_INFOS.size(); i++) {
+      assertEquals(storage.signUrl(BLOB_INFOS.get(i), 1, TimeUnit.HOURS, options).toString(),
+          urls.get(i).toString());
+    }
+  }
+
+  @Test
+  public void testSignUrlsWithAnotherKey() throws NoSuchAlgorithmException {
+    KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+    generator.initialize(1024);
+    Storage.SignUrlOption signWith = Storage.SignUrlOption.signWith(
+        ServiceAccountAuthCredentials.createFor(ACCOUNT, generator.generateKeyPair().getPrivate()));
+    BulkUrlSigner signer = BulkUrlSigner.builder(storage).parallelism(3).build();
+    List<URL> urls = signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS);
+    List<URL> otherUrls = signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS, signWith);
+    for (int i = 0; i < BLOB_INFOS.size(); i++) {
+      assertEquals(storage.signUrl(BLOB_INFOS.get(i), 1, TimeUnit.HOURS).toString(),
+          urls.get(i).toString());
+      assertEquals(storage.signUrl(BLOB_INFOS.get(i), 1, TimeUnit.HOURS, signWith).toString(),
+          otherUrls.get(i).toString());
+    }
+    signer.close();
+  }
+
+  @Test
+  public void testClose() {
+    BulkUrlSigner signer = BulkUrlSigner.builder(storage).build();
+    signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS);
+    signer.close();
+    thrown.expect(IllegalStateException.class);
+    thrown.expectMessage("Signer is closed");
+    signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS);
+  }
+
+  @Test
+  public void testSignUrlsEmpty() {
+    assertTrue(BulkUrlSigner.builder(storage).build()
+        .signUrls(new ArrayList<BlobInfo>(), 1, TimeUnit.HOURS).isEmpty());
+  }
+
+  @Test
+  public void testExpirationBucket() {
+    BulkUrlSigner signer =
+        BulkUrlSigner.builder(storage).expirationBucket(5, TimeUnit.MINUTES).build();
+    URL url = signer.signUrl(BLOB_INFOS.get(0), 1, TimeUnit.HOURS);
+    assertTrue(url.toString().contains("&Expires=3900&"));
+    millis = 300000L;
+    assertEquals(url.toString(), signer.signUrl(BLOB_INFOS.get(0), 1, TimeUnit.HOURS).toString());
+    millis = 301000L;
+    URL nextUrl = signer.signUrl(BLOB_INFOS.get(0), 1, TimeUnit.HOURS);
+    assertTrue(nextUrl.toString().contains("&Expires=4200&"));
+  }
+
+  @Test
+  public void testCache() {
+    BulkUrlSigner signer = BulkUrlSigner.builder(storage)
+        .expirationBucket(5, TimeUnit.MINUTES)
+        .cacheSize(100)
+        .build();
+    Storage.SignUrlOption signWith = Storage.SignUrlOption.signWith(countingSigner);
+    List<URL> urls = signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS, signWith);
+    assertEquals(BLOB_INFOS.size(), signCount.get());
+    millis = 100000L;
+    List<URL> cachedUrls = signer.signUrls(BLOB_INFOS, 1, TimeUnit.HOURS, signWith);
+    for (int i = 0; i < BLOB_INFOS.size(); i++) {
+      assertSame(urls.get(i), cachedUrls.get(i));
+    }
+    assertEquals(BLOB_INFOS.size(), signCount.get());
+    URL putUrl = signer.signUrl(BLOB_INFOS.get(0), 1, TimeUnit.HOURS, signWith,
+        Storage.SignUrlOption.httpMethod(HttpMethod.PUT));
+    assertNotEquals(urls.get(0).toString(), putUrl.toString());
+    assertEquals(BLOB_INFOS.size() + 1, signCount.get());
+  }
+
+  @Test
+  public void testSignUrlsMissingMd5() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Blob is missing a value for md5");
+    BulkUrlSigner.builder(storage).build().signUrls(
+        ImmutableList.of(BLOB_INFOS.get(0), BlobInfo.builder("bucket", "blob").build()), 1,
+        TimeUnit.HOURS, Storage.SignUrlOption.withMd5());
+  }
+}
@@ -0,0 +1,349 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.aryEq;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.RestorableState;
+import com.google.cloud.WriteChannel;
+import com.google.cloud.storage.Storage.BlobTargetOption;
+import com.google.cloud.storage.Storage.BlobWriteOption;
+import com.google.cloud.storage.Storage.ComposeRequest;
+import com.google.common.collect.ImmutableList;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class CompositeUploaderTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final String BLOB_NAME = "n";
+  private static final BlobInfo BLOB_INFO = BlobInfo.builder(BUCKET_NAME, BLOB_NAME).build();
+  private static final int PART_SIZE = 10;
+  private static final Random RANDOM = new Random();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+  private final AtomicInteger composeCount = new AtomicInteger();
+  private Storage storageMock;
+  private Storage blobStorageMock;
+  private CompositeUploader uploader;
+
+  @Before
+  public void setUp() {
+    storageMock = createMock(Storage.class);
+    blobStorageMock = createMock(Storage.class);
+    expect(blobStorageMock.options())
+        .andReturn(StorageOptions.builder().projectId("projectid").build()).anyTimes();
+    replay(blobStorageMock);
+    uploader = CompositeUploader.builder(storageMock)
+        .partSize(PART_SIZE)
+        .parallelism(3)
+        .build();
+  }
+
+  @After
+  public void tearDown() {
+    verify(storageMock);
+  }
+
+  @Test
+  public void testBuilder() {
+    assertEquals(PART_SIZE, uploader.partSize());
+    assertEquals(3, uploader.parallelism());
+    replay(storageMock);
+  }
+
+  @Test
+  public void testBuilderInvalidPartSize() {
+    replay(storageMock);
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Part size must be > 0");
+    CompositeUploader.builder(storageMock).partSize(0);
+  }
+
+  @Test
+  public void testUploadSinglePart() throws IOException {
+    byte[] content = randomBytes(PART_SIZE);
+    BlobTargetOption option = BlobTargetOption.doesNotExist();
+    expect(storageMock.create(eq(BLOB_INFO), aryEq(content), eq(option))).andReturn(blob(BLOB_INFO));
+    replay(storageMock);
+    assertEquals(blob(BLOB_INFO),
+        uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length, option));
+  }
+
+  @Test
+  public void testUploadInputStream() throws IOException {
+    expectStorage();
+    byte[] content = randomBytes(5 * PART_SIZE + 3);
+    BlobTargetOption option = BlobTargetOption.doesNotExist();
+    assertEquals(blob(BLOB_INFO),
+        uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length, option));
+    assertArrayEquals(content, blobs.get(BLOB_NAME));
+    assertEquals(Collections.singleton(BLOB_NAME), blobs.keySet());
+    assertEquals(1, composeCount.get());
+  }
+
+  @Test
+  public void testUploadMultipleComposeLevels() throws IOException {
+    expectStorage();
+    byte[] content = randomBytes((CompositeUploader.MAX_COMPOSE_SOURCES + 9) * PART_SIZE);
+    uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length);
+    assertArrayEquals(content, blobs.get(BLOB_NAME));
+    assertEquals(Collections.singleton(BLOB_NAME), blobs.keySet());
+    assertEquals(3, composeCount.get());
+  }
+
+  @Test
+  public void testUploadPath() throws IOException {
+    expectStorage();
+    byte[] content = randomBytes(7 * PART_SIZE + 1);
+    Path path = folder.newFile().toPath();
+    Files.write(path, content);
+    uploader.upload(BLOB_INFO, path);
+    assertArrayEquals(content, blobs.get(BLOB_NAME));
+    assertEquals(Collections.singleton(BLOB_NAME), blobs.keySet());
+  }
+
+  @Test
+  public void testUploadTemporaryBlobOptions() throws IOException {
+    BlobTargetOption keyOption = BlobTargetOption.encryptionKey("key");
+    BlobTargetOption aclOption = BlobTargetOption.predefinedAcl(Storage.PredefinedAcl.PRIVATE);
+    BlobTargetOption doesNotExist = BlobTargetOption.doesNotExist();
+    final List<BlobTargetOption> temporaryOptions = ImmutableList.of(keyOption, aclOption);
+    final List<BlobTargetOption> targetOptions =
+        ImmutableList.of(keyOption, doesNotExist, aclOption);
+    // Parts and intermediate blobs get the encryption key and ACL, but not the preconditions
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class), eq(keyOption),
+        eq(aclOption))).andAnswer(new IAnswer<Blob>() {
+          @Override
+          public Blob answer() {
+            BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+            blobs.put(info.name(), (byte[]) EasyMock.getCurrentArguments()[1]);
+            return blob(info);
+          }
+        }).anyTimes();
+    expect(storageMock.writer(anyObject(BlobInfo.class), eq(BlobWriteOption.encryptionKey("key")),
+        eq(BlobWriteOption.predefinedAcl(Storage.PredefinedAcl.PRIVATE))))
+        .andAnswer(new IAnswer<WriteChannel>() {
+          @Override
+          public WriteChannel answer() {
+            return new FakeWriteChannel((BlobInfo) EasyMock.getCurrentArguments()[0]);
+          }
+        }).anyTimes();
+    expect(storageMock.compose(anyObject(ComposeRequest.class))).andAnswer(new IAnswer<Blob>() {
+      @Override
+      public Blob answer() {
+        ComposeRequest request = (ComposeRequest) EasyMock.getCurrentArguments()[0];
+        if (request.target().name().equals(BLOB_NAME)) {
+          assertEquals(targetOptions, request.targetOptions());
+        } else {
+          assertEquals(temporaryOptions, request.targetOptions());
+        }
+        blobs.put(request.target().name(), new byte[0]);
+        composeCount.incrementAndGet();
+        return blob(request.target());
+      }
+    }).anyTimes();
+    expectDelete();
+    replay(storageMock);
+    byte[] content = randomBytes((CompositeUploader.MAX_COMPOSE_SOURCES + 9) * PART_SIZE);
+    uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length, keyOption,
+        doesNotExist, aclOption);
+    assertEquals(3, composeCount.get());
+    Path path = folder.newFile().toPath();
+    Files.write(path, randomBytes(3 * PART_SIZE));
+    uploader.upload(BLOB_INFO, path, keyOption, doesNotExist, aclOption);
+    assertEquals(4, composeCount.get());
+    assertEquals(Collections.singleton(BLOB_NAME), blobs.keySet());
+  }
+
+  @Test
+  public void testUploadShortInputStream() throws IOException {
+    expectStorage();
+    byte[] content = randomBytes(3 * PART_SIZE);
+    try {
+      uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length + 1);
+      fail("Expected EOFException");
+    } catch (EOFException ex) {
+      // expected
+    }
+    assertTrue(blobs.isEmpty());
+  }
+
+  @Test
+  public void testUploadFailureDeletesParts() throws IOException {
+    StorageException exception = new StorageException(500, "Internal error");
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class)))
+        .andAnswer(new IAnswer<Blob>() {
+          @Override
+          public Blob answer() {
+            BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+            blobs.put(info.name(), (byte[]) EasyMock.getCurrentArguments()[1]);
+            return blob(info);
+          }
+        }).times(2);
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class)))
+        .andThrow(exception);
+    expectDelete();
+    replay(storageMock);
+    byte[] content = randomBytes(3 * PART_SIZE);
+    try {
+      uploader.upload(BLOB_INFO, new ByteArrayInputStream(content), content.length);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(exception, ex);
+    }
+    assertTrue(blobs.isEmpty());
+  }
+
+  private void expectStorage() {
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class)))
+        .andAnswer(new IAnswer<Blob>() {
+          @Override
+          public Blob answer() {
+            BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+            blobs.put(info.name(), (byte[]) EasyMock.getCurrentArguments()[1]);
+            return blob(info);
+          }
+        }).anyTimes();
+    expect(storageMock.writer(anyObject(BlobInfo.class))).andAnswer(new IAnswer<WriteChannel>() {
+      @Override
+      public WriteChannel answer() {
+        return new FakeWriteChannel((BlobInfo) EasyMock.getCurrentArguments()[0]);
+      }
+    }).anyTimes();
+    expect(storageMock.compose(anyObject(ComposeRequest.class))).andAnswer(new IAnswer<Blob>() {
+      @Override
+      public Blob answer() throws IOException {
+        ComposeRequest request = (ComposeRequest) EasyMock.getCurrentArguments()[0];
+        assertTrue(request.sourceBlobs().size() <= CompositeUploader.MAX_COMPOSE_SOURCES);
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        for (ComposeRequest.SourceBlob source : request.sourceBlobs()) {
+          content.write(blobs.get(source.name()));
+        }
+        blobs.put(request.target().name(), content.toByteArray());
+        composeCount.incrementAndGet();
+        return blob(request.target());
+      }
+    }).anyTimes();
+    expectDelete();
+    replay(storageMock);
+  }
+
+  private void expectDelete() {
+    expect(storageMock.delete(EasyMock.<Iterable<BlobId>>anyObject()))
+        .andAnswer(new IAnswer<List<Boolean>>() {
+          @Override
+          public List<Boolean> answer() {
+            @SuppressWarnings("unchecked")
+            Iterable<BlobId> blobIds = (Iterable<BlobId>) EasyMock.getCurrentArguments()[0];
+            List<Boolean> deleted = new ArrayList<>();
+            for (BlobId blobId : blobIds) {
+              assertEquals(BUCKET_NAME, blobId.bucket());
+              deleted.add(blobs.remove(blobId.name()) != null);
+            }
+            return deleted;
+          }
+        }).anyTimes();
+  }
+
+  private Blob blob(BlobInfo info) {
+    return new Blob(blobStorageMock, new BlobInfo.BuilderImpl(info));
+  }
+
+  private static byte[] randomBytes(int size) {
+    byte[] bytes = new byte[size];
+    RANDOM.nextBytes(bytes);
+    return bytes;
+  }
+
+  private final class FakeWriteChannel implements WriteChannel {
+
+    private final BlobInfo info;
+    private final ByteArrayOutputStream content = new ByteArrayOutputStream();
+    private boolean open = true;
+
+    FakeWriteChannel(BlobInfo info) {
+      this.info = info;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+      int length = src.remaining();
+      byte[] bytes = new byte[length];
+      src.get(bytes);
+      content.write(bytes, 0, length);
+      return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+      return open;
+    }
+
+    @Override
+    public void close() {
+      blobs.put(info.name(), content.toByteArray());
+      open = false;
+    }
+
+    @Override
+    public void chunkSize(int chunkSize) {}
+
+    @Override
+    public RestorableState<WriteChannel> capture() {
+      throw new UnsupportedOperationException();
+    }
+  }
+}
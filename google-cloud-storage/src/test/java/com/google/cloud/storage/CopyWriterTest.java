@@ -22,7 +22,10 @@ import static org.easymock.EasyMock.expect;
 import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.verify;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import com.google.cloud.RestorableState;
 import com.google.cloud.RetryParams;
@@ -30,6 +33,7 @@ import com.google.cloud.storage.spi.StorageRpc;
 import com.google.cloud.storage.spi.StorageRpc.RewriteRequest;
 import com.google.cloud.storage.spi.StorageRpc.RewriteResponse;
 import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 
 import org.easymock.EasyMock;
@@ -37,6 +41,9 @@ import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 
 public class CopyWriterTest {
@@ -202,4 +209,74 @@ public class CopyWriterTest {
     assertEquals(42L, restoredRewriter.totalBytesCopied());
     assertEquals(42L, restoredRewriter.blobSize());
   }
+
+  @Test
+  public void testResultWithProgressListener() {
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITH_OBJECT))
+        .andReturn(RESPONSE_WITH_OBJECT);
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITH_OBJECT))
+        .andReturn(RESPONSE_WITH_OBJECT_DONE);
+    EasyMock.replay(storageRpcMock);
+    copyWriter = new CopyWriter(options, RESPONSE_WITH_OBJECT);
+    final List<Long> progress = new ArrayList<>();
+    final List<RestorableState<CopyWriter>> states = new ArrayList<>();
+    assertEquals(result, copyWriter.result(new CopyWriter.ProgressListener() {
+      @Override
+      public void progress(CopyWriter writer) {
+        assertSame(copyWriter, writer);
+        progress.add(writer.totalBytesCopied());
+        states.add(writer.capture());
+      }
+    }));
+    assertEquals(ImmutableList.of(21L, 42L), progress);
+    assertFalse(states.get(0).restore().isDone());
+    assertTrue(states.get(1).restore().isDone());
+  }
+
+  @Test
+  public void testResults() {
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITH_OBJECT))
+        .andReturn(RESPONSE_WITH_OBJECT_DONE);
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITHOUT_OBJECT))
+        .andReturn(RESPONSE_WITHOUT_OBJECT);
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITHOUT_OBJECT))
+        .andReturn(RESPONSE_WITHOUT_OBJECT_DONE);
+    EasyMock.replay(storageRpcMock);
+    CopyWriter first = new CopyWriter(options, RESPONSE_WITH_OBJECT);
+    CopyWriter second = new CopyWriter(options, RESPONSE_WITHOUT_OBJECT);
+    final List<CopyWriter> notified = Collections.synchronizedList(new ArrayList<CopyWriter>());
+    List<Blob> results = CopyWriter.results(ImmutableList.of(first, second), 2,
+        new CopyWriter.ProgressListener() {
+          @Override
+          public void progress(CopyWriter writer) {
+            notified.add(writer);
+          }
+        });
+    assertEquals(ImmutableList.of(result, result), results);
+    assertTrue(first.isDone());
+    assertTrue(second.isDone());
+    assertEquals(1, Collections.frequency(notified, first));
+    assertEquals(2, Collections.frequency(notified, second));
+  }
+
+  @Test
+  public void testResultsFailure() {
+    StorageException exception = new StorageException(400, "Bad request");
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITH_OBJECT)).andThrow(exception);
+    EasyMock.expect(storageRpcMock.continueRewrite(RESPONSE_WITHOUT_OBJECT))
+        .andReturn(RESPONSE_WITHOUT_OBJECT_DONE);
+    EasyMock.replay(storageRpcMock);
+    CopyWriter first = new CopyWriter(options, RESPONSE_WITH_OBJECT);
+    CopyWriter second = new CopyWriter(options, RESPONSE_WITHOUT_OBJECT);
+    try {
+      CopyWriter.results(ImmutableList.of(first, second), 1, null);
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.code());
+    }
+    assertFalse(first.isDone());
+    assertEquals(21L, first.totalBytesCopied());
+    assertTrue(second.isDone());
+    assertEquals(result, second.result());
+  }
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+public class Crc32cTest {
+
+  private static final Random RANDOM = new Random();
+
+  @Test
+  public void testCheckValue() {
+    Crc32c crc32c = new Crc32c();
+    byte[] bytes = "123456789".getBytes(US_ASCII);
+    crc32c.update(bytes, 0, bytes.length);
+    assertEquals(0xE3069283L, crc32c.getValue());
+    crc32c.reset();
+    for (byte value : bytes) {
+      crc32c.update(value);
+    }
+    assertEquals(0xE3069283, crc32c.intValue());
+  }
+
+  @Test
+  public void testMatchesGuava() {
+    byte[] bytes = new byte[1024];
+    RANDOM.nextBytes(bytes);
+    for (int offset = 0; offset < 9; offset++) {
+      for (int length = 0; length < 100; length++) {
+        Crc32c crc32c = new Crc32c();
+        crc32c.update(bytes, offset, length);
+        assertEquals(Hashing.crc32c().hashBytes(bytes, offset, length).asInt(), crc32c.intValue());
+      }
+    }
+  }
+
+  @Test
+  public void testResume() {
+    byte[] bytes = new byte[1000];
+    RANDOM.nextBytes(bytes);
+    Crc32c first = new Crc32c();
+    first.update(bytes, 0, 333);
+    Crc32c resumed = new Crc32c(first.intValue());
+    resumed.update(bytes, 333, bytes.length - 333);
+    assertEquals(Hashing.crc32c().hashBytes(bytes).asInt(), resumed.intValue());
+  }
+
+  @Test
+  public void testBlobChecksums() {
+    byte[] bytes = new byte[100_000];
+    RANDOM.nextBytes(bytes);
+    BlobChecksums checksums = new BlobChecksums();
+    checksums.update(bytes, 0, 10);
+    checksums.update(ByteBuffer.wrap(bytes, 10, 50_000).slice());
+    ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length - 50_010);
+    direct.put(bytes, 50_010, direct.capacity()).flip();
+    checksums.update(direct);
+    assertEquals(bytes.length, checksums.length());
+    String crc32c = BaseEncoding.base64().encode(
+        Ints.toByteArray(Hashing.crc32c().hashBytes(bytes).asInt()));
+    String md5 = BaseEncoding.base64().encode(Hashing.md5().hashBytes(bytes).asBytes());
+    assertEquals(crc32c, checksums.crc32c());
+    assertEquals(md5, checksums.md5());
+    checksums.verify(BlobId.of("b", "n"), crc32c, md5);
+  }
+
+  @Test
+  public void testResumedBlobChecksums() {
+    byte[] bytes = new byte[1000];
+    RANDOM.nextBytes(bytes);
+    BlobChecksums checksums = new BlobChecksums();
+    checksums.update(bytes, 0, 500);
+    BlobChecksums resumed = BlobChecksums.resume(checksums.crc32cValue(), checksums.length());
+    resumed.update(Arrays.copyOfRange(bytes, 500, 1000), 0, 500);
+    assertEquals(1000, resumed.length());
+    assertEquals(Hashing.crc32c().hashBytes(bytes).asInt(), resumed.crc32cValue());
+    assertNull(resumed.md5());
+  }
+}
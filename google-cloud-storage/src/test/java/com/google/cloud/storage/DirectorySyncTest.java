@@ -0,0 +1,268 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.replay;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.google.cloud.Page;
+import com.google.cloud.PageImpl;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.hash.Hashing;
+import com.google.common.io.BaseEncoding;
+import com.google.common.primitives.Ints;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+public class DirectorySyncTest {
+
+  private static final String BUCKET_NAME = "b";
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private final Map<String, byte[]> created = new ConcurrentHashMap<>();
+  private final Map<String, Map<String, String>> updated = new ConcurrentHashMap<>();
+  private final List<BlobId> deleted = new ArrayList<>();
+  private final List<Blob> remote = new ArrayList<>();
+  private Storage storageMock;
+  private Storage blobStorageMock;
+  private Path directory;
+
+  @Before
+  public void setUp() throws IOException {
+    storageMock = createMock(Storage.class);
+    blobStorageMock = createMock(Storage.class);
+    expect(blobStorageMock.options())
+        .andReturn(StorageOptions.builder().projectId("projectid").build()).anyTimes();
+    replay(blobStorageMock);
+    directory = folder.newFolder("site").toPath();
+    write("a.txt", "a");
+    write("dir/b.txt", "bb");
+    write("dir/sub/c.txt", "ccc");
+  }
+
+  @Test
+  public void testBuilder() {
+    DirectorySync sync = DirectorySync.builder(storageMock).build();
+    assertEquals(4, sync.parallelism());
+    assertEquals(false, sync.deleteExtraneous());
+    assertEquals(true, sync.compareChecksums());
+    sync = DirectorySync.builder(storageMock)
+        .parallelism(2)
+        .deleteExtraneous(true)
+        .compareChecksums(false)
+        .build();
+    assertEquals(2, sync.parallelism());
+    assertEquals(true, sync.deleteExtraneous());
+    assertEquals(false, sync.compareChecksums());
+  }
+
+  @Test
+  public void testBuilderInvalidParallelism() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Parallelism must be > 0");
+    DirectorySync.builder(storageMock).parallelism(0);
+  }
+
+  @Test
+  public void testSyncNotADirectory() throws IOException {
+    thrown.expect(IllegalArgumentException.class);
+    DirectorySync.builder(storageMock).build()
+        .sync(directory.resolve("a.txt"), BUCKET_NAME, "p");
+  }
+
+  @Test
+  public void testSync() throws IOException {
+    remote.add(blob("p/a.txt", "a", null));
+    remote.add(blob("p/dir/b.txt", "b", null));
+    remote.add(blob("p/stale.txt", "s", null));
+    expectStorage("p/");
+    DirectorySync.Result result = DirectorySync.builder(storageMock).parallelism(2).build()
+        .sync(directory, BUCKET_NAME, "p");
+    assertEquals(ImmutableSet.of("p/dir/b.txt", "p/dir/sub/c.txt"), names(result.uploaded()));
+    assertEquals(ImmutableSet.of("p/dir/b.txt", "p/dir/sub/c.txt"), created.keySet());
+    assertArrayEquals("bb".getBytes(UTF_8), created.get("p/dir/b.txt"));
+    assertArrayEquals("ccc".getBytes(UTF_8), created.get("p/dir/sub/c.txt"));
+    assertEquals(ImmutableSet.of("p/a.txt"), new HashSet<>(result.unchanged()));
+    assertEquals(ImmutableMap.of(DirectorySync.FILE_MTIME_METADATA, mtime("a.txt")),
+        updated.get("p/a.txt"));
+    assertTrue(result.deleted().isEmpty());
+    EasyMock.verify(storageMock);
+  }
+
+  @Test
+  public void testSyncMtimeMatch() throws IOException {
+    remote.add(blob("a.txt", "x", mtime("a.txt")));
+    remote.add(blob("dir/b.txt", "bb", mtime("dir/b.txt")));
+    remote.add(blob("dir/sub/c.txt", "ccc", mtime("dir/sub/c.txt")));
+    expectStorage("");
+    DirectorySync.Result result = DirectorySync.builder(storageMock).build()
+        .sync(directory, BUCKET_NAME, "");
+    assertTrue(result.uploaded().isEmpty());
+    assertEquals(ImmutableSet.of("a.txt", "dir/b.txt", "dir/sub/c.txt"),
+        new HashSet<>(result.unchanged()));
+    assertTrue(updated.isEmpty());
+    EasyMock.verify(storageMock);
+  }
+
+  @Test
+  public void testSyncWithoutChecksums() throws IOException {
+    remote.add(blob("p/a.txt", "a", "0"));
+    remote.add(blob("p/dir/b.txt", "bb", mtime("dir/b.txt")));
+    remote.add(blob("p/dir/sub/c.txt", "ccc", mtime("dir/sub/c.txt")));
+    expectStorage("p/");
+    DirectorySync.Result result = DirectorySync.builder(storageMock).compareChecksums(false).build()
+        .sync(directory, BUCKET_NAME, "p/");
+    assertEquals(ImmutableSet.of("p/a.txt"), names(result.uploaded()));
+    assertEquals(ImmutableSet.of("p/dir/b.txt", "p/dir/sub/c.txt"),
+        new HashSet<>(result.unchanged()));
+    EasyMock.verify(storageMock);
+  }
+
+  @Test
+  public void testSyncDeleteExtraneous() throws IOException {
+    remote.add(blob("p/a.txt", "a", mtime("a.txt")));
+    remote.add(blob("p/dir/", "", null));
+    remote.add(blob("p/stale.txt", "s", null));
+    remote.add(blob("p/dir/stale.txt", "s", null));
+    expectStorage("p/");
+    DirectorySync.Result result = DirectorySync.builder(storageMock).deleteExtraneous(true).build()
+        .sync(directory, BUCKET_NAME, "p");
+    assertEquals(ImmutableSet.of("p/dir/b.txt", "p/dir/sub/c.txt"), names(result.uploaded()));
+    assertEquals(ImmutableSet.of(BlobId.of(BUCKET_NAME, "p/stale.txt"),
+        BlobId.of(BUCKET_NAME, "p/dir/stale.txt")), new HashSet<>(result.deleted()));
+    assertEquals(new HashSet<>(result.deleted()), new HashSet<>(deleted));
+    EasyMock.verify(storageMock);
+  }
+
+  @Test
+  public void testSyncFailure() throws IOException {
+    expect(storageMock.list(eq(BUCKET_NAME), EasyMock.<BlobListOption>anyObject(),
+        EasyMock.<BlobListOption>anyObject())).andReturn(page());
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class)))
+        .andThrow(new StorageException(500, "Internal error")).anyTimes();
+    replay(storageMock);
+    thrown.expect(StorageException.class);
+    thrown.expectMessage("Internal error");
+    DirectorySync.builder(storageMock).build().sync(directory, BUCKET_NAME, "p");
+  }
+
+  private void expectStorage(String prefix) {
+    expect(storageMock.list(eq(BUCKET_NAME), eq(BlobListOption.prefix(prefix)),
+        EasyMock.<BlobListOption>anyObject())).andReturn(page());
+    expect(storageMock.create(anyObject(BlobInfo.class), anyObject(byte[].class)))
+        .andAnswer(new IAnswer<Blob>() {
+          @Override
+          public Blob answer() {
+            BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+            byte[] content = (byte[]) EasyMock.getCurrentArguments()[1];
+            assertTrue(info.metadata().containsKey(DirectorySync.FILE_MTIME_METADATA));
+            created.put(info.name(), content);
+            return new Blob(blobStorageMock, new BlobInfo.BuilderImpl(info));
+          }
+        }).anyTimes();
+    expect(storageMock.update(anyObject(BlobInfo.class))).andAnswer(new IAnswer<Blob>() {
+      @Override
+      public Blob answer() {
+        BlobInfo info = (BlobInfo) EasyMock.getCurrentArguments()[0];
+        updated.put(info.name(), info.metadata());
+        return new Blob(blobStorageMock, new BlobInfo.BuilderImpl(info));
+      }
+    }).anyTimes();
+    expect(storageMock.delete(EasyMock.<Iterable<BlobId>>anyObject()))
+        .andAnswer(new IAnswer<List<Boolean>>() {
+          @Override
+          @SuppressWarnings("unchecked")
+          public List<Boolean> answer() {
+            List<Boolean> results = new ArrayList<>();
+            for (BlobId blobId : (Iterable<BlobId>) EasyMock.getCurrentArguments()[0]) {
+              synchronized (deleted) {
+                deleted.add(blobId);
+              }
+              results.add(true);
+            }
+            return results;
+          }
+        }).anyTimes();
+    replay(storageMock);
+  }
+
+  private Page<Blob> page() {
+    return new PageImpl<>(null, null, remote);
+  }
+
+  private Blob blob(String name, String content, String mtime) {
+    byte[] bytes = content.getBytes(UTF_8);
+    BlobInfo.Builder builder = BlobInfo.builder(BUCKET_NAME, name)
+        .size((long) bytes.length)
+        .crc32c(BaseEncoding.base64().encode(
+            Ints.toByteArray(Hashing.crc32c().hashBytes(bytes).asInt())));
+    if (mtime != null) {
+      builder.metadata(ImmutableMap.of(DirectorySync.FILE_MTIME_METADATA, mtime));
+    }
+    return new Blob(blobStorageMock, new BlobInfo.BuilderImpl(builder.build()));
+  }
+
+  private void write(String name, String content) throws IOException {
+    Path file = directory.resolve(name);
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(UTF_8));
+  }
+
+  private String mtime(String name) throws IOException {
+    return Long.toString(
+        Files.getLastModifiedTime(directory.resolve(name)).to(TimeUnit.SECONDS));
+  }
+
+  private static Set<String> names(List<Blob> blobs) {
+    Set<String> names = new HashSet<>();
+    for (Blob blob : blobs) {
+      names.add(blob.name());
+    }
+    return names;
+  }
+}
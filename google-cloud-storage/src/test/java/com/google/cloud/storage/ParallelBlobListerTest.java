@@ -0,0 +1,220 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.Storage.BlobListOption;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpc.Tuple;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+public class ParallelBlobListerTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final List<String> BLOB_NAMES = ImmutableList.of(
+      "a.txt", "a/1", "a/2", "a/b/3", "b/1", "b/2", "b0", "c/1", "c/2", "c/3", "d");
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private Storage storage;
+  private String failingPrefix;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = EasyMock.createMock(StorageRpcFactory.class);
+    storageRpcMock = EasyMock.createMock(StorageRpc.class);
+    EasyMock.expect(rpcFactoryMock.create(EasyMock.anyObject(StorageOptions.class)))
+        .andReturn(storageRpcMock);
+    EasyMock.expect(storageRpcMock.list(EasyMock.eq(BUCKET_NAME),
+        EasyMock.<Map<StorageRpc.Option, ?>>anyObject()))
+        .andAnswer(new IAnswer<Tuple<String, Iterable<StorageObject>>>() {
+          @Override
+          public Tuple<String, Iterable<StorageObject>> answer() {
+            @SuppressWarnings("unchecked")
+            Map<StorageRpc.Option, ?> options =
+                (Map<StorageRpc.Option, ?>) EasyMock.getCurrentArguments()[1];
+            return list(options);
+          }
+        }).anyTimes();
+    EasyMock.replay(rpcFactoryMock, storageRpcMock);
+    storage = StorageOptions.builder()
+        .projectId("projectid")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RetryParams.noRetries())
+        .build()
+        .service();
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testBuilder() {
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage)
+        .parallelism(2)
+        .ordered(true)
+        .build();
+    assertEquals(2, lister.parallelism());
+    assertTrue(lister.ordered());
+    lister = ParallelBlobLister.builder(storage).build();
+    assertEquals(8, lister.parallelism());
+    assertFalse(lister.ordered());
+  }
+
+  @Test
+  public void testListUnordered() {
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage).parallelism(2).build();
+    List<String> names = names(lister.list(BUCKET_NAME, BlobListOption.pageSize(1)));
+    assertEquals(BLOB_NAMES.size(), names.size());
+    assertEquals(new HashSet<>(BLOB_NAMES), new HashSet<>(names));
+  }
+
+  @Test
+  public void testListOrdered() {
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage)
+        .parallelism(2)
+        .ordered(true)
+        .build();
+    assertEquals(BLOB_NAMES, names(lister.list(BUCKET_NAME, BlobListOption.pageSize(2))));
+  }
+
+  @Test
+  public void testListWithPrefix() {
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage).ordered(true).build();
+    assertEquals(ImmutableList.of("a/1", "a/2", "a/b/3"),
+        names(lister.list(BUCKET_NAME, BlobListOption.prefix("a/"))));
+  }
+
+  @Test
+  public void testListWithShardPrefixes() {
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage)
+        .shardPrefixes(ImmutableList.of("c", "a"))
+        .build();
+    assertEquals(ImmutableSet.of("a.txt", "a/1", "a/2", "a/b/3", "c/1", "c/2", "c/3"),
+        new HashSet<>(names(lister.list(BUCKET_NAME, BlobListOption.pageSize(1)))));
+  }
+
+  @Test
+  public void testListFailure() {
+    failingPrefix = "c/";
+    ParallelBlobLister lister = ParallelBlobLister.builder(storage).ordered(true).build();
+    Iterator<Blob> listing = lister.list(BUCKET_NAME);
+    for (String name : BLOB_NAMES.subList(0, 7)) {
+      assertEquals(name, listing.next().name());
+    }
+    try {
+      listing.hasNext();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.code());
+    }
+  }
+
+  @Test
+  public void testListCurrentDirectory() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Current directory listing is not supported");
+    ParallelBlobLister.builder(storage).build()
+        .list(BUCKET_NAME, BlobListOption.currentDirectory());
+  }
+
+  private static List<String> names(ParallelBlobLister.Listing listing) {
+    List<String> names = new ArrayList<>();
+    try {
+      while (listing.hasNext()) {
+        names.add(listing.next().name());
+      }
+    } finally {
+      listing.close();
+    }
+    return names;
+  }
+
+  /**
+   * Lists {@link #BLOB_NAMES} supporting prefix, delimiter and paging options. Page tokens are
+   * the index of the next result.
+   */
+  private Tuple<String, Iterable<StorageObject>> list(Map<StorageRpc.Option, ?> options) {
+    String prefix = options.containsKey(StorageRpc.Option.PREFIX)
+        ? (String) options.get(StorageRpc.Option.PREFIX) : "";
+    if (prefix.equals(failingPrefix)) {
+      throw new StorageException(400, "Invalid request");
+    }
+    String delimiter = (String) options.get(StorageRpc.Option.DELIMITER);
+    TreeSet<String> results = new TreeSet<>();
+    List<String> prefixes = new ArrayList<>();
+    for (String name : BLOB_NAMES) {
+      if (!name.startsWith(prefix)) {
+        continue;
+      }
+      int index = delimiter == null ? -1 : name.indexOf(delimiter, prefix.length());
+      if (index >= 0) {
+        String directory = name.substring(0, index + delimiter.length());
+        if (results.add(directory)) {
+          prefixes.add(directory);
+        }
+      } else {
+        results.add(name);
+      }
+    }
+    List<String> sorted = new ArrayList<>(results);
+    int start = options.containsKey(StorageRpc.Option.PAGE_TOKEN)
+        ? Integer.parseInt((String) options.get(StorageRpc.Option.PAGE_TOKEN)) : 0;
+    int end = options.containsKey(StorageRpc.Option.MAX_RESULTS)
+        ? (int) Math.min(sorted.size(), start + (Long) options.get(StorageRpc.Option.MAX_RESULTS))
+        : sorted.size();
+    List<StorageObject> page = new ArrayList<>();
+    for (String name : sorted.subList(start, end)) {
+      StorageObject storageObject = new StorageObject().setBucket(BUCKET_NAME).setName(name);
+      if (prefixes.contains(name)) {
+        storageObject.set("isDirectory", true).setSize(BigInteger.ZERO);
+      }
+      page.add(storageObject);
+    }
+    return Tuple.<String, Iterable<StorageObject>>of(
+        end < sorted.size() ? Integer.toString(end) : null, page);
+  }
+}
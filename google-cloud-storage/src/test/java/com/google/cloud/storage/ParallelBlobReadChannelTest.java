@@ -0,0 +1,312 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.easymock.EasyMock.anyObject;
+import static org.easymock.EasyMock.createMock;
+import static org.easymock.EasyMock.eq;
+import static org.easymock.EasyMock.expect;
+import static org.easymock.EasyMock.getCurrentArguments;
+import static org.easymock.EasyMock.replay;
+import static org.easymock.EasyMock.verify;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.cloud.ReadChannel;
+import com.google.cloud.RestorableState;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+import com.google.common.collect.ImmutableMap;
+
+import org.easymock.IAnswer;
+import org.easymock.IExpectationSetters;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+public class ParallelBlobReadChannelTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final String BLOB_NAME = "n";
+  private static final BlobId BLOB_ID = BlobId.of(BUCKET_NAME, BLOB_NAME, -1L);
+  private static final Map<StorageRpc.Option, ?> EMPTY_RPC_OPTIONS = ImmutableMap.of();
+  private static final int CHUNK_SIZE = 1024;
+  private static final int PARALLELISM = 3;
+  private static final Random RANDOM = new Random();
+
+  private StorageOptions options;
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private ParallelBlobReadChannel reader;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = createMock(StorageRpcFactory.class);
+    storageRpcMock = createMock(StorageRpc.class);
+    expect(rpcFactoryMock.create(anyObject(StorageOptions.class))).andReturn(storageRpcMock);
+    replay(rpcFactoryMock);
+    options = StorageOptions.builder()
+        .projectId("projectId")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RetryParams.noRetries())
+        .build();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    if (reader != null) {
+      reader.close();
+    }
+    verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testCreate() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    assertTrue(reader.isOpen());
+  }
+
+  @Test
+  public void testCreateInvalidParallelism() {
+    replay(storageRpcMock);
+    try {
+      new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, 0);
+      fail("Expected IllegalArgumentException");
+    } catch (IllegalArgumentException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReadInOrder() throws IOException {
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.chunkSize(CHUNK_SIZE);
+    byte[] firstResult = randomByteArray(CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(CHUNK_SIZE);
+    byte[] thirdResult = randomByteArray(42);
+    expectRead(BLOB_ID, 0, "etag", firstResult);
+    expectRead(BLOB_ID, CHUNK_SIZE, "etag", secondResult);
+    expectRead(BLOB_ID, 2 * CHUNK_SIZE, "etag", thirdResult);
+    expectRead(BLOB_ID, 3 * CHUNK_SIZE, null, new byte[0]).anyTimes();
+    expectRead(BLOB_ID, 4 * CHUNK_SIZE, null, new byte[0]).anyTimes();
+    replay(storageRpcMock);
+    ByteBuffer readBuffer = ByteBuffer.allocate(2 * CHUNK_SIZE + 42);
+    while (reader.read(readBuffer) >= 0) {
+      // keep reading
+    }
+    byte[] expected = new byte[2 * CHUNK_SIZE + 42];
+    System.arraycopy(firstResult, 0, expected, 0, CHUNK_SIZE);
+    System.arraycopy(secondResult, 0, expected, CHUNK_SIZE, CHUNK_SIZE);
+    System.arraycopy(thirdResult, 0, expected, 2 * CHUNK_SIZE, 42);
+    assertArrayEquals(expected, readBuffer.array());
+    assertEquals(-1, reader.read(ByteBuffer.allocate(1)));
+  }
+
+  @Test
+  public void testReadFinish() throws IOException {
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, 1);
+    reader.chunkSize(CHUNK_SIZE);
+    expectRead(BLOB_ID, 0, "etag", new byte[0]);
+    replay(storageRpcMock);
+    assertEquals(-1, reader.read(ByteBuffer.allocate(CHUNK_SIZE)));
+  }
+
+  @Test
+  public void testSeek() throws IOException {
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, 1);
+    reader.chunkSize(CHUNK_SIZE);
+    reader.seek(42);
+    byte[] result = randomByteArray(CHUNK_SIZE);
+    ByteBuffer readBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    expectRead(BLOB_ID, 42, "etag", result);
+    replay(storageRpcMock);
+    reader.read(readBuffer);
+    assertArrayEquals(result, readBuffer.array());
+  }
+
+  @Test
+  public void testClose() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    assertTrue(reader.isOpen());
+    reader.close();
+    assertFalse(reader.isOpen());
+  }
+
+  @Test
+  public void testReadClosed() throws IOException {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    reader.close();
+    try {
+      reader.read(ByteBuffer.allocate(CHUNK_SIZE));
+      fail("Expected ParallelBlobReadChannel read to throw ClosedChannelException");
+    } catch (ClosedChannelException ex) {
+      // expected
+    }
+  }
+
+  @Test
+  public void testReadGenerationChanged() throws IOException {
+    BlobId blobId = BlobId.of(BUCKET_NAME, BLOB_NAME);
+    reader = new ParallelBlobReadChannel(options, blobId, EMPTY_RPC_OPTIONS, 2);
+    reader.chunkSize(CHUNK_SIZE);
+    byte[] firstResult = randomByteArray(CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(CHUNK_SIZE);
+    expectRead(blobId, 0, "etag1", firstResult);
+    expectRead(blobId, CHUNK_SIZE, "etag2", secondResult);
+    expectRead(blobId, 2 * CHUNK_SIZE, "etag2", secondResult).anyTimes();
+    replay(storageRpcMock);
+    reader.read(ByteBuffer.allocate(CHUNK_SIZE));
+    try {
+      reader.read(ByteBuffer.allocate(CHUNK_SIZE));
+      fail("Expected ReadChannel read to throw StorageException");
+    } catch (StorageException ex) {
+      StringBuilder messageBuilder = new StringBuilder();
+      messageBuilder.append("Blob ").append(blobId).append(" was updated while reading");
+      assertEquals(messageBuilder.toString(), ex.getMessage());
+    }
+  }
+
+  @Test
+  public void testReadFailure() throws IOException {
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, 1);
+    reader.chunkSize(CHUNK_SIZE);
+    StorageException exception = new StorageException(404, "not found");
+    expect(storageRpcMock.read(eq(BLOB_ID.toPb()), eq(EMPTY_RPC_OPTIONS), eq(0L), eq(CHUNK_SIZE),
+        anyObject(OutputStream.class))).andThrow(exception);
+    replay(storageRpcMock);
+    try {
+      reader.read(ByteBuffer.allocate(CHUNK_SIZE));
+      fail("Expected ReadChannel read to throw StorageException");
+    } catch (StorageException ex) {
+      assertEquals(404, ex.code());
+    }
+  }
+
+  @Test
+  public void testReadAhead() throws IOException {
+    StorageOptions readAheadOptions = options.toBuilder().maxReadAheadBytes(2 * CHUNK_SIZE).build();
+    reader = ParallelBlobReadChannel.readAhead(readAheadOptions, BLOB_ID, EMPTY_RPC_OPTIONS);
+    reader.chunkSize(CHUNK_SIZE);
+    byte[] firstResult = randomByteArray(CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(CHUNK_SIZE);
+    byte[] thirdResult = randomByteArray(CHUNK_SIZE);
+    expectRead(BLOB_ID, 0, "etag", firstResult);
+    expectRead(BLOB_ID, CHUNK_SIZE, "etag", secondResult);
+    expectRead(BLOB_ID, 2 * CHUNK_SIZE, "etag", thirdResult);
+    expectRead(BLOB_ID, 3 * CHUNK_SIZE, null, new byte[0]);
+    expectRead(BLOB_ID, 4 * CHUNK_SIZE, null, new byte[0]).anyTimes();
+    replay(storageRpcMock);
+    ByteBuffer firstReadBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    ByteBuffer secondReadBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    ByteBuffer thirdReadBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    assertEquals(CHUNK_SIZE, reader.read(firstReadBuffer));
+    assertEquals(CHUNK_SIZE, reader.read(secondReadBuffer));
+    assertEquals(CHUNK_SIZE, reader.read(thirdReadBuffer));
+    assertEquals(-1, reader.read(ByteBuffer.allocate(CHUNK_SIZE)));
+    assertArrayEquals(firstResult, firstReadBuffer.array());
+    assertArrayEquals(secondResult, secondReadBuffer.array());
+    assertArrayEquals(thirdResult, thirdReadBuffer.array());
+  }
+
+  @Test
+  public void testReadAheadSeek() throws IOException {
+    StorageOptions readAheadOptions = options.toBuilder().maxReadAheadBytes(2 * CHUNK_SIZE).build();
+    reader = ParallelBlobReadChannel.readAhead(readAheadOptions, BLOB_ID, EMPTY_RPC_OPTIONS);
+    reader.chunkSize(CHUNK_SIZE);
+    byte[] firstResult = randomByteArray(CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(CHUNK_SIZE);
+    expectRead(BLOB_ID, 0, "etag", firstResult);
+    expectRead(BLOB_ID, 42, "etag", secondResult);
+    replay(storageRpcMock);
+    ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
+    ByteBuffer secondReadBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    reader.read(firstReadBuffer);
+    reader.seek(42);
+    reader.read(secondReadBuffer);
+    assertArrayEquals(Arrays.copyOf(firstResult, 42), firstReadBuffer.array());
+    assertArrayEquals(secondResult, secondReadBuffer.array());
+  }
+
+  @Test
+  public void testSaveAndRestore() throws IOException {
+    byte[] firstResult = randomByteArray(CHUNK_SIZE);
+    byte[] secondResult = randomByteArray(CHUNK_SIZE);
+    ByteBuffer firstReadBuffer = ByteBuffer.allocate(42);
+    ByteBuffer secondReadBuffer = ByteBuffer.allocate(CHUNK_SIZE);
+    expectRead(BLOB_ID, 0, "etag", firstResult);
+    expectRead(BLOB_ID, 42, "etag", secondResult);
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, 1);
+    reader.chunkSize(CHUNK_SIZE);
+    reader.read(firstReadBuffer);
+    RestorableState<ReadChannel> readerState = reader.capture();
+    ReadChannel restoredReader = readerState.restore();
+    restoredReader.read(secondReadBuffer);
+    restoredReader.close();
+    assertArrayEquals(Arrays.copyOf(firstResult, firstReadBuffer.capacity()),
+        firstReadBuffer.array());
+    assertArrayEquals(secondResult, secondReadBuffer.array());
+  }
+
+  @Test
+  public void testStateEquals() {
+    replay(storageRpcMock);
+    reader = new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    @SuppressWarnings("resource")
+    ReadChannel secondReader =
+        new ParallelBlobReadChannel(options, BLOB_ID, EMPTY_RPC_OPTIONS, PARALLELISM);
+    RestorableState<ReadChannel> state = reader.capture();
+    RestorableState<ReadChannel> secondState = secondReader.capture();
+    assertEquals(state, secondState);
+    assertEquals(state.hashCode(), secondState.hashCode());
+    assertEquals(state.toString(), secondState.toString());
+  }
+
+  private IExpectationSetters<StorageRpc.Tuple<String, Long>> expectRead(BlobId blobId,
+      long position, final String etag, final byte[] result) {
+    return expect(storageRpcMock.read(eq(blobId.toPb()), eq(EMPTY_RPC_OPTIONS), eq(position),
+        eq(CHUNK_SIZE), anyObject(OutputStream.class)))
+        .andAnswer(new IAnswer<StorageRpc.Tuple<String, Long>>() {
+          @Override
+          public StorageRpc.Tuple<String, Long> answer() throws Throwable {
+            ((OutputStream) getCurrentArguments()[4]).write(result);
+            return StorageRpc.Tuple.of(etag, (long) result.length);
+          }
+        });
+  }
+
+  private static byte[] randomByteArray(int size) {
+    byte[] byteArray = new byte[size];
+    RANDOM.nextBytes(byteArray);
+    return byteArray;
+  }
+}
@@ -71,6 +71,9 @@ public class SerializationTest extends BaseSerializationTest {
     StorageOptions otherOptions = options.toBuilder()
         .projectId("p2")
         .authCredentials(null)
+        .maxReadAheadBytes(1024)
+        .maxPendingUploadChunks(2)
+        .streamingUploadThreshold(1024)
         .build();
     return new Serializable[]{ACL_DOMAIN, ACL_GROUP, ACL_PROJECT_, ACL_USER, ACL_RAW, ACL,
         BLOB_INFO, BLOB, BUCKET_INFO, BUCKET, ORIGIN, CORS, PAGE_RESULT, BLOB_LIST_OPTIONS,
@@ -83,10 +86,12 @@ public class SerializationTest extends BaseSerializationTest {
     StorageOptions options = StorageOptions.builder().projectId("p2").build();
     ReadChannel reader =
         new BlobReadChannel(options, BlobId.of("b", "n"), EMPTY_RPC_OPTIONS);
+    ReadChannel parallelReader =
+        new ParallelBlobReadChannel(options, BlobId.of("b", "n"), EMPTY_RPC_OPTIONS, 4);
     // avoid closing when you don't want partial writes to GCS upon failure
     @SuppressWarnings("resource")
     BlobWriteChannel writer =
         new BlobWriteChannel(options, BlobInfo.builder(BlobId.of("b", "n")).build(), "upload-id");
-    return new Restorable<?>[]{reader, writer};
+    return new Restorable<?>[]{reader, parallelReader, writer};
   }
 }
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2016 Google Inc. All Rights Reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.cloud.storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.google.api.client.googleapis.json.GoogleJsonError;
+import com.google.api.services.storage.model.StorageObject;
+import com.google.cloud.BatchResult;
+import com.google.cloud.RetryParams;
+import com.google.cloud.storage.spi.RpcBatch;
+import com.google.cloud.storage.spi.StorageRpc;
+import com.google.cloud.storage.spi.StorageRpcFactory;
+
+import org.easymock.EasyMock;
+import org.easymock.IAnswer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class StorageBulkExecutorTest {
+
+  private static final String BUCKET_NAME = "b";
+  private static final RetryParams RETRY_PARAMS = RetryParams.builder()
+      .retryMinAttempts(3)
+      .retryMaxAttempts(3)
+      .initialRetryDelayMillis(1)
+      .maxRetryDelayMillis(1)
+      .build();
+
+  @Rule
+  public ExpectedException thrown = ExpectedException.none();
+
+  private final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+  private final Map<String, Integer> errorsByName = new ConcurrentHashMap<>();
+  private final Map<String, AtomicInteger> remainingErrors = new ConcurrentHashMap<>();
+  private final AtomicInteger remainingSubmitErrors = new AtomicInteger();
+  private StorageRpcFactory rpcFactoryMock;
+  private StorageRpc storageRpcMock;
+  private Storage storage;
+
+  @Before
+  public void setUp() {
+    rpcFactoryMock = EasyMock.createMock(StorageRpcFactory.class);
+    storageRpcMock = EasyMock.createMock(StorageRpc.class);
+    EasyMock.expect(rpcFactoryMock.create(EasyMock.anyObject(StorageOptions.class)))
+        .andReturn(storageRpcMock);
+    EasyMock.expect(storageRpcMock.createBatch()).andAnswer(new IAnswer<RpcBatch>() {
+      @Override
+      public RpcBatch answer() {
+        return new FakeRpcBatch();
+      }
+    }).anyTimes();
+    EasyMock.replay(rpcFactoryMock, storageRpcMock);
+    storage = StorageOptions.builder()
+        .projectId("projectid")
+        .serviceRpcFactory(rpcFactoryMock)
+        .retryParams(RETRY_PARAMS)
+        .build()
+        .service();
+  }
+
+  @After
+  public void tearDown() {
+    EasyMock.verify(rpcFactoryMock, storageRpcMock);
+  }
+
+  @Test
+  public void testBuilder() {
+    StorageBulkExecutor executor = StorageBulkExecutor.builder(storage)
+        .batchSize(10)
+        .parallelism(2)
+        .build();
+    assertEquals(10, executor.batchSize());
+    assertEquals(2, executor.parallelism());
+    executor = StorageBulkExecutor.builder(storage).build();
+    assertEquals(100, executor.batchSize());
+    assertEquals(4, executor.parallelism());
+  }
+
+  @Test
+  public void testBuilderInvalidBatchSize() {
+    thrown.expect(IllegalArgumentException.class);
+    thrown.expectMessage("Batch size must be > 0");
+    StorageBulkExecutor.builder(storage).batchSize(0);
+  }
+
+  @Test
+  public void testSubmitSplitsBatches() {
+    StorageBulkExecutor executor = StorageBulkExecutor.builder(storage).build();
+    List<StorageBatchResult<Boolean>> results = new ArrayList<>();
+    for (int i = 0; i < 250; i++) {
+      results.add(executor.delete(BlobId.of(BUCKET_NAME, "blob" + i)));
+    }
+    executor.submit();
+    Collections.sort(batchSizes);
+    assertEquals(Arrays.asList(50, 100, 100), batchSizes);
+    for (StorageBatchResult<Boolean> result : results) {
+      assertTrue(result.get());
+    }
+    executor.submit();
+    assertEquals(3, batchSizes.size());
+  }
+
+  @Test
+  public void testSubmitRetriesFailedEntries() {
+    failTimes("retried", 503, 2);
+    failTimes("missing", 404, 1);
+    failTimes("invalid", 400, 1);
+    StorageBulkExecutor executor = StorageBulkExecutor.builder(storage).build();
+    StorageBatchResult<Blob> ok = executor.get(BlobId.of(BUCKET_NAME, "ok"));
+    StorageBatchResult<Blob> retried = executor.get(BlobId.of(BUCKET_NAME, "retried"));
+    StorageBatchResult<Blob> missing = executor.get(BlobId.of(BUCKET_NAME, "missing"));
+    StorageBatchResult<Blob> invalid = executor.get(BlobId.of(BUCKET_NAME, "invalid"));
+    final AtomicInteger callbacks = new AtomicInteger();
+    retried.notify(new BatchResult.Callback<Blob, StorageException>() {
+      @Override
+      public void success(Blob result) {
+        callbacks.incrementAndGet();
+      }
+
+      @Override
+      public void error(StorageException exception) {
+        fail();
+      }
+    });
+    executor.submit();
+    assertEquals(Arrays.asList(4, 1, 1), batchSizes);
+    assertEquals("ok", ok.get().name());
+    assertEquals("retried", retried.get().name());
+    assertEquals(1, callbacks.get());
+    assertNull(missing.get());
+    try {
+      invalid.get();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(400, ex.code());
+    }
+  }
+
+  @Test
+  public void testSubmitRetriesExhausted() {
+    failTimes("blob", 503, 3);
+    StorageBulkExecutor executor = StorageBulkExecutor.builder(storage).build();
+    StorageBatchResult<Blob> result =
+        executor.update(BlobInfo.builder(BUCKET_NAME, "blob").contentType("text/plain").build());
+    executor.submit();
+    assertEquals(3, batchSizes.size());
+    try {
+      result.get();
+      fail("Expected StorageException");
+    } catch (StorageException ex) {
+      assertEquals(503, ex.code());
+    }
+  }
+
+  @Test
+  public void testSubmitRetriesFailedBatch() {
+    remainingSubmitErrors.set(1);
+    StorageBulkExecutor executor = StorageBulkExecutor.builder(storage).batchSize(2).build();
+    StorageBatchResult<Boolean> first = executor.delete(BlobId.of(BUCKET_NAME, "first"));
+    StorageBatchResult<Boolean> second = executor.delete(BlobId.of(BUCKET_NAME, "second"));
+    executor.submit();
+    assertEquals(Arrays.asList(2, 2), batchSizes);
+    assertTrue(first.get());
+    assertTrue(second.get());
+  }
+
+  private void failTimes(String name, int code, int times) {
+    errorsByName.put(name, code);
+    remainingErrors.put(name, new AtomicInteger(times));
+  }
+
+  private final class FakeRpcBatch implements RpcBatch {
+
+    private final List<StorageObject> objects = new ArrayList<>();
+    private final List<Callback<Object>> callbacks = new ArrayList<>();
+    private final List<Boolean> returnsObject = new ArrayList<>();
+
+    @Override
+    public void addDelete(StorageObject storageObject, Callback<Void> callback,
+        Map<StorageRpc.Option, ?> options) {
+      add(storageObject, callback, false);
+    }
+
+    @Override
+    public void addPatch(StorageObject storageObject, Callback<StorageObject> callback,
+        Map<StorageRpc.Option, ?> options) {
+      add(storageObject, callback, true);
+    }
+
+    @Override
+    public void addGet(StorageObject storageObject, Callback<StorageObject> callback,
+        Map<StorageRpc.Option, ?> options) {
+      add(storageObject, callback, true);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void add(StorageObject storageObject, Callback<?> callback, boolean returnObject) {
+      objects.add(storageObject);
+      callbacks.add((Callback<Object>) callback);
+      returnsObject.add(returnObject);
+    }
+
+    @Override
+    public void submit() {
+      batchSizes.add(objects.size());
+      if (remainingSubmitErrors.getAndDecrement() > 0) {
+        throw new StorageException(503, "Service unavailable");
+      }
+      for (int i = 0; i < objects.size(); i++) {
+        String name = objects.get(i).getName();
+        AtomicInteger remaining = remainingErrors.get(name);
+        if (remaining != null && remaining.getAndDecrement() > 0) {
+          GoogleJsonError error = new GoogleJsonError();
+          error.setCode(errorsByName.get(name));
+          callbacks.get(i).onFailure(error);
+        } else {
+          callbacks.get(i).onSuccess(returnsObject.get(i) ? objects.get(i) : null);
+        }
+      }
+    }
+  }
+}
@@ -21,6 +21,7 @@ import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
@@ -50,10 +51,12 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Iterables;
 import com.google.common.io.BaseEncoding;
+import com.google.common.io.ByteStreams;
 import com.google.common.net.UrlEscapers;
 
 import org.easymock.Capture;
 import org.easymock.EasyMock;
+import org.easymock.IAnswer;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.BeforeClass;
@@ -62,8 +65,12 @@ import org.junit.Test;
 import org.junit.rules.ExpectedException;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
+import java.net.SocketException;
 import java.net.URL;
 import java.net.URLDecoder;
 import java.nio.ByteBuffer;
@@ -81,6 +88,7 @@ import java.security.spec.PKCS8EncodedKeySpec;
 import java.security.spec.X509EncodedKeySpec;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
 
 import javax.crypto.spec.SecretKeySpec;
@@ -93,6 +101,12 @@ public class StorageImplTest {
   private static final String BLOB_NAME2 = "n2";
   private static final String BLOB_NAME3 = "n3";
   private static final byte[] BLOB_CONTENT = {0xD, 0xE, 0xA, 0xD};
+  private static final RetryParams FAST_RETRY_PARAMS = RetryParams.builder()
+      .retryMinAttempts(2)
+      .retryMaxAttempts(2)
+      .initialRetryDelayMillis(1)
+      .maxRetryDelayMillis(1)
+      .build();
   private static final String CONTENT_MD5 = "O1R4G1HJSDUISJjoIYmVhQ==";
   private static final String CONTENT_CRC32C = "9N3EPQ==";
   private static final int DEFAULT_CHUNK_SIZE = 2 * 1024 * 1024;
@@ -310,6 +324,17 @@ public class StorageImplTest {
     expectedBucket2 = new Bucket(storage, new BucketInfo.BuilderImpl(BUCKET_INFO2));
   }
 
+  private static IAnswer<StorageRpc.Tuple<String, Long>> writeResult(final String etag,
+      final byte[] result) {
+    return new IAnswer<StorageRpc.Tuple<String, Long>>() {
+      @Override
+      public StorageRpc.Tuple<String, Long> answer() throws Throwable {
+        ((OutputStream) EasyMock.getCurrentArguments()[4]).write(result);
+        return StorageRpc.Tuple.of(etag, (long) result.length);
+      }
+    };
+  }
+
   @Test
   public void testGetOptions() {
     EasyMock.replay(storageRpcMock);
@@ -462,6 +487,147 @@ public class StorageImplTest {
     assertEquals(expectedBlob1, blob);
   }
 
+  @Test
+  public void testCreateBlobFromStreamBelowStreamingThreshold() {
+    final ByteArrayInputStream fileStream = new ByteArrayInputStream(BLOB_CONTENT);
+    BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+    EasyMock.expect(storageRpcMock.create(EasyMock.eq(infoWithoutHashes.toPb()),
+        EasyMock.anyObject(InputStream.class), EasyMock.eq(EMPTY_RPC_OPTIONS)))
+        .andThrow(new StorageException(new SocketException("Socket closed")));
+    EasyMock.expect(storageRpcMock.create(EasyMock.eq(infoWithoutHashes.toPb()),
+        EasyMock.anyObject(InputStream.class), EasyMock.eq(EMPTY_RPC_OPTIONS)))
+        .andAnswer(new IAnswer<StorageObject>() {
+          @Override
+          public StorageObject answer() throws IOException {
+            InputStream content = (InputStream) EasyMock.getCurrentArguments()[1];
+            assertNotSame(fileStream, content);
+            assertArrayEquals(BLOB_CONTENT, ByteStreams.toByteArray(content));
+            return BLOB_INFO1.toPb();
+          }
+        });
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder()
+        .streamingUploadThreshold(BLOB_CONTENT.length)
+        .retryParams(FAST_RETRY_PARAMS)
+        .build()
+        .service();
+    initializeServiceDependentObjects();
+    Blob blob = storage.create(BLOB_INFO1, fileStream);
+    assertEquals(expectedBlob1, blob);
+  }
+
+  @Test
+  public void testCreateBlobFromStreamAboveStreamingThreshold() {
+    byte[] content = new byte[2 * DEFAULT_CHUNK_SIZE + 42];
+    new Random().nextBytes(content);
+    final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    IAnswer<StorageObject> recordChunk = new IAnswer<StorageObject>() {
+      @Override
+      public StorageObject answer() {
+        Object[] args = EasyMock.getCurrentArguments();
+        assertEquals((long) uploaded.size(), args[3]);
+        uploaded.write((byte[]) args[1], (Integer) args[2], (Integer) args[4]);
+        return (Boolean) args[5] ? BLOB_INFO1.toPb() : null;
+      }
+    };
+    BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+    EasyMock.expect(storageRpcMock.open(infoWithoutHashes.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn("upload-id");
+    EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+        EasyMock.anyObject(byte[].class), EasyMock.eq(0), EasyMock.eq(0L),
+        EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.eq(false),
+        EasyMock.<String>isNull(), EasyMock.<String>isNull())).andAnswer(recordChunk);
+    EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+        EasyMock.anyObject(byte[].class), EasyMock.eq(0), EasyMock.eq((long) DEFAULT_CHUNK_SIZE),
+        EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.eq(false),
+        EasyMock.<String>isNull(), EasyMock.<String>isNull()))
+        .andThrow(new StorageException(new SocketException("Socket closed")));
+    EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+        EasyMock.anyObject(byte[].class), EasyMock.eq(0), EasyMock.eq((long) DEFAULT_CHUNK_SIZE),
+        EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.eq(false),
+        EasyMock.<String>isNull(), EasyMock.<String>isNull())).andAnswer(recordChunk);
+    EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+        EasyMock.anyObject(byte[].class), EasyMock.eq(0),
+        EasyMock.eq(2L * DEFAULT_CHUNK_SIZE), EasyMock.eq(42), EasyMock.eq(true),
+        EasyMock.<String>isNull(), EasyMock.<String>isNull()))
+        .andAnswer(recordChunk);
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder()
+        .streamingUploadThreshold(1024)
+        .retryParams(FAST_RETRY_PARAMS)
+        .build()
+        .service();
+    initializeServiceDependentObjects();
+    Blob blob = storage.create(BLOB_INFO1, new ByteArrayInputStream(content));
+    assertEquals(expectedBlob1, blob);
+    assertArrayEquals(content, uploaded.toByteArray());
+  }
+
+  @Test
+  public void testCreateBlobFromStreamBelowMultiChunkStreamingThreshold() {
+    final byte[] content = new byte[2 * DEFAULT_CHUNK_SIZE + 42];
+    new Random().nextBytes(content);
+    BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+    EasyMock.expect(storageRpcMock.create(EasyMock.eq(infoWithoutHashes.toPb()),
+        EasyMock.anyObject(InputStream.class), EasyMock.eq(EMPTY_RPC_OPTIONS)))
+        .andAnswer(new IAnswer<StorageObject>() {
+          @Override
+          public StorageObject answer() throws IOException {
+            InputStream uploaded = (InputStream) EasyMock.getCurrentArguments()[1];
+            assertArrayEquals(content, ByteStreams.toByteArray(uploaded));
+            return BLOB_INFO1.toPb();
+          }
+        });
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder()
+        .streamingUploadThreshold(3 * DEFAULT_CHUNK_SIZE)
+        .build()
+        .service();
+    initializeServiceDependentObjects();
+    Blob blob = storage.create(BLOB_INFO1, new ByteArrayInputStream(content));
+    assertEquals(expectedBlob1, blob);
+  }
+
+  @Test
+  public void testCreateBlobFromStreamAboveMultiChunkStreamingThreshold() {
+    byte[] content = new byte[3 * DEFAULT_CHUNK_SIZE + 42];
+    new Random().nextBytes(content);
+    final ByteArrayOutputStream uploaded = new ByteArrayOutputStream();
+    IAnswer<StorageObject> recordChunk = new IAnswer<StorageObject>() {
+      @Override
+      public StorageObject answer() {
+        Object[] args = EasyMock.getCurrentArguments();
+        assertEquals((long) uploaded.size(), args[3]);
+        uploaded.write((byte[]) args[1], (Integer) args[2], (Integer) args[4]);
+        return (Boolean) args[5] ? BLOB_INFO1.toPb() : null;
+      }
+    };
+    BlobInfo infoWithoutHashes = BLOB_INFO1.toBuilder().md5(null).crc32c(null).build();
+    EasyMock.expect(storageRpcMock.open(infoWithoutHashes.toPb(), EMPTY_RPC_OPTIONS))
+        .andReturn("upload-id");
+    for (int i = 0; i < 3; i++) {
+      EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+          EasyMock.anyObject(byte[].class), EasyMock.eq(0),
+          EasyMock.eq((long) i * DEFAULT_CHUNK_SIZE), EasyMock.eq(DEFAULT_CHUNK_SIZE),
+          EasyMock.eq(false), EasyMock.<String>isNull(), EasyMock.<String>isNull()))
+          .andAnswer(recordChunk);
+    }
+    EasyMock.expect(storageRpcMock.writeWithResponse(EasyMock.eq("upload-id"),
+        EasyMock.anyObject(byte[].class), EasyMock.eq(0),
+        EasyMock.eq(3L * DEFAULT_CHUNK_SIZE), EasyMock.eq(42), EasyMock.eq(true),
+        EasyMock.<String>isNull(), EasyMock.<String>isNull()))
+        .andAnswer(recordChunk);
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder()
+        .streamingUploadThreshold(DEFAULT_CHUNK_SIZE + 1)
+        .build()
+        .service();
+    initializeServiceDependentObjects();
+    Blob blob = storage.create(BLOB_INFO1, new ByteArrayInputStream(content));
+    assertEquals(expectedBlob1, blob);
+    assertArrayEquals(content, uploaded.toByteArray());
+  }
+
   @Test
   public void testGetBucket() {
     EasyMock.expect(storageRpcMock.get(BucketInfo.of(BUCKET_NAME1).toPb(), EMPTY_RPC_OPTIONS))
@@ -1129,10 +1295,9 @@ public class StorageImplTest {
 
   @Test
   public void testReaderWithOptions() throws IOException {
-    byte[] result = new byte[DEFAULT_CHUNK_SIZE];
-    EasyMock.expect(
-        storageRpcMock.read(BLOB_INFO2.toPb(), BLOB_SOURCE_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result));
+    EasyMock.expect(storageRpcMock.read(EasyMock.eq(BLOB_INFO2.toPb()), EasyMock.eq(BLOB_SOURCE_OPTIONS),
+        EasyMock.eq(0L), EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.anyObject(OutputStream.class)))
+        .andReturn(StorageRpc.Tuple.of("etag", (long) DEFAULT_CHUNK_SIZE));
     EasyMock.replay(storageRpcMock);
     initializeService();
     ReadChannel channel = storage.reader(BUCKET_NAME1, BLOB_NAME2, BLOB_SOURCE_GENERATION,
@@ -1144,10 +1309,9 @@ public class StorageImplTest {
 
   @Test
   public void testReaderWithDecryptionKey() throws IOException {
-    byte[] result = new byte[DEFAULT_CHUNK_SIZE];
-    EasyMock.expect(
-        storageRpcMock.read(BLOB_INFO2.toPb(), ENCRYPTION_KEY_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result)).times(2);
+    EasyMock.expect(storageRpcMock.read(EasyMock.eq(BLOB_INFO2.toPb()), EasyMock.eq(ENCRYPTION_KEY_OPTIONS),
+        EasyMock.eq(0L), EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.anyObject(OutputStream.class)))
+        .andReturn(StorageRpc.Tuple.of("etag", (long) DEFAULT_CHUNK_SIZE)).times(2);
     EasyMock.replay(storageRpcMock);
     initializeService();
     ReadChannel channel =
@@ -1163,10 +1327,9 @@ public class StorageImplTest {
 
   @Test
   public void testReaderWithOptionsFromBlobId() throws IOException {
-    byte[] result = new byte[DEFAULT_CHUNK_SIZE];
-    EasyMock.expect(
-        storageRpcMock.read(BLOB_INFO1.blobId().toPb(), BLOB_SOURCE_OPTIONS, 0, DEFAULT_CHUNK_SIZE))
-        .andReturn(StorageRpc.Tuple.of("etag", result));
+    EasyMock.expect(storageRpcMock.read(EasyMock.eq(BLOB_INFO1.blobId().toPb()), EasyMock.eq(BLOB_SOURCE_OPTIONS),
+        EasyMock.eq(0L), EasyMock.eq(DEFAULT_CHUNK_SIZE), EasyMock.anyObject(OutputStream.class)))
+        .andReturn(StorageRpc.Tuple.of("etag", (long) DEFAULT_CHUNK_SIZE));
     EasyMock.replay(storageRpcMock);
     initializeService();
     ReadChannel channel = storage.reader(BLOB_INFO1.blobId(),
@@ -1176,6 +1339,49 @@ public class StorageImplTest {
     channel.read(ByteBuffer.allocate(42));
   }
 
+  @Test
+  public void testReaderWithReadAhead() throws IOException {
+    byte[] result = new byte[42];
+    EasyMock.expect(storageRpcMock.read(EasyMock.eq(BlobId.of(BUCKET_NAME1, BLOB_NAME1).toPb()),
+        EasyMock.eq(EMPTY_RPC_OPTIONS), EasyMock.eq(0L), EasyMock.eq(DEFAULT_CHUNK_SIZE),
+        EasyMock.anyObject(OutputStream.class)))
+        .andAnswer(writeResult("etag", result));
+    EasyMock.replay(storageRpcMock);
+    storage = options.toBuilder().maxReadAheadBytes(2L * DEFAULT_CHUNK_SIZE).build().service();
+    ReadChannel channel = storage.reader(BUCKET_NAME1, BLOB_NAME1);
+    assertTrue(channel instanceof ParallelBlobReadChannel);
+    assertEquals(42, channel.read(ByteBuffer.allocate(42)));
+    assertEquals(-1, channel.read(ByteBuffer.allocate(42)));
+    channel.close();
+  }
+
+  @Test
+  public void testParallelReader() {
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ReadChannel channel = storage.parallelReader(BUCKET_NAME1, BLOB_NAME1, 4);
+    assertNotNull(channel);
+    assertTrue(channel.isOpen());
+    channel.close();
+  }
+
+  @Test
+  public void testParallelReaderWithOptionsFromBlobId() throws IOException {
+    byte[] result = new byte[42];
+    EasyMock.expect(storageRpcMock.read(EasyMock.eq(BLOB_INFO1.blobId().toPb()),
+        EasyMock.eq(BLOB_SOURCE_OPTIONS), EasyMock.eq(0L), EasyMock.eq(DEFAULT_CHUNK_SIZE),
+        EasyMock.anyObject(OutputStream.class)))
+        .andAnswer(writeResult("etag", result));
+    EasyMock.replay(storageRpcMock);
+    initializeService();
+    ReadChannel channel = storage.parallelReader(BLOB_INFO1.blobId(), 1,
+        BLOB_SOURCE_GENERATION_FROM_BLOB_ID, BLOB_SOURCE_METAGENERATION);
+    assertNotNull(channel);
+    assertTrue(channel.isOpen());
+    assertEquals(42, channel.read(ByteBuffer.allocate(42)));
+    channel.close();
+  }
+
   @Test
   public void testWriter() {
     BlobInfo.Builder infoBuilder = BLOB_INFO1.toBuilder();